@@ -0,0 +1,120 @@
+package watson.analysis;
+
+import java.util.regex.Pattern;
+
+// ----------------------------------------------------------------------------
+/**
+ * A command line check that {@link PatternAnchor} never rejects a string that
+ * its Pattern matches, and that it still rejects typical non-matching chat.
+ *
+ * Usage: java watson.analysis.PatternAnchorCheck
+ *
+ * Each failure is listed and the exit status is 1 if there are any.
+ */
+public class PatternAnchorCheck
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   *
+   * @param args ignored.
+   */
+  public static void main(String[] args)
+  {
+    // Strings that must be admitted, since the Pattern matches them.
+    checkAdmits("^\\x28(\\d+)\\x29 (.*)$", "(1) x");
+    checkAdmits("^\\u0028(\\d+)\\u0029 (.*)$", "(1) x");
+    checkAdmits("^\\x{28}(\\d+)\\x{29} (.*)$", "(1) x");
+    checkAdmits("^\\d*foo$", "foo");
+    checkAdmits("^\\d?foo$", "foo");
+    checkAdmits("^\\d{0,3}foo$", "foo");
+    checkAdmits("^(\\d*)x (\\w+)$", "x abc");
+    checkAdmits("^(?:\\d+)?x$", "x");
+    checkAdmits("^\\0101 b$", "A b");
+    checkAdmits("^\\01 b$", "\u0001 b");
+    checkAdmits("^\\cA b$", "\u0001 b");
+    checkAdmits("^\\p{Lu}bc$", "Abc");
+    checkAdmits("^\\pLbc$", "Abc");
+    checkAdmits("^(a)\\1b$", "aab");
+    checkAdmits("^ab?c$", "ac");
+    checkAdmits("^ab\\.?c$", "abc");
+    checkAdmits("^(\\d+) created (\\w+) at (\\d+)$", "12 created stone at 3");
+    checkAdmits("^\\d+ destroyed$", "7 destroyed");
+
+    // Strings that should be rejected without running the Pattern.
+    checkRejects("^\\d+ destroyed$", "x destroyed");
+    checkRejects("^(\\d+)x$", "x");
+    checkRejects("^\\d*\\d foo$", "a foo");
+    checkRejects("^Teleported to (.*)$", "Hello");
+    checkRejects("^(.*) from player (.*)$", "stone from someone");
+    checkRejects("^\\x28(\\d+)\\x29 created (.*)$", "(1) destroyed x");
+
+    if (_failures != 0)
+    {
+      System.err.println(_failures + " checks failed.");
+      System.exit(1);
+    }
+    System.out.println("All checks passed.");
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Check that the anchor of the expression admits a string that the
+   * expression matches.
+   *
+   * @param regex the regular expression.
+   * @param text the text, which the expression must match.
+   */
+  protected static void checkAdmits(String regex, String text)
+  {
+    Pattern pattern = Pattern.compile(regex);
+    if (!pattern.matcher(text).matches())
+    {
+      fail("does not match", regex, text);
+    }
+    else if (!new PatternAnchor(pattern).admits(text))
+    {
+      fail("falsely rejects", regex, text);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Check that the anchor of the expression rejects a string.
+   *
+   * @param regex the regular expression.
+   * @param text the text, which the expression must not match.
+   */
+  protected static void checkRejects(String regex, String text)
+  {
+    Pattern pattern = Pattern.compile(regex);
+    if (pattern.matcher(text).matches())
+    {
+      fail("matches", regex, text);
+    }
+    else if (new PatternAnchor(pattern).admits(text))
+    {
+      fail("admits", regex, text);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Report a failed check.
+   *
+   * @param problem a description of the failure.
+   * @param regex the regular expression.
+   * @param text the text.
+   */
+  protected static void fail(String problem, String regex, String text)
+  {
+    ++_failures;
+    System.err.println("FAIL: " + regex + " " + problem + " \"" + text + "\"");
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The number of failed checks.
+   */
+  protected static int _failures;
+} // class PatternAnchorCheck
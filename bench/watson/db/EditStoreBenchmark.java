@@ -0,0 +1,198 @@
+package watson.db;
+
+import java.util.Locale;
+import java.util.TreeSet;
+
+// ----------------------------------------------------------------------------
+/**
+ * A command line benchmark comparing a TreeSet of {@link BlockEdit}s ordered
+ * by {@link BlockEditComparator}, as PlayerEditSet used to store edits, with a
+ * {@link BlockEditStore}.
+ *
+ * Usage: java watson.db.EditStoreBenchmark [edits]
+ *
+ * The edits arrive newest first, as pages of LogBlock results do. For each
+ * structure, the heap retained per edit, the time to add all of the edits and
+ * the time to traverse them in time order are reported. The heap is measured
+ * as the change in used memory after garbage collection, so it is only
+ * approximate; run with a fixed heap size, e.g. -Xms1g -Xmx1g, for stable
+ * figures.
+ */
+public class EditStoreBenchmark
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   *
+   * @param args the optional number of edits.
+   */
+  public static void main(String[] args)
+  {
+    int editCount = (args.length >= 1) ? Integer.parseInt(args[0]) : 500000;
+    BlockType[] types = {
+      BlockTypeRegistry.instance.getBlockTypeByIdData(1, 0),
+      BlockTypeRegistry.instance.getBlockTypeByIdData(4, 0),
+      BlockTypeRegistry.instance.getBlockTypeByIdData(56, 0)};
+
+    // Warm up both structures before measuring them.
+    for (int i = 0; i < 3; ++i)
+    {
+      traverse(buildTreeSet(editCount / 10, types));
+      traverse(buildStore(editCount / 10, types));
+    }
+
+    long used = usedMemory();
+    long nanos = System.nanoTime();
+    TreeSet<BlockEdit> set = buildTreeSet(editCount, types);
+    nanos = System.nanoTime() - nanos;
+    long bytes = usedMemory() - used;
+    long traverseNanos = System.nanoTime();
+    long setSum = traverse(set);
+    traverseNanos = System.nanoTime() - traverseNanos;
+    report("TreeSet:", editCount, bytes, nanos, traverseNanos);
+    set = null;
+
+    used = usedMemory();
+    nanos = System.nanoTime();
+    BlockEditStore store = buildStore(editCount, types);
+    nanos = System.nanoTime() - nanos;
+    bytes = usedMemory() - used;
+    traverseNanos = System.nanoTime();
+    long storeSum = traverse(store);
+    traverseNanos = System.nanoTime() - traverseNanos;
+    report("Store:  ", editCount, bytes, nanos, traverseNanos);
+
+    if (setSum != storeSum)
+    {
+      System.err.println("The structures traversed the edits differently.");
+      System.exit(1);
+    }
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edit that arrives in the specified position.
+   *
+   * @param index the position of arrival, from 0.
+   * @param editCount the total number of edits.
+   * @param types the block types to choose from.
+   * @return the edit.
+   */
+  protected static BlockEdit createEdit(int index, int editCount, BlockType[] types)
+  {
+    int age = editCount - 1 - index;
+    return new BlockEdit(1400000000000L + 1000L * age, "totemo", age % 5 == 0,
+      age % 1000 - 500, age % 256, (age / 1000) % 1000 - 500, types[age % types.length]);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add edits to a TreeSet, newest first.
+   *
+   * @param editCount the number of edits.
+   * @param types the block types to choose from.
+   * @return the set.
+   */
+  protected static TreeSet<BlockEdit> buildTreeSet(int editCount, BlockType[] types)
+  {
+    TreeSet<BlockEdit> set = new TreeSet<BlockEdit>(new BlockEditComparator());
+    for (int i = 0; i < editCount; ++i)
+    {
+      set.add(createEdit(i, editCount, types));
+    }
+    return set;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add edits to a BlockEditStore, newest first, and put them in time order.
+   *
+   * @param editCount the number of edits.
+   * @param types the block types to choose from.
+   * @return the store.
+   */
+  protected static BlockEditStore buildStore(int editCount, BlockType[] types)
+  {
+    BlockEditStore store = new BlockEditStore();
+    for (int i = 0; i < editCount; ++i)
+    {
+      store.add(createEdit(i, editCount, types));
+    }
+    if (store.size() != 0)
+    {
+      store.getRow(0);
+    }
+    return store;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Traverse the edits in a TreeSet in time order.
+   *
+   * @param set the set.
+   * @return a checksum of the traversed edits.
+   */
+  protected static long traverse(TreeSet<BlockEdit> set)
+  {
+    long sum = 0;
+    for (BlockEdit edit : set)
+    {
+      sum = sum * 31 + edit.time + edit.x + edit.y + edit.z + edit.type.getId();
+    }
+    return sum;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Traverse the edits in a BlockEditStore in time order.
+   *
+   * @param store the store.
+   * @return a checksum of the traversed edits.
+   */
+  protected static long traverse(BlockEditStore store)
+  {
+    long sum = 0;
+    for (int rank = 0; rank < store.size(); ++rank)
+    {
+      int row = store.getRow(rank);
+      sum = sum * 31 + store.getTime(row) + store.getX(row) + store.getY(row) +
+            store.getZ(row) + store.getBlockType(row).getId();
+    }
+    return sum;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Print the measurements of one structure.
+   *
+   * @param name the name of the structure.
+   * @param editCount the number of edits.
+   * @param bytes the heap retained.
+   * @param addNanos the time to add the edits.
+   * @param traverseNanos the time to traverse the edits.
+   */
+  protected static void report(String name, int editCount, long bytes, long addNanos,
+                               long traverseNanos)
+  {
+    System.out.println(String.format(Locale.US,
+      "%s %6.1f bytes/edit %7.1f ns/add %6.1f ns/edit traversed",
+      name, (double) bytes / editCount, (double) addNanos / editCount,
+      (double) traverseNanos / editCount));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the heap in use after garbage collection.
+   *
+   * @return the heap in use, in bytes.
+   */
+  protected static long usedMemory()
+  {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; ++i)
+    {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+} // class EditStoreBenchmark
@@ -0,0 +1,144 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+// ----------------------------------------------------------------------------
+/**
+ * A command line benchmark comparing the time to find the edit at a block
+ * position by walking every edit of each player in time order, as
+ * PlayerEditSet.findEdit() used to, with the position index of the
+ * {@link BlockEditStore} behind {@link PlayerEditSet#findEdit(int, int, int)}.
+ *
+ * Usage: java watson.db.FindEditBenchmark [edits] [players] [lookups]
+ *
+ * Edits are generated at random positions and shared evenly between the
+ * players. Each lookup is of the position of a random stored edit and tries
+ * every player in turn, as BlockEditSet.findEdit() does. Before timing, both
+ * methods are checked to find an edit at every looked up position.
+ */
+public class FindEditBenchmark
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   *
+   * @param args the optional numbers of edits, players and lookups.
+   */
+  public static void main(String[] args)
+  {
+    int editCount = (args.length >= 1) ? Integer.parseInt(args[0]) : 50000;
+    int playerCount = (args.length >= 2) ? Integer.parseInt(args[1]) : 12;
+    int lookupCount = (args.length >= 3) ? Integer.parseInt(args[2]) : 2000;
+
+    Random random = new Random(1);
+    BlockType stone = BlockTypeRegistry.instance.getBlockTypeByIdData(1, 0);
+    ArrayList<ArrayList<BlockEdit>> lists = new ArrayList<ArrayList<BlockEdit>>();
+    PlayerEditSet[] sets = new PlayerEditSet[playerCount];
+    for (int p = 0; p < playerCount; ++p)
+    {
+      lists.add(new ArrayList<BlockEdit>());
+      sets[p] = new PlayerEditSet("player" + p);
+    }
+
+    int[] lookups = new int[3 * lookupCount];
+    long time = 1400000000000L;
+    for (int i = 0; i < editCount; ++i)
+    {
+      int p = i % playerCount;
+      BlockEdit edit = new BlockEdit(time + 1000L * i, "player" + p, false,
+        random.nextInt(2000) - 1000, random.nextInt(256), random.nextInt(2000) - 1000, stone);
+      lists.get(p).add(edit);
+      sets[p].addBlockEdit(edit);
+    }
+    for (int i = 0; i < lookupCount; ++i)
+    {
+      ArrayList<BlockEdit> list = lists.get(random.nextInt(playerCount));
+      BlockEdit edit = list.get(random.nextInt(list.size()));
+      lookups[3 * i] = edit.x;
+      lookups[3 * i + 1] = edit.y;
+      lookups[3 * i + 2] = edit.z;
+    }
+
+    if (runLinear(lists, lookups) != lookupCount || runIndexed(sets, lookups) != lookupCount)
+    {
+      System.err.println("Not every looked up edit was found.");
+      System.exit(1);
+    }
+
+    long nanos = System.nanoTime();
+    runLinear(lists, lookups);
+    nanos = System.nanoTime() - nanos;
+    System.out.println(String.format(Locale.US, "%d edits, %d players.", editCount, playerCount));
+    System.out.println(String.format(Locale.US, "Linear:  %12.1f ns/lookup",
+      (double) nanos / lookupCount));
+
+    // The index is much faster, so repeat it to get a measurable time.
+    final int passes = 100;
+    nanos = System.nanoTime();
+    for (int pass = 0; pass < passes; ++pass)
+    {
+      runIndexed(sets, lookups);
+    }
+    nanos = System.nanoTime() - nanos;
+    System.out.println(String.format(Locale.US, "Indexed: %12.1f ns/lookup",
+      (double) nanos / lookupCount / passes));
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Look up every position by walking the edits of each player in time order.
+   *
+   * @param lists the edits of each player, in time order.
+   * @param lookups the x, y and z coordinates of each position.
+   * @return the number of positions where an edit was found.
+   */
+  protected static int runLinear(ArrayList<ArrayList<BlockEdit>> lists, int[] lookups)
+  {
+    int found = 0;
+    for (int i = 0; i < lookups.length; i += 3)
+    {
+      int x = lookups[i];
+      int y = lookups[i + 1];
+      int z = lookups[i + 2];
+      search: for (ArrayList<BlockEdit> list : lists)
+      {
+        for (BlockEdit edit : list)
+        {
+          if (edit.x == x && edit.y == y && edit.z == z)
+          {
+            ++found;
+            break search;
+          }
+        }
+      }
+    }
+    return found;
+  } // runLinear
+
+  // --------------------------------------------------------------------------
+  /**
+   * Look up every position with the index of each player's edits.
+   *
+   * @param sets the edits of each player.
+   * @param lookups the x, y and z coordinates of each position.
+   * @return the number of positions where an edit was found.
+   */
+  protected static int runIndexed(PlayerEditSet[] sets, int[] lookups)
+  {
+    int found = 0;
+    for (int i = 0; i < lookups.length; i += 3)
+    {
+      for (PlayerEditSet set : sets)
+      {
+        if (set.findEdit(lookups[i], lookups[i + 1], lookups[i + 2]) != null)
+        {
+          ++found;
+          break;
+        }
+      }
+    }
+    return found;
+  } // runIndexed
+} // class FindEditBenchmark
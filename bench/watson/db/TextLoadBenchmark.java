@@ -0,0 +1,234 @@
+package watson.db;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// ----------------------------------------------------------------------------
+/**
+ * A command line benchmark comparing the time to parse a text save file with
+ * a regular expression per line, as BlockEditSet.load() used to, with a
+ * {@link TextBlockEditReader}.
+ *
+ * Usage: java watson.db.TextLoadBenchmark [lines] [passes]
+ *
+ * A save file of the specified number of edit lines, with an annotation every
+ * thousand lines, is generated in the temporary directory and deleted on exit.
+ * Before timing, both methods are checked to parse the same edits. The edits
+ * are parsed but not stored, so that only the cost of parsing is measured.
+ */
+public class TextLoadBenchmark
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   *
+   * @param args the optional number of lines and passes.
+   */
+  public static void main(String[] args) throws IOException
+  {
+    int lineCount = (args.length >= 1) ? Integer.parseInt(args[0]) : 1000000;
+    int passes = (args.length >= 2) ? Integer.parseInt(args[1]) : 5;
+
+    File file = File.createTempFile("watson", ".txt");
+    file.deleteOnExit();
+    writeFile(file, lineCount);
+
+    long regexSum = runRegex(file);
+    long readerSum = runReader(file);
+    if (regexSum != readerSum)
+    {
+      System.err.println("The methods parsed the file differently.");
+      System.exit(1);
+    }
+
+    long nanos = System.nanoTime();
+    for (int pass = 0; pass < passes; ++pass)
+    {
+      runRegex(file);
+    }
+    nanos = System.nanoTime() - nanos;
+    double lines = (double) lineCount * passes;
+    System.out.println(String.format(Locale.US, "%d lines, %d bytes.", lineCount, file.length()));
+    System.out.println(String.format(Locale.US, "Regex:  %7.1f ns/line", nanos / lines));
+
+    nanos = System.nanoTime();
+    for (int pass = 0; pass < passes; ++pass)
+    {
+      runReader(file);
+    }
+    nanos = System.nanoTime() - nanos;
+    System.out.println(String.format(Locale.US, "Reader: %7.1f ns/line", nanos / lines));
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write a save file in the text format.
+   *
+   * @param file the file.
+   * @param lineCount the number of edit lines.
+   */
+  protected static void writeFile(File file, int lineCount)
+    throws IOException
+  {
+    String[] players = {"totemo", "freddo", "Player_42", "someone"};
+    int[] ids = {1, 4, 14, 15, 56};
+    PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+    try
+    {
+      for (int i = 0; i < lineCount; ++i)
+      {
+        out.println(String.format(Locale.US, "%04d-%02d-%02d|%02d:%02d:%02d|%s|%c|%d|%d|%d|%d|%d",
+          2013 + i % 3, i % 12 + 1, i % 28 + 1, i % 24, i % 60, (i * 7) % 60,
+          players[(i / 100) % players.length], (i % 3 == 0) ? 'c' : 'd',
+          ids[(i / 7) % ids.length], 0, (i % 2000) - 1000, i % 256, -(i % 3000)));
+        if (i % 1000 == 999)
+        {
+          out.println(String.format(Locale.US, "#%d|%d|%d|note %d", i % 100, 64, -i % 100, i));
+        }
+      }
+    }
+    finally
+    {
+      out.close();
+    }
+  } // writeFile
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse the file the way BlockEditSet.load() used to.
+   *
+   * The checksums of both methods are sums, so that they do not depend on
+   * where a batch of the reader ends relative to the annotations.
+   *
+   * @param file the file.
+   * @return a checksum of the parsed edits.
+   */
+  protected static long runRegex(File file)
+    throws IOException
+  {
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try
+    {
+      Pattern editPattern = Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2})\\|(\\d{2}):(\\d{2}):(\\d{2})\\|(\\w+)\\|([cd])\\|(\\d+)\\|(\\d+)\\|(-?\\d+)\\|(\\d+)\\|(-?\\d+)");
+      Pattern annoPattern = Pattern.compile("#(-?\\d+)\\|(\\d+)\\|(-?\\d+)\\|(.*)");
+      Calendar time = Calendar.getInstance();
+      long sum = 0;
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        Matcher edit = editPattern.matcher(line);
+        if (edit.matches())
+        {
+          int year = Integer.parseInt(edit.group(1));
+          int month = Integer.parseInt(edit.group(2)) - 1;
+          int day = Integer.parseInt(edit.group(3));
+          int hour = Integer.parseInt(edit.group(4));
+          int minute = Integer.parseInt(edit.group(5));
+          int second = Integer.parseInt(edit.group(6));
+          time.set(year, month, day, hour, minute, second);
+          time.set(Calendar.MILLISECOND, 0);
+
+          String player = edit.group(7);
+          boolean created = edit.group(8).equals("c");
+          int id = Integer.parseInt(edit.group(9));
+          int data = Integer.parseInt(edit.group(10));
+          int x = Integer.parseInt(edit.group(11));
+          int y = Integer.parseInt(edit.group(12));
+          int z = Integer.parseInt(edit.group(13));
+          BlockType type = BlockTypeRegistry.instance.getBlockTypeByIdData(id, data);
+          sum += hash(new BlockEdit(time.getTimeInMillis(), player, created,
+            x, y, z, type));
+        }
+        else
+        {
+          Matcher anno = annoPattern.matcher(line);
+          if (anno.matches())
+          {
+            sum += new Annotation(Integer.parseInt(anno.group(1)),
+              Integer.parseInt(anno.group(2)), Integer.parseInt(anno.group(3)),
+              anno.group(4)).getText().hashCode();
+          }
+        }
+      } // while
+      return sum;
+    }
+    finally
+    {
+      reader.close();
+    }
+  } // runRegex
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse the file with a {@link TextBlockEditReader}, in batches as
+   * {@link BlockEditFileLoader} does.
+   *
+   * @param file the file.
+   * @return a checksum of the parsed edits.
+   */
+  protected static long runReader(File file)
+    throws IOException
+  {
+    TextBlockEditReader reader = new TextBlockEditReader(file);
+    try
+    {
+      ArrayList<BlockEdit> edits = new ArrayList<BlockEdit>(BATCH_SIZE);
+      ArrayList<Annotation> annotations = new ArrayList<Annotation>();
+      long sum = 0;
+      boolean more;
+      do
+      {
+        edits.clear();
+        annotations.clear();
+        more = reader.read(edits, annotations, BATCH_SIZE);
+        for (BlockEdit edit : edits)
+        {
+          sum += hash(edit);
+        }
+        for (Annotation annotation : annotations)
+        {
+          sum += annotation.getText().hashCode();
+        }
+      } while (more);
+      return sum;
+    }
+    finally
+    {
+      reader.close();
+    }
+  } // runReader
+
+  // --------------------------------------------------------------------------
+  /**
+   * Combine the attributes of an edit into a hash.
+   *
+   * @param edit the edit.
+   * @return the hash.
+   */
+  protected static long hash(BlockEdit edit)
+  {
+    long hash = edit.time;
+    hash = hash * 31 + edit.player.hashCode();
+    hash = hash * 31 + (edit.creation ? 1 : 0);
+    hash = hash * 31 + edit.type.getId();
+    hash = hash * 31 + edit.x;
+    hash = hash * 31 + edit.y;
+    return hash * 31 + edit.z;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The number of edits read per batch, as in {@link BlockEditFileLoader}.
+   */
+  protected static final int BATCH_SIZE = 1000;
+} // class TextLoadBenchmark
@@ -0,0 +1,180 @@
+package watson.debug;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import watson.analysis.CoreProtectPatterns;
+import watson.analysis.LogBlockPatterns;
+import watson.analysis.MiscPatterns;
+import watson.analysis.PatternAnchor;
+import watson.analysis.PrismPatterns;
+
+// ----------------------------------------------------------------------------
+/**
+ * A command line benchmark comparing the cost of matching captured chat
+ * against every chat Pattern in turn, as Watson used to, with rejecting
+ * chat by the {@link PatternAnchor} of each Pattern first.
+ *
+ * Usage: java watson.debug.ChatBenchmark corpus.txt [passes]
+ *
+ * The corpus is a UTF-8 text file with one chat message per line, e.g. lines
+ * copied from the client log. Formatting codes are stripped. The number of
+ * matches is checked to be the same for both methods.
+ */
+public class ChatBenchmark
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   *
+   * @param args the corpus file name and optional number of passes.
+   */
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length < 1)
+    {
+      System.err.println("Usage: java watson.debug.ChatBenchmark corpus.txt [passes]");
+      System.exit(1);
+    }
+    int passes = (args.length >= 2) ? Integer.parseInt(args[1]) : 20;
+
+    ArrayList<String> corpus = readCorpus(args[0]);
+    ArrayList<Pattern> patterns = new ArrayList<Pattern>();
+    addPatterns(patterns, LogBlockPatterns.class);
+    addPatterns(patterns, CoreProtectPatterns.class);
+    addPatterns(patterns, PrismPatterns.class);
+    addPatterns(patterns, MiscPatterns.class);
+    PatternAnchor[] anchors = new PatternAnchor[patterns.size()];
+    for (int i = 0; i < anchors.length; ++i)
+    {
+      anchors[i] = new PatternAnchor(patterns.get(i));
+      System.out.println(String.format(Locale.US, "%-40s prefix \"%s\" infix \"%s\" digit %b",
+        patterns.get(i).pattern().substring(0, Math.min(40, patterns.get(i).pattern().length())),
+        anchors[i].getPrefix(), anchors[i].getInfix(), anchors[i].isDigitFirst()));
+    }
+
+    // Warm up both methods before timing them.
+    int regexMatches = matchAll(corpus, patterns, null);
+    int anchoredMatches = matchAll(corpus, patterns, anchors);
+    if (regexMatches != anchoredMatches)
+    {
+      System.err.println(String.format(Locale.US, "Match counts differ: %d regex, %d anchored.",
+        regexMatches, anchoredMatches));
+      System.exit(1);
+    }
+
+    long regexNanos = time(corpus, patterns, null, passes);
+    long anchoredNanos = time(corpus, patterns, anchors, passes);
+    double lines = (double) corpus.size() * passes;
+    System.out.println(String.format(Locale.US,
+      "%d lines, %d patterns, %d matches per pass.", corpus.size(), patterns.size(), regexMatches));
+    System.out.println(String.format(Locale.US, "Regex only: %.1f ns/line", regexNanos / lines));
+    System.out.println(String.format(Locale.US, "Anchored:   %.1f ns/line", anchoredNanos / lines));
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read the corpus, stripping formatting codes.
+   *
+   * @param fileName the name of the corpus file.
+   * @return the lines of the corpus.
+   */
+  protected static ArrayList<String> readCorpus(String fileName) throws IOException
+  {
+    ArrayList<String> corpus = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+    try
+    {
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        corpus.add(line.replaceAll("\u00A7.", ""));
+      }
+    }
+    finally
+    {
+      reader.close();
+    }
+    return corpus;
+  } // readCorpus
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add all Pattern constants declared in the specified class or interface.
+   *
+   * @param patterns the list to add to.
+   * @param declarer the class or interface declaring the Patterns.
+   */
+  protected static void addPatterns(ArrayList<Pattern> patterns, Class<?> declarer)
+  {
+    try
+    {
+      for (Field field : declarer.getFields())
+      {
+        if (field.getType() == Pattern.class)
+        {
+          patterns.add((Pattern) field.get(null));
+        }
+      }
+    }
+    catch (IllegalAccessException ex)
+    {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Time the specified number of passes over the corpus.
+   *
+   * @param corpus the chat lines.
+   * @param patterns the Patterns.
+   * @param anchors the anchor of each Pattern, or null to match every Pattern.
+   * @param passes the number of passes.
+   * @return the elapsed time in nanoseconds.
+   */
+  protected static long time(ArrayList<String> corpus, ArrayList<Pattern> patterns,
+                             PatternAnchor[] anchors, int passes)
+  {
+    long start = System.nanoTime();
+    for (int pass = 0; pass < passes; ++pass)
+    {
+      matchAll(corpus, patterns, anchors);
+    }
+    return System.nanoTime() - start;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Match every line of the corpus against every Pattern.
+   *
+   * @param corpus the chat lines.
+   * @param patterns the Patterns.
+   * @param anchors the anchor of each Pattern, or null to match every Pattern.
+   * @return the number of (line, Pattern) pairs that matched.
+   */
+  protected static int matchAll(ArrayList<String> corpus, ArrayList<Pattern> patterns,
+                                PatternAnchor[] anchors)
+  {
+    int matches = 0;
+    for (int line = 0; line < corpus.size(); ++line)
+    {
+      String text = corpus.get(line);
+      for (int i = 0; i < patterns.size(); ++i)
+      {
+        if ((anchors == null || anchors[i].admits(text)) &&
+            patterns.get(i).matcher(text).matches())
+        {
+          ++matches;
+        }
+      }
+    }
+    return matches;
+  } // matchAll
+} // class ChatBenchmark
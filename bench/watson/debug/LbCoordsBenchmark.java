@@ -0,0 +1,222 @@
+package watson.debug;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.regex.Matcher;
+
+import watson.analysis.LbCoordsScanner;
+import watson.analysis.LogBlockPatterns;
+import watson.db.TimeStamp;
+
+// ----------------------------------------------------------------------------
+/**
+ * A command line benchmark comparing the time and memory allocated per line
+ * to parse LogBlock coords results with the LB_COORD regular expression, as
+ * Watson used to, and with an {@link LbCoordsScanner}.
+ *
+ * Usage: java watson.debug.LbCoordsBenchmark [lines] [passes]
+ *
+ * A corpus of lines is generated, covering results with and without a year,
+ * by a handful of players, for a handful of block types. Before timing, every
+ * line is checked to be parsed identically by both methods. Allocation is
+ * measured with the HotSpot-specific per-thread allocation counter, where
+ * available.
+ */
+public class LbCoordsBenchmark
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   *
+   * @param args the optional number of lines and passes.
+   */
+  public static void main(String[] args)
+  {
+    int lineCount = (args.length >= 1) ? Integer.parseInt(args[0]) : 10000;
+    int passes = (args.length >= 2) ? Integer.parseInt(args[1]) : 20;
+    ArrayList<String> corpus = createCorpus(lineCount);
+
+    LbCoordsScanner scanner = LbCoordsScanner.forThread();
+    for (String line : corpus)
+    {
+      Matcher m = LogBlockPatterns.LB_COORD.matcher(line);
+      if (!m.matches() || !scanner.scan(line) || parseRegex(line) != parseScanner(scanner, line))
+      {
+        System.err.println("Parsed differently: " + line);
+        System.exit(1);
+      }
+    }
+
+    // Warm up both methods before measuring them.
+    for (int i = 0; i < 5; ++i)
+    {
+      runRegex(corpus);
+      runScanner(corpus);
+    }
+
+    double lines = (double) corpus.size() * passes;
+    long bytes = allocatedBytes();
+    long nanos = System.nanoTime();
+    for (int pass = 0; pass < passes; ++pass)
+    {
+      runRegex(corpus);
+    }
+    nanos = System.nanoTime() - nanos;
+    bytes = allocatedBytes() - bytes;
+    System.out.println(String.format(Locale.US, "Regex:   %7.1f ns/line %7.1f bytes/line",
+      nanos / lines, bytes / lines));
+
+    bytes = allocatedBytes();
+    nanos = System.nanoTime();
+    for (int pass = 0; pass < passes; ++pass)
+    {
+      runScanner(corpus);
+    }
+    nanos = System.nanoTime() - nanos;
+    bytes = allocatedBytes() - bytes;
+    System.out.println(String.format(Locale.US, "Scanner: %7.1f ns/line %7.1f bytes/line",
+      nanos / lines, bytes / lines));
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Generate coords results.
+   *
+   * @param lineCount the number of lines.
+   * @return the lines.
+   */
+  protected static ArrayList<String> createCorpus(int lineCount)
+  {
+    String[] players = {"totemo", "freddo", "Player_42"};
+    String[] blocks = {"stone", "diamond ore", "cobblestone", "air", "iron ore"};
+    ArrayList<String> corpus = new ArrayList<String>(lineCount);
+    for (int i = 0; i < lineCount; ++i)
+    {
+      String year = (i % 3 == 0) ? "2014-" : "";
+      corpus.add(String.format(Locale.US, "(%d) %s%02d-%02d %02d:%02d:%02d %s %s %s at %d:%d:%d",
+        i % 100 + 1, year, i % 12 + 1, i % 28 + 1, i % 24, i % 60, (i * 7) % 60,
+        players[(i / 50) % players.length], (i % 2 == 0) ? "destroyed" : "created",
+        blocks[(i / 7) % blocks.length], (i % 200) - 100, i % 256, -(i % 300)));
+    }
+    return corpus;
+  } // createCorpus
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse every line with the regexp.
+   *
+   * @param corpus the lines.
+   * @return a checksum of the parsed values, so they can't be optimised away.
+   */
+  protected static long runRegex(ArrayList<String> corpus)
+  {
+    long sum = 0;
+    for (int i = 0; i < corpus.size(); ++i)
+    {
+      sum += parseRegex(corpus.get(i));
+    }
+    return sum;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse every line with the scanner.
+   *
+   * @param corpus the lines.
+   * @return a checksum of the parsed values, so they can't be optimised away.
+   */
+  protected static long runScanner(ArrayList<String> corpus)
+  {
+    LbCoordsScanner scanner = LbCoordsScanner.forThread();
+    long sum = 0;
+    for (int i = 0; i < corpus.size(); ++i)
+    {
+      String line = corpus.get(i);
+      if (scanner.scan(line))
+      {
+        sum += parseScanner(scanner, line);
+      }
+    }
+    return sum;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a line the way LbCoordsAnalysis used to.
+   *
+   * @param line the line.
+   * @return a hash of the parsed values.
+   */
+  protected static long parseRegex(String line)
+  {
+    Matcher m = LogBlockPatterns.LB_COORD.matcher(line);
+    if (!m.matches())
+    {
+      return 0;
+    }
+    int index = Integer.parseInt(m.group(1));
+    int[] ymd = TimeStamp.parseYMD(m.group(2));
+    int hour = Integer.parseInt(m.group(3));
+    int minute = Integer.parseInt(m.group(4));
+    int second = Integer.parseInt(m.group(5));
+    long millis = TimeStamp.toMillis(ymd, hour, minute, second);
+    String player = m.group(6);
+    boolean created = m.group(7).equals("created");
+    String block = m.group(8);
+    int x = Integer.parseInt(m.group(13));
+    int y = Integer.parseInt(m.group(14));
+    int z = Integer.parseInt(m.group(15));
+    return hash(index, millis, player, created, block, x, y, z);
+  } // parseRegex
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the values parsed by the scanner, combined as by parseRegex().
+   *
+   * @param scanner the scanner that has scanned a line.
+   * @param line the line.
+   * @return a hash of the parsed values.
+   */
+  protected static long parseScanner(LbCoordsScanner scanner, String line)
+  {
+    long millis = TimeStamp.toLogBlockMillis(scanner.getYear(), scanner.getMonth(),
+      scanner.getDay(), scanner.getHour(), scanner.getMinute(), scanner.getSecond());
+    return hash(scanner.getIndex(), millis, scanner.getPlayer(), scanner.isCreated(),
+      scanner.getBlock(), scanner.getX(), scanner.getY(), scanner.getZ());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Combine parsed values into a hash.
+   */
+  protected static long hash(int index, long millis, String player, boolean created,
+                             String block, int x, int y, int z)
+  {
+    long hash = index;
+    hash = hash * 31 + millis;
+    hash = hash * 31 + player.hashCode();
+    hash = hash * 31 + (created ? 1 : 0);
+    hash = hash * 31 + block.hashCode();
+    hash = hash * 31 + x;
+    hash = hash * 31 + y;
+    return hash * 31 + z;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of bytes allocated by the current thread so far, or 0
+   * if the JVM can't measure it.
+   *
+   * @return the number of bytes allocated by the current thread.
+   */
+  protected static long allocatedBytes()
+  {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean)
+    {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+} // class LbCoordsBenchmark
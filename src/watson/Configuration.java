@@ -14,12 +14,15 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.lwjgl.input.Keyboard;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
 
 import watson.chat.Chat;
+import watson.chat.CommandScheduler;
 import watson.debug.Log;
 import watson.gui.ModifiedKeyBinding;
 import watson.gui.MouseButton;
@@ -150,6 +153,10 @@ public class Configuration
       _recolourQueryResults = (Boolean) dom.get("recolour_query_results");
       _timeOrderedDeposits = (Boolean) dom.get("time_ordered_deposits");
       _vectorLength = ((Double) dom.get("vector_length")).floatValue();
+      _journalEnabled = (Boolean) dom.get("journal");
+      _drawDistance = (Integer) dom.get("draw_distance");
+      _lodDistance = (Integer) dom.get("lod_distance");
+      setSpamComplaintImp((String) dom.get("spam_complaint"));
 
       for (Entry<String, ModifiedKeyBinding> entry : getKeyBindingsMap().entrySet())
       {
@@ -198,6 +205,10 @@ public class Configuration
       dom.put("recolour_query_results", _recolourQueryResults);
       dom.put("time_ordered_deposits", _timeOrderedDeposits);
       dom.put("vector_length", (double) _vectorLength);
+      dom.put("journal", _journalEnabled);
+      dom.put("draw_distance", _drawDistance);
+      dom.put("lod_distance", _lodDistance);
+      dom.put("spam_complaint", _spamComplaint.pattern());
 
       for (Entry<String, ModifiedKeyBinding> entry : getKeyBindingsMap().entrySet())
       {
@@ -852,6 +863,145 @@ public class Configuration
     return _vectorLength;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Enable or disable journaling of edits and annotations.
+   *
+   * @param enabled if true, changes to the stored edits and annotations are
+   *          recorded in a journal and restored when the client restarts.
+   */
+  public void setJournalEnabled(boolean enabled)
+  {
+    _journalEnabled = enabled;
+    Chat.localOutput((_journalEnabled ? "Enabled" : "Disabled") + " journaling of edits.");
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if changes to the stored edits and annotations are journaled.
+   *
+   * @return true if changes to the stored edits and annotations are journaled.
+   */
+  public boolean isJournalEnabled()
+  {
+    return _journalEnabled;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the maximum distance from the player at which edits, vectors,
+   * annotations and ore deposit labels are drawn.
+   *
+   * @param distance the distance in blocks.
+   */
+  public void setDrawDistance(int distance)
+  {
+    _drawDistance = distance;
+    Chat.localOutput(String.format(Locale.US,
+                                   "Edits within %d blocks will be drawn.", distance));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the maximum distance from the player at which edits, vectors,
+   * annotations and ore deposit labels are drawn.
+   *
+   * @return the distance in blocks.
+   */
+  public int getDrawDistance()
+  {
+    return _drawDistance;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the distance from the player beyond which the edits in each chunk
+   * sized cell are drawn as one bounding box per block type, rather than as
+   * individual block outlines.
+   *
+   * @param distance the distance in blocks.
+   */
+  public void setLodDistance(int distance)
+  {
+    _lodDistance = distance;
+    Chat.localOutput(String.format(Locale.US,
+                                   "Edits beyond %d blocks will be drawn as aggregate boxes.", distance));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the distance from the player beyond which edits are drawn as
+   * aggregate boxes.
+   *
+   * @return the distance in blocks.
+   */
+  public int getLodDistance()
+  {
+    return _lodDistance;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the regular expression that recognises the server's complaints that
+   * commands are being sent too fast.
+   *
+   * @param regex the regular expression, which is matched anywhere in the
+   *          chat; if empty, the default is restored.
+   */
+  public void setSpamComplaint(String regex)
+  {
+    if (setSpamComplaintImp(regex))
+    {
+      Chat.localOutput("Spam filter complaint pattern set to \"" + _spamComplaint.pattern() + "\".");
+      save();
+    }
+    else
+    {
+      Chat.localError("\"" + regex + "\" is not a valid regular expression.");
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the regular expression that recognises the server's complaints that
+   * commands are being sent too fast.
+   *
+   * This is the underlying implementation of setSpamComplaint(), without the
+   * save() of the configuration or feedback into player chat.
+   *
+   * @param regex the regular expression; if empty, the default is restored.
+   * @return true if successful.
+   */
+  protected boolean setSpamComplaintImp(String regex)
+  {
+    try
+    {
+      _spamComplaint = Pattern.compile(regex.length() == 0 ? CommandScheduler.DEFAULT_SPAM_COMPLAINT : regex);
+      return true;
+    }
+    catch (PatternSyntaxException ex)
+    {
+      Log.exception(Level.WARNING, "error setting the spam filter complaint pattern", ex);
+    }
+    return false;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the Pattern that recognises the server's complaints that commands
+   * are being sent too fast.
+   *
+   * @return the Pattern that recognises the server's complaints that commands
+   *         are being sent too fast.
+   */
+  public Pattern getSpamComplaint()
+  {
+    return _spamComplaint;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return all {@link ModifiedKeyBindings} in the order they should be listed
@@ -901,6 +1051,10 @@ public class Configuration
       root.addChild("recolour_query_results", new TypeValidatorNode(Boolean.class, true, true));
       root.addChild("time_ordered_deposits", new TypeValidatorNode(Boolean.class, true, false));
       root.addChild("vector_length", new TypeValidatorNode(Double.class, true, 4.0));
+      root.addChild("journal", new TypeValidatorNode(Boolean.class, true, true));
+      root.addChild("draw_distance", new TypeValidatorNode(Integer.class, true, 512));
+      root.addChild("lod_distance", new TypeValidatorNode(Integer.class, true, 64));
+      root.addChild("spam_complaint", new TypeValidatorNode(String.class, true, CommandScheduler.DEFAULT_SPAM_COMPLAINT));
 
       for (Entry<String, ModifiedKeyBinding> entry : getKeyBindingsMap().entrySet())
       {
@@ -1098,6 +1252,30 @@ public class Configuration
    */
   protected float                         _vectorLength             = 4.0f;
 
+  /**
+   * If true, changes to the stored edits and annotations are journaled, so that
+   * they survive a restart of the client.
+   */
+  protected boolean                       _journalEnabled           = true;
+
+  /**
+   * The maximum distance from the player, in blocks, at which edits, vectors,
+   * annotations and ore deposit labels are drawn.
+   */
+  protected int                           _drawDistance             = 512;
+
+  /**
+   * The distance from the player, in blocks, beyond which edits are drawn as
+   * one bounding box per block type in each chunk sized cell.
+   */
+  protected int                           _lodDistance              = 64;
+
+  /**
+   * Recognises the server's complaints that commands are being sent too fast,
+   * anywhere in the chat.
+   */
+  protected Pattern                       _spamComplaint            = Pattern.compile(CommandScheduler.DEFAULT_SPAM_COMPLAINT);
+
   /**
    * All {@link ModifiedKeyBindings} in the order they should be listed in the
    * configuration panel.
@@ -11,7 +11,6 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -23,7 +22,10 @@ import net.minecraft.client.renderer.WorldRenderer;
 
 import org.lwjgl.opengl.GL11;
 
+import watson.analysis.GrammarAnalysis;
 import watson.chat.Chat;
+import watson.chat.CommandScheduler;
+import watson.chat.CommandScheduler.Priority;
 import watson.cli.AnnoCommand;
 import watson.cli.CalcCommand;
 import watson.cli.CaseInsensitivePrefixFileFilter;
@@ -31,8 +33,10 @@ import watson.cli.ClientCommandManager;
 import watson.cli.HighlightCommand;
 import watson.cli.WatsonCommand;
 import watson.db.BlockEdit;
+import watson.db.BlockEditFileLoader;
 import watson.db.BlockEditSet;
 import watson.db.BlockTypeRegistry;
+import watson.db.EditJournal;
 import watson.db.Filters;
 import watson.debug.Log;
 import watson.gui.WatsonGuiScreen;
@@ -60,6 +64,7 @@ public class Controller
     createBlockEditDirectory();
     BlockTypeRegistry.instance.loadBlockTypes();
     Chat.getChatHighlighter().loadHighlights();
+    GrammarAnalysis.instance.loadGrammar();
 
     // Initialise the commands.
     ClientCommandManager.instance.registerCommand(new WatsonCommand());
@@ -199,6 +204,18 @@ public class Controller
     return _displaySettings;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the {@link Playback} state, which restricts the display to edits
+   * in a time window.
+   *
+   * @return the {@link Playback} state.
+   */
+  public Playback getPlayback()
+  {
+    return _playback;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return the IP address or DNS name of the currently connected server, or
@@ -255,14 +272,41 @@ public class Controller
     {
       edits = new BlockEditSet();
       _edits.put(id, edits);
+
+      // Journal new changes while the edits recorded in a previous session are
+      // restored in the background.
+      EditJournal journal = EditJournal.forId(id);
+      edits.setJournal(journal);
+      if (Configuration.instance.isJournalEnabled())
+      {
+        journal.replay(edits);
+      }
     }
+    _currentEdits = edits;
     return edits;
   } // getBlockEditSet
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the {@link BlockEditSet} most recently returned by
+   * {@link #getBlockEditSet()}, without looking it up.
+   *
+   * Since getBlockEditSet() is called every frame, this is the set for the
+   * current server and dimension, but unlike getBlockEditSet(), it can be
+   * called from any thread.
+   *
+   * @return the current {@link BlockEditSet}, or null if none has been looked
+   *         up yet.
+   */
+  public BlockEditSet getCurrentBlockEditSet()
+  {
+    return _currentEdits;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Save the current {@link BlockEditSet} to the specified file in
-   * getSaveDirectory().
+   * getSaveDirectory(), in the binary format.
    *
    * @param fileName the file name to write; if it is null and there is a
    *          current player variable value, a default file name of the form
@@ -270,6 +314,36 @@ public class Controller
    *
    */
   public void saveBlockEditFile(String fileName)
+  {
+    saveBlockEditFile(fileName, true);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Save the current {@link BlockEditSet} to the specified file in
+   * getSaveDirectory(), in the human-readable text format.
+   *
+   * @param fileName the file name to write; if it is null and there is a
+   *          current player variable value, a default file name of the form
+   *          player-YYYY-MM-DD-hh.mm.ss is used.
+   */
+  public void exportBlockEditFile(String fileName)
+  {
+    saveBlockEditFile(fileName, false);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Save the current {@link BlockEditSet} to the specified file in
+   * getSaveDirectory().
+   *
+   * @param fileName the file name to write; if it is null and there is a
+   *          current player variable value, a default file name of the form
+   *          player-YYYY-MM-DD-hh.mm.ss is used.
+   * @param binary if true, the binary format is written; otherwise the text
+   *          format is written.
+   */
+  protected void saveBlockEditFile(String fileName, boolean binary)
   {
     // Compute default fileName?
     if (fileName == null)
@@ -298,10 +372,11 @@ public class Controller
     try
     {
       BlockEditSet edits = getBlockEditSet();
-      int editCount = edits.save(file);
+      int editCount = binary ? edits.saveBinary(file) : edits.save(file);
       int annoCount = edits.getAnnotations().size();
       Chat.localOutput(String.format(Locale.US,
-                                     "Saved %d edits and %d annotations to %s", editCount, annoCount,
+                                     "%s %d edits and %d annotations to %s",
+                                     (binary ? "Saved" : "Exported"), editCount, annoCount,
                                      fileName));
     }
     catch (IOException ex)
@@ -315,6 +390,11 @@ public class Controller
   /**
    * Load the set of {@link BlockEdit}s from the specified file.
    *
+   * Both the binary and text formats are accepted; the format is detected from
+   * the first bytes of the file. The file is parsed on a worker thread and the
+   * edits are added to the current {@link BlockEditSet} progressively. Only one
+   * file can be loaded at a time.
+   *
    * @param fileName the file name, or the start of the file name (beginning of
    *          player name), in the BlockEdit saves directory.
    *
@@ -322,6 +402,12 @@ public class Controller
    */
   public void loadBlockEditFile(String fileName)
   {
+    if (_loader != null && !_loader.isFinished())
+    {
+      Chat.localError("Already loading " + _loader.getFile().getName() + ". Cancel it first.");
+      return;
+    }
+
     File file = new File(getBlockEditDirectory(), fileName);
     if (!file.canRead())
     {
@@ -337,21 +423,9 @@ public class Controller
 
     if (file.canRead())
     {
-      try
-      {
-        BlockEditSet edits = getBlockEditSet();
-        int editCount = edits.load(file);
-        int annoCount = edits.getAnnotations().size();
-        Chat.localOutput(String.format(Locale.US,
-                                       "Loaded %d edits and %d annotations from %s", editCount, annoCount,
-                                       file.getName()));
-      }
-      catch (Exception ex)
-      {
-        Log.exception(Level.SEVERE, "error loading BlockEditSet from " + file,
-                      ex);
-        Chat.localError("The file " + fileName + " could not be loaded.");
-      }
+      Chat.localOutput("Loading " + file.getName() + "...");
+      _loader = new BlockEditFileLoader(file, getBlockEditSet());
+      _loader.start();
     }
     else
     {
@@ -359,6 +433,28 @@ public class Controller
     }
   } // loadBlockEditFile
 
+  // --------------------------------------------------------------------------
+  /**
+   * Cancel the file load started by {@link #loadBlockEditFile(String)}, if it
+   * is still in progress.
+   *
+   * Edits that have already been loaded are kept.
+   */
+  public void cancelBlockEditFileLoad()
+  {
+    if (_loader != null && !_loader.isFinished())
+    {
+      _loader.cancel();
+      Chat.localOutput(String.format(Locale.US,
+                                     "Cancelled loading %s after %d edits.",
+                                     _loader.getFile().getName(), _loader.getLoadedEditCount()));
+    }
+    else
+    {
+      Chat.localError("No file is being loaded.");
+    }
+  } // cancelBlockEditFileLoad
+
   // --------------------------------------------------------------------------
   /**
    * List all of the {@link BlockEditSet} save files whose names begin with the
@@ -560,12 +656,14 @@ public class Controller
   /**
    * Clear the BlockEditSet for the current server and dimension.
    *
-   * Also clear the variables scraped from chat.
+   * Also clear the variables scraped from chat and cancel pending automatic
+   * queries, which belong to the abandoned investigation.
    */
   public void clearBlockEditSet()
   {
     getBlockEditSet().clear();
     _variables.clear();
+    CommandScheduler.instance.cancel(Priority.AUTO_PAGE);
     _selectionChanged = true;
     _selection = null;
     Chat.localOutput("Watson edits cleared.");
@@ -707,6 +805,12 @@ public class Controller
   // --------------------------------------------------------------------------
   /**
    * Draw a cursor at the currently selected position.
+   *
+   * The cursor is a small overlay drawn separately from the cached outlines of
+   * the edits, so moving the selection does not cause any of those to be
+   * rebuilt. A stippled line links it to the previous edit by the same
+   * player. That edit is looked up only when the selection or the published
+   * edits change, so each frame costs a constant amount of work.
    */
   public void drawSelection()
   {
@@ -733,7 +837,7 @@ public class Controller
       if (_selection.playerEditSet != null)
       {
 
-        BlockEdit predecessor = _selection.playerEditSet.getEditBefore(_selection);
+        BlockEdit predecessor = getSelectionPredecessor();
         if (predecessor != null)
         {
           wr.startDrawing(GL11.GL_LINES);
@@ -750,6 +854,29 @@ public class Controller
     }
   } // drawSelection
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edit before the selected edit by the same player, recomputing
+   * it only if the selection or the published edits have changed since the
+   * last call.
+   *
+   * The edit is found in the edits published for drawing, so the render
+   * thread never waits on the lock of the player's edits.
+   *
+   * @return the edit before the selection, or null if there is none.
+   */
+  protected BlockEdit getSelectionPredecessor()
+  {
+    int publishCount = getBlockEditSet().getPublishCount();
+    if (_predecessorOf != _selection || _predecessorPublishCount != publishCount)
+    {
+      _predecessorOf = _selection;
+      _predecessorPublishCount = publishCount;
+      _predecessor = _selection.playerEditSet.getPublishedEditBefore(_selection);
+    }
+    return _predecessor;
+  } // getSelectionPredecessor
+
   // --------------------------------------------------------------------------
   /**
    * Return true if the selected position has changed since the last time this
@@ -822,51 +949,42 @@ public class Controller
   // --------------------------------------------------------------------------
   /**
    * Queue the specified message in a chat packet for transmission to the
-   * server.
+   * server, as an interactive command.
    *
    * @param message the chat message to send.
    */
   public void serverChat(String message)
   {
-    _serverChatQueue.add(message);
+    serverChat(message, Priority.INTERACTIVE);
   }
 
   // --------------------------------------------------------------------------
   /**
-   * Send the specified chat message to the server immediately (not throttled).
+   * Queue the specified message in a chat packet for transmission to the
+   * server at the specified priority.
    *
    * @param message the chat message to send.
+   * @param priority the priority.
+   * @see CommandScheduler
    */
-  public void immediateServerChat(String message)
+  public void serverChat(String message, Priority priority)
   {
-    if (message != null)
-    {
-      Chat.serverChat(message);
-    }
+    CommandScheduler.instance.schedule(message, priority);
   }
 
   // --------------------------------------------------------------------------
   /**
-   * To prevent Watson's "/w pre" command from automatically issuing /lb page
-   * commands at a rate that would annoy the server's spam filter, outgoing
-   * (programmatically generated) chat packets are added to this queue and rate
-   * limited to at most one per Configuration.getChatTimeoutMillis()
-   * milliseconds.
+   * Send the specified chat message to the server immediately (not throttled).
+   *
+   * @param message the chat message to send.
    */
-  public void processServerChatQueue()
+  public void immediateServerChat(String message)
   {
-    // Just in case System.currentTimeMillis() is still relatively expensive...
-    if (!_serverChatQueue.isEmpty())
+    if (message != null)
     {
-      long now = System.currentTimeMillis();
-      if (now - _lastServerChatTime >= (long) (1000 * Configuration.instance.getChatTimeoutSeconds()))
-      {
-        _lastServerChatTime = now;
-        String message = _serverChatQueue.poll();
-        immediateServerChat(message);
-      }
+      Chat.serverChat(message);
     }
-  } // processServerChatQueue
+  }
 
   // --------------------------------------------------------------------------
   /**
@@ -989,6 +1107,11 @@ public class Controller
    */
   protected DisplaySettings               _displaySettings = new DisplaySettings();
 
+  /**
+   * Playback of edits in time order.
+   */
+  protected Playback                      _playback        = new Playback();
+
   /**
    * A map from the a String containing the server address and dimension number
    * to the corresponding set of {@link BlockEdit}s that are displayed by
@@ -996,6 +1119,11 @@ public class Controller
    */
   protected HashMap<String, BlockEditSet> _edits           = new HashMap<String, BlockEditSet>();
 
+  /**
+   * The BlockEditSet most recently returned by getBlockEditSet().
+   */
+  protected volatile BlockEditSet         _currentEdits;
+
   /**
    * Determines which edits are stored (in a {@link BlocKEditSet}) and which are
    * ignored.
@@ -1013,15 +1141,9 @@ public class Controller
   protected Calendar                      _calendar        = Calendar.getInstance();
 
   /**
-   * A queue of programmatically generated chats (commands to be sent to the
-   * server).
-   */
-  protected ConcurrentLinkedQueue<String> _serverChatQueue = new ConcurrentLinkedQueue<String>();
-
-  /**
-   * The last local time at which a queued up chat was sent to the server.
+   * The most recently started file load, or null if there has been none.
    */
-  protected long                          _lastServerChatTime;
+  protected BlockEditFileLoader           _loader;
 
   /**
    * The main package name of the classes of this mod, and also the name of the
@@ -1052,4 +1174,20 @@ public class Controller
    * been edited. In that case, the timestamp of the BlockEdit will be 0.
    */
   protected BlockEdit                     _selection;
+
+  /**
+   * The selection for which _predecessor was computed.
+   */
+  protected BlockEdit                     _predecessorOf;
+
+  /**
+   * The value of {@link BlockEditSet#getPublishCount()} when _predecessor was
+   * computed.
+   */
+  protected int                           _predecessorPublishCount;
+
+  /**
+   * The edit before _predecessorOf by the same player, or null if none.
+   */
+  protected BlockEdit                     _predecessor;
 } // class Controller
@@ -263,6 +263,53 @@ public class DisplaySettings
     return _minVectorLength;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Turn on or off the heatmap of edit density.
+   *
+   * @param heatmapShown if true, the heatmap is drawn.
+   */
+  public void setHeatmapShown(boolean heatmapShown)
+  {
+    _heatmapShown = heatmapShown;
+    Chat.localOutput("Heatmap display " + (heatmapShown ? "enabled." : "disabled."));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the heatmap of edit density should be drawn.
+   *
+   * @return true if the heatmap of edit density should be drawn.
+   */
+  public boolean isHeatmapShown()
+  {
+    return _heatmapShown;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Restrict the heatmap to edits of blocks with the specified ID.
+   *
+   * @param typeId the block ID, or -1 to count edits of all blocks.
+   */
+  public void setHeatmapTypeId(int typeId)
+  {
+    _heatmapTypeId = typeId;
+    Chat.localOutput("Heatmap shows edits of "
+                     + (typeId < 0 ? "all blocks." : "block ID " + typeId + "."));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the block ID of edits counted by the heatmap.
+   *
+   * @return the block ID, or -1 if edits of all blocks are counted.
+   */
+  public int getHeatmapTypeId()
+  {
+    return _heatmapTypeId;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * True if all Watson displays can be drawn. Other flags disable individual
@@ -310,4 +357,14 @@ public class DisplaySettings
    */
   protected float   _minVectorLength    = 4.0f;
 
+  /**
+   * True if the heatmap of edit density should be drawn.
+   */
+  protected boolean _heatmapShown       = false;
+
+  /**
+   * The block ID of edits counted by the heatmap, or -1 for all blocks.
+   */
+  protected int     _heatmapTypeId      = -1;
+
 } // class DisplaySettings
\ No newline at end of file
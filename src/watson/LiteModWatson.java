@@ -32,12 +32,16 @@ import org.lwjgl.opengl.GL11;
 
 import watson.chat.Chat;
 import watson.chat.ChatProcessor;
+import watson.chat.CommandScheduler;
+import watson.chat.CommandScheduler.Priority;
 import watson.cli.ClientCommandManager;
 import watson.db.BlockEditSet;
 import watson.debug.Log;
 import watson.gui.ModifiedKeyBinding;
 import watson.gui.MouseButton;
 import watson.gui.WatsonConfigPanel;
+import watson.model.BillboardBatch;
+import watson.model.ViewCuller;
 
 import com.google.gson.Gson;
 import com.mojang.realmsclient.dto.RealmsServer;
@@ -175,6 +179,7 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable,
     if (Configuration.instance.isEnabled())
     {
       _gameJoinTime = System.currentTimeMillis();
+      CommandScheduler.instance.cancel(Priority.INTERACTIVE);
 
       // Only set display settings on first connect. Subsequent connects
       // should retain the previous display state.
@@ -218,8 +223,8 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable,
       Configuration.instance.KEYBIND_SCREENSHOT.perform();
     }
 
-    SyncTaskQueue.instance.runTasks();
-    Controller.instance.processServerChatQueue();
+    SyncTaskQueue.instance.runTasks(SyncTaskQueue.TICK_BUDGET_NANOS);
+    CommandScheduler.instance.sendCommands();
 
     // With Forge, onJoinGame() gets called before the chat GUI is ready to
     // display the welcome message.
@@ -254,14 +259,26 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable,
 
       boolean foggy = GL11.glIsEnabled(GL11.GL_FOG);
       GlStateManager.disableFog();
+
+      double playerX = getPlayerX(partialTicks);
+      double playerY = getPlayerY(partialTicks);
+      double playerZ = getPlayerZ(partialTicks);
+      ViewCuller.instance.update(playerX, playerY, playerZ);
+      Controller.instance.getPlayback().update();
+
       GlStateManager.pushMatrix();
-      GlStateManager.translate(-getPlayerX(partialTicks),
-                               -getPlayerY(partialTicks),
-                               -getPlayerZ(partialTicks));
+      GlStateManager.translate(-playerX, -playerY, -playerZ);
 
+      // Drawing reads the state last published by the BlockEditSet, without
+      // locking it, so publish any changes made since the last frame.
       BlockEditSet edits = Controller.instance.getBlockEditSet();
+      if (edits.isRenderStateStale())
+      {
+        edits.refreshRenderState();
+      }
       edits.drawOutlines();
       edits.drawVectors();
+      edits.drawHeatmap();
       Controller.instance.drawSelection();
 
       // Test code. X marks the spot.
@@ -278,7 +295,9 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable,
       GlStateManager.popMatrix();
 
       edits.drawAnnotations();
-      edits.getOreDB().drawDepositLabels();
+      edits.drawDepositLabels();
+      edits.drawAggregateLabels();
+      BillboardBatch.instance.draw();
 
       // More test code.
       // drawBillboard(0, 70, 0, 0x80000000, 0xFFFFFFFF, 0.02,
@@ -0,0 +1,245 @@
+package watson;
+
+import java.util.Locale;
+
+import watson.chat.Chat;
+import watson.db.BlockEditSet;
+import watson.db.TimeStamp;
+
+// ----------------------------------------------------------------------------
+/**
+ * Replays edits in time order by restricting the display to those that fall
+ * in a time window, [start, end], that advances as real time passes.
+ *
+ * The end of the window is the playback cursor. By default, the start of the
+ * window is the time of the oldest edit, so that edits accumulate as playback
+ * proceeds; if a window length is set, only the edits in that many
+ * milliseconds before the cursor are shown. When playback is not active, all
+ * edits are shown.
+ *
+ * {@link #update()} must be called once per frame, before anything is drawn.
+ */
+public class Playback
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Start or resume playback of the edits in the specified BlockEditSet.
+   *
+   * If playback is not already active, or has reached the most recent edit,
+   * the cursor is placed at the oldest edit.
+   *
+   * @param edits the edits to play back.
+   * @param speed the number of seconds of edits played per second of real
+   *          time; must be positive.
+   */
+  public void play(BlockEditSet edits, double speed)
+  {
+    long earliest = edits.getEarliestEditTime();
+    long latest = edits.getLatestEditTime();
+    if (earliest > latest)
+    {
+      Chat.localError("There are no edits to play back.");
+      return;
+    }
+
+    _speed = speed;
+    _end = latest;
+    if (!_active || _cursor >= _end)
+    {
+      _start = earliest;
+      _cursor = earliest;
+    }
+    _active = true;
+    _playing = true;
+    _lastNanos = System.nanoTime();
+    Chat.localOutput(String.format(Locale.US, "Playing edits from %s at %sx speed.",
+      TimeStamp.formatMonthDayTime((long) _cursor), formatDecimal(_speed)));
+  } // play
+
+  // --------------------------------------------------------------------------
+  /**
+   * Pause playback, leaving the display at the current cursor time.
+   */
+  public void pause()
+  {
+    if (!_active)
+    {
+      Chat.localError("Playback is not active.");
+      return;
+    }
+    _playing = false;
+    Chat.localOutput("Playback paused at " + TimeStamp.formatMonthDayTime((long) _cursor) + ".");
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Stop playback and show all edits again.
+   */
+  public void stop()
+  {
+    _active = false;
+    _playing = false;
+    Chat.localOutput("Playback stopped. All edits are shown.");
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Move the cursor forwards or backwards in time, within the range of edits
+   * being played back.
+   *
+   * @param millis the number of milliseconds to move the cursor; negative
+   *          values move it backwards.
+   */
+  public void step(long millis)
+  {
+    if (!_active)
+    {
+      Chat.localError("Playback is not active.");
+      return;
+    }
+    _cursor = Math.max(_start, Math.min(_end, _cursor + millis));
+    _lastNanos = System.nanoTime();
+    Chat.localOutput("Playback cursor at " + TimeStamp.formatMonthDayTime((long) _cursor) + ".");
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the length of the time window preceding the cursor in which edits are
+   * shown.
+   *
+   * @param millis the length of the window in milliseconds, or 0 to show all
+   *          edits from the start of playback up to the cursor.
+   */
+  public void setWindowLength(long millis)
+  {
+    _windowLength = millis;
+    if (millis == 0)
+    {
+      Chat.localOutput("Playback shows all edits up to the cursor.");
+    }
+    else
+    {
+      Chat.localOutput(String.format(Locale.US,
+        "Playback shows edits in the %s minutes up to the cursor.",
+        formatDecimal(millis / 60000.0)));
+    }
+  } // setWindowLength
+
+  // --------------------------------------------------------------------------
+  /**
+   * Advance the cursor by the real time elapsed since the last call,
+   * multiplied by the playback speed.
+   *
+   * Playback pauses when the cursor reaches the most recent edit.
+   */
+  public void update()
+  {
+    if (_playing)
+    {
+      long now = System.nanoTime();
+      _cursor += (now - _lastNanos) * 1.0e-6 * _speed;
+      _lastNanos = now;
+      if (_cursor >= _end)
+      {
+        _cursor = _end;
+        _playing = false;
+        Chat.localOutput("Playback reached the most recent edit.");
+      }
+    }
+  } // update
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the display is restricted to the playback window.
+   *
+   * @return true if the display is restricted to the playback window.
+   */
+  public boolean isActive()
+  {
+    return _active;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the earliest time of edits that are shown.
+   *
+   * @return the start of the window, in milliseconds since the epoch.
+   */
+  public long getWindowStart()
+  {
+    return (_windowLength > 0) ? (long) _cursor - _windowLength : Long.MIN_VALUE;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the latest time of edits that are shown; the cursor.
+   *
+   * @return the end of the window, in milliseconds since the epoch.
+   */
+  public long getWindowEnd()
+  {
+    return (long) _cursor;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Format a decimal number for chat, without trailing zeroes.
+   *
+   * @param value the number.
+   * @return the formatted number.
+   */
+  protected static String formatDecimal(double value)
+  {
+    String text = String.format(Locale.US, "%.2f", value);
+    return text.replaceAll("\\.?0+$", "");
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The default playback speed: one minute of edits per second.
+   */
+  public static final double DEFAULT_SPEED = 60.0;
+
+  /**
+   * True if the display is restricted to the playback window.
+   */
+  protected boolean          _active;
+
+  /**
+   * True if the cursor advances with real time.
+   */
+  protected boolean          _playing;
+
+  /**
+   * The number of seconds of edits played per second of real time.
+   */
+  protected double           _speed        = DEFAULT_SPEED;
+
+  /**
+   * The time of the oldest edit when playback began.
+   */
+  protected long             _start;
+
+  /**
+   * The time of the most recent edit when playback began or resumed.
+   */
+  protected long             _end;
+
+  /**
+   * The playback cursor: the end of the window, in milliseconds since the
+   * epoch. A double, so that slow playback accumulates fractions of a
+   * millisecond between frames.
+   */
+  protected double           _cursor;
+
+  /**
+   * The length of the window preceding the cursor, in milliseconds, or 0 to
+   * show all edits since the start of playback.
+   */
+  protected long             _windowLength;
+
+  /**
+   * The value of System.nanoTime() when the cursor was last advanced.
+   */
+  protected long             _lastNanos;
+} // class Playback
@@ -46,9 +46,39 @@ public class SyncTaskQueue
     }
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Run and dequeue tasks until the queue is empty or the specified time has
+   * elapsed, leaving any remaining tasks for a subsequent call.
+   * 
+   * At least one task is run, if there is one, so that the queue always makes
+   * progress.
+   * 
+   * @param budgetNanos the time budget in nanoseconds.
+   */
+  public void runTasks(long budgetNanos)
+  {
+    long start = System.nanoTime();
+    do
+    {
+      Runnable task = _taskQueue.poll();
+      if (task == null)
+      {
+        break;
+      }
+      task.run();
+    } while (System.nanoTime() - start < budgetNanos);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The maximum time in nanoseconds spent running tasks in each client tick.
+   */
+  public static final long                TICK_BUDGET_NANOS = 10000000L;
+
   // --------------------------------------------------------------------------
   /**
    * Queue of tasks to execute in the order that they should run.
    */
-  protected ConcurrentLinkedQueue<Runnable> _taskQueue = new ConcurrentLinkedQueue<Runnable>();
+  protected ConcurrentLinkedQueue<Runnable> _taskQueue        = new ConcurrentLinkedQueue<Runnable>();
 } // class SyncTaskQueue
\ No newline at end of file
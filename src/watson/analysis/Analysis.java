@@ -1,11 +1,14 @@
 package watson.analysis;
 
-import java.util.LinkedHashMap;
-import java.util.Map.Entry;
+import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.minecraft.util.IChatComponent;
+import watson.Controller;
+import watson.SyncTaskQueue;
+import watson.chat.ChatParseQueue;
+import watson.chat.ChatProcessor;
 import watson.chat.IChatHandler;
 import watson.chat.IMatchedChatHandler;
 
@@ -13,6 +16,18 @@ import watson.chat.IMatchedChatHandler;
 /**
  * Common functionality for implementing {@link IChatHandler}s that scrape
  * useful information out of chat.
+ *
+ * Each registered Pattern is accompanied by a {@link PatternAnchor}: literal
+ * text that any matching chat must contain. Chat lacking the anchors is
+ * rejected with a String comparison, so that ordinary player chat rarely
+ * reaches a regular expression.
+ *
+ * An Analysis that parses large volumes of query results can be made
+ * asynchronous with {@link #setAsynchronous(boolean)}, in which case its
+ * handlers run on the {@link ChatParseQueue} worker, in the order that chat
+ * arrives. All chat admitted by the anchors is then withheld, and echoed from
+ * the worker, through the {@link SyncTaskQueue}, if the handler returns true,
+ * so that it is displayed in order with the results that handlers re-echo.
  */
 public class Analysis implements IChatHandler
 {
@@ -31,44 +46,185 @@ public class Analysis implements IChatHandler
    */
   public boolean dispatchMatchedChat(IChatComponent chat)
   {
-    String unformatted = chat.getUnformattedText();
-    for (Entry<Pattern, IMatchedChatHandler> entry : _handlers.entrySet())
+    return dispatchMatchedChat(chat, chat.getUnformattedText());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Check each of the registered Patterns whose anchors are present in the
+   * unformatted chat for a match, in the order that they were added and call
+   * the onMatchedChat() method of the first corresponding
+   * IMatchedChatHandler.
+   * 
+   * Only the first matching Pattern results in a callback.
+   * 
+   * @param chat the chat to match.
+   * @param unformatted the unformatted text of the chat.
+   * @return the return value of the IMatchedChatHandler that was called, or
+   *         true if none were called. The chat is added to the client's chat
+   *         GUI if true was returned.
+   */
+  public boolean dispatchMatchedChat(IChatComponent chat, String unformatted)
+  {
+    for (int i = 0; i < _handlers.size(); ++i)
     {
-      Matcher m = entry.getKey().matcher(unformatted);
-      if (m.matches())
+      MatchedChatDispatch dispatch = _handlers.get(i);
+      if (dispatch._anchor.admits(unformatted))
       {
-        return entry.getValue().onMatchedChat(chat, m);
+        Matcher m = dispatch._pattern.matcher(unformatted);
+        if (m.matches())
+        {
+          return dispatch._handler.onMatchedChat(chat, m);
+        }
       }
     }
     return true;
-  }
+  } // dispatchMatchedChat
 
   // --------------------------------------------------------------------------
   /**
    * Specify that the handler's onMatchedChat() should be called for chat that
    * matches the specified pattern.
    * 
+   * If the pattern was already added, its handler is replaced, keeping its
+   * original position in the order of matching.
+   * 
    * @param pattern the regexp that the unformatted chat must match.
    * @param handler the handler whose method is called.
    */
   public void addMatchedChatHandler(Pattern pattern, IMatchedChatHandler handler)
   {
-    _handlers.put(pattern, handler);
+    for (MatchedChatDispatch dispatch : _handlers)
+    {
+      if (dispatch._pattern == pattern)
+      {
+        dispatch._handler = handler;
+        return;
+      }
+    }
+    _handlers.add(new MatchedChatDispatch(pattern, handler));
+  } // addMatchedChatHandler
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set whether the handlers of this Analysis are called on the
+   * {@link ChatParseQueue} worker thread, rather than the thread that received
+   * the chat.
+   * 
+   * Handlers of an asynchronous Analysis must hand any changes to Minecraft or
+   * Watson's display state to the main thread through the
+   * {@link watson.SyncTaskQueue}. Their return values still decide whether the
+   * chat is echoed, but the echo is deferred, by
+   * {@link ChatProcessor#deferEcho()}, until they have run.
+   * 
+   * @param asynchronous true if handlers are called on the worker thread.
+   */
+  public void setAsynchronous(boolean asynchronous)
+  {
+    _asynchronous = asynchronous;
   }
 
   // --------------------------------------------------------------------------
   /**
-   * @see watson.chat.IChatHandler#onChat(net.minecraft.util.IChatComponent)
+   * @see watson.chat.IChatHandler#onChat(net.minecraft.util.IChatComponent,
+   *      java.lang.String)
    */
   @Override
-  public boolean onChat(IChatComponent chat)
+  public boolean onChat(final IChatComponent chat, final String unformatted)
   {
-    return dispatchMatchedChat(chat);
+    if (!_asynchronous)
+    {
+      return dispatchMatchedChat(chat, unformatted);
+    }
+
+    // Don't bother the worker with chat that can't match.
+    for (int i = 0; i < _handlers.size(); ++i)
+    {
+      if (_handlers.get(i)._anchor.admits(unformatted))
+      {
+        final ChatProcessor.DeferredEcho deferredEcho = ChatProcessor.instance.deferEcho();
+        ChatParseQueue.instance.addTask(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            if (!dispatchMatchedChat(chat, unformatted))
+            {
+              deferredEcho.suppress();
+            }
+          }
+        });
+        break;
+      }
+    }
+    return true;
   } // onChat
 
   // --------------------------------------------------------------------------
   /**
-   * Handlers for chats that match specific regexps.
+   * Set the coordinate variables x, y and z from the main thread, for use by
+   * the handlers of asynchronous Analysis implementations.
+   * 
+   * @param x the x.
+   * @param y the y.
+   * @param z the z.
+   */
+  protected static void selectPosition(final int x, final int y, final int z)
+  {
+    SyncTaskQueue.instance.addTask(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        Controller.instance.selectPosition(x, y, z);
+      }
+    });
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * A registered Pattern, its anchors and its handler.
+   */
+  protected static class MatchedChatDispatch
+  {
+    /**
+     * Constructor.
+     *
+     * @param pattern the regexp that the unformatted chat must match.
+     * @param handler the handler whose method is called.
+     */
+    public MatchedChatDispatch(Pattern pattern, IMatchedChatHandler handler)
+    {
+      _pattern = pattern;
+      _anchor = new PatternAnchor(pattern);
+      _handler = handler;
+    }
+
+    /**
+     * The regexp that the unformatted chat must match.
+     */
+    Pattern             _pattern;
+
+    /**
+     * Literal text that the unformatted chat must contain to match _pattern.
+     */
+    PatternAnchor       _anchor;
+
+    /**
+     * The handler whose method is called.
+     */
+    IMatchedChatHandler _handler;
+  } // inner class MatchedChatDispatch
+
+  // --------------------------------------------------------------------------
+  /**
+   * Handlers for chats that match specific regexps, in the order they were
+   * added.
+   */
+  protected ArrayList<MatchedChatDispatch> _handlers     = new ArrayList<MatchedChatDispatch>();
+
+  /**
+   * True if handlers are called on the {@link ChatParseQueue} worker thread.
    */
-  protected LinkedHashMap<Pattern, IMatchedChatHandler> _handlers = new LinkedHashMap<Pattern, IMatchedChatHandler>();
+  protected boolean                        _asynchronous;
 } // class Analysis
@@ -10,8 +10,7 @@ import java.util.regex.Pattern;
 
 import net.minecraft.util.IChatComponent;
 import watson.Controller;
-import watson.SyncTaskQueue;
-import watson.analysis.task.AddBlockEditTask;
+import watson.analysis.task.AddBlockEditsTask;
 import watson.chat.IMatchedChatHandler;
 import watson.db.BlockEdit;
 import watson.db.BlockType;
@@ -40,6 +39,9 @@ import watson.db.TimeStamp;
  * 0.01/h ago - totemo placed #4 (Cobblestone).
  *                 ^ (x3/y63/z-6/world)
  * </pre>
+ * 
+ * Results are parsed asynchronously, on the
+ * {@link watson.chat.ChatParseQueue} worker.
  */
 public class CoreProtectAnalysis extends Analysis
 {
@@ -49,6 +51,7 @@ public class CoreProtectAnalysis extends Analysis
    */
   public CoreProtectAnalysis()
   {
+    setAsynchronous(true);
     addMatchedChatHandler(INSPECTOR_COORDS, new IMatchedChatHandler()
     {
       @Override
@@ -99,7 +102,7 @@ public class CoreProtectAnalysis extends Analysis
     _x = Integer.parseInt(m.group(1));
     _y = Integer.parseInt(m.group(2));
     _z = Integer.parseInt(m.group(3));
-    Controller.instance.selectPosition(_x, _y, _z);
+    selectPosition(_x, _y, _z);
     _firstInspectorResult = true;
   } // inspectorCoords
 
@@ -145,7 +148,7 @@ public class CoreProtectAnalysis extends Analysis
         if (Controller.instance.getFilters().isAcceptedPlayer(_player))
         {
           BlockEdit edit = new BlockEdit(_millis, _player, _creation, _x, _y, _z, _type);
-          SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, _firstInspectorResult));
+          AddBlockEditsTask.queue(edit, _firstInspectorResult);
 
           // The first inspector result to pass the filter sets variables.
           if (_firstInspectorResult)
@@ -186,7 +189,7 @@ public class CoreProtectAnalysis extends Analysis
       // https://github.com/totemo/watson/issues/23
 
       BlockEdit edit = new BlockEdit(_millis, _player, _creation, _x, _y, _z, _type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      AddBlockEditsTask.queue(edit, true);
       _lookupDetails = false;
     }
   } // lookupCoords
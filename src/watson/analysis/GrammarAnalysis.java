@@ -0,0 +1,495 @@
+package watson.analysis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import net.minecraft.util.IChatComponent;
+import watson.Controller;
+import watson.analysis.task.AddBlockEditsTask;
+import watson.chat.IMatchedChatHandler;
+import watson.db.BlockEdit;
+import watson.db.BlockType;
+import watson.db.BlockTypeRegistry;
+import watson.db.TimeStamp;
+import watson.debug.Log;
+import watson.yaml.ArrayValidatorNode;
+import watson.yaml.MapValidatorNode;
+import watson.yaml.SnakeValidator;
+import watson.yaml.TypeValidatorNode;
+import watson.yaml.ValidatorMessageSink;
+
+// ----------------------------------------------------------------------------
+/**
+ * An {@link Analysis} that recognises edits in query results whose formats are
+ * declared in "grammar.yml", rather than compiled into Watson, e.g. the output
+ * of a patched LogBlock:
+ *
+ * <pre>
+ * formats:
+ *   - name: patched-logblock
+ *     pattern: '^\((\d+)\) (\d{2}-\d{2} \d{2}:\d{2}:\d{2}) (\w+) (placed|broke) ([a-z ]+) at (-?\d+):(\d+):(-?\d+)$'
+ *     echo: false
+ *     time: 2
+ *     time_format: MM-dd HH:mm:ss
+ *     player: 3
+ *     action: 4
+ *     created_actions: [placed]
+ *     block: 5
+ *     x: 6
+ *     y: 7
+ *     z: 8
+ * </pre>
+ *
+ * Fields are named by the number of the capturing group that contains them.
+ * The time is parsed by a SimpleDateFormat; if the format has no year, the
+ * most recent year that puts the time in the past is assumed, as for LogBlock.
+ * Edits with no time field are stamped with the time they are parsed.
+ *
+ * If echo is false, the matched chat is hidden and Watson echoes the edit in
+ * its own format instead, recoloured like "/lb coords" results. Each matched
+ * line also requests the next page of LogBlock results, when auto_page is on
+ * and a LogBlock page header has been seen, exactly as "/lb coords" results do.
+ *
+ * All declared formats are handled by this single, asynchronous Analysis, so
+ * their Patterns are rejected by their {@link PatternAnchor}s along with the
+ * built-in ones, and adding a format costs no more per line than adding a
+ * Pattern to an existing Analysis.
+ */
+public class GrammarAnalysis extends Analysis
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance.
+   */
+  public static final GrammarAnalysis instance     = new GrammarAnalysis();
+
+  /**
+   * The name of the grammar file.
+   */
+  public static final String          GRAMMAR_FILE = "grammar.yml";
+
+  // --------------------------------------------------------------------------
+  /**
+   * Load the formats from a YAML file in the mod's configuration
+   * subdirectory, or from minecraft.jar as a fallback.
+   */
+  public void loadGrammar()
+  {
+    try
+    {
+      InputStream in = Controller.getConfigurationStream(GRAMMAR_FILE);
+      try
+      {
+        loadGrammar(in);
+      }
+      finally
+      {
+        in.close();
+      }
+    }
+    catch (IOException ex)
+    {
+      Log.exception(Level.SEVERE, "error loading chat grammar: ", ex);
+    }
+  } // loadGrammar
+
+  // --------------------------------------------------------------------------
+  /**
+   * Load the formats from the specified InputStream.
+   *
+   * Formats that fail validation or whose Pattern does not compile are logged
+   * and skipped; the rest are still loaded.
+   *
+   * @param in the stream.
+   */
+  @SuppressWarnings("unchecked")
+  public void loadGrammar(InputStream in)
+  {
+    try
+    {
+      ValidatorMessageSink logSink = new ValidatorMessageSink()
+      {
+        @Override
+        public void message(String text)
+        {
+          Log.config(GRAMMAR_FILE + ": " + text);
+        }
+      };
+      HashMap<String, Object> root = (HashMap<String, Object>) getValidator().loadAndValidate(in, logSink);
+      ArrayList<Object> formats = (ArrayList<Object>) root.get("formats");
+      for (Object entry : formats)
+      {
+        try
+        {
+          final EditFormat format = new EditFormat((HashMap<String, Object>) entry);
+          addMatchedChatHandler(format.getPattern(), new IMatchedChatHandler()
+          {
+            @Override
+            public boolean onMatchedChat(IChatComponent chat, Matcher m)
+            {
+              BlockEdit edit = format.parse(m);
+              if (_lbCoordsAnalysis != null)
+              {
+                _lbCoordsAnalysis.addGrammarEdit(edit, format.isEchoed());
+              }
+              return format.isEchoed();
+            }
+          });
+          Log.info("Loaded chat format \"" + format.getName() + "\".");
+        }
+        catch (Exception ex)
+        {
+          Log.exception(Level.SEVERE, "error loading chat grammar: ", ex);
+        }
+      }
+    }
+    catch (Exception ex)
+    {
+      Log.exception(Level.SEVERE, "error loading chat grammar: ", ex);
+    }
+  } // loadGrammar
+
+  // --------------------------------------------------------------------------
+  /**
+   * Perform lazy initialisation of the SnakeValidator used to validate the
+   * grammar file.
+   *
+   * @return the validator.
+   */
+  protected SnakeValidator getValidator()
+  {
+    if (_validator == null)
+    {
+      _validator = new SnakeValidator();
+
+      MapValidatorNode format = new MapValidatorNode();
+      format.addChild("name", new TypeValidatorNode(String.class));
+      format.addChild("pattern", new TypeValidatorNode(String.class));
+      format.addChild("echo", new TypeValidatorNode(Boolean.class, true, true));
+      format.addChild("player", new TypeValidatorNode(Integer.class));
+      format.addChild("action", new TypeValidatorNode(Integer.class));
+      ArrayList<Object> defaultCreated = new ArrayList<Object>(Arrays.asList("created", "placed", "place"));
+      format.addChild("created_actions", new ArrayValidatorNode(new TypeValidatorNode(String.class), true, 1,
+        Integer.MAX_VALUE, defaultCreated));
+      format.addChild("block", new TypeValidatorNode(Integer.class));
+      format.addChild("x", new TypeValidatorNode(Integer.class));
+      format.addChild("y", new TypeValidatorNode(Integer.class));
+      format.addChild("z", new TypeValidatorNode(Integer.class));
+      format.addChild("time", new TypeValidatorNode(Integer.class, true));
+      format.addChild("time_format", new TypeValidatorNode(String.class, true, "MM-dd HH:mm:ss"));
+
+      MapValidatorNode root = new MapValidatorNode();
+      root.addChild("formats", new ArrayValidatorNode(format, true, 0, Integer.MAX_VALUE,
+        new ArrayList<Object>()));
+      _validator.setRoot(root);
+    }
+    return _validator;
+  } // getValidator
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the {@link LbCoordsAnalysis} that re-echoes hidden matches and pages
+   * through LogBlock results.
+   *
+   * @param lbCoordsAnalysis the analysis of "/lb coords" results.
+   */
+  public void setLbCoordsAnalysis(LbCoordsAnalysis lbCoordsAnalysis)
+  {
+    _lbCoordsAnalysis = lbCoordsAnalysis;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce single instance.
+   *
+   * Formats are added by {@link #loadGrammar()}.
+   */
+  private GrammarAnalysis()
+  {
+    setAsynchronous(true);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * A chat format declared in the grammar file, and the mapping of its
+   * capturing groups to the fields of a {@link BlockEdit}.
+   */
+  protected static class EditFormat
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param map the validated DOM node describing the format.
+     * @throws IllegalArgumentException if a mandatory field is missing, the
+     *           Pattern does not compile or a group number is out of range.
+     */
+    @SuppressWarnings("unchecked")
+    public EditFormat(HashMap<String, Object> map)
+    {
+      _name = (String) map.get("name");
+      String pattern = (String) map.get("pattern");
+      if (_name == null || pattern == null)
+      {
+        throw new IllegalArgumentException("a chat format needs a name and a pattern");
+      }
+      try
+      {
+        _pattern = Pattern.compile(pattern);
+      }
+      catch (PatternSyntaxException ex)
+      {
+        throw new IllegalArgumentException("chat format \"" + _name + "\" has an invalid pattern", ex);
+      }
+
+      int groupCount = _pattern.matcher("").groupCount();
+      _echo = (Boolean) map.get("echo");
+      _playerGroup = getGroup(map, "player", groupCount);
+      _actionGroup = getGroup(map, "action", groupCount);
+      _blockGroup = getGroup(map, "block", groupCount);
+      _xGroup = getGroup(map, "x", groupCount);
+      _yGroup = getGroup(map, "y", groupCount);
+      _zGroup = getGroup(map, "z", groupCount);
+      _timeGroup = (map.get("time") != null) ? getGroup(map, "time", groupCount) : 0;
+      for (Object action : (ArrayList<Object>) map.get("created_actions"))
+      {
+        _createdActions.add(((String) action).toLowerCase(Locale.US));
+      }
+
+      // Parse times without a year in a leap year, so that Feb 29 is valid.
+      String timeFormat = (String) map.get("time_format");
+      _hasYear = (timeFormat.indexOf('y') >= 0);
+      _timeFormat = new SimpleDateFormat(_hasYear ? timeFormat : timeFormat + "|yyyy", Locale.US);
+      _timeFormat.setLenient(false);
+    } // constructor
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the name of the format.
+     *
+     * @return the name of the format.
+     */
+    public String getName()
+    {
+      return _name;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Pattern that matches chat in this format.
+     *
+     * @return the Pattern that matches chat in this format.
+     */
+    public Pattern getPattern()
+    {
+      return _pattern;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if matched chat is echoed in the client chat GUI.
+     *
+     * @return true if matched chat is echoed in the client chat GUI.
+     */
+    public boolean isEchoed()
+    {
+      return _echo;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parse the edit described by matched chat and add it, if its player is
+     * accepted by the filters.
+     *
+     * This is only called on the {@link watson.chat.ChatParseQueue} worker
+     * thread, which therefore has exclusive use of the SimpleDateFormat.
+     *
+     * @param m the Matcher that matched the chat.
+     * @return the edit, or null if the chat names no player.
+     */
+    public BlockEdit parse(Matcher m)
+    {
+      String player = m.group(_playerGroup);
+      if (player == null)
+      {
+        return null;
+      }
+
+      String action = m.group(_actionGroup);
+      boolean created = (action != null && _createdActions.contains(action.toLowerCase(Locale.US)));
+      String block = m.group(_blockGroup);
+      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName((block != null) ? block.trim() : "");
+      int x = parseCoord(m.group(_xGroup));
+      int y = parseCoord(m.group(_yGroup));
+      int z = parseCoord(m.group(_zGroup));
+      long millis = (_timeGroup != 0) ? parseTime(m.group(_timeGroup)) : System.currentTimeMillis();
+      BlockEdit edit = new BlockEdit(millis, player, created, x, y, z, type);
+      if (Controller.instance.getFilters().isAcceptedPlayer(player))
+      {
+        AddBlockEditsTask.queue(edit, true);
+      }
+      return edit;
+    } // parse
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parse a time stamp according to the format's time_format.
+     *
+     * @param time the formatted time.
+     * @return the time in milliseconds since the epoch, or the current time if
+     *         it can't be parsed.
+     */
+    protected long parseTime(String time)
+    {
+      if (time != null)
+      {
+        ParsePosition position = new ParsePosition(0);
+        _timeFormat.parse(_hasYear ? time.trim() : time.trim() + "|2000", position);
+        if (position.getErrorIndex() < 0)
+        {
+          Calendar calendar = _timeFormat.getCalendar();
+          if (_hasYear)
+          {
+            return calendar.getTimeInMillis();
+          }
+          return TimeStamp.toMillis(calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH),
+            calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND));
+        }
+      }
+      return System.currentTimeMillis();
+    } // parseTime
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parse a coordinate that may be written as an integer or, as by Prism,
+     * with a fractional part.
+     *
+     * @param coord the coordinate.
+     * @return the block coordinate.
+     */
+    protected static int parseCoord(String coord)
+    {
+      try
+      {
+        return Integer.parseInt(coord);
+      }
+      catch (NumberFormatException ex)
+      {
+        return (int) Math.floor(Double.parseDouble(coord));
+      }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the group number of a mandatory field, checking that it is one of
+     * the Pattern's capturing groups.
+     *
+     * @param map the validated DOM node describing the format.
+     * @param field the name of the field.
+     * @param groupCount the number of capturing groups in the Pattern.
+     * @return the group number.
+     * @throws IllegalArgumentException if the group number is missing or out of
+     *           range.
+     */
+    protected int getGroup(HashMap<String, Object> map, String field, int groupCount)
+    {
+      Integer group = (Integer) map.get(field);
+      if (group == null || group < 1 || group > groupCount)
+      {
+        throw new IllegalArgumentException(String.format(Locale.US,
+          "chat format \"%s\" needs %s to be a group number from 1 to %d", _name, field, groupCount));
+      }
+      return group;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The name of the format, used in log messages.
+     */
+    protected String            _name;
+
+    /**
+     * The Pattern that matches chat in this format.
+     */
+    protected Pattern           _pattern;
+
+    /**
+     * True if matched chat is echoed in the client chat GUI.
+     */
+    protected boolean           _echo;
+
+    /**
+     * Capturing group containing the player name.
+     */
+    protected int               _playerGroup;
+
+    /**
+     * Capturing group containing the action.
+     */
+    protected int               _actionGroup;
+
+    /**
+     * Capturing group containing the block name.
+     */
+    protected int               _blockGroup;
+
+    /**
+     * Capturing group containing the x coordinate.
+     */
+    protected int               _xGroup;
+
+    /**
+     * Capturing group containing the y coordinate.
+     */
+    protected int               _yGroup;
+
+    /**
+     * Capturing group containing the z coordinate.
+     */
+    protected int               _zGroup;
+
+    /**
+     * Capturing group containing the time stamp, or 0 if there is none.
+     */
+    protected int               _timeGroup;
+
+    /**
+     * Lower case actions that signify creation of a block; any other action
+     * is a destruction.
+     */
+    protected ArrayList<String> _createdActions = new ArrayList<String>();
+
+    /**
+     * Parses the time stamp.
+     */
+    protected SimpleDateFormat  _timeFormat;
+
+    /**
+     * True if the time format includes the year.
+     */
+    protected boolean           _hasYear;
+  } // inner class EditFormat
+
+  // --------------------------------------------------------------------------
+  /**
+   * Validates the grammar file; lazily initialised.
+   */
+  protected SnakeValidator   _validator;
+
+  /**
+   * The analysis that re-echoes hidden matches and pages through results, or
+   * null until set.
+   */
+  protected LbCoordsAnalysis _lbCoordsAnalysis;
+} // class GrammarAnalysis
@@ -19,14 +19,17 @@ import java.util.Locale;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 
+import net.minecraft.util.EnumChatFormatting;
 import net.minecraft.util.IChatComponent;
 import watson.Configuration;
 import watson.Controller;
 import watson.SyncTaskQueue;
-import watson.analysis.task.AddBlockEditTask;
+import watson.analysis.task.AddBlockEditsTask;
 import watson.chat.Chat;
 import watson.chat.ChatComponents;
+import watson.chat.ChatParseQueue;
 import watson.chat.Colour;
+import watson.chat.CommandScheduler.Priority;
 import watson.chat.IMatchedChatHandler;
 import watson.db.BlockEdit;
 import watson.db.BlockType;
@@ -38,6 +41,15 @@ import watson.debug.Log;
 /**
  * An {@link Analysis} implementation that extracts {@link BlockEdit} instances
  * from lb.coord lines.
+ *
+ * Auto-paged results can arrive hundreds of lines at a time, so this Analysis
+ * is asynchronous: coords lines are suppressed immediately and parsed on the
+ * {@link watson.chat.ChatParseQueue} worker, which re-echoes them through the
+ * {@link SyncTaskQueue}. Page and header lines are handled on the worker too,
+ * so that batches of edits are closed in the order the lines arrived, and are
+ * echoed from there, so that they stay in order with the coords. Results
+ * without sign text are recognised by an {@link LbCoordsScanner}, which parses
+ * them without allocating, rather than the LB_COORD regexp.
  */
 public class LbCoordsAnalysis extends Analysis
 {
@@ -47,13 +59,14 @@ public class LbCoordsAnalysis extends Analysis
    */
   public LbCoordsAnalysis()
   {
+    setAsynchronous(true);
     addMatchedChatHandler(LB_COORD, new IMatchedChatHandler()
     {
       @Override
       public boolean onMatchedChat(IChatComponent chat, Matcher m)
       {
         lbCoord(chat, m);
-        // Don't echo in GUI.
+        // Don't echo in GUI; the results are re-echoed by the handler.
         return false;
       }
     });
@@ -63,7 +76,7 @@ public class LbCoordsAnalysis extends Analysis
       public boolean onMatchedChat(IChatComponent chat, Matcher m)
       {
         lbCoordKills(chat, m);
-        // Don't echo in GUI.
+        // Don't echo in GUI; the results are re-echoed by the handler.
         return false;
       }
     });
@@ -73,7 +86,7 @@ public class LbCoordsAnalysis extends Analysis
       public boolean onMatchedChat(IChatComponent chat, Matcher m)
       {
         lbCoordReplaced(chat, m);
-        // Don't echo in GUI.
+        // Don't echo in GUI; the results are re-echoed by the handler.
         return false;
       }
     });
@@ -111,7 +124,35 @@ public class LbCoordsAnalysis extends Analysis
 
   // --------------------------------------------------------------------------
   /**
-   * Parse creation and destruction coords results.
+   * Coords results without sign text, which make up nearly all of a large
+   * query, are recognised by an {@link LbCoordsScanner} rather than the
+   * LB_COORD regexp, and parsed by a second scan on the worker thread.
+   *
+   * @see watson.analysis.Analysis#onChat(net.minecraft.util.IChatComponent,
+   *      java.lang.String)
+   */
+  @Override
+  public boolean onChat(final IChatComponent chat, final String unformatted)
+  {
+    if (LbCoordsScanner.forThread().scan(unformatted))
+    {
+      ChatParseQueue.instance.addTask(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          lbCoordScanned(chat, unformatted);
+        }
+      });
+      // Don't echo in GUI; the results are re-echoed by the handler.
+      return false;
+    }
+    return super.onChat(chat, unformatted);
+  } // onChat
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse creation and destruction coords results with sign text.
    */
   void lbCoord(IChatComponent chat, Matcher m)
   {
@@ -127,21 +168,21 @@ public class LbCoordsAnalysis extends Analysis
       int hour = Integer.parseInt(m.group(3));
       int minute = Integer.parseInt(m.group(4));
       int second = Integer.parseInt(m.group(5));
-      long millis = TimeStamp.toMillis(ymd, hour, minute, second);
 
       String player = m.group(6);
       String action = m.group(7);
       String block = m.group(8);
 
       // If there are an extra 4 groups, then we're dealing with a sign.
-      String sign1 = null, sign2 = null, sign3 = null, sign4 = null;
+      String signText = null;
       int x, y, z;
       if (m.groupCount() == 15)
       {
-        sign1 = m.group(9);
-        sign2 = m.group(10);
-        sign3 = m.group(11);
-        sign4 = m.group(12);
+        if (m.group(9) != null)
+        {
+          signText = String.format(Locale.US, " [%s] [%s] [%s] [%s]",
+            m.group(9), m.group(10), m.group(11), m.group(12));
+        }
         x = Integer.parseInt(m.group(13));
         y = Integer.parseInt(m.group(14));
         z = Integer.parseInt(m.group(15));
@@ -153,55 +194,152 @@ public class LbCoordsAnalysis extends Analysis
         z = Integer.parseInt(m.group(11));
       }
 
-      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(block);
-      boolean created = action.equals("created");
-      BlockEdit edit = new BlockEdit(millis, player, created, x, y, z, type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      addCoord(chat, m.group(0), index, ymd[0], ymd[1], ymd[2], hour, minute, second,
+        player, action.equals("created"), block, signText, x, y, z);
+    }
+    catch (Exception ex)
+    {
+      Log.exception(Level.INFO, "error parsing lb coords", ex);
+    }
+  } // lbCoord
 
-      char colourCode = getChatColourChar(x, y, z);
-      String colour = Configuration.instance.getRecolourQueryResults() ? "\247" + colourCode : "";
-      if (Configuration.instance.getReformatQueryResults())
-      {
-        // TODO: fix this :) Have a class that allows dynamic control of
-        // filtered coords.
-        // Hacked in re-echoing of coords so we can see TP targets.
-        if (type.getId() != 1)
-        {
-          String signText = (sign1 != null)
-            ? String.format(Locale.US, " [%s] [%s] [%s] [%s]", sign1, sign2, sign3, sign4)
-            : "";
+  // --------------------------------------------------------------------------
+  /**
+   * Parse creation and destruction coords results without sign text, that
+   * were recognised by an {@link LbCoordsScanner}.
+   */
+  void lbCoordScanned(IChatComponent chat, String unformatted)
+  {
+    LbCoordsScanner scanner = LbCoordsScanner.forThread();
+    if (scanner.scan(unformatted))
+    {
+      addCoord(chat, unformatted, scanner.getIndex(),
+        scanner.getYear(), scanner.getMonth(), scanner.getDay(),
+        scanner.getHour(), scanner.getMinute(), scanner.getSecond(),
+        scanner.getPlayer(), scanner.isCreated(), scanner.getBlock(), null,
+        scanner.getX(), scanner.getY(), scanner.getZ());
+    }
+  }
 
-          // Only show the year if LogBlock is configured to return it.
-          String year = (ymd[0] != 0)
-            ? String.format(Locale.US, "%02d-", ymd[0])
-            : "";
-          String output = String.format(Locale.US,
-            "%s(%2d) %s%02d-%02d %02d:%02d:%02d (%d,%d,%d) %C%d %s%s",
-            colour, index, year, ymd[1], ymd[2], hour, minute,
-            second, x, y, z, (created ? '+' : '-'), type.getId(), player, signText);
-          Chat.localChat(output);
-        }
-      }
-      else
+  // --------------------------------------------------------------------------
+  /**
+   * Store a parsed creation or destruction coords result, re-echo it and
+   * request the next page of results if appropriate.
+   *
+   * @param chat the chat.
+   * @param unformatted the unformatted text of the chat.
+   * @param index the result index.
+   * @param year the year as written, or 0 if absent.
+   * @param month the month.
+   * @param day the day of the month.
+   * @param hour the hour.
+   * @param minute the minute.
+   * @param second the second.
+   * @param player the player name.
+   * @param created true if the block was created, false if destroyed.
+   * @param block the block name.
+   * @param signText the formatted sign text, or null if there is none.
+   * @param x the x coordinate.
+   * @param y the y coordinate.
+   * @param z the z coordinate.
+   */
+  void addCoord(IChatComponent chat, String unformatted, int index,
+                int year, int month, int day, int hour, int minute, int second,
+                String player, boolean created, String block, String signText,
+                int x, int y, int z)
+  {
+    long millis = TimeStamp.toLogBlockMillis(year, month, day, hour, minute, second);
+
+    // Consecutive results are usually of the same block type.
+    if (!block.equals(_lastBlockName))
+    {
+      _lastBlockName = block;
+      _lastBlockType = BlockTypeRegistry.instance.getBlockTypeByName(block);
+    }
+    BlockType type = _lastBlockType;
+    BlockEdit edit = new BlockEdit(millis, player, created, x, y, z, type);
+    AddBlockEditsTask.queue(edit, true);
+
+    char colourCode = getChatColourChar(x, y, z);
+    if (Configuration.instance.getReformatQueryResults())
+    {
+      // TODO: fix this :) Have a class that allows dynamic control of
+      // filtered coords.
+      // Hacked in re-echoing of coords so we can see TP targets.
+      if (type.getId() != 1)
       {
-        // No reformatting of query results. Recolour?
+        // Equivalent to the format:
+        // "%s(%2d) %s%02d-%02d %02d:%02d:%02d (%d,%d,%d) %C%d %s%s"
+        StringBuilder output = _output;
+        output.setLength(0);
         if (Configuration.instance.getRecolourQueryResults())
         {
-          Chat.localChat(ChatComponents.getEnumChatFormatting(colourCode), chat.getUnformattedText());
+          output.append('\247').append(colourCode);
         }
-        else
+        output.append('(');
+        appendPadded(output, index, 2, ' ');
+        output.append(") ");
+
+        // Only show the year if LogBlock is configured to return it.
+        if (year != 0)
+        {
+          appendPadded(output, (year < 100) ? year + 2000 : year, 2, '0');
+          output.append('-');
+        }
+        appendPadded(output, month, 2, '0');
+        output.append('-');
+        appendPadded(output, day, 2, '0');
+        output.append(' ');
+        appendPadded(output, hour, 2, '0');
+        output.append(':');
+        appendPadded(output, minute, 2, '0');
+        output.append(':');
+        appendPadded(output, second, 2, '0');
+        output.append(" (").append(x).append(',').append(y).append(',').append(z).append(") ");
+        output.append(created ? '+' : '-').append(type.getId()).append(' ').append(player);
+        if (signText != null)
         {
-          Chat.localChat(chat);
+          output.append(signText);
         }
+        echo(output.toString());
       }
-
-      requestNextPage();
     }
-    catch (Exception ex)
+    else
     {
-      Log.exception(Level.INFO, "error parsing lb coords", ex);
+      // No reformatting of query results. Recolour?
+      if (Configuration.instance.getRecolourQueryResults())
+      {
+        echo(ChatComponents.getEnumChatFormatting(colourCode), unformatted);
+      }
+      else
+      {
+        echo(chat);
+      }
     }
-  } // lbCoord
+
+    requestNextPage();
+  } // addCoord
+
+  // --------------------------------------------------------------------------
+  /**
+   * Append a non-negative integer, padded on the left to the specified width.
+   *
+   * @param output the buffer to append to.
+   * @param value the value.
+   * @param width the minimum number of characters.
+   * @param pad the padding character.
+   */
+  protected static void appendPadded(StringBuilder output, int value, int width, char pad)
+  {
+    for (int limit = 10; --width > 0; limit *= 10)
+    {
+      if (value < limit)
+      {
+        output.append(pad);
+      }
+    }
+    output.append(value);
+  }
 
   // --------------------------------------------------------------------------
   /**
@@ -240,7 +378,7 @@ public class LbCoordsAnalysis extends Analysis
 
       // For our purposes, we'll treat a kill like a block destruction
       BlockEdit edit = new BlockEdit(millis, player, false, x, y, z, type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      AddBlockEditsTask.queue(edit, true);
 
       char colourCode = getChatColourChar(x, y, z);
       String colour = Configuration.instance.getRecolourQueryResults() ? "\247" + colourCode : "";
@@ -259,7 +397,7 @@ public class LbCoordsAnalysis extends Analysis
             "%s(%2d) %s%02d-%02d %02d:%02d:%02d (%d,%d,%d) %s %s > %s",
             colour, index, year, ymd[1], ymd[2], hour, minute,
             second, x, y, z, player, weapon, victim);
-          Chat.localChat(output);
+          echo(output);
         }
       }
       else
@@ -267,11 +405,11 @@ public class LbCoordsAnalysis extends Analysis
         // No reformatting of query results. Recolour?
         if (Configuration.instance.getRecolourQueryResults())
         {
-          Chat.localChat(ChatComponents.getEnumChatFormatting(colourCode), chat.getUnformattedText());
+          echo(ChatComponents.getEnumChatFormatting(colourCode), m.group(0));
         }
         else
         {
-          Chat.localChat(chat);
+          echo(chat);
         }
       }
 
@@ -309,7 +447,7 @@ public class LbCoordsAnalysis extends Analysis
 
       // Store the destruction but don't bother with the creation.
       BlockEdit edit = new BlockEdit(millis, player, false, x, y, z, type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      AddBlockEditsTask.queue(edit, true);
 
       char colourCode = getChatColourChar(x, y, z);
       String colour = Configuration.instance.getRecolourQueryResults() ? "\247" + colourCode : "";
@@ -327,7 +465,7 @@ public class LbCoordsAnalysis extends Analysis
           String output = String.format(Locale.US,
             "%s(%2d) %s%02d-%02d %02d:%02d:%02d (%d,%d,%d) %C%d %s",
             colour, index, year, ymd[1], ymd[2], hour, minute, second, x, y, z, '-', type.getId(), player);
-          Chat.localChat(output);
+          echo(output);
         }
       }
       else
@@ -335,11 +473,11 @@ public class LbCoordsAnalysis extends Analysis
         // No reformatting of query results. Recolour?
         if (Configuration.instance.getRecolourQueryResults())
         {
-          Chat.localChat(ChatComponents.getEnumChatFormatting(colourCode), chat.getUnformattedText());
+          echo(ChatComponents.getEnumChatFormatting(colourCode), m.group(0));
         }
         else
         {
-          Chat.localChat(chat);
+          echo(chat);
         }
       }
       requestNextPage();
@@ -361,6 +499,9 @@ public class LbCoordsAnalysis extends Analysis
   @SuppressWarnings("unused")
   void lbPage(IChatComponent chat, Matcher m)
   {
+    // The results of each page are added to the BlockEditSet as one batch.
+    AddBlockEditsTask.closeBatch();
+
     int currentPage = Integer.parseInt(m.group(1));
     int pageCount = Integer.parseInt(m.group(2));
 
@@ -388,9 +529,33 @@ public class LbCoordsAnalysis extends Analysis
   @SuppressWarnings("unused")
   void lbHeader(IChatComponent chat, Matcher m)
   {
+    AddBlockEditsTask.closeBatch();
     _currentPage = _pageCount = 0;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Handle an edit parsed by a {@link GrammarAnalysis} format, on the worker
+   * thread: echo it in the reformatted style if its chat was hidden, and
+   * request the next page of results.
+   *
+   * @param edit the edit, or null if none could be parsed.
+   * @param echoed true if the chat that described the edit was echoed.
+   */
+  void addGrammarEdit(BlockEdit edit, boolean echoed)
+  {
+    if (edit != null && !echoed)
+    {
+      char colourCode = getChatColourChar(edit.x, edit.y, edit.z);
+      String colour = Configuration.instance.getRecolourQueryResults() ? "\247" + colourCode : "";
+      String output = String.format(Locale.US, "%s%s (%d,%d,%d) %C%d %s",
+        colour, TimeStamp.formatMonthDayTime(edit.time), edit.x, edit.y, edit.z,
+        edit.creation ? '+' : '-', edit.type.getId(), edit.player);
+      echo(output);
+    }
+    requestNextPage();
+  } // addGrammarEdit
+
   // --------------------------------------------------------------------------
   /**
    * This method is called when coordinates are parsed out of chat to request
@@ -404,7 +569,7 @@ public class LbCoordsAnalysis extends Analysis
       if (_currentPage != 0 && _currentPage < _pageCount
           && _pageCount <= Configuration.instance.getMaxAutoPages())
       {
-        Controller.instance.serverChat(String.format(Locale.US, "/lb page %d", _currentPage + 1));
+        Controller.instance.serverChat(String.format(Locale.US, "/lb page %d", _currentPage + 1), Priority.AUTO_PAGE);
 
         // Remember that we don't need to do this again until next page is
         // parsed.
@@ -413,6 +578,61 @@ public class LbCoordsAnalysis extends Analysis
     }
   } // requestNextPage
 
+  // --------------------------------------------------------------------------
+  /**
+   * Display reformatted results in the client chat GUI, from the main thread.
+   *
+   * @param message the text to display.
+   */
+  private void echo(final String message)
+  {
+    SyncTaskQueue.instance.addTask(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        Chat.localChat(message);
+      }
+    });
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Display recoloured results in the client chat GUI, from the main thread.
+   *
+   * @param colour the colour to format the text as.
+   * @param message the text to display.
+   */
+  private void echo(final EnumChatFormatting colour, final String message)
+  {
+    SyncTaskQueue.instance.addTask(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        Chat.localChat(colour, message);
+      }
+    });
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Display results unmodified in the client chat GUI, from the main thread.
+   *
+   * @param chat the chat component.
+   */
+  private void echo(final IChatComponent chat)
+  {
+    SyncTaskQueue.instance.addTask(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        Chat.localChat(chat);
+      }
+    });
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Get the colour to highlight coordinates when they are re-echoed into chat.
@@ -473,6 +693,21 @@ public class LbCoordsAnalysis extends Analysis
    */
   protected int                _lastX, _lastY, _lastZ;
 
+  /**
+   * The most recently parsed block name.
+   */
+  protected String             _lastBlockName;
+
+  /**
+   * The BlockType of _lastBlockName.
+   */
+  protected BlockType          _lastBlockType;
+
+  /**
+   * Buffer used to reformat results for re-echoing.
+   */
+  protected StringBuilder      _output                 = new StringBuilder();
+
   /**
    * Current page number extracted from lb.page lines.
    */
@@ -0,0 +1,614 @@
+package watson.analysis;
+
+import java.util.ArrayList;
+
+// ----------------------------------------------------------------------------
+/**
+ * A hand-written scanner for LogBlock coords results of the form:
+ *
+ * <pre>
+ * (idx) [year-]month-day hh:mm:ss player created|destroyed block at x:y:z
+ * </pre>
+ *
+ * that accepts exactly the lines matched by
+ * {@link LogBlockPatterns#LB_COORD}, except for those with sign text, which
+ * are left to the regular expression.
+ *
+ * Numbers are parsed in place and the player and block names are returned as
+ * shared String instances, so that scanning a line does not allocate unless a
+ * name has not been seen recently. Scanners hold state between calls, so each
+ * thread uses its own instance, obtained with {@link #forThread()}.
+ */
+public class LbCoordsScanner
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Return the scanner instance for the calling thread.
+   *
+   * @return the scanner instance for the calling thread.
+   */
+  public static LbCoordsScanner forThread()
+  {
+    return _instances.get();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Scan a line of unformatted chat.
+   *
+   * @param text the line.
+   * @return true if the line is a coords result without sign text, in which
+   *         case the parsed fields can be retrieved with the getters.
+   */
+  public boolean scan(CharSequence text)
+  {
+    _text = text;
+    _pos = 0;
+    _end = text.length();
+    _error = false;
+
+    expect('(');
+    _index = parseInt(false);
+    expect(')');
+    expect(' ');
+
+    // Date: either MM-DD or YY(YY)-MM-DD.
+    int start = _pos;
+    int first = parseInt(false);
+    int firstDigits = _pos - start;
+    expect('-');
+    int second = parseFixedDigits(2);
+    if (!_error && _pos < _end && _text.charAt(_pos) == '-')
+    {
+      ++_pos;
+      _error = (firstDigits < 2 || firstDigits > 4);
+      _year = first;
+      _month = second;
+      _day = parseFixedDigits(2);
+    }
+    else
+    {
+      _error |= (firstDigits != 2);
+      _year = 0;
+      _month = first;
+      _day = second;
+    }
+    expect(' ');
+
+    _hour = parseFixedDigits(2);
+    expect(':');
+    _minute = parseFixedDigits(2);
+    expect(':');
+    _second = parseFixedDigits(2);
+    expect(' ');
+
+    start = _pos;
+    while (_pos < _end && isWordChar(_text.charAt(_pos)))
+    {
+      ++_pos;
+    }
+    _player = (_pos > start) ? findName(_players, start, _pos) : null;
+    _error |= (_player == null);
+    expect(' ');
+
+    if (expectWord("created "))
+    {
+      _created = true;
+    }
+    else if (expectWord("destroyed "))
+    {
+      _created = false;
+    }
+    else
+    {
+      _error = true;
+    }
+    if (_error)
+    {
+      return false;
+    }
+
+    // The block name may contain " at " but the coordinates can't, so the
+    // block name ends at the last occurrence.
+    int at = lastIndexOf(" at ");
+    if (at <= _pos)
+    {
+      return false;
+    }
+    for (int i = _pos; i < at; ++i)
+    {
+      char c = _text.charAt(i);
+      if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == ' '))
+      {
+        // Includes sign text, which is parsed by the regexp.
+        return false;
+      }
+    }
+    _block = findName(_blocks, _pos, at);
+    _pos = at + 4;
+
+    _x = parseInt(true);
+    expect(':');
+    _y = parseInt(false);
+    expect(':');
+    _z = parseInt(true);
+    return !_error && _pos == _end;
+  } // scan
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the result index, in parentheses at the start of the line.
+   *
+   * @return the result index.
+   */
+  public int getIndex()
+  {
+    return _index;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the year, as written.
+   *
+   * @return the year, as written (2 or 4 digits), or 0 if not specified.
+   */
+  public int getYear()
+  {
+    return _year;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the month.
+   *
+   * @return the month, from 1 to 12.
+   */
+  public int getMonth()
+  {
+    return _month;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the day of the month.
+   *
+   * @return the day of the month, from 1 to 31.
+   */
+  public int getDay()
+  {
+    return _day;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the hour.
+   *
+   * @return the hour, from 0 to 23.
+   */
+  public int getHour()
+  {
+    return _hour;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the minute.
+   *
+   * @return the minute, from 0 to 59.
+   */
+  public int getMinute()
+  {
+    return _minute;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the second.
+   *
+   * @return the second, from 0 to 59.
+   */
+  public int getSecond()
+  {
+    return _second;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the player name.
+   *
+   * @return the player name; the same instance is returned for the same name
+   *         on subsequent lines.
+   */
+  public String getPlayer()
+  {
+    return _player;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the block was created, false if destroyed.
+   *
+   * @return true if the block was created, false if destroyed.
+   */
+  public boolean isCreated()
+  {
+    return _created;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the block name.
+   *
+   * @return the block name, as written by LogBlock; the same instance is
+   *         returned for the same name on subsequent lines.
+   */
+  public String getBlock()
+  {
+    return _block;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the x coordinate.
+   *
+   * @return the x coordinate.
+   */
+  public int getX()
+  {
+    return _x;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the y coordinate.
+   *
+   * @return the y coordinate.
+   */
+  public int getY()
+  {
+    return _y;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the z coordinate.
+   *
+   * @return the z coordinate.
+   */
+  public int getZ()
+  {
+    return _z;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Consume the specified character, or flag an error if it is not next.
+   *
+   * @param c the expected character.
+   */
+  protected void expect(char c)
+  {
+    if (!_error && _pos < _end && _text.charAt(_pos) == c)
+    {
+      ++_pos;
+    }
+    else
+    {
+      _error = true;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Consume the specified word if it is next.
+   *
+   * @param word the expected word.
+   * @return true if the word was consumed.
+   */
+  protected boolean expectWord(String word)
+  {
+    if (_error || _end - _pos < word.length())
+    {
+      return false;
+    }
+    for (int i = 0; i < word.length(); ++i)
+    {
+      if (_text.charAt(_pos + i) != word.charAt(i))
+      {
+        return false;
+      }
+    }
+    _pos += word.length();
+    return true;
+  } // expectWord
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse exactly the specified number of decimal digits.
+   *
+   * @param digits the number of digits.
+   * @return the value, or 0 if an error was flagged.
+   */
+  protected int parseFixedDigits(int digits)
+  {
+    if (_error || _end - _pos < digits)
+    {
+      _error = true;
+      return 0;
+    }
+    int value = 0;
+    for (int i = 0; i < digits; ++i)
+    {
+      int digit = _text.charAt(_pos++) - '0';
+      if (digit < 0 || digit > 9)
+      {
+        _error = true;
+        return 0;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  } // parseFixedDigits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a decimal integer of one to MAX_DIGITS digits.
+   *
+   * Longer numbers, which would overflow, are flagged as errors.
+   *
+   * @param signed if true, a leading '-' is allowed.
+   * @return the value, or 0 if an error was flagged.
+   */
+  protected int parseInt(boolean signed)
+  {
+    if (_error)
+    {
+      return 0;
+    }
+    boolean negative = false;
+    if (signed && _pos < _end && _text.charAt(_pos) == '-')
+    {
+      negative = true;
+      ++_pos;
+    }
+    int start = _pos;
+    int value = 0;
+    while (_pos < _end)
+    {
+      int digit = _text.charAt(_pos) - '0';
+      if (digit < 0 || digit > 9)
+      {
+        break;
+      }
+      value = value * 10 + digit;
+      ++_pos;
+    }
+    if (_pos == start || _pos - start > MAX_DIGITS)
+    {
+      _error = true;
+    }
+    return negative ? -value : value;
+  } // parseInt
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index of the last occurrence of the specified string in the
+   * text, at or after the current position.
+   *
+   * @param s the string to find.
+   * @return the index, or -1 if not found.
+   */
+  protected int lastIndexOf(String s)
+  {
+    for (int i = _end - s.length(); i >= _pos; --i)
+    {
+      int j = 0;
+      while (j < s.length() && _text.charAt(i + j) == s.charAt(j))
+      {
+        ++j;
+      }
+      if (j == s.length())
+      {
+        return i;
+      }
+    }
+    return -1;
+  } // lastIndexOf
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the shared String instance equal to the specified range of the
+   * text, adding a new one to the recently seen names if necessary.
+   *
+   * Consecutive lines usually repeat the same names, so the most recently
+   * used name is tried first.
+   *
+   * @param names the recently seen names.
+   * @param start the start of the range.
+   * @param end the end of the range (exclusive).
+   * @return the name.
+   */
+  protected String findName(ArrayList<String> names, int start, int end)
+  {
+    int size = names.size();
+    for (int i = size - 1; i >= 0; --i)
+    {
+      String name = names.get(i);
+      if (matches(name, start, end))
+      {
+        if (i != size - 1)
+        {
+          names.remove(i);
+          names.add(name);
+        }
+        return name;
+      }
+    }
+
+    if (size == MAX_NAMES)
+    {
+      names.remove(0);
+    }
+    String name = _text.subSequence(start, end).toString();
+    names.add(name);
+    return name;
+  } // findName
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified name equals the specified range of the text.
+   *
+   * @param name the name.
+   * @param start the start of the range.
+   * @param end the end of the range (exclusive).
+   * @return true if the name matches.
+   */
+  protected boolean matches(String name, int start, int end)
+  {
+    if (name.length() != end - start)
+    {
+      return false;
+    }
+    for (int i = 0; i < name.length(); ++i)
+    {
+      if (name.charAt(i) != _text.charAt(start + i))
+      {
+        return false;
+      }
+    }
+    return true;
+  } // matches
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified character is a regular expression word
+   * character.
+   *
+   * @param c the character.
+   * @return true if c is in [a-zA-Z_0-9].
+   */
+  protected static boolean isWordChar(char c)
+  {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+           (c >= '0' && c <= '9') || c == '_';
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The maximum number of digits in an integer, so that values don't
+   * overflow.
+   */
+  protected static final int                          MAX_DIGITS = 9;
+
+  /**
+   * The maximum number of recently seen player or block names retained.
+   */
+  protected static final int                          MAX_NAMES  = 32;
+
+  /**
+   * The instance for each thread.
+   */
+  protected static final ThreadLocal<LbCoordsScanner> _instances = new ThreadLocal<LbCoordsScanner>()
+                                                                 {
+                                                                   @Override
+                                                                   protected LbCoordsScanner initialValue()
+                                                                   {
+                                                                     return new LbCoordsScanner();
+                                                                   }
+                                                                 };
+
+  /**
+   * Recently seen player names, least recently used first.
+   */
+  protected ArrayList<String>                         _players   = new ArrayList<String>();
+
+  /**
+   * Recently seen block names, least recently used first.
+   */
+  protected ArrayList<String>                         _blocks    = new ArrayList<String>();
+
+  /**
+   * The text being scanned.
+   */
+  protected CharSequence                              _text;
+
+  /**
+   * The index of the next character to scan.
+   */
+  protected int                                       _pos;
+
+  /**
+   * The length of the text.
+   */
+  protected int                                       _end;
+
+  /**
+   * True if the text did not have the expected form.
+   */
+  protected boolean                                   _error;
+
+  /**
+   * The result index.
+   */
+  protected int                                       _index;
+
+  /**
+   * The year as written, or 0 if absent.
+   */
+  protected int                                       _year;
+
+  /**
+   * The month.
+   */
+  protected int                                       _month;
+
+  /**
+   * The day of the month.
+   */
+  protected int                                       _day;
+
+  /**
+   * The hour.
+   */
+  protected int                                       _hour;
+
+  /**
+   * The minute.
+   */
+  protected int                                       _minute;
+
+  /**
+   * The second.
+   */
+  protected int                                       _second;
+
+  /**
+   * The player name.
+   */
+  protected String                                    _player;
+
+  /**
+   * True if the block was created, false if destroyed.
+   */
+  protected boolean                                   _created;
+
+  /**
+   * The block name.
+   */
+  protected String                                    _block;
+
+  /**
+   * The x coordinate.
+   */
+  protected int                                       _x;
+
+  /**
+   * The y coordinate.
+   */
+  protected int                                       _y;
+
+  /**
+   * The z coordinate.
+   */
+  protected int                                       _z;
+} // class LbCoordsScanner
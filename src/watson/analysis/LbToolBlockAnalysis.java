@@ -8,8 +8,7 @@ import java.util.regex.Matcher;
 
 import net.minecraft.util.IChatComponent;
 import watson.Controller;
-import watson.SyncTaskQueue;
-import watson.analysis.task.AddBlockEditTask;
+import watson.analysis.task.AddBlockEditsTask;
 import watson.chat.IMatchedChatHandler;
 import watson.db.BlockEdit;
 import watson.db.BlockType;
@@ -134,7 +133,7 @@ public class LbToolBlockAnalysis extends Analysis
     if (Controller.instance.getFilters().isAcceptedPlayer(player))
     {
       BlockEdit edit = new BlockEdit(millis, player, created, _x, _y, _z, type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, _expectingFirstEdit));
+      AddBlockEditsTask.queue(edit, _expectingFirstEdit);
 
       // Once our first edit passes the filter, no need to set variables.
       if (_expectingFirstEdit)
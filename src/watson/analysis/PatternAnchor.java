@@ -0,0 +1,502 @@
+package watson.analysis;
+
+import java.util.regex.Pattern;
+
+// ----------------------------------------------------------------------------
+/**
+ * Literal text that any string matched in full by a Pattern must contain,
+ * derived from the source of the Pattern, so that most chat can be rejected
+ * with a couple of String comparisons before the regular expression runs.
+ *
+ * Three anchors are extracted from the top level of the expression (outside
+ * of groups and character classes):
+ * <ul>
+ * <li>the prefix: literal characters at the start of the expression, e.g.
+ * "Teleported to " or "----- CoreProtect ----- (x",</li>
+ * <li>the longest run of literal characters elsewhere in the expression, e.g.
+ * " from player ", and</li>
+ * <li>whether the first character must be a digit, as in LogBlock tool block
+ * results and CoreProtect details, which have no literal prefix.</li>
+ * </ul>
+ *
+ * The derivation is conservative: literals made optional by a following
+ * quantifier are excluded, and expressions with top level alternation, flags,
+ * back references or quoted sections yield no anchors, so {@link #admits(String)} never rejects
+ * a string that the Pattern would match with Matcher.matches().
+ */
+public class PatternAnchor
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param pattern the Pattern whose anchors are extracted.
+   */
+  public PatternAnchor(Pattern pattern)
+  {
+    if (pattern.flags() == 0)
+    {
+      String source = pattern.pattern();
+      parse(source);
+      _digitFirst = (_prefix.length() == 0 && startsWithDigit(source.startsWith("^") ? source.substring(1) : source));
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the text contains the anchors, i.e. if the Pattern could
+   * possibly match it.
+   *
+   * @param text the unformatted chat text.
+   * @return true if the text contains the anchors.
+   */
+  public boolean admits(String text)
+  {
+    if (_digitFirst && (text.length() == 0 || text.charAt(0) < '0' || text.charAt(0) > '9'))
+    {
+      return false;
+    }
+    return text.startsWith(_prefix) &&
+           (_infix.length() == 0 || text.indexOf(_infix, _prefix.length()) >= 0);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the literal prefix of all matched strings.
+   *
+   * @return the literal prefix of all matched strings; possibly empty.
+   */
+  public String getPrefix()
+  {
+    return _prefix;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the longest literal that all matched strings contain after the
+   * prefix.
+   *
+   * @return the longest literal after the prefix; possibly empty.
+   */
+  public String getInfix()
+  {
+    return _infix;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the first character of all matched strings must be a
+   * digit.
+   *
+   * @return true if the first character of all matched strings must be a
+   *         digit.
+   */
+  public boolean isDigitFirst()
+  {
+    return _digitFirst;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Extract the prefix and infix from the source of the expression.
+   *
+   * If the expression cannot be analysed, both anchors are left empty.
+   *
+   * @param source the regular expression.
+   */
+  protected void parse(String source)
+  {
+    StringBuilder run = new StringBuilder();
+    boolean inPrefix = true;
+    int i = source.startsWith("^") ? 1 : 0;
+    while (i < source.length())
+    {
+      char c = source.charAt(i);
+      if (c == '\\')
+      {
+        if (i + 1 >= source.length())
+        {
+          reset();
+          return;
+        }
+        char escaped = source.charAt(i + 1);
+        if (Character.isLetterOrDigit(escaped))
+        {
+          // A class, a character given by its code or a boundary. It is not
+          // a literal, but a following quantifier applies to it.
+          int length = escapeLength(source, i);
+          if (length < 0)
+          {
+            reset();
+            return;
+          }
+          i += length;
+          endRun(run, inPrefix);
+          inPrefix = false;
+        }
+        else
+        {
+          run.append(escaped);
+          i += 2;
+        }
+      }
+      else if (c == '(' || c == '[')
+      {
+        if (c == '(' && i + 2 < source.length() && source.charAt(i + 1) == '?' &&
+            ":=!<>".indexOf(source.charAt(i + 2)) < 0)
+        {
+          // Embedded flags, e.g. (?i), may change how literals match.
+          reset();
+          return;
+        }
+        i = skipGroup(source, i);
+        if (i < 0)
+        {
+          reset();
+          return;
+        }
+        endRun(run, inPrefix);
+        inPrefix = false;
+      }
+      else if (c == '*' || c == '+' || c == '?' || c == '{')
+      {
+        // The quantifier applies to the last literal character, if any. It is
+        // still required once if the quantifier is '+'.
+        if (c != '+' && run.length() > 0)
+        {
+          run.setLength(run.length() - 1);
+        }
+        endRun(run, inPrefix);
+        inPrefix = false;
+
+        if (c == '{')
+        {
+          i = source.indexOf('}', i);
+          if (i < 0)
+          {
+            reset();
+            return;
+          }
+        }
+        ++i;
+        // Skip the lazy or possessive modifier.
+        if (i < source.length() && (source.charAt(i) == '?' || source.charAt(i) == '+'))
+        {
+          ++i;
+        }
+      }
+      else if (c == '|')
+      {
+        reset();
+        return;
+      }
+      else if (c == '.' || c == '^' || c == '$')
+      {
+        endRun(run, inPrefix);
+        inPrefix = false;
+        ++i;
+      }
+      else
+      {
+        run.append(c);
+        ++i;
+      }
+    } // while
+    endRun(run, inPrefix);
+
+    if (_infix.equals(_prefix))
+    {
+      _infix = "";
+    }
+  } // parse
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record a completed run of literal characters as the prefix, or as the
+   * infix if it is the longest so far, and clear it.
+   *
+   * @param run the run of literal characters.
+   * @param inPrefix true if the run started at the start of the expression.
+   */
+  protected void endRun(StringBuilder run, boolean inPrefix)
+  {
+    if (inPrefix)
+    {
+      _prefix = run.toString();
+    }
+    else if (run.length() > _infix.length())
+    {
+      _infix = run.toString();
+    }
+    run.setLength(0);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Discard the anchors of an expression that cannot be analysed.
+   */
+  protected void reset()
+  {
+    _prefix = "";
+    _infix = "";
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the length of the alphanumeric escape sequence starting with the
+   * backslash at the specified index, e.g. 4 for \\x41 or 5 for \\0101.
+   *
+   * @param source the regular expression.
+   * @param start the index of the backslash.
+   * @return the length of the escape sequence, or -1 if it cannot be analysed:
+   *         back references, \\Q..\\E quoting and malformed sequences.
+   */
+  protected static int escapeLength(String source, int start)
+  {
+    int end;
+    char escaped = source.charAt(start + 1);
+    switch (escaped)
+    {
+      case 'x':
+      case 'p':
+      case 'P':
+        if (start + 2 < source.length() && source.charAt(start + 2) == '{')
+        {
+          end = source.indexOf('}', start + 2) + 1;
+          if (end <= 0)
+          {
+            return -1;
+          }
+        }
+        else
+        {
+          end = start + ((escaped == 'x') ? 4 : 3);
+        }
+        break;
+
+      case 'u':
+        end = start + 6;
+        break;
+
+      case 'c':
+        end = start + 3;
+        break;
+
+      case '0':
+        // Up to three octal digits, the first of which must be 0-3 if there
+        // are three.
+        end = start + 2;
+        int maxDigits = 2;
+        if (end < source.length() && source.charAt(end) >= '0' && source.charAt(end) <= '3')
+        {
+          maxDigits = 3;
+        }
+        for (int digits = 0; digits < maxDigits && end < source.length() &&
+                             source.charAt(end) >= '0' && source.charAt(end) <= '7'; ++digits)
+        {
+          ++end;
+        }
+        if (end == start + 2)
+        {
+          return -1;
+        }
+        break;
+
+      case 'Q':
+      case 'k':
+        return -1;
+
+      default:
+        if (escaped >= '1' && escaped <= '9')
+        {
+          return -1;
+        }
+        end = start + 2;
+        break;
+    }
+    return (end <= source.length()) ? end - start : -1;
+  } // escapeLength
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if every string matched by the expression starts with a digit,
+   * i.e. it starts with a required \\d, or a group whose alternatives all
+   * start with a digit. A \\d or group that is optional must be followed by a
+   * digit too.
+   *
+   * Anything else conservatively returns false.
+   *
+   * @param source the regular expression, without a leading '^'.
+   * @return true if every matched string starts with a digit.
+   */
+  protected static boolean startsWithDigit(String source)
+  {
+    if (source.startsWith("\\d"))
+    {
+      return isOptional(source, 2) ? startsWithDigit(source.substring(skipQuantifier(source, 2)))
+                                   : true;
+    }
+    if (!source.startsWith("(") || (source.startsWith("(?") && !source.startsWith("(?:")))
+    {
+      return false;
+    }
+
+    int end = skipGroup(source, 0);
+    if (end < 0)
+    {
+      return false;
+    }
+    String content = source.substring(source.startsWith("(?:") ? 3 : 1, end - 1);
+    int start = 0;
+    for (int i = 0; i <= content.length(); ++i)
+    {
+      char c = (i < content.length()) ? content.charAt(i) : '|';
+      if (c == '\\')
+      {
+        ++i;
+      }
+      else if (c == '(' || c == '[')
+      {
+        int close = skipGroup(content, i);
+        if (close < 0)
+        {
+          return false;
+        }
+        i = close - 1;
+      }
+      else if (c == '|')
+      {
+        if (!startsWithDigit(content.substring(start, i)))
+        {
+          return false;
+        }
+        start = i + 1;
+      }
+    }
+
+    // An optional group must be followed by a digit too.
+    return isOptional(source, end) ? startsWithDigit(source.substring(skipQuantifier(source, end)))
+                                   : true;
+  } // startsWithDigit
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the quantifier at the specified index, if any, allows the
+   * preceding element to be absent, i.e. it is '?', '*' or a brace quantifier
+   * with a minimum of zero.
+   *
+   * @param source the regular expression.
+   * @param index the index after the quantified element.
+   * @return true if the preceding element is optional.
+   */
+  protected static boolean isOptional(String source, int index)
+  {
+    if (index >= source.length())
+    {
+      return false;
+    }
+    char c = source.charAt(index);
+    return c == '?' || c == '*' || source.startsWith("{0", index) || source.startsWith("{,", index);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index after the quantifier at the specified index, including
+   * any lazy or possessive modifier.
+   *
+   * @param source the regular expression.
+   * @param index the index of the quantifier.
+   * @return the index of the following element, or the length of the source
+   *         if the quantifier is malformed.
+   */
+  protected static int skipQuantifier(String source, int index)
+  {
+    int next = index + 1;
+    if (source.charAt(index) == '{')
+    {
+      next = source.indexOf('}', index) + 1;
+      if (next <= 0)
+      {
+        return source.length();
+      }
+    }
+    if (next < source.length() && (source.charAt(next) == '?' || source.charAt(next) == '+'))
+    {
+      ++next;
+    }
+    return next;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index of the character following the group or character class
+   * that starts at the specified index.
+   *
+   * @param source the regular expression.
+   * @param start the index of the opening '(' or '['.
+   * @return the index after the closing ')' or ']', or -1 if there is none.
+   */
+  protected static int skipGroup(String source, int start)
+  {
+    int depth = 0;
+    int classDepth = 0;
+    for (int i = start; i < source.length(); ++i)
+    {
+      char c = source.charAt(i);
+      if (c == '\\')
+      {
+        ++i;
+      }
+      else if (classDepth > 0)
+      {
+        // A ']' immediately after '[' or '[^' is a literal. Classes can nest,
+        // e.g. [a-z&&[^aeiou]].
+        if (c == '[')
+        {
+          ++classDepth;
+        }
+        else if (c == ']' && !(source.charAt(i - 1) == '[' ||
+                               (source.charAt(i - 1) == '^' && source.charAt(i - 2) == '[')))
+        {
+          if (--classDepth == 0 && depth == 0)
+          {
+            return i + 1;
+          }
+        }
+      }
+      else if (c == '[')
+      {
+        classDepth = 1;
+      }
+      else if (c == '(')
+      {
+        ++depth;
+      }
+      else if (c == ')')
+      {
+        if (--depth == 0)
+        {
+          return i + 1;
+        }
+      }
+    }
+    return -1;
+  } // skipGroup
+
+  // --------------------------------------------------------------------------
+  /**
+   * The literal prefix of all matched strings.
+   */
+  protected String  _prefix = "";
+
+  /**
+   * The longest literal after the prefix in all matched strings, or the empty
+   * string if there is none or it is the prefix itself.
+   */
+  protected String  _infix  = "";
+
+  /**
+   * True if the first character of all matched strings must be a digit.
+   */
+  protected boolean _digitFirst;
+} // class PatternAnchor
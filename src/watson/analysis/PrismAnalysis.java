@@ -10,8 +10,7 @@ import java.util.regex.Pattern;
 
 import net.minecraft.util.IChatComponent;
 import watson.Controller;
-import watson.SyncTaskQueue;
-import watson.analysis.task.AddBlockEditTask;
+import watson.analysis.task.AddBlockEditsTask;
 import watson.chat.IMatchedChatHandler;
 import watson.db.BlockEdit;
 import watson.db.BlockType;
@@ -49,6 +48,9 @@ import watson.db.TimeStamp;
  * "/prism l" and the result will probably be a weird spaghetti of vectors in
  * the Watson vector display.
  * 
+ * Results are parsed asynchronously, on the
+ * {@link watson.chat.ChatParseQueue} worker.
+ * 
  * TODO: write a universal logging API plugin that supports a custom protocol
  * for querying any Minecraft logging plugin so I don't have to scrape chat. :)
  */
@@ -74,6 +76,7 @@ public class PrismAnalysis extends Analysis
    */
   public PrismAnalysis()
   {
+    setAsynchronous(true);
     addMatchedChatHandler(PLACE_BREAK, new IMatchedChatHandler()
     {
       @Override
@@ -190,7 +193,7 @@ public class PrismAnalysis extends Analysis
       int x = Integer.parseInt(m.group(8));
       int y = Integer.parseInt(m.group(9));
       int z = Integer.parseInt(m.group(10));
-      Controller.instance.selectPosition(x, y, z);
+      selectPosition(x, y, z);
 
       if (_player != null && _type != null)
       {
@@ -200,7 +203,7 @@ public class PrismAnalysis extends Analysis
           // inspector header, but update it on every result from a lookup.
           boolean updateVariables = (!_inspectorResult || _awaitingFirstResult);
           BlockEdit edit = new BlockEdit(millis, _player, _created, x, y, z, _type);
-          SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, updateVariables));
+          AddBlockEditsTask.queue(edit, updateVariables);
           if (_awaitingFirstResult)
           {
             _awaitingFirstResult = false;
@@ -235,7 +238,7 @@ public class PrismAnalysis extends Analysis
     int x = Integer.parseInt(m.group(1));
     int y = Integer.parseInt(m.group(2));
     int z = Integer.parseInt(m.group(3));
-    Controller.instance.selectPosition(x, y, z);
+    selectPosition(x, y, z);
   } // inspectorHeader
 
   // --------------------------------------------------------------------------
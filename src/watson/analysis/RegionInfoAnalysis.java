@@ -8,6 +8,7 @@ import java.util.regex.Pattern;
 import net.minecraft.util.IChatComponent;
 import watson.Configuration;
 import watson.Controller;
+import watson.chat.CommandScheduler.Priority;
 import watson.chat.IMatchedChatHandler;
 
 // ----------------------------------------------------------------------------
@@ -47,26 +48,20 @@ public class RegionInfoAnalysis extends Analysis
     long now = System.currentTimeMillis();
     if (now - _lastCommandTime > (long) (Configuration.instance.getRegionInfoTimeoutSeconds() * 1000))
     {
-      int regionCount = 0;
-
       // Group 1 contains the comma-delimited list of region names.
       // We need to pull that apart with another regexp because nesting a
       // capturing group in a non-capturing group was not working for me.
       Matcher names = _regionNames.matcher(m.group(1));
       while (names.find())
       {
-        Controller.instance.serverChat("/region info " + names.group());
-        ++regionCount;
+        Controller.instance.serverChat("/region info " + names.group(), Priority.BACKGROUND);
       }
 
       // Controller.serverChat() queues up commands and issues them at a
-      // controlled rate. Avoid queueing up many "/region info"s
-      // when the user is spamming wood sword where there are multiple
-      // overlapping regions. Add the corresponding delay for each additional
-      // region queried *after the first*.
-      _lastCommandTime = now
-                         + (long) (1000 * Configuration.instance.getChatTimeoutSeconds())
-                         * Math.max(0, regionCount - 1);
+      // controlled rate, ignoring those that are already pending, so spamming
+      // the wood sword where there are multiple overlapping regions doesn't
+      // queue up many "/region info"s.
+      _lastCommandTime = now;
 
     } // if timeout has expired
   } // wgRegions
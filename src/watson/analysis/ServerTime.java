@@ -11,6 +11,7 @@ import java.util.regex.Matcher;
 import net.minecraft.util.IChatComponent;
 import watson.Controller;
 import watson.chat.Chat;
+import watson.chat.CommandScheduler.Priority;
 import watson.chat.IMatchedChatHandler;
 import watson.db.TimeStamp;
 import watson.debug.Log;
@@ -92,7 +93,7 @@ public class ServerTime extends Analysis
           date, date);
         Log.debug("Server time query for " + serverIP + ": " + query);
         _showServerTime = showServerTime;
-        Controller.instance.serverChat(query);
+        Controller.instance.serverChat(query, Priority.BACKGROUND);
       }
       // Server time is already known. Show it now if required.
       else if (showServerTime)
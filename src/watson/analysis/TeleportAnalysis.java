@@ -51,10 +51,10 @@ public class TeleportAnalysis extends Analysis
 
       // Multiple players could conceivably edit the block (rarely but it
       // happens). Pass in the most recently queried player, if known.
-      // findEdit() currently does an (inefficient) search from oldest to
-      // newest edit, meaning that the typical pattern of mining down to an
-      // ore, then pillaring up with cobble through the ore will find the ore
-      // block destruction (earlier) and not the cobble creation (later).
+      // findEdit() returns the oldest edit at the position, meaning that the
+      // typical pattern of mining down to an ore, then pillaring up with
+      // cobble through the ore will find the ore block destruction (earlier)
+      // and not the cobble creation (later).
       String player = (String) Controller.instance.getVariables().get("player");
       BlockEdit edit = Controller.instance.getBlockEditSet().findEdit(x, y, z, player);
       Controller.instance.selectBlockEdit(edit);
@@ -0,0 +1,145 @@
+package watson.analysis.task;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import watson.Controller;
+import watson.SyncTaskQueue;
+import watson.db.BlockEdit;
+import watson.db.BlockEditSet;
+
+// ----------------------------------------------------------------------------
+/**
+ * A synchronous task to add a batch of {@link BlockEdit}s to the current
+ * stored set.
+ *
+ * Chat analysis code calls {@link #queue(BlockEdit, boolean)} for each parsed
+ * result. Results are accumulated into the currently open batch, which is
+ * queued on the {@link SyncTaskQueue} when it is created and added to the
+ * {@link BlockEditSet} in a single call when it runs. The target set is the
+ * current one when the batch is created, so that results queued before a
+ * change of server or dimension are not added to the new set. A batch stops
+ * accepting results when it runs or when {@link #closeBatch()} is called, for
+ * example at the start of a new page of query results; subsequent results go
+ * into a new batch.
+ */
+public class AddBlockEditsTask implements Runnable
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit to the currently open batch, creating and queuing a new batch
+   * if there is none.
+   *
+   * @param edit the edit to add when the batch is run.
+   * @param updateVariables if true, the state variables signifying the
+   *          selected edit are updated to refer to this edit, if it passes the
+   *          filters, unless a later accepted edit in the same batch also sets
+   *          this flag.
+   */
+  public static synchronized void queue(BlockEdit edit, boolean updateVariables)
+  {
+    if (_current == null || !_current.add(edit, updateVariables))
+    {
+      _current = new AddBlockEditsTask(Controller.instance.getCurrentBlockEditSet());
+      _current.add(edit, updateVariables);
+      SyncTaskQueue.instance.addTask(_current);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Stop adding edits to the currently open batch.
+   *
+   * The batch is still added to the BlockEditSet when it runs.
+   */
+  public static synchronized void closeBatch()
+  {
+    if (_current != null)
+    {
+      _current.close();
+      _current = null;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param target the set that the edits will be added to; if null, they are
+   *          added to the current set when the batch runs.
+   */
+  protected AddBlockEditsTask(BlockEditSet target)
+  {
+    _target = target;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run()
+  {
+    close();
+    BlockEditSet target = (_target != null) ? _target : Controller.instance.getBlockEditSet();
+    target.addBlockEdits(_edits, _selectable);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit to this batch, unless it has been closed.
+   *
+   * @param edit the edit.
+   * @param updateVariables if true, the edit may become the selection.
+   * @return true if the edit was added; false if the batch is closed.
+   */
+  protected synchronized boolean add(BlockEdit edit, boolean updateVariables)
+  {
+    if (_closed)
+    {
+      return false;
+    }
+    if (updateVariables)
+    {
+      _selectable.set(_edits.size());
+    }
+    _edits.add(edit);
+    return true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Prevent any more edits from being added to this batch.
+   */
+  protected synchronized void close()
+  {
+    _closed = true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The batch that is currently accepting edits, or null if there is none.
+   */
+  protected static AddBlockEditsTask _current;
+
+  /**
+   * The set that the edits are added to.
+   */
+  protected BlockEditSet             _target;
+
+  /**
+   * Edits to store, in the order they were parsed.
+   */
+  protected ArrayList<BlockEdit>     _edits = new ArrayList<BlockEdit>();
+
+  /**
+   * The positions in _edits of the edits that may become the selection; the
+   * last of them that passes the filters is selected.
+   */
+  protected BitSet                   _selectable = new BitSet();
+
+  /**
+   * True once the batch no longer accepts edits.
+   */
+  protected boolean                  _closed;
+} // class AddBlockEditsTask
@@ -0,0 +1,96 @@
+package watson.chat;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * A queue of chat parsing tasks that are run, one at a time and in the order
+ * that they were added, on a dedicated worker thread.
+ *
+ * Parsing query results (regexp group extraction, time stamp conversion, block
+ * type lookup and reformatting) is moved off the client thread, so that a
+ * flood of hundreds of auto-paged results does not stall rendering. Tasks must
+ * hand anything that touches Minecraft or Watson's display state to the main
+ * thread using the {@link watson.SyncTaskQueue}.
+ */
+public class ChatParseQueue implements Runnable
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance.
+   */
+  public static final ChatParseQueue instance = new ChatParseQueue();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add a task to the queue, starting the worker thread if necessary.
+   *
+   * @param task the task.
+   */
+  public synchronized void addTask(Runnable task)
+  {
+    if (_thread == null)
+    {
+      _thread = new Thread(this, "Watson chat parser");
+      _thread.setDaemon(true);
+      _thread.start();
+    }
+    _taskQueue.add(task);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Run tasks as they are queued.
+   *
+   * An exception thrown by a task is logged and does not stop the worker.
+   *
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run()
+  {
+    for (;;)
+    {
+      Runnable task;
+      try
+      {
+        task = _taskQueue.take();
+      }
+      catch (InterruptedException ex)
+      {
+        return;
+      }
+
+      try
+      {
+        task.run();
+      }
+      catch (Exception ex)
+      {
+        Log.exception(Level.SEVERE, "error parsing chat", ex);
+      }
+    }
+  } // run
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce single instance.
+   */
+  private ChatParseQueue()
+  {
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Tasks in the order that they should run.
+   */
+  protected LinkedBlockingQueue<Runnable> _taskQueue = new LinkedBlockingQueue<Runnable>();
+
+  /**
+   * The worker thread, or null if not yet started.
+   */
+  protected Thread                        _thread;
+} // class ChatParseQueue
@@ -4,8 +4,10 @@ import java.util.ArrayList;
 
 import net.minecraft.util.IChatComponent;
 import watson.Configuration;
+import watson.SyncTaskQueue;
 import watson.analysis.LbToolBlockAnalysis;
 import watson.analysis.CoreProtectAnalysis;
+import watson.analysis.GrammarAnalysis;
 import watson.analysis.LbCoordsAnalysis;
 import watson.analysis.ModModeAnalysis;
 import watson.analysis.PrismAnalysis;
@@ -25,6 +27,13 @@ import watson.analysis.TeleportAnalysis;
  * that we would like to exclude from chat, so instead, IChatHandler
  * implementations process the chats and decide which should reach Minecraft's
  * normal handling.
+ *
+ * Handlers that parse chat on the {@link ChatParseQueue} worker defer the
+ * decision by calling {@link #deferEcho()}. Such chat is withheld and, once all
+ * of its queued handlers have run, echoed from the main thread if none of them
+ * vetoed it. Since the worker and the {@link SyncTaskQueue} both preserve
+ * order, the chat is displayed in the order that it arrived, along with
+ * anything the handlers echo in its place.
  */
 public class ChatProcessor
 {
@@ -48,18 +57,50 @@ public class ChatProcessor
   /**
    * Process the chat
    * 
+   * The unformatted text of the chat is extracted once and shared by all
+   * handlers.
+   * 
    * @param chat the chat message.
    * @return true if the chat should be echoed in the client chat GUI; false if
    *         it should be filtered out.
    */
-  public boolean onChat(IChatComponent chat)
+  public boolean onChat(final IChatComponent chat)
   {
     if (Configuration.instance.isEnabled())
     {
+      String unformatted = chat.getUnformattedText();
       boolean allow = true;
-      for (IChatHandler handler : _handlers)
+      _deferredEcho = null;
+      for (int i = 0; i < _handlers.size(); ++i)
+      {
+        allow &= _handlers.get(i).onChat(chat, unformatted);
+      }
+
+      if (_deferredEcho != null)
       {
-        allow &= handler.onChat(chat);
+        // Decide after every queued handler of this chat has run.
+        final DeferredEcho deferredEcho = _deferredEcho;
+        final boolean allowed = allow;
+        _deferredEcho = null;
+        ChatParseQueue.instance.addTask(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            if (allowed && deferredEcho.isEchoed())
+            {
+              SyncTaskQueue.instance.addTask(new Runnable()
+              {
+                @Override
+                public void run()
+                {
+                  Chat.localChat(chat);
+                }
+              });
+            }
+          }
+        });
+        return false;
       }
       return allow;
     }
@@ -69,13 +110,70 @@ public class ChatProcessor
     }
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Defer the decision whether to echo the chat currently being processed
+   * until it has been handled on the {@link ChatParseQueue} worker.
+   *
+   * This must only be called from an {@link IChatHandler#onChat} method, and
+   * the returned object must only be used by tasks that the handler queues
+   * on the worker before returning.
+   *
+   * @return the record of whether the chat is echoed, shared by all handlers
+   *         of the current chat.
+   */
+  public DeferredEcho deferEcho()
+  {
+    if (_deferredEcho == null)
+    {
+      _deferredEcho = new DeferredEcho();
+    }
+    return _deferredEcho;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Records whether chat whose echo has been deferred should be echoed; only
+   * accessed on the {@link ChatParseQueue} worker.
+   */
+  public static class DeferredEcho
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Prevent the chat from being echoed, e.g. because a handler has displayed
+     * a reformatted version of it instead.
+     */
+    public void suppress()
+    {
+      _echoed = false;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the chat should be echoed.
+     *
+     * @return true if the chat should be echoed.
+     */
+    public boolean isEchoed()
+    {
+      return _echoed;
+    }
+
+    /**
+     * True if the chat should be echoed.
+     */
+    protected boolean _echoed = true;
+  } // inner class DeferredEcho
+
   // --------------------------------------------------------------------------
   /**
    * Private constructor to enforce single instance.
    */
   private ChatProcessor()
   {
-    addChatHandler(new LbCoordsAnalysis());
+    addChatHandler(CommandScheduler.instance);
+    LbCoordsAnalysis lbCoordsAnalysis = new LbCoordsAnalysis();
+    addChatHandler(lbCoordsAnalysis);
     addChatHandler(new LbToolBlockAnalysis());
     addChatHandler(new TeleportAnalysis());
     addChatHandler(new RatioAnalysis());
@@ -86,11 +184,19 @@ public class ChatProcessor
 
     addChatHandler(new PrismAnalysis());
     addChatHandler(new CoreProtectAnalysis());
+    GrammarAnalysis.instance.setLbCoordsAnalysis(lbCoordsAnalysis);
+    addChatHandler(GrammarAnalysis.instance);
   }
 
   // --------------------------------------------------------------------------
   /**
    * Handlers notified of chat arriving at the client.
    */
-  protected ArrayList<IChatHandler> _handlers = new ArrayList<IChatHandler>();
+  protected ArrayList<IChatHandler> _handlers     = new ArrayList<IChatHandler>();
+
+  /**
+   * The deferred echo of the chat currently being processed, or null if no
+   * handler has deferred it.
+   */
+  protected DeferredEcho            _deferredEcho;
 } // class ChatProcessor
@@ -0,0 +1,334 @@
+package watson.chat;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+import net.minecraft.util.IChatComponent;
+import watson.Configuration;
+import watson.Controller;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * Schedules programmatically generated commands for transmission to the
+ * server, so that Watson's queries don't trip the server's spam filter.
+ *
+ * Commands are queued at one of three {@link Priority} levels and pending
+ * commands of a higher priority are always sent first. A command that is
+ * already pending is not queued again, but is promoted if scheduled at a
+ * higher priority.
+ *
+ * Sending is limited by a token bucket: one token accrues every
+ * chat_timeout seconds, up to a maximum of one, and each command costs one
+ * token, so commands are never sent closer together than chat_timeout. If
+ * the server complains that commands are arriving too fast shortly after one
+ * is sent, the interval between tokens is doubled; the interval then recovers
+ * gradually as commands are sent without complaint. Complaints are recognised
+ * by the spam_complaint setting, in chat other than that of players.
+ *
+ * Only {@link Priority#BACKGROUND} commands are retried after a complaint,
+ * since they are queries whose repetition is harmless. The server may have
+ * executed the command despite complaining, and re-sending a teleport or a
+ * request for the next page of results would repeat it.
+ */
+public class CommandScheduler implements IChatHandler
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Command priorities, from most to least urgent.
+   */
+  public enum Priority
+  {
+    /**
+     * Commands issued in direct response to the user, e.g. "/w pre", "/w
+     * ratio" or teleports.
+     */
+    INTERACTIVE,
+
+    /**
+     * Requests for subsequent pages of results.
+     */
+    AUTO_PAGE,
+
+    /**
+     * Queries issued on Watson's own initiative, e.g. server time checks and
+     * region info.
+     */
+    BACKGROUND
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance.
+   */
+  public static final CommandScheduler instance               = new CommandScheduler();
+
+  /**
+   * The default spam_complaint setting, which matches typical complaints from
+   * spam filter plugins.
+   */
+  public static final String           DEFAULT_SPAM_COMPLAINT = "(?i)too fast|slow down|too many (?:commands|messages)|do(?: not|n't) spam";
+
+  // --------------------------------------------------------------------------
+  /**
+   * Queue a command to be sent to the server at the specified priority.
+   *
+   * If the identical command is already pending, it is not queued again, but
+   * it is moved to the end of the specified priority's queue if that is more
+   * urgent than the one it was in.
+   *
+   * This can be called from any thread.
+   *
+   * @param command the command.
+   * @param priority the priority.
+   */
+  public synchronized void schedule(String command, Priority priority)
+  {
+    Priority pending = _pending.get(command);
+    if (pending != null)
+    {
+      if (pending.ordinal() <= priority.ordinal())
+      {
+        return;
+      }
+      _queues[pending.ordinal()].remove(command);
+    }
+    _pending.put(command, priority);
+    _queues[priority.ordinal()].add(command);
+  } // schedule
+
+  // --------------------------------------------------------------------------
+  /**
+   * Discard all pending commands of the specified priority or lower, e.g.
+   * because the investigation that requested them has been abandoned.
+   *
+   * @param priority the most urgent priority discarded.
+   */
+  public synchronized void cancel(Priority priority)
+  {
+    for (int i = priority.ordinal(); i < _queues.length; ++i)
+    {
+      for (String command : _queues[i])
+      {
+        _pending.remove(command);
+        if (command.equals(_retriedCommand))
+        {
+          _retriedCommand = null;
+        }
+      }
+      _queues[i].clear();
+    }
+  } // cancel
+
+  // --------------------------------------------------------------------------
+  /**
+   * Send the most urgent pending command, if the rate limit allows.
+   *
+   * This is called once per tick from the main thread, so at most one command
+   * is sent per tick.
+   */
+  public synchronized void sendCommands()
+  {
+    if (_pending.isEmpty())
+    {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    double minInterval = 1000 * Configuration.instance.getChatTimeoutSeconds();
+    if (_interval < minInterval)
+    {
+      _interval = minInterval;
+    }
+    if (_interval > 0)
+    {
+      _tokens = Math.min(BURST_TOKENS, _tokens + (now - _lastRefillTime) / _interval);
+    }
+    else
+    {
+      _tokens = BURST_TOKENS;
+    }
+    _lastRefillTime = now;
+    if (_tokens < 1)
+    {
+      return;
+    }
+
+    for (int i = 0; i < _queues.length; ++i)
+    {
+      String command = _queues[i].poll();
+      if (command != null)
+      {
+        _pending.remove(command);
+        _tokens -= 1;
+
+        // The previous command drew no complaint, so ease off the back off and
+        // allow it to be retried again in future if it was a retry.
+        _interval = Math.max(minInterval, _interval * RECOVERY_FACTOR);
+        if (_lastCommand != null && _lastCommand.equals(_retriedCommand))
+        {
+          _retriedCommand = null;
+        }
+        _lastCommand = command;
+        _lastPriority = Priority.values()[i];
+        _lastCommandTime = now;
+        _linesToCheck = COMPLAINT_LINES;
+        Controller.instance.immediateServerChat(command);
+        return;
+      }
+    }
+  } // sendCommands
+
+  // --------------------------------------------------------------------------
+  /**
+   * Watch for server complaints that commands are being sent too fast, but
+   * only in the first few lines shortly after sending one, so that other chat,
+   * including the bulk of query results, costs nothing. Chat from players is
+   * ignored, so that "&lt;Bob&gt; slow down" is not taken for a complaint.
+   *
+   * @see watson.chat.IChatHandler#onChat(net.minecraft.util.IChatComponent,
+   *      java.lang.String)
+   */
+  @Override
+  public boolean onChat(IChatComponent chat, String unformatted)
+  {
+    if (_linesToCheck > 0)
+    {
+      --_linesToCheck;
+      if (System.currentTimeMillis() - _lastCommandTime < COMPLAINT_WINDOW_MILLIS &&
+          !PLAYER_CHAT.matcher(unformatted).lookingAt() &&
+          Configuration.instance.getSpamComplaint().matcher(unformatted).find())
+      {
+        _linesToCheck = 0;
+        backOff();
+      }
+    }
+    return true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Respond to the server's complaint about the rate of commands by doubling
+   * the interval between tokens, emptying the bucket and retrying the most
+   * recent command, which was presumably dropped, if it is a background query
+   * that has not already been retried.
+   */
+  protected synchronized void backOff()
+  {
+    _interval = Math.min(MAX_INTERVAL_MILLIS, Math.max(_interval * 2, MIN_BACK_OFF_MILLIS));
+    _tokens = 0;
+    Log.debug("Server rate limited commands; now sending one per " + (long) _interval + " ms.");
+    if (_lastPriority == Priority.BACKGROUND && !_lastCommand.equals(_retriedCommand))
+    {
+      _retriedCommand = _lastCommand;
+      schedule(_lastCommand, _lastPriority);
+    }
+  } // backOff
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce single instance.
+   */
+  @SuppressWarnings("unchecked")
+  private CommandScheduler()
+  {
+    _queues = new ArrayDeque[Priority.values().length];
+    for (int i = 0; i < _queues.length; ++i)
+    {
+      _queues[i] = new ArrayDeque<String>();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The maximum number of tokens that can accumulate while idle.
+   */
+  protected static final double            BURST_TOKENS            = 1;
+
+  /**
+   * The factor by which the interval between tokens recovers towards
+   * chat_timeout with each command sent.
+   */
+  protected static final double            RECOVERY_FACTOR         = 0.9;
+
+  /**
+   * The smallest interval between tokens after a complaint, in milliseconds.
+   */
+  protected static final double            MIN_BACK_OFF_MILLIS     = 500;
+
+  /**
+   * The largest interval between tokens, in milliseconds.
+   */
+  protected static final double            MAX_INTERVAL_MILLIS     = 10000;
+
+  /**
+   * The time after sending a command during which chat is checked for
+   * complaints, in milliseconds.
+   */
+  protected static final long              COMPLAINT_WINDOW_MILLIS = 2000;
+
+  /**
+   * The number of chat lines after sending a command that are checked for
+   * complaints.
+   */
+  protected static final int               COMPLAINT_LINES         = 3;
+
+  /**
+   * Matches the start of chat from a player, e.g. "&lt;Bob&gt; " or
+   * "[Mod] &lt;Bob&gt; ", which is never a complaint from the server.
+   */
+  protected static final Pattern           PLAYER_CHAT             = Pattern.compile("(?:\\[[^\\]]*\\] ?)*<[^>]+> ");
+
+  /**
+   * Pending commands, one queue per priority, indexed by Priority.ordinal().
+   */
+  protected ArrayDeque<String>[]           _queues;
+
+  /**
+   * Map from each pending command to its priority.
+   */
+  protected HashMap<String, Priority>      _pending                = new HashMap<String, Priority>();
+
+  /**
+   * Tokens currently available.
+   */
+  protected double                         _tokens                 = BURST_TOKENS;
+
+  /**
+   * The current interval between tokens in milliseconds.
+   */
+  protected double                         _interval;
+
+  /**
+   * The time when tokens were last added.
+   */
+  protected long                           _lastRefillTime;
+
+  /**
+   * The most recently sent command, or null if none has been sent.
+   */
+  protected String                         _lastCommand;
+
+  /**
+   * The time when _lastCommand was sent.
+   */
+  protected long                           _lastCommandTime;
+
+  /**
+   * The priority of _lastCommand.
+   */
+  protected Priority                       _lastPriority;
+
+  /**
+   * The number of chat lines still to be checked for a complaint about
+   * _lastCommand.
+   */
+  protected int                            _linesToCheck;
+
+  /**
+   * The command most recently retried after a complaint; it is not retried
+   * again until it is sent without complaint or cancelled.
+   */
+  protected String                         _retriedCommand;
+} // class CommandScheduler
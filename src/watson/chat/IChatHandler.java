@@ -14,8 +14,10 @@ public interface IChatHandler
    * Called when a chat is received.
    * 
    * @param chat the chat.
+   * @param unformatted the unformatted text of the chat, extracted once by
+   *          {@link ChatProcessor} for all handlers.
    * @return true if the chat should be echoed in the client chat GUI; false if
    *         it should be filtered out.
    */
-  public boolean onChat(IChatComponent chat);
+  public boolean onChat(IChatComponent chat, String unformatted);
 }
\ No newline at end of file
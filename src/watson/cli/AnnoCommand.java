@@ -71,7 +71,7 @@ public class AnnoCommand extends WatsonCommandBase
           sender,
           String.format(Locale.US, "%d annotation(s) cleared.",
             annotations.size()));
-        annotations.clear();
+        edits.clearAnnotations();
         return;
       }
     }
@@ -108,7 +108,7 @@ public class AnnoCommand extends WatsonCommandBase
           int index = Integer.parseInt(args[1]) - 1;
           if (index >= 0 && index < annotations.size())
           {
-            annotations.remove(index);
+            edits.removeAnnotation(index);
             localOutput(sender,
               String.format(Locale.US, "Removed annotation #%d", (index + 1)));
           }
@@ -135,7 +135,7 @@ public class AnnoCommand extends WatsonCommandBase
           ArrayList<Annotation> annotations = edits.getAnnotations();
           String text = concatArgs(args, 1, args.length, " ");
           Annotation annotation = new Annotation(x, y, z, text);
-          annotations.add(annotation);
+          edits.addAnnotation(annotation);
           String description = String.format(Locale.US, "(%d) (%d,%d,%d) %s",
             annotations.size(), annotation.getX(), annotation.getY(),
             annotation.getZ(), annotation.getText());
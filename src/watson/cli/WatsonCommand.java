@@ -14,6 +14,7 @@ import net.minecraft.util.IChatComponent;
 import watson.Configuration;
 import watson.Controller;
 import watson.DisplaySettings;
+import watson.Playback;
 import watson.analysis.ServerTime;
 import watson.db.Filters;
 import watson.db.OreDB;
@@ -251,6 +252,66 @@ public class WatsonCommand extends WatsonCommandBase
       }
     }
 
+    // "/w heatmap" command.
+    if (args.length >= 1 && args[0].equals("heatmap"))
+    {
+      if (args.length == 1)
+      {
+        // Toggle display.
+        display.setHeatmapShown(!display.isHeatmapShown());
+        return;
+      }
+      else if (args.length == 2)
+      {
+        if (args[1].equals("on"))
+        {
+          display.setHeatmapShown(true);
+          return;
+        }
+        else if (args[1].equals("off"))
+        {
+          display.setHeatmapShown(false);
+          return;
+        }
+      }
+      else if (args.length == 3 && args[1].equals("type"))
+      {
+        if (args[2].equals("all"))
+        {
+          display.setHeatmapTypeId(-1);
+        }
+        else
+        {
+          try
+          {
+            int id = Integer.parseInt(args[2]);
+            if (id >= 0 && id < 256)
+            {
+              display.setHeatmapTypeId(id);
+            }
+            else
+            {
+              localError(sender, "The block ID should be in the range 0 to 255.");
+            }
+          }
+          catch (NumberFormatException ex)
+          {
+            localError(sender, "The heatmap type should be a block ID or \"all\".");
+          }
+        }
+        return;
+      }
+    } // "/w heatmap"
+
+    // "/w play" command.
+    if (args.length >= 1 && args[0].equals("play"))
+    {
+      if (handlePlayCommand(sender, args))
+      {
+        return;
+      }
+    }
+
     // "/w label" command.
     if (args.length >= 1 && args[0].equals("label"))
     {
@@ -430,6 +491,11 @@ public class WatsonCommand extends WatsonCommandBase
         Controller.instance.loadBlockEditFile(args[2]);
         return;
       }
+      else if (args[1].equals("cancel") && args.length == 2)
+      {
+        Controller.instance.cancelBlockEditFileLoad();
+        return;
+      }
       else if (args[1].equals("save"))
       {
         if (args.length == 2)
@@ -443,6 +509,19 @@ public class WatsonCommand extends WatsonCommandBase
           return;
         }
       }
+      else if (args[1].equals("export"))
+      {
+        if (args.length == 2)
+        {
+          Controller.instance.exportBlockEditFile(null);
+          return;
+        }
+        else if (args.length == 3)
+        {
+          Controller.instance.exportBlockEditFile(args[2]);
+          return;
+        }
+      }
     } // file
 
     // "/w config" command with parameters.
@@ -540,6 +619,88 @@ public class WatsonCommand extends WatsonCommandBase
     return false;
   } // handleVectorCommand
 
+  // --------------------------------------------------------------------------
+  /**
+   * Handle the /w play subcommands, which control playback of edits in time
+   * order.
+   *
+   * @return true if the command was processed successfully.
+   */
+  protected boolean handlePlayCommand(ICommandSender sender, String[] args)
+  {
+    Playback playback = Controller.instance.getPlayback();
+    if (args.length == 1)
+    {
+      playback.play(Controller.instance.getBlockEditSet(), Playback.DEFAULT_SPEED);
+      return true;
+    }
+    else if (args.length == 2)
+    {
+      if (args[1].equals("pause"))
+      {
+        playback.pause();
+        return true;
+      }
+      else if (args[1].equals("stop"))
+      {
+        playback.stop();
+        return true;
+      }
+      else
+      {
+        try
+        {
+          double speed = Double.parseDouble(args[1]);
+          if (speed > 0)
+          {
+            playback.play(Controller.instance.getBlockEditSet(), speed);
+            return true;
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Handled below.
+        }
+        localError(sender, "The playback speed should be a positive number.");
+        return true;
+      }
+    }
+    else if (args.length == 3)
+    {
+      if (args[1].equals("step"))
+      {
+        try
+        {
+          playback.step(Math.round(Double.parseDouble(args[2]) * 1000));
+        }
+        catch (NumberFormatException ex)
+        {
+          localError(sender, "The step should be a number of seconds.");
+        }
+        return true;
+      }
+      else if (args[1].equals("window"))
+      {
+        try
+        {
+          double minutes = Double.parseDouble(args[2]);
+          if (minutes >= 0)
+          {
+            playback.setWindowLength(Math.round(minutes * 60000));
+            return true;
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Handled below.
+        }
+        localError(sender, "The window length should be a non-negative number of minutes.");
+        return true;
+      }
+    }
+    return false;
+  } // handlePlayCommand
+
   // --------------------------------------------------------------------------
   /**
    * Handle the various /w config subcommands.
@@ -1048,6 +1209,114 @@ public class WatsonCommand extends WatsonCommandBase
       }
     } // /w config vector_length
 
+    // Enable or disable journaling of edits.
+    if (args[1].equals("journal"))
+    {
+      if (args.length == 2)
+      {
+        Configuration.instance.setJournalEnabled(!Configuration.instance.isJournalEnabled());
+        return true;
+      }
+      else if (args.length == 3)
+      {
+        if (args[2].equals("on"))
+        {
+          Configuration.instance.setJournalEnabled(true);
+          return true;
+        }
+        else if (args[2].equals("off"))
+        {
+          Configuration.instance.setJournalEnabled(false);
+          return true;
+        }
+      }
+    } // /w config journal
+
+    // Set the maximum distance at which edits are drawn.
+    if (args[1].equals("draw_distance"))
+    {
+      if (args.length == 3)
+      {
+        boolean validDistance = false;
+        try
+        {
+          int distance = Integer.parseInt(args[2]);
+          if (distance > 0)
+          {
+            validDistance = true;
+            Configuration.instance.setDrawDistance(distance);
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Handled by validDistance flag.
+        }
+
+        if (!validDistance)
+        {
+          localError(sender, "The draw distance should be at least 1.");
+        }
+        return true;
+      } // if
+      else if (args.length == 2)
+      {
+        localOutput(sender, "Currently, edits within " + Configuration.instance.getDrawDistance()
+                            + " blocks are drawn.");
+        return true;
+      }
+    } // /w config draw_distance
+
+    // Set the distance beyond which edits are drawn as aggregate boxes.
+    if (args[1].equals("lod_distance"))
+    {
+      if (args.length == 3)
+      {
+        boolean validDistance = false;
+        try
+        {
+          int distance = Integer.parseInt(args[2]);
+          if (distance >= 0)
+          {
+            validDistance = true;
+            Configuration.instance.setLodDistance(distance);
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Handled by validDistance flag.
+        }
+
+        if (!validDistance)
+        {
+          localError(sender, "The level of detail distance should be at least 0.");
+        }
+        return true;
+      } // if
+      else if (args.length == 2)
+      {
+        localOutput(sender, "Currently, edits beyond " + Configuration.instance.getLodDistance()
+                            + " blocks are drawn as aggregate boxes.");
+        return true;
+      }
+    } // /w config lod_distance
+
+    // Set the pattern of the server's complaints about commands sent too fast.
+    if (args[1].equals("spam_complaint"))
+    {
+      if (args.length >= 3)
+      {
+        String regex = concatArgs(args, 2, args.length, " ");
+        Configuration.instance.setSpamComplaint(regex);
+        return true;
+      }
+      else if (args.length == 2)
+      {
+        String regex = Configuration.instance.getSpamComplaint().pattern();
+        localOutput(sender, "Spam filter complaint pattern is currently set to \"" + regex + "\".");
+        return true;
+      }
+    } // /w config spam_complaint
+
     // Help with /w config
     if (args[1].equals("help"))
     {
@@ -1105,6 +1374,14 @@ public class WatsonCommand extends WatsonCommandBase
                   "  /"
                     + w
                     + " config vector_length [decimal]: set the default minimum length of a vector for it to be visible");
+      localOutput(sender, "  /" + w
+                          + " config journal [on/off] : enable or disable journaling of edits so that they survive a restart");
+      localOutput(sender, "  /" + w
+                          + " config draw_distance [int]: set the maximum distance at which edits, vectors and labels are drawn");
+      localOutput(sender, "  /" + w
+                          + " config lod_distance [int]: set the distance beyond which edits are drawn as aggregate boxes");
+      localOutput(sender, "  /" + w
+                          + " config spam_complaint [regex]: set the pattern of the server's complaints about commands sent too fast");
       return true;
     } // /w config help
 
@@ -1127,6 +1404,11 @@ public class WatsonCommand extends WatsonCommandBase
     localOutput(sender, "  /" + w + " vector (creations|destructions) [on|off]");
     localOutput(sender, "  /" + w + " vector length <decimal>");
     localOutput(sender, "  /" + w + " label [on|off]");
+    localOutput(sender, "  /" + w + " heatmap [on|off]");
+    localOutput(sender, "  /" + w + " heatmap type <id>|all");
+    localOutput(sender, "  /" + w + " play [<speed>|pause|stop]");
+    localOutput(sender, "  /" + w + " play step <seconds>");
+    localOutput(sender, "  /" + w + " play window <minutes>");
     localOutput(sender, "  /" + w + " clear");
     localOutput(sender, "  /" + w + " pre [<count>]");
     localOutput(sender, "  /" + w + " post [<count>]");
@@ -1142,7 +1424,9 @@ public class WatsonCommand extends WatsonCommandBase
     localOutput(sender, "  /" + w + " file delete *|<filename>|<playername>");
     localOutput(sender, "  /" + w + " file expire <YYYY-MM-DD>");
     localOutput(sender, "  /" + w + " file load <filename>|<playername>");
+    localOutput(sender, "  /" + w + " file cancel");
     localOutput(sender, "  /" + w + " file save [<filename>]");
+    localOutput(sender, "  /" + w + " file export [<filename>]");
     localOutput(sender, "  /" + w + " config <name> [<value>]");
     localOutput(sender, "  /hl help");
     localOutput(sender, "  /anno help");
@@ -11,6 +11,7 @@ import org.lwjgl.opengl.GL11;
 
 import watson.Configuration;
 import watson.PrivateFieldsWatson;
+import watson.model.BillboardBatch;
 
 // ----------------------------------------------------------------------------
 /**
@@ -94,6 +95,9 @@ public class Annotation
   /**
    * Draw a camera-facing text billboard in three dimensions.
    *
+   * The billboard is queued in {@link BillboardBatch} and drawn, along with
+   * all other billboards, at the end of the frame.
+   *
    * @param x the x world coordinate.
    * @param y the y world coordinate.
    * @param z the z world coordinate.
@@ -109,6 +113,30 @@ public class Annotation
    */
   public static void drawBillboard(double x, double y, double z, int bgARGB,
                                    int fgARGB, double scaleFactor, String text)
+  {
+    BillboardBatch.instance.add(x, y, z, bgARGB, fgARGB, scaleFactor, text);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw a camera-facing text billboard in three dimensions immediately,
+   * without batching.
+   *
+   * @param x the x world coordinate.
+   * @param y the y world coordinate.
+   * @param z the z world coordinate.
+   * @param bgARGB the background colour of the billboard, with alpha in the top
+   *          8 bits, then red, green, blue in less significant octets (blue in
+   *          the least significant 8 bits).
+   * @param fgARGB the foreground (text) colour of the billboard, with alpha in
+   *          the top 8 bits, then red, green, blue in less significant octets
+   *          (blue in the least significant 8 bits).
+   * @param scaleFactor a scale factor to adjust the size of the billboard. Try
+   *          0.02.
+   * @param text the text on the billboard.
+   */
+  public static void drawBillboardImmediate(double x, double y, double z, int bgARGB,
+                                            int fgARGB, double scaleFactor, String text)
   {
     RenderManager renderManager = Minecraft.getMinecraft().getRenderManager();
     FontRenderer fontRenderer = renderManager.getFontRenderer();
@@ -179,7 +207,7 @@ public class Annotation
     GlStateManager.enableTexture2D();
     GlStateManager.enableLighting();
     GlStateManager.popMatrix();
-  } // drawBillboard
+  } // drawBillboardImmediate
 
   // --------------------------------------------------------------------------
   /**
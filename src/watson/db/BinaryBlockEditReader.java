@@ -0,0 +1,157 @@
+package watson.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+// ----------------------------------------------------------------------------
+/**
+ * A {@link BlockEditReader} for the binary format described by
+ * {@link BinaryEditFile}.
+ *
+ * The file is read through a memory mapped buffer. The dictionaries in the
+ * header are read by the constructor.
+ */
+public class BinaryBlockEditReader implements BlockEditReader
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param file the file to read.
+   */
+  public BinaryBlockEditReader(File file)
+    throws IOException
+  {
+    _file = new RandomAccessFile(file, "r");
+    try
+    {
+      FileChannel channel = _file.getChannel();
+      _buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (_buffer.getInt() != BinaryEditFile.MAGIC)
+      {
+        throw new IOException(file + " is not a binary edits file");
+      }
+      int version = _buffer.getInt();
+      if (version != BinaryEditFile.VERSION)
+      {
+        throw new IOException("unsupported binary edits file version " + version);
+      }
+
+      _players = new String[_buffer.getInt()];
+      for (int i = 0; i < _players.length; ++i)
+      {
+        _players[i] = BinaryEditFile.readString(_buffer);
+      }
+
+      _types = new BlockType[_buffer.getInt()];
+      for (int i = 0; i < _types.length; ++i)
+      {
+        int id = _buffer.getShort() & 0xFFFF;
+        int data = _buffer.get();
+        _types[i] = BlockTypeRegistry.instance.getBlockTypeByIdData(id, data);
+      }
+
+      _editCount = _buffer.getInt();
+    }
+    catch (IOException ex)
+    {
+      _file.close();
+      throw ex;
+    }
+  } // constructor
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.db.BlockEditReader#getEditCount()
+   */
+  @Override
+  public int getEditCount()
+  {
+    return _editCount;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.db.BlockEditReader#read(java.util.List, java.util.List, int)
+   */
+  @Override
+  public boolean read(List<BlockEdit> edits, List<Annotation> annotations, int maxEdits)
+    throws IOException
+  {
+    int count = Math.min(maxEdits, _editCount - _editsRead);
+    for (int i = 0; i < count; ++i)
+    {
+      long time = _buffer.getLong();
+      int x = _buffer.getInt();
+      int y = _buffer.getInt();
+      int z = _buffer.getInt();
+      String player = _players[_buffer.getShort() & 0xFFFF];
+      BlockType type = _types[_buffer.getShort() & 0xFFFF];
+      boolean created = (_buffer.get() & BinaryEditFile.FLAG_CREATION) != 0;
+      edits.add(new BlockEdit(time, player, created, x, y, z, type));
+    }
+    _editsRead += count;
+
+    if (_editsRead < _editCount)
+    {
+      return true;
+    }
+
+    // The annotations follow the last edit record.
+    int annoCount = _buffer.getInt();
+    for (int i = 0; i < annoCount; ++i)
+    {
+      int x = _buffer.getInt();
+      int y = _buffer.getInt();
+      int z = _buffer.getInt();
+      annotations.add(new Annotation(x, y, z, BinaryEditFile.readString(_buffer)));
+    }
+    return false;
+  } // read
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.db.BlockEditReader#close()
+   */
+  @Override
+  public void close()
+    throws IOException
+  {
+    _file.close();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The open file.
+   */
+  protected RandomAccessFile _file;
+
+  /**
+   * The mapped contents of the file, positioned at the next record to read.
+   */
+  protected MappedByteBuffer _buffer;
+
+  /**
+   * The player name dictionary.
+   */
+  protected String[]         _players;
+
+  /**
+   * The block type dictionary.
+   */
+  protected BlockType[]      _types;
+
+  /**
+   * The number of edits in the file.
+   */
+  protected int              _editCount;
+
+  /**
+   * The number of edits read so far.
+   */
+  protected int              _editsRead;
+} // class BinaryBlockEditReader
@@ -0,0 +1,217 @@
+package watson.db;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// ----------------------------------------------------------------------------
+/**
+ * Reads and writes the binary {@link BlockEditSet} save file format.
+ *
+ * All values are big-endian. The file is laid out as follows:
+ *
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    number of players, followed by that many strings
+ * int    number of block types, followed by that many (short id, byte data)
+ * int    number of edits, followed by that many RECORD_SIZE byte records:
+ *          long time, int x, int y, int z, short player, short type, byte flags
+ * int    number of annotations, followed by that many (int x, y, z, string)
+ * </pre>
+ *
+ * Strings are written as an unsigned short byte count followed by that many
+ * bytes of UTF-8. The player and type fields of an edit record are 0-based
+ * indices into the player and block type dictionaries, respectively. Bit 0 of
+ * the flags is set for block creation and clear for destruction.
+ *
+ * Files are read by {@link BinaryBlockEditReader}. The text format, written
+ * by {@link BlockEditSet#save(File)}, remains available for export.
+ */
+public class BinaryEditFile
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified file begins with the binary format's magic
+   * number.
+   *
+   * @param file the file.
+   * @return true if the file is in the binary format.
+   */
+  public static boolean isBinary(File file)
+    throws IOException
+  {
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try
+    {
+      return in.readInt() == MAGIC;
+    }
+    catch (EOFException ex)
+    {
+      return false;
+    }
+    finally
+    {
+      in.close();
+    }
+  } // isBinary
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write the specified edits and annotations to a file.
+   *
+   * @param file the file to write.
+   * @param playerEdits the edits of each player.
+   * @param annotations the annotations.
+   * @return the number of edits written.
+   */
+  public static int save(File file, Collection<PlayerEditSet> playerEdits,
+                         List<Annotation> annotations)
+    throws IOException
+  {
+    // Build the block type dictionary, mapping BlockType index to position in
+    // the dictionary.
+    int[] typeOrdinals = new int[BlockTypeRegistry.MAX_INDEX + 1];
+    Arrays.fill(typeOrdinals, -1);
+    ArrayList<BlockType> types = new ArrayList<BlockType>();
+    int editCount = 0;
+    for (PlayerEditSet editsForPlayer : playerEdits)
+    {
+      BlockEditStore store = editsForPlayer.getBlockEditStore();
+      for (int row = 0; row < store.size(); ++row)
+      {
+        BlockType type = store.getBlockType(row);
+        if (typeOrdinals[type.getIndex()] < 0)
+        {
+          typeOrdinals[type.getIndex()] = types.size();
+          types.add(type);
+        }
+      }
+      editCount += store.size();
+    } // for
+
+    if (playerEdits.size() > 0xFFFF)
+    {
+      throw new IOException("too many players to save: " + playerEdits.size());
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(file)));
+    try
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+
+      out.writeInt(playerEdits.size());
+      for (PlayerEditSet editsForPlayer : playerEdits)
+      {
+        writeString(out, editsForPlayer.getPlayer());
+      }
+
+      out.writeInt(types.size());
+      for (BlockType type : types)
+      {
+        out.writeShort(type.getId());
+        out.writeByte(type.getData());
+      }
+
+      out.writeInt(editCount);
+      int player = 0;
+      for (PlayerEditSet editsForPlayer : playerEdits)
+      {
+        BlockEditStore store = editsForPlayer.getBlockEditStore();
+        for (int rank = 0; rank < store.size(); ++rank)
+        {
+          int row = store.getRow(rank);
+          out.writeLong(store.getTime(row));
+          out.writeInt(store.getX(row));
+          out.writeInt(store.getY(row));
+          out.writeInt(store.getZ(row));
+          out.writeShort(player);
+          out.writeShort(typeOrdinals[store.getBlockType(row).getIndex()]);
+          out.writeByte(store.isCreation(row) ? FLAG_CREATION : 0);
+        }
+        ++player;
+      } // for
+
+      out.writeInt(annotations.size());
+      for (Annotation annotation : annotations)
+      {
+        out.writeInt(annotation.getX());
+        out.writeInt(annotation.getY());
+        out.writeInt(annotation.getZ());
+        writeString(out, annotation.getText());
+      }
+      return editCount;
+    }
+    finally
+    {
+      out.close();
+    }
+  } // save
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write a string as an unsigned short byte count followed by UTF-8 bytes.
+   *
+   * @param out the stream.
+   * @param s the string.
+   */
+  public static void writeString(DataOutputStream out, String s)
+    throws IOException
+  {
+    byte[] bytes = s.getBytes("UTF-8");
+    if (bytes.length > 0xFFFF)
+    {
+      throw new IOException("string too long to save: " + s);
+    }
+    out.writeShort(bytes.length);
+    out.write(bytes);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read a string written by {@link #writeString(DataOutputStream, String)}.
+   *
+   * @param buffer the buffer.
+   * @return the string.
+   */
+  public static String readString(ByteBuffer buffer)
+    throws IOException
+  {
+    byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The first four bytes of a binary edits file: "WBEF".
+   */
+  public static final int    MAGIC         = 0x57424546;
+
+  /**
+   * The version of the format written by this class.
+   */
+  public static final int    VERSION       = 1;
+
+  /**
+   * The size in bytes of one edit record.
+   */
+  public static final int    RECORD_SIZE   = 25;
+
+  /**
+   * Bit set in the flags field of an edit record that was a block creation.
+   */
+  public static final int    FLAG_CREATION = 1;
+} // class BinaryEditFile
@@ -17,6 +17,13 @@ public class BlockEdit
    */
   public String        player;
 
+  /**
+   * The {@link PlayerRegistry} ordinal of the player who performed the edit,
+   * or -1 if the player has not been registered yet. Players are registered
+   * when their edits are stored.
+   */
+  public int           playerOrdinal;
+
   /**
    * True if the edit was creation of a block, false if destruction.
    */
@@ -51,26 +58,21 @@ public class BlockEdit
   // --------------------------------------------------------------------------
   /**
    * Constructor.
+   *
+   * The player's ordinal is looked up in the {@link PlayerRegistry}, but
+   * the player is not registered, so that parsing results that are then
+   * filtered out does not grow the registry.
    */
   public BlockEdit(long time, String player, boolean creation, int x, int y,
                    int z, BlockType type)
   {
     this.time = time;
     this.player = player;
+    this.playerOrdinal = PlayerRegistry.instance.findOrdinal(player);
     this.creation = creation;
     this.x = x;
     this.y = y;
     this.z = z;
     this.type = type;
   }
-
-  // --------------------------------------------------------------------------
-  /**
-   * Draw a wireframe outline of this block.
-   */
-  public void drawOutline()
-  {
-    type.getBlockModel().render(type, x, y, z);
-  }
-
 } // class BlockEdit
\ No newline at end of file
@@ -0,0 +1,360 @@
+package watson.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import watson.Controller;
+import watson.SyncTaskQueue;
+import watson.chat.Chat;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * Loads a {@link BlockEditSet} save file on a worker thread.
+ *
+ * The worker thread parses the file in batches of BATCH_SIZE edits. Each batch
+ * is handed to the main thread as a task on the {@link SyncTaskQueue}, where
+ * it is added to the BlockEditSet that was current when the load started. The
+ * BlockEditSet is only locked while a single batch is being added, so edits
+ * appear progressively and rendering carries on while the file is read.
+ *
+ * At most MAX_PENDING_BATCHES batches are queued at any one time, so that the
+ * worker does not get arbitrarily far ahead of the main thread.
+ *
+ * Loaded edits and annotations are not recorded in the journal of the
+ * BlockEditSet; the file itself is their record.
+ */
+public class BlockEditFileLoader implements Runnable
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param file the file to load.
+   * @param edits the BlockEditSet that the loaded edits are added to.
+   */
+  public BlockEditFileLoader(File file, BlockEditSet edits)
+  {
+    _file = file;
+    _edits = edits;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a {@link BlockEditReader} for the specified file, according to its
+   * format.
+   *
+   * @param file the file.
+   * @return a BlockEditReader for the file.
+   */
+  public static BlockEditReader createReader(File file)
+    throws IOException
+  {
+    if (BinaryEditFile.isBinary(file))
+    {
+      return new BinaryBlockEditReader(file);
+    }
+    else
+    {
+      return new TextBlockEditReader(file);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start loading the file on a new worker thread.
+   */
+  public void start()
+  {
+    Thread thread = new Thread(this, "Watson file loader");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Stop loading the file.
+   *
+   * Edits that have already been added to the BlockEditSet are kept. This
+   * method must be called from the main thread.
+   */
+  public void cancel()
+  {
+    _cancelled = true;
+    _finished = true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if loading has completed, failed or been cancelled.
+   *
+   * @return true if loading has completed, failed or been cancelled.
+   */
+  public boolean isFinished()
+  {
+    return _finished;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the file being loaded.
+   *
+   * @return the file being loaded.
+   */
+  public File getFile()
+  {
+    return _file;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits added to the BlockEditSet so far.
+   *
+   * @return the number of edits added to the BlockEditSet so far.
+   */
+  public int getLoadedEditCount()
+  {
+    return _loadedEdits;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse the file, queuing batches of results to be added in the main
+   * thread.
+   *
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run()
+  {
+    BlockEditReader reader = null;
+    try
+    {
+      reader = createReader(_file);
+      _totalEdits = reader.getEditCount();
+      boolean more;
+      do
+      {
+        ArrayList<BlockEdit> edits = new ArrayList<BlockEdit>(BATCH_SIZE);
+        ArrayList<Annotation> annotations = new ArrayList<Annotation>();
+        more = reader.read(edits, annotations, BATCH_SIZE);
+        if (!acquireBatchPermit())
+        {
+          return;
+        }
+        SyncTaskQueue.instance.addTask(new BatchTask(edits, annotations));
+      } while (more);
+
+      SyncTaskQueue.instance.addTask(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          if (!_cancelled)
+          {
+            _finished = true;
+            if (_lastEdit != null)
+            {
+              Controller.instance.selectBlockEdit(_lastEdit);
+            }
+            Chat.localOutput(String.format(Locale.US,
+              "Loaded %d edits and %d annotations from %s",
+              _loadedEdits, _loadedAnnotations, _file.getName()));
+          }
+        }
+      });
+    }
+    catch (final Exception ex)
+    {
+      SyncTaskQueue.instance.addTask(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          _finished = true;
+          Log.exception(Level.SEVERE, "error loading BlockEditSet from " + _file, ex);
+          Chat.localError("The file " + _file.getName() + " could not be loaded.");
+        }
+      });
+    }
+    finally
+    {
+      if (reader != null)
+      {
+        try
+        {
+          reader.close();
+        }
+        catch (IOException ex)
+        {
+          Log.exception(Level.WARNING, "error closing " + _file, ex);
+        }
+      }
+    }
+  } // run
+
+  // --------------------------------------------------------------------------
+  /**
+   * Wait until fewer than MAX_PENDING_BATCHES batches are queued.
+   *
+   * @return true if a batch can be queued; false if loading was cancelled.
+   */
+  protected boolean acquireBatchPermit()
+    throws InterruptedException
+  {
+    while (!_cancelled)
+    {
+      if (_batchPermits.tryAcquire(100, TimeUnit.MILLISECONDS))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * A task, run in the main thread, that adds one batch of edits and
+   * annotations to the BlockEditSet.
+   */
+  protected class BatchTask implements Runnable
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param edits the edits to add.
+     * @param annotations the annotations to add.
+     */
+    public BatchTask(ArrayList<BlockEdit> edits, ArrayList<Annotation> annotations)
+    {
+      _batchEdits = edits;
+      _batchAnnotations = annotations;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run()
+    {
+      _batchPermits.release();
+      if (_cancelled)
+      {
+        return;
+      }
+
+      // The file is the record of these edits, so they are not journaled.
+      _edits.applyWithoutJournal(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          _edits.addBlockEdits(_batchEdits, null);
+          for (Annotation annotation : _batchAnnotations)
+          {
+            _edits.addAnnotation(annotation);
+          }
+        }
+      });
+      if (!_batchEdits.isEmpty())
+      {
+        _lastEdit = _batchEdits.get(_batchEdits.size() - 1);
+      }
+      _loadedEdits += _batchEdits.size();
+      _loadedAnnotations += _batchAnnotations.size();
+
+      long now = System.currentTimeMillis();
+      if (now - _lastProgressTime >= PROGRESS_INTERVAL_MILLIS)
+      {
+        _lastProgressTime = now;
+        Chat.localOutput(String.format(Locale.US, "Loaded %d/%d edits from %s...",
+          _loadedEdits, Math.max(_loadedEdits, _totalEdits), _file.getName()));
+      }
+    } // run
+
+    /**
+     * The edits to add.
+     */
+    protected ArrayList<BlockEdit>  _batchEdits;
+
+    /**
+     * The annotations to add.
+     */
+    protected ArrayList<Annotation> _batchAnnotations;
+  } // inner class BatchTask
+
+  // --------------------------------------------------------------------------
+  /**
+   * The maximum number of edits parsed into one batch.
+   */
+  protected static final int      BATCH_SIZE               = 1000;
+
+  /**
+   * The maximum number of batches waiting to be added in the main thread.
+   */
+  protected static final int      MAX_PENDING_BATCHES      = 16;
+
+  /**
+   * The minimum interval between progress messages in chat.
+   */
+  protected static final long     PROGRESS_INTERVAL_MILLIS = 2000;
+
+  /**
+   * The file being loaded.
+   */
+  protected File                  _file;
+
+  /**
+   * The BlockEditSet that edits are added to, captured when the load starts so
+   * that changing server or dimension does not redirect the results.
+   */
+  protected BlockEditSet          _edits;
+
+  /**
+   * Limits the number of queued batches.
+   */
+  protected Semaphore             _batchPermits            = new Semaphore(MAX_PENDING_BATCHES);
+
+  /**
+   * The total number of edits in the file, as reported by the reader.
+   */
+  protected volatile int          _totalEdits;
+
+  /**
+   * Set in the main thread to stop loading.
+   */
+  protected volatile boolean      _cancelled;
+
+  /**
+   * True when loading has completed, failed or been cancelled.
+   */
+  protected volatile boolean      _finished;
+
+  /**
+   * The number of edits added so far; only accessed in the main thread.
+   */
+  protected int                   _loadedEdits;
+
+  /**
+   * The number of annotations added so far; only accessed in the main thread.
+   */
+  protected int                   _loadedAnnotations;
+
+  /**
+   * The most recently added edit, selected when loading completes.
+   */
+  protected BlockEdit             _lastEdit;
+
+  /**
+   * The time of the last progress message, initially the time the load
+   * started.
+   */
+  protected long                  _lastProgressTime        = System.currentTimeMillis();
+} // class BlockEditFileLoader
@@ -0,0 +1,45 @@
+package watson.db;
+
+import java.io.IOException;
+import java.util.List;
+
+// ----------------------------------------------------------------------------
+/**
+ * Interface implemented by classes that read {@link BlockEdit}s and
+ * {@link Annotation}s from a save file incrementally, so that large files can
+ * be read in batches.
+ *
+ * Readers do not modify a {@link BlockEditSet}; the caller decides when and on
+ * which thread to add the results.
+ */
+public interface BlockEditReader
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Return the total number of edits in the file, for progress reporting.
+   *
+   * @return the total number of edits in the file.
+   */
+  public int getEditCount();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read up to the specified number of edits from the file, along with any
+   * annotations encountered on the way.
+   *
+   * @param edits the list to which edits are appended.
+   * @param annotations the list to which annotations are appended.
+   * @param maxEdits the maximum number of edits to read.
+   * @return true if there may be more to read; false if the end of the file
+   *         was reached.
+   */
+  public boolean read(List<BlockEdit> edits, List<Annotation> annotations, int maxEdits)
+    throws IOException;
+
+  // --------------------------------------------------------------------------
+  /**
+   * Release the resources used by this reader.
+   */
+  public void close()
+    throws IOException;
+} // interface BlockEditReader
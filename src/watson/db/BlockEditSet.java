@@ -1,18 +1,16 @@
 package watson.db;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import net.minecraft.client.Minecraft;
 import watson.Configuration;
@@ -20,6 +18,8 @@ import watson.Controller;
 import watson.DisplaySettings;
 import watson.chat.Chat;
 import watson.model.ARGB;
+import watson.model.HeatmapOverlay;
+import watson.model.ViewCuller;
 
 // ----------------------------------------------------------------------------
 /**
@@ -37,82 +37,6 @@ public class BlockEditSet
     // Nothing.
   }
 
-  // --------------------------------------------------------------------------
-  /**
-   * Load additional entries from the specified file.
-   *
-   * @param file the file to load.
-   * @return the number of edits loaded.
-   */
-  public synchronized int load(File file)
-    throws Exception
-  {
-    BufferedReader reader = new BufferedReader(new FileReader(file));
-
-    try
-    {
-      Pattern editPattern = Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2})\\|(\\d{2}):(\\d{2}):(\\d{2})\\|(\\w+)\\|([cd])\\|(\\d+)\\|(\\d+)\\|(-?\\d+)\\|(\\d+)\\|(-?\\d+)");
-      Pattern annoPattern = Pattern.compile("#(-?\\d+)\\|(\\d+)\\|(-?\\d+)\\|(.*)");
-      Calendar time = Calendar.getInstance();
-      String line;
-      int edits = 0;
-      BlockEdit blockEdit = null;
-      while ((line = reader.readLine()) != null)
-      {
-        Matcher edit = editPattern.matcher(line);
-        if (edit.matches())
-        {
-          int year = Integer.parseInt(edit.group(1));
-          int month = Integer.parseInt(edit.group(2)) - 1;
-          int day = Integer.parseInt(edit.group(3));
-          int hour = Integer.parseInt(edit.group(4));
-          int minute = Integer.parseInt(edit.group(5));
-          int second = Integer.parseInt(edit.group(6));
-          time.set(year, month, day, hour, minute, second);
-
-          String player = edit.group(7);
-          boolean created = edit.group(8).equals("c");
-          int id = Integer.parseInt(edit.group(9));
-          int data = Integer.parseInt(edit.group(10));
-          int x = Integer.parseInt(edit.group(11));
-          int y = Integer.parseInt(edit.group(12));
-          int z = Integer.parseInt(edit.group(13));
-
-          BlockType type = BlockTypeRegistry.instance.getBlockTypeByIdData(id,
-                                                                           data);
-          blockEdit = new BlockEdit(time.getTimeInMillis(), player, created, x,
-                                    y, z, type);
-          addBlockEdit(blockEdit);
-          ++edits;
-        } // if
-        else
-        {
-          // Is the line an annotation?
-          Matcher anno = annoPattern.matcher(line);
-          if (anno.matches())
-          {
-            int x = Integer.parseInt(anno.group(1));
-            int y = Integer.parseInt(anno.group(2));
-            int z = Integer.parseInt(anno.group(3));
-            String text = anno.group(4);
-            _annotations.add(new Annotation(x, y, z, text));
-          }
-        }
-      } // while
-
-      // If there was at least one BlockEdit, select it.
-      if (blockEdit != null)
-      {
-        Controller.instance.selectBlockEdit(blockEdit);
-      }
-      return edits;
-    }
-    finally
-    {
-      reader.close();
-    }
-  } // load
-
   // --------------------------------------------------------------------------
   /**
    * Save all {@link BlockEdit}s to the specified file.
@@ -124,7 +48,8 @@ public class BlockEditSet
    * </pre>
    *
    * Where action is c (created) or d (destroyed) and id is the numeric block
-   * type.
+   * type. The file is encoded in UTF-8, as {@link TextBlockEditReader} expects,
+   * whatever the platform's default charset.
    *
    * @param file the file to save.
    * @return the number of edits saved.
@@ -133,7 +58,8 @@ public class BlockEditSet
     throws IOException
   {
     PrintWriter writer = new PrintWriter(new BufferedWriter(
-                                                            new FileWriter(file)));
+                                                            new OutputStreamWriter(new FileOutputStream(file),
+                                                                                   TextBlockEditReader.CHARSET)));
     try
     {
       // Save edits.
@@ -157,17 +83,79 @@ public class BlockEditSet
     }
   } // save
 
+  // --------------------------------------------------------------------------
+  /**
+   * Save all {@link BlockEdit}s and annotations to the specified file in the
+   * binary format described by {@link BinaryEditFile}.
+   *
+   * @param file the file to save.
+   * @return the number of edits saved.
+   */
+  public synchronized int saveBinary(File file)
+    throws IOException
+  {
+    return BinaryEditFile.save(file, _playerEdits.values(), _annotations);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Remove all entries from the list.
    */
   public synchronized void clear()
   {
+    for (PlayerEditSet editsForPlayer : _playerEdits.values())
+    {
+      editsForPlayer.deleteOutlines();
+    }
+    _heatmap.delete();
     _playerEdits.clear();
+    _playerEditsByOrdinal.clear();
     _annotations.clear();
     _oreDB.clear();
+    if (_journal != null)
+    {
+      _journal.clear();
+    }
+    _playersChanged = true;
+    _annotationsChanged = true;
+    _publishPending = true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the journal that records subsequent changes to this BlockEditSet.
+   *
+   * @param journal the journal, or null to stop journaling changes.
+   */
+  public synchronized void setJournal(EditJournal journal)
+  {
+    _journal = journal;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Make changes to this BlockEditSet that are not recorded in its journal,
+   * because they are being replayed from the journal or loaded from a file.
+   *
+   * The lock is held throughout, so changes made by other threads in the
+   * meantime are still journaled.
+   *
+   * @param changes calls the methods of this class that make the changes.
+   */
+  public synchronized void applyWithoutJournal(Runnable changes)
+  {
+    EditJournal journal = _journal;
+    _journal = null;
+    try
+    {
+      changes.run();
+    }
+    finally
+    {
+      _journal = journal;
+    }
+  } // applyWithoutJournal
+
   // --------------------------------------------------------------------------
   /**
    * Find an edit with the specified coordinates and, optionally, player.
@@ -182,7 +170,7 @@ public class BlockEditSet
   {
     if (player != null)
     {
-      PlayerEditSet editsForPlayer = _playerEdits.get(player.toLowerCase());
+      PlayerEditSet editsForPlayer = getPlayerEditSet(player);
       return (editsForPlayer != null) ? editsForPlayer.findEdit(x, y, z) : null;
     }
     else
@@ -225,32 +213,19 @@ public class BlockEditSet
    */
   public synchronized boolean addBlockEdit(BlockEdit edit, boolean updateVariables)
   {
-    if (Controller.instance.getFilters().isAcceptedPlayer(edit.player))
+    if (isAccepted(Controller.instance.getFilters(), edit))
     {
       if (updateVariables)
       {
         Controller.instance.selectBlockEdit(edit);
       }
 
-      // Add a new PlayerEditSet if there isn't one for this player.
-      String lowerName = edit.player.toLowerCase();
-      PlayerEditSet editsForPlayer = _playerEdits.get(lowerName);
-      if (editsForPlayer == null)
-      {
-        editsForPlayer = new PlayerEditSet(edit.player);
-        _playerEdits.put(lowerName, editsForPlayer);
-      }
-      editsForPlayer.addBlockEdit(edit);
-
-      // Only cluster edits into ore deposits on non-creative (survival,
-      // adventure) games. I assume this will not stuff up for admins etc whose
-      // gamemode is creative, but just in case, allow a configuration override.
-      Minecraft mc = Minecraft.getMinecraft();
-      if (!mc.theWorld.getWorldInfo().getGameType().isCreative()
-          || Configuration.instance.isGroupingOresInCreative())
+      storeBlockEdit(edit);
+      if (isGroupingOres())
       {
         _oreDB.addBlockEdit(edit);
       }
+      _publishPending = true;
       return true;
     }
     else
@@ -259,6 +234,192 @@ public class BlockEditSet
     }
   } // addBlockEdit
 
+  // --------------------------------------------------------------------------
+  /**
+   * Add all of the specified edits that pass the currently set filters.
+   *
+   * This is equivalent to calling {@link #addBlockEdit(BlockEdit, boolean)} for
+   * each edit in turn, but the filters, game mode and ore database are only
+   * consulted once per call, rather than once per edit.
+   *
+   * The selection is chosen after filtering: it is the last edit that both
+   * passed the filters and was flagged as selectable, as if each flagged edit
+   * had been added by {@link #addBlockEdit(BlockEdit, boolean)} in turn.
+   *
+   * @param edits the edits to add.
+   * @param selectable if not null, the positions in edits of those edits that
+   *          may become the selection.
+   * @return the number of edits that passed the filters.
+   */
+  public synchronized int addBlockEdits(Collection<BlockEdit> edits, BitSet selectable)
+  {
+    Filters filters = Controller.instance.getFilters();
+    ArrayList<BlockEdit> accepted = new ArrayList<BlockEdit>(edits.size());
+    BlockEdit selection = null;
+    int index = 0;
+    for (BlockEdit edit : edits)
+    {
+      if (isAccepted(filters, edit))
+      {
+        storeBlockEdit(edit);
+        accepted.add(edit);
+        if (selectable != null && selectable.get(index))
+        {
+          selection = edit;
+        }
+      }
+      ++index;
+    }
+
+    if (!accepted.isEmpty())
+    {
+      if (isGroupingOres())
+      {
+        _oreDB.addBlockEdits(accepted);
+      }
+      if (selection != null)
+      {
+        Controller.instance.selectBlockEdit(selection);
+      }
+      _publishPending = true;
+    }
+    return accepted.size();
+  } // addBlockEdits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified edit passes the filters.
+   *
+   * An edit parsed before its player was registered, e.g. by a filter, has its
+   * ordinal looked up again.
+   *
+   * @param filters the filters.
+   * @param edit the edit.
+   * @return true if the edit passes the filters.
+   */
+  protected static boolean isAccepted(Filters filters, BlockEdit edit)
+  {
+    if (edit.playerOrdinal < 0)
+    {
+      edit.playerOrdinal = PlayerRegistry.instance.findOrdinal(edit.player);
+    }
+    return filters.isAcceptedPlayer(edit.playerOrdinal);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Store an edit that has passed the filters in the corresponding
+   * PlayerEditSet, and record it in the journal if it was not a duplicate.
+   *
+   * Only here is the player of the edit registered and its name replaced by
+   * the shared instance from the {@link PlayerRegistry}.
+   *
+   * @param edit the edit.
+   */
+  protected void storeBlockEdit(BlockEdit edit)
+  {
+    if (edit.playerOrdinal < 0)
+    {
+      edit.playerOrdinal = PlayerRegistry.instance.getOrdinal(edit.player);
+    }
+    edit.player = PlayerRegistry.instance.intern(edit.player);
+
+    // Add a new PlayerEditSet if there isn't one for this player.
+    PlayerEditSet editsForPlayer = getPlayerEditSet(edit.playerOrdinal);
+    if (editsForPlayer == null)
+    {
+      editsForPlayer = new PlayerEditSet(edit.player);
+      _playerEdits.put(PlayerRegistry.instance.getLowerName(edit.playerOrdinal), editsForPlayer);
+      while (_playerEditsByOrdinal.size() <= edit.playerOrdinal)
+      {
+        _playerEditsByOrdinal.add(null);
+      }
+      _playerEditsByOrdinal.set(edit.playerOrdinal, editsForPlayer);
+      _playersChanged = true;
+    }
+    if (editsForPlayer.addBlockEdit(edit) && _journal != null)
+    {
+      _journal.addBlockEdit(edit);
+    }
+  } // storeBlockEdit
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edits of the player with the specified {@link PlayerRegistry}
+   * ordinal.
+   *
+   * @param ordinal the ordinal of the player.
+   * @return the edits of the player, or null if there are none.
+   */
+  protected PlayerEditSet getPlayerEditSet(int ordinal)
+  {
+    return (ordinal < _playerEditsByOrdinal.size()) ? _playerEditsByOrdinal.get(ordinal) : null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edits of the specified player.
+   *
+   * @param player the case-insensitive player name.
+   * @return the edits of the player, or null if there are none.
+   */
+  protected PlayerEditSet getPlayerEditSet(String player)
+  {
+    int ordinal = PlayerRegistry.instance.findOrdinal(player);
+    return (ordinal >= 0) ? getPlayerEditSet(ordinal) : null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time of the oldest stored edit.
+   *
+   * @return the time of the oldest edit in milliseconds since the epoch, or
+   *         Long.MAX_VALUE if there are no edits.
+   */
+  public synchronized long getEarliestEditTime()
+  {
+    long earliest = Long.MAX_VALUE;
+    for (PlayerEditSet editsForPlayer : _playerEdits.values())
+    {
+      earliest = Math.min(earliest, editsForPlayer.getEarliestEditTime());
+    }
+    return earliest;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time of the most recent stored edit.
+   *
+   * @return the time of the most recent edit in milliseconds since the epoch,
+   *         or Long.MIN_VALUE if there are no edits.
+   */
+  public synchronized long getLatestEditTime()
+  {
+    long latest = Long.MIN_VALUE;
+    for (PlayerEditSet editsForPlayer : _playerEdits.values())
+    {
+      latest = Math.max(latest, editsForPlayer.getLatestEditTime());
+    }
+    return latest;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if edits should be clustered into ore deposits.
+   *
+   * Only cluster edits into ore deposits on non-creative (survival, adventure)
+   * games. I assume this will not stuff up for admins etc whose gamemode is
+   * creative, but just in case, allow a configuration override.
+   *
+   * @return true if edits should be clustered into ore deposits.
+   */
+  protected boolean isGroupingOres()
+  {
+    Minecraft mc = Minecraft.getMinecraft();
+    return !mc.theWorld.getWorldInfo().getGameType().isCreative()
+           || Configuration.instance.isGroupingOresInCreative();
+  }
+
   // --------------------------------------------------------------------------
   /**
    * List the number and visibility of stored edits on a per player basis in the
@@ -292,8 +453,7 @@ public class BlockEditSet
    */
   public synchronized void setEditVisibility(String player, boolean visible)
   {
-    player = player.toLowerCase();
-    PlayerEditSet editsByPlayer = _playerEdits.get(player);
+    PlayerEditSet editsByPlayer = getPlayerEditSet(player);
     if (editsByPlayer != null)
     {
       editsByPlayer.setVisible(visible);
@@ -305,7 +465,7 @@ public class BlockEditSet
     else
     {
       Chat.localError(String.format(Locale.US,
-                                    "There are no stored edits for %s.", player));
+                                    "There are no stored edits for %s.", player.toLowerCase()));
     }
   } // setEditVisibility
 
@@ -315,12 +475,9 @@ public class BlockEditSet
    */
   public synchronized void removeEdits(String player)
   {
-    player = player.toLowerCase();
-    PlayerEditSet editsByPlayer = _playerEdits.get(player);
+    PlayerEditSet editsByPlayer = removePlayerEdits(player);
     if (editsByPlayer != null)
     {
-      _playerEdits.remove(player.toLowerCase());
-      getOreDB().removeDeposits(player);
       Chat.localOutput(String.format(Locale.US,
                                      "%d edits by %s were removed.", editsByPlayer.getBlockEditCount(),
                                      editsByPlayer.getPlayer()));
@@ -328,19 +485,116 @@ public class BlockEditSet
     else
     {
       Chat.localError(String.format(Locale.US,
-                                    "There are no stored edits for %s.", player));
+                                    "There are no stored edits for %s.", player.toLowerCase()));
     }
   } // removeEdits
 
+  // --------------------------------------------------------------------------
+  /**
+   * Remove the edits by the specified player, without reporting the result in
+   * chat.
+   *
+   * @param player the name of the player.
+   * @return the removed edits, or null if there were none.
+   */
+  public synchronized PlayerEditSet removePlayerEdits(String player)
+  {
+    int ordinal = PlayerRegistry.instance.findOrdinal(player);
+    PlayerEditSet editsByPlayer = (ordinal >= 0) ? getPlayerEditSet(ordinal) : null;
+    if (editsByPlayer != null)
+    {
+      String lowerName = PlayerRegistry.instance.getLowerName(ordinal);
+      _playerEdits.remove(lowerName);
+      _playerEditsByOrdinal.set(ordinal, null);
+      editsByPlayer.deleteOutlines();
+      getOreDB().removeDeposits(ordinal);
+      if (_journal != null)
+      {
+        _journal.removePlayer(lowerName);
+      }
+      _playersChanged = true;
+      _publishPending = true;
+    }
+    return editsByPlayer;
+  } // removePlayerEdits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Publish the changes made to the edits and annotations for drawing.
+   *
+   * The draw methods of this class, other than
+   * {@link #drawDepositLabels()}, do not hold its lock; instead they read
+   * arrays and snapshots that are replaced, but never modified, by this
+   * method. Methods that change what is drawn set _publishPending, and
+   * {@link #refreshRenderState()} calls this method before the next frame is
+   * drawn, so that edits arriving one at a time, or in many batches per tick,
+   * are published at most once per frame.
+   */
+  protected void publish()
+  {
+    _publishPending = false;
+    if (_playersChanged)
+    {
+      _renderPlayers = _playerEdits.values().toArray(new PlayerEditSet[_playerEdits.size()]);
+      _playersChanged = false;
+    }
+    for (PlayerEditSet editsForPlayer : _playerEdits.values())
+    {
+      editsForPlayer.publish();
+    }
+    if (_annotationsChanged)
+    {
+      _renderAnnotations = _annotations.toArray(new Annotation[_annotations.size()]);
+      _annotationsChanged = false;
+    }
+    ++_publishCount;
+  } // publish
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of times that changes have been published for drawing.
+   *
+   * State derived from the edits for drawing only needs to be recomputed when
+   * this number changes.
+   *
+   * @return the number of times that changes have been published.
+   */
+  public int getPublishCount()
+  {
+    return _publishCount;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the state published for drawing is out of date, because
+   * edits or annotations have changed since it was published.
+   *
+   * @return true if {@link #refreshRenderState()} should be called.
+   */
+  public boolean isRenderStateStale()
+  {
+    return _publishPending;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Publish the state used for drawing again, to reflect changes to the edits,
+   * annotations or settings.
+   */
+  public synchronized void refreshRenderState()
+  {
+    publish();
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Draw wireframe outlines of all blocks.
    */
-  public synchronized void drawOutlines()
+  public void drawOutlines()
   {
     if (Controller.instance.getDisplaySettings().isOutlineShown())
     {
-      for (PlayerEditSet editsForPlayer : _playerEdits.values())
+      for (PlayerEditSet editsForPlayer : _renderPlayers)
       {
         editsForPlayer.drawOutlines();
       }
@@ -351,13 +605,13 @@ public class BlockEditSet
   /**
    * Draw direction vectors indicating motion of the miner.
    */
-  public synchronized void drawVectors()
+  public void drawVectors()
   {
     DisplaySettings settings = Controller.instance.getDisplaySettings();
     if (settings.areVectorsShown())
     {
       int colourIndex = 0;
-      for (PlayerEditSet editsForPlayer : _playerEdits.values())
+      for (PlayerEditSet editsForPlayer : _renderPlayers)
       {
         editsForPlayer.drawVectors(_vectorColours[colourIndex]);
         colourIndex = (colourIndex + 1) % _vectorColours.length;
@@ -367,24 +621,129 @@ public class BlockEditSet
 
   // --------------------------------------------------------------------------
   /**
-   * Draw all of the annotations associated with this BlockEditSet.
+   * Draw the density overlay of the edits of all visible players, restricted
+   * to the block ID selected in the {@link DisplaySettings}.
    */
-  public synchronized void drawAnnotations()
+  public void drawHeatmap()
   {
     DisplaySettings settings = Controller.instance.getDisplaySettings();
-    if (settings.areAnnotationsShown() && !_annotations.isEmpty())
+    if (settings.isHeatmapShown())
     {
-      for (Annotation annotation : _annotations)
+      _heatmapSources.clear();
+      for (PlayerEditSet editsForPlayer : _renderPlayers)
       {
-        annotation.draw();
+        if (editsForPlayer.isVisible())
+        {
+          _heatmapSources.add(editsForPlayer.getHeatmapCounts());
+        }
+      }
+      _heatmap.draw(_heatmapSources, settings.getHeatmapTypeId());
+      _heatmapSources.clear();
+    }
+  } // drawHeatmap
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the edit counts of distant groups of edits that are drawn as
+   * aggregate boxes.
+   */
+  public void drawAggregateLabels()
+  {
+    for (PlayerEditSet editsForPlayer : _renderPlayers)
+    {
+      editsForPlayer.drawAggregateLabels();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the labels of the ore deposits that are within the draw distance and
+   * the view frustum.
+   *
+   * Unlike the other draw methods, this reads the {@link OreDB} directly,
+   * numbering only the visible deposits, so it holds the lock.
+   */
+  public synchronized void drawDepositLabels()
+  {
+    _oreDB.drawDepositLabels();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw all of the annotations associated with this BlockEditSet that are
+   * within the draw distance and the view frustum.
+   */
+  public void drawAnnotations()
+  {
+    DisplaySettings settings = Controller.instance.getDisplaySettings();
+    if (settings.areAnnotationsShown())
+    {
+      for (Annotation annotation : _renderAnnotations)
+      {
+        if (ViewCuller.instance.isBlockVisible(annotation.getX(), annotation.getY(), annotation.getZ()))
+        {
+          annotation.draw();
+        }
       }
     } // if drawing annotations
   } // drawAnnotations
 
+  // --------------------------------------------------------------------------
+  /**
+   * Add an annotation.
+   *
+   * @param annotation the annotation.
+   */
+  public synchronized void addAnnotation(Annotation annotation)
+  {
+    _annotations.add(annotation);
+    if (_journal != null)
+    {
+      _journal.addAnnotation(annotation);
+    }
+    _annotationsChanged = true;
+    _publishPending = true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove the annotation at the specified index.
+   *
+   * @param index the 0-based index into the list of annotations.
+   */
+  public synchronized void removeAnnotation(int index)
+  {
+    Annotation annotation = _annotations.remove(index);
+    if (_journal != null)
+    {
+      _journal.removeAnnotation(annotation);
+    }
+    _annotationsChanged = true;
+    _publishPending = true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove all annotations.
+   */
+  public synchronized void clearAnnotations()
+  {
+    _annotations.clear();
+    if (_journal != null)
+    {
+      _journal.clearAnnotations();
+    }
+    _annotationsChanged = true;
+    _publishPending = true;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return the list of {@link Annotation}s.
    *
+   * The list should be modified only through the methods of this class, so
+   * that changes are journaled.
+   *
    * @return the list of {@link Annotation}s.
    */
   public ArrayList<Annotation> getAnnotations()
@@ -409,22 +768,77 @@ public class BlockEditSet
    * player's edits, iterated in the order that the individual players were
    * first encountered in query results.
    */
-  protected LinkedHashMap<String, PlayerEditSet> _playerEdits   = new LinkedHashMap<String, PlayerEditSet>();
+  protected LinkedHashMap<String, PlayerEditSet> _playerEdits          = new LinkedHashMap<String, PlayerEditSet>();
+
+  /**
+   * The values of _playerEdits, indexed by the {@link PlayerRegistry} ordinal
+   * of the player, with null elements for players without edits.
+   */
+  protected ArrayList<PlayerEditSet>             _playerEditsByOrdinal = new ArrayList<PlayerEditSet>();
 
   /**
    * The list of Annotations associated with this set of edits.
    */
-  protected ArrayList<Annotation>                _annotations   = new ArrayList<Annotation>();
+  protected ArrayList<Annotation>                _annotations          = new ArrayList<Annotation>();
+
+  /**
+   * The players whose edits are drawn, in the order of _playerEdits, as last
+   * published by {@link #publish()}.
+   */
+  protected volatile PlayerEditSet[]             _renderPlayers        = new PlayerEditSet[0];
+
+  /**
+   * The annotations that are drawn, as last published by {@link #publish()}.
+   */
+  protected volatile Annotation[]                _renderAnnotations    = new Annotation[0];
+
+  /**
+   * The number of calls to {@link #publish()}.
+   */
+  protected volatile int                         _publishCount;
+
+  /**
+   * True if what is drawn has changed since it was last published.
+   */
+  protected volatile boolean                     _publishPending       = false;
+
+  /**
+   * True if players have been added or removed since _renderPlayers was
+   * published.
+   */
+  protected boolean                              _playersChanged       = false;
+
+  /**
+   * True if annotations have been added or removed since _renderAnnotations
+   * was published.
+   */
+  protected boolean                              _annotationsChanged   = false;
+
+  /**
+   * The density overlay of the edits; only used in the render thread.
+   */
+  protected HeatmapOverlay                       _heatmap              = new HeatmapOverlay();
+
+  /**
+   * The heatmap counts of the visible players, reused each frame by
+   * {@link #drawHeatmap()}.
+   */
+  protected ArrayList<HeatmapCounts>             _heatmapSources       = new ArrayList<HeatmapCounts>();
 
   /**
    * The spatial database indexing the edits.
    */
-  protected OreDB                                _oreDB         = new OreDB();
+  protected OreDB                                _oreDB                = new OreDB();
+
+  /**
+   * The journal recording changes to this set, or null if not journaled.
+   */
+  protected EditJournal                          _journal;
 
   /**
    * The cycle of colours used to draw vectors for different players.
    */
-  protected static final ARGB[]                  _vectorColours = {
+  protected static final ARGB[]                  _vectorColours        = {
 
                                                                 new ARGB(204, 255, 255, 140), // Pale
                                                                                               // yellow.
@@ -0,0 +1,617 @@
+package watson.db;
+
+import java.util.Arrays;
+
+// ----------------------------------------------------------------------------
+/**
+ * Columnar storage of the edits of one player.
+ *
+ * Rather than retaining one {@link BlockEdit} object (and one TreeSet entry)
+ * per edit, the attributes of each edit are appended to parallel primitive
+ * arrays: a long[] of time stamps, int[]s of coordinates and a short[] of
+ * {@link BlockType} indices (see {@link BlockType#getIndex()}) with the
+ * creation flag in the top bit. Each edit is identified by its row number,
+ * which is assigned in order of insertion and never changes.
+ *
+ * A separate array of row numbers holds the edits in the order defined by
+ * {@link BlockEditComparator}, so that the time-ordered traversals used to
+ * draw vectors and step through edits do not need to allocate anything. Rows
+ * are appended to that order too, and only sorted when the order is next
+ * needed, so adding a page of results that arrive newest first costs one sort
+ * and merge rather than an insertion into the middle of the array per edit.
+ *
+ * Edits that compare equal to an edit that is already stored are discarded,
+ * as they were by the TreeSet that this class replaces. They are found through
+ * a chain of the rows at each block position, which also finds the oldest edit
+ * at a position.
+ *
+ * The columns and the order are only ever appended to, beyond the size of
+ * any earlier {@link #view()}, or replaced, so a view remains valid without
+ * copying the edits while more are added. This is how the render thread reads
+ * the edits without locking them.
+ *
+ * The player name is not stored, since every {@link PlayerEditSet} owns its
+ * own BlockEditStore.
+ */
+public class BlockEditStore
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Default constructor.
+   */
+  public BlockEditStore()
+  {
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor for a read-only view of another store.
+   *
+   * @param store the store.
+   * @see #view()
+   */
+  protected BlockEditStore(BlockEditStore store)
+  {
+    _size = store._size;
+    _time = store._time;
+    _x = store._x;
+    _y = store._y;
+    _z = store._z;
+    _type = store._type;
+    _order = store._order;
+    _sortedCount = store._sortedCount;
+    _orderVersion = store._orderVersion;
+    _nextAtPosition = null;
+    _rowsByPosition = null;
+    _scratch = null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a read-only view of the edits stored so far, in time order.
+   *
+   * The view shares the columns of this store and is not affected by edits
+   * added subsequently, so it can be read by another thread once safely
+   * published, without locking. Only the accessors for the rows, ranks and
+   * columns can be called on the view, not add() or findOldest().
+   *
+   * @return a read-only view of the edits stored so far.
+   */
+  public BlockEditStore view()
+  {
+    sort();
+    return new BlockEditStore(this);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit to the store, unless it compares equal to an existing edit.
+   *
+   * @param edit the edit to add.
+   * @return the row number of the new edit, or -1 if it was a duplicate.
+   */
+  public int add(BlockEdit edit)
+  {
+    long key = IntCoord.pack(edit.x, edit.y, edit.z);
+    int latest = _rowsByPosition.get(key);
+    for (int row = latest; row >= 0; row = _nextAtPosition[row])
+    {
+      if (_time[row] == edit.time && isCreation(row) == edit.creation)
+      {
+        return -1;
+      }
+    }
+
+    if (_size == _time.length)
+    {
+      int capacity = Math.max(INITIAL_CAPACITY, _size + (_size >> 1));
+      _time = Arrays.copyOf(_time, capacity);
+      _x = Arrays.copyOf(_x, capacity);
+      _y = Arrays.copyOf(_y, capacity);
+      _z = Arrays.copyOf(_z, capacity);
+      _type = Arrays.copyOf(_type, capacity);
+      _nextAtPosition = Arrays.copyOf(_nextAtPosition, capacity);
+      _order = Arrays.copyOf(_order, capacity);
+    }
+
+    int row = _size++;
+    _time[row] = edit.time;
+    _x[row] = edit.x;
+    _y[row] = edit.y;
+    _z[row] = edit.z;
+    _type[row] = (short) (edit.type.getIndex() | (edit.creation ? CREATION_FLAG : 0));
+    _nextAtPosition[row] = latest;
+    _rowsByPosition.put(key, row);
+
+    // Extend the sorted order if the edit is the latest so far.
+    _order[row] = row;
+    if (_sortedCount == row && (row == 0 || isBefore(_order[row - 1], row)))
+    {
+      ++_sortedCount;
+    }
+    return row;
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits stored.
+   *
+   * @return the number of edits stored.
+   */
+  public int size()
+  {
+    return _size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if every edit added so far was added in time order, so that
+   * the ranks of all edits are known without sorting.
+   *
+   * @return true if the time order does not need to be sorted.
+   */
+  public boolean isSorted()
+  {
+    return _sortedCount == _size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a number that changes whenever sorting changes the rank of an edit
+   * that was previously sorted, i.e. when the time order is not simply
+   * extended.
+   *
+   * @return the version of the time order.
+   */
+  public int getOrderVersion()
+  {
+    return _orderVersion;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the row number of the edit at the specified position in time order.
+   *
+   * @param rank the position of the edit in time order, in the range [0,
+   *          size()-1].
+   * @return the row number of the edit.
+   */
+  public int getRow(int rank)
+  {
+    sort();
+    return _order[rank];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the position in time order of the last stored edit that orders
+   * strictly before the specified edit.
+   *
+   * @param edit the edit, which need not be stored.
+   * @return the rank of the preceding edit, or -1 if there is none.
+   */
+  public int lowerRank(BlockEdit edit)
+  {
+    int rank = search(edit.time, edit.creation, edit.x, edit.y, edit.z);
+    return (rank >= 0) ? rank - 1 : -(rank + 1) - 1;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the position in time order of the first stored edit that orders
+   * strictly after the specified edit.
+   *
+   * @param edit the edit, which need not be stored.
+   * @return the rank of the following edit, or -1 if there is none.
+   */
+  public int higherRank(BlockEdit edit)
+  {
+    int rank = search(edit.time, edit.creation, edit.x, edit.y, edit.z);
+    rank = (rank >= 0) ? rank + 1 : -(rank + 1);
+    return (rank < _size) ? rank : -1;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the position in time order of the first stored edit whose time
+   * stamp is not earlier than the specified time.
+   *
+   * @param time the time.
+   * @return the rank of the first edit at or after the time, or size() if
+   *         there is none.
+   */
+  public int findRank(long time)
+  {
+    sort();
+    int low = 0;
+    int high = _size;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (_time[_order[mid]] < time)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  } // findRank
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the row number of the oldest edit at the specified coordinates.
+   *
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @return the row number of the oldest edit at the coordinates, or -1 if
+   *         there is none.
+   */
+  public int findOldest(int x, int y, int z)
+  {
+    int oldest = _rowsByPosition.get(IntCoord.pack(x, y, z));
+    if (oldest >= 0)
+    {
+      for (int row = _nextAtPosition[oldest]; row >= 0; row = _nextAtPosition[row])
+      {
+        if (isBefore(row, oldest))
+        {
+          oldest = row;
+        }
+      }
+    }
+    return oldest;
+  } // findOldest
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time stamp of the edit in the specified row.
+   *
+   * @param row the row number.
+   * @return the time stamp of the edit in the specified row.
+   */
+  public long getTime(int row)
+  {
+    return _time[row];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the edit in the specified row was a creation.
+   *
+   * @param row the row number.
+   * @return true if the edit in the specified row was a creation.
+   */
+  public boolean isCreation(int row)
+  {
+    return (_type[row] & CREATION_FLAG) != 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the x coordinate of the edit in the specified row.
+   *
+   * @param row the row number.
+   * @return the x coordinate of the edit in the specified row.
+   */
+  public int getX(int row)
+  {
+    return _x[row];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the y coordinate of the edit in the specified row.
+   *
+   * @param row the row number.
+   * @return the y coordinate of the edit in the specified row.
+   */
+  public int getY(int row)
+  {
+    return _y[row];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the z coordinate of the edit in the specified row.
+   *
+   * @param row the row number.
+   * @return the z coordinate of the edit in the specified row.
+   */
+  public int getZ(int row)
+  {
+    return _z[row];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the type of the block edited in the specified row.
+   *
+   * @param row the row number.
+   * @return the type of the block edited in the specified row.
+   */
+  public BlockType getBlockType(int row)
+  {
+    return BlockTypeRegistry.instance.getBlockTypeByIndex(_type[row] & INDEX_MASK);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the edit in the specified row orders before the edit in the
+   * other row according to {@link BlockEditComparator}.
+   *
+   * @param row the row number of an edit.
+   * @param other the row number of another edit.
+   * @return true if the edit in the specified row orders before the other.
+   */
+  public boolean isBefore(int row, int other)
+  {
+    return compare(row, _time[other], isCreation(other),
+                   _x[other], _y[other], _z[other]) < 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Bring the time order up to date with the rows added out of order since it
+   * was last sorted.
+   *
+   * The unsorted rows at the end of the order are sorted among themselves. If
+   * they all follow the sorted rows, that is all; otherwise, both runs are
+   * merged into a new array, so that views of the previous order remain
+   * intact, and the order version is incremented.
+   */
+  protected void sort()
+  {
+    if (_sortedCount == _size)
+    {
+      return;
+    }
+
+    if (_scratch.length < _size - _sortedCount)
+    {
+      _scratch = new int[_size];
+    }
+    mergeSort(_order, _sortedCount, _size);
+
+    if (_sortedCount != 0 && !isBefore(_order[_sortedCount - 1], _order[_sortedCount]))
+    {
+      int[] merged = new int[_order.length];
+      int left = 0;
+      int right = _sortedCount;
+      for (int i = 0; i < _size; ++i)
+      {
+        if (right == _size || (left < _sortedCount && isBefore(_order[left], _order[right])))
+        {
+          merged[i] = _order[left++];
+        }
+        else
+        {
+          merged[i] = _order[right++];
+        }
+      }
+      _order = merged;
+      ++_orderVersion;
+    }
+    _sortedCount = _size;
+  } // sort
+
+  // --------------------------------------------------------------------------
+  /**
+   * Sort a range of the order array by {@link #isBefore(int, int)}, using
+   * _scratch as temporary storage.
+   *
+   * A range in descending order, such as a page of results from newest to
+   * oldest, is simply reversed.
+   *
+   * @param order the array of row numbers.
+   * @param from the index of the first row number in the range.
+   * @param to the index after the last row number in the range.
+   */
+  protected void mergeSort(int[] order, int from, int to)
+  {
+    boolean descending = true;
+    for (int i = from + 1; descending && i < to; ++i)
+    {
+      descending = isBefore(order[i], order[i - 1]);
+    }
+    if (descending)
+    {
+      for (int i = from, j = to - 1; i < j; ++i, --j)
+      {
+        int row = order[i];
+        order[i] = order[j];
+        order[j] = row;
+      }
+      return;
+    }
+
+    // Bottom up: merge runs of width 1, 2, 4, ... between order and _scratch.
+    int length = to - from;
+    int[] src = order;
+    int srcFrom = from;
+    int[] dst = _scratch;
+    int dstFrom = 0;
+    for (int width = 1; width < length; width <<= 1)
+    {
+      for (int start = 0; start < length; start += 2 * width)
+      {
+        int mid = Math.min(start + width, length);
+        int end = Math.min(start + 2 * width, length);
+        int left = start;
+        int right = mid;
+        for (int i = start; i < end; ++i)
+        {
+          if (right == end || (left < mid && !isBefore(src[srcFrom + right], src[srcFrom + left])))
+          {
+            dst[dstFrom + i] = src[srcFrom + left++];
+          }
+          else
+          {
+            dst[dstFrom + i] = src[srcFrom + right++];
+          }
+        }
+      }
+      int[] swap = src;
+      src = dst;
+      dst = swap;
+      int swapFrom = srcFrom;
+      srcFrom = dstFrom;
+      dstFrom = swapFrom;
+    } // for
+    if (src != order)
+    {
+      System.arraycopy(src, srcFrom, order, from, length);
+    }
+  } // mergeSort
+
+  // --------------------------------------------------------------------------
+  /**
+   * Binary search the time-ordered rows for an edit with the specified
+   * attributes.
+   *
+   * @return the rank of the matching edit if found, otherwise (-(insertion
+   *         point) - 1), as for {@link Arrays#binarySearch(int[], int)}.
+   */
+  protected int search(long time, boolean creation, int x, int y, int z)
+  {
+    sort();
+    int low = 0;
+    int high = _size - 1;
+    while (low <= high)
+    {
+      int mid = (low + high) >>> 1;
+      int cmp = compare(_order[mid], time, creation, x, y, z);
+      if (cmp < 0)
+      {
+        low = mid + 1;
+      }
+      else if (cmp > 0)
+      {
+        high = mid - 1;
+      }
+      else
+      {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  } // search
+
+  // --------------------------------------------------------------------------
+  /**
+   * Compare the edit in the specified row with an edit with the specified
+   * attributes, consistent with {@link BlockEditComparator}.
+   *
+   * @return +ve if the row is greater; -ve if less; 0 if equal.
+   */
+  protected int compare(int row, long time, boolean creation, int x, int y, int z)
+  {
+    if (_time[row] != time)
+    {
+      return (_time[row] < time) ? -1 : +1;
+    }
+    boolean rowCreation = isCreation(row);
+    if (rowCreation != creation)
+    {
+      // false < true
+      return rowCreation ? +1 : -1;
+    }
+    int dx = _x[row] - x;
+    if (dx != 0)
+    {
+      return dx;
+    }
+    int dy = _y[row] - y;
+    if (dy != 0)
+    {
+      return dy;
+    }
+    return _z[row] - z;
+  } // compare
+
+  // --------------------------------------------------------------------------
+  /**
+   * Initial capacity of the columns, allocated on the first add().
+   */
+  protected static final int   INITIAL_CAPACITY = 64;
+
+  /**
+   * The bit of a _type element that is set if the edit was a creation. Block
+   * type indices do not exceed {@link BlockTypeRegistry#MAX_INDEX}.
+   */
+  protected static final short CREATION_FLAG    = (short) 0x8000;
+
+  /**
+   * Masks the block type index in a _type element.
+   */
+  protected static final int   INDEX_MASK       = 0x7FFF;
+
+  /**
+   * The number of edits stored.
+   */
+  protected int                _size;
+
+  /**
+   * Time stamps of edits, indexed by row.
+   */
+  protected long[]             _time            = new long[0];
+
+  /**
+   * X coordinates of edits, indexed by row.
+   */
+  protected int[]              _x               = new int[0];
+
+  /**
+   * Y coordinates of edits, indexed by row.
+   */
+  protected int[]              _y               = new int[0];
+
+  /**
+   * Z coordinates of edits, indexed by row.
+   */
+  protected int[]              _z               = new int[0];
+
+  /**
+   * {@link BlockType} indices of edits, indexed by row, with
+   * {@link #CREATION_FLAG} set for creations.
+   */
+  protected short[]            _type            = new short[0];
+
+  /**
+   * The row number of the previously added edit at the same block position as
+   * each row, or -1 if there is none.
+   */
+  protected int[]              _nextAtPosition  = new int[0];
+
+  /**
+   * Map from block coordinates, packed by {@link IntCoord#pack(int, int, int)},
+   * to the row number of the most recently added edit at those coordinates,
+   * which heads the chain through _nextAtPosition.
+   */
+  protected LongIntMap         _rowsByPosition  = new LongIntMap(0);
+
+  /**
+   * Row numbers in the order defined by {@link BlockEditComparator}; only the
+   * first _sortedCount elements are sorted and only the first _size elements
+   * are meaningful.
+   */
+  protected int[]              _order           = new int[0];
+
+  /**
+   * The number of leading elements of _order that are in sorted order.
+   */
+  protected int                _sortedCount;
+
+  /**
+   * Incremented whenever sorting changes the rank of a previously sorted row.
+   */
+  protected int                _orderVersion;
+
+  /**
+   * Temporary storage used by {@link #mergeSort(int[], int, int)}.
+   */
+  protected int[]              _scratch         = new int[0];
+} // class BlockEditStore
@@ -572,7 +572,7 @@ public final class BlockTypeRegistry
    * elements that are still null after reading in "blocks.yml" are set to
    * reference this element.
    */
-  private static final int               MAX_INDEX          = 4096;
+  public static final int                MAX_INDEX          = 4096;
 
   /**
    * Default alpha colour component if not specified in "blocks.yml".
@@ -0,0 +1,762 @@
+package watson.db;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import watson.Configuration;
+import watson.Controller;
+import watson.SyncTaskQueue;
+import watson.chat.Chat;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * An append-only record of the changes made to one {@link BlockEditSet}, so
+ * that the edits and annotations can be restored after the client is
+ * restarted.
+ *
+ * Changes are encoded into an in-memory buffer on the calling thread. A shared
+ * background timer periodically compresses the buffered records of each
+ * journal with gzip and appends them to the journal file as one frame: an int
+ * byte count followed by that many bytes of gzip data. Clearing the
+ * BlockEditSet truncates the journal, rather than recording the change.
+ *
+ * The journal is not otherwise compacted: it accumulates the changes of every
+ * session until the BlockEditSet is next cleared, and all of them are replayed
+ * on each connection.
+ *
+ * If the client exits abruptly, at most the last FLUSH_INTERVAL_MILLIS of
+ * changes are lost, and a partially written trailing frame is ignored when the
+ * journal is replayed.
+ */
+public class EditJournal
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Return the journal for the BlockEditSet with the specified ID.
+   *
+   * The same instance is returned for every call with the same ID, so that
+   * the timer only ever flushes one journal per file.
+   *
+   * @param id the ID of the BlockEditSet, of the form "serverIP/dimension", as
+   *          computed by {@link Controller#getBlockEditSet()}.
+   * @return the EditJournal.
+   */
+  public static EditJournal forId(String id)
+  {
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < id.length(); ++i)
+    {
+      char c = id.charAt(i);
+      name.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+    }
+    name.append(".journal");
+    File file = new File(getJournalDirectory(), name.toString());
+    synchronized (_journals)
+    {
+      EditJournal journal = _journals.get(file);
+      if (journal == null)
+      {
+        journal = new EditJournal(file);
+        _journals.put(file, journal);
+      }
+      return journal;
+    }
+  } // forId
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the directory where journals are written.
+   *
+   * @return the directory where journals are written.
+   */
+  public static File getJournalDirectory()
+  {
+    return new File(Controller.getModDirectory(), JOURNAL_SUBDIR);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * Use {@link #forId(String)} to obtain instances.
+   *
+   * @param file the journal file.
+   */
+  protected EditJournal(File file)
+  {
+    _file = file;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start applying the changes recorded in the journal file to the specified
+   * BlockEditSet.
+   *
+   * The file is read on a worker thread and the changes are applied in the
+   * main thread, in batches of at most BATCH_SIZE edits, as tasks on the
+   * {@link SyncTaskQueue}. The replayed changes are not journaled again, so
+   * this journal can already be attached to the BlockEditSet, recording new
+   * changes while the replay proceeds. Only the frames written before the
+   * replay starts are read, and the replay is abandoned if the journal is
+   * cleared.
+   *
+   * @param edits the BlockEditSet.
+   */
+  public void replay(BlockEditSet edits)
+  {
+    if (_file.canRead())
+    {
+      Thread thread = new Thread(new Replay(edits), "Watson journal replay");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record the addition of an edit.
+   *
+   * @param edit the edit.
+   */
+  public synchronized void addBlockEdit(BlockEdit edit)
+  {
+    if (isEnabled())
+    {
+      try
+      {
+        _records.writeByte(EDIT);
+        _records.writeLong(edit.time);
+        _records.writeUTF(edit.player);
+        _records.writeBoolean(edit.creation);
+        _records.writeInt(edit.x);
+        _records.writeInt(edit.y);
+        _records.writeInt(edit.z);
+        _records.writeShort(edit.type.getId());
+        _records.writeByte(edit.type.getData());
+      }
+      catch (IOException ex)
+      {
+        // Not thrown by a ByteArrayOutputStream.
+      }
+    }
+  } // addBlockEdit
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record the addition of an annotation.
+   *
+   * @param annotation the annotation.
+   */
+  public synchronized void addAnnotation(Annotation annotation)
+  {
+    if (isEnabled())
+    {
+      try
+      {
+        _records.writeByte(ANNO_ADD);
+        _records.writeInt(annotation.getX());
+        _records.writeInt(annotation.getY());
+        _records.writeInt(annotation.getZ());
+        _records.writeUTF(annotation.getText());
+      }
+      catch (IOException ex)
+      {
+        // Not thrown by a ByteArrayOutputStream.
+      }
+    }
+  } // addAnnotation
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record the removal of an annotation.
+   *
+   * The annotation is recorded by its position and text, rather than its
+   * index, since annotations loaded from files are not journaled and so the
+   * indices at replay can differ from those at the time of removal.
+   *
+   * @param annotation the annotation that was removed.
+   */
+  public synchronized void removeAnnotation(Annotation annotation)
+  {
+    if (isEnabled())
+    {
+      try
+      {
+        _records.writeByte(ANNO_REMOVE);
+        _records.writeInt(annotation.getX());
+        _records.writeInt(annotation.getY());
+        _records.writeInt(annotation.getZ());
+        _records.writeUTF(annotation.getText());
+      }
+      catch (IOException ex)
+      {
+        // Not thrown by a ByteArrayOutputStream.
+      }
+    }
+  } // removeAnnotation
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record the removal of all annotations.
+   */
+  public synchronized void clearAnnotations()
+  {
+    if (isEnabled())
+    {
+      try
+      {
+        _records.writeByte(ANNO_CLEAR);
+      }
+      catch (IOException ex)
+      {
+        // Not thrown by a ByteArrayOutputStream.
+      }
+    }
+  } // clearAnnotations
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record the removal of all edits by one player.
+   *
+   * @param player the player name.
+   */
+  public synchronized void removePlayer(String player)
+  {
+    if (isEnabled())
+    {
+      try
+      {
+        _records.writeByte(REMOVE_PLAYER);
+        _records.writeUTF(player);
+      }
+      catch (IOException ex)
+      {
+        // Not thrown by a ByteArrayOutputStream.
+      }
+    }
+  } // removePlayer
+
+  // --------------------------------------------------------------------------
+  /**
+   * Discard the journal, because the BlockEditSet has been cleared.
+   */
+  public synchronized void clear()
+  {
+    _buffer.reset();
+    _truncate = true;
+    ++_clearCount;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write any buffered records to the journal file as one compressed frame.
+   */
+  public void flush()
+  {
+    byte[] records;
+    boolean truncate;
+    synchronized (this)
+    {
+      if (_buffer.size() == 0 && !_truncate)
+      {
+        return;
+      }
+      records = _buffer.toByteArray();
+      _buffer.reset();
+      truncate = _truncate;
+      _truncate = false;
+    }
+
+    // Only the timer thread and the shutdown hook write the file.
+    synchronized (_file)
+    {
+      try
+      {
+        if (!_file.getParentFile().isDirectory())
+        {
+          _file.getParentFile().mkdirs();
+        }
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(_file, !truncate));
+        try
+        {
+          if (records.length != 0)
+          {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(records);
+            gzip.close();
+
+            out.writeInt(compressed.size());
+            compressed.writeTo(out);
+          }
+        }
+        finally
+        {
+          out.close();
+        }
+      }
+      catch (IOException ex)
+      {
+        Log.exception(Level.SEVERE, "error writing journal " + _file, ex);
+      }
+    }
+  } // flush
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if changes should be journaled.
+   *
+   * @return true if changes should be journaled.
+   */
+  protected boolean isEnabled()
+  {
+    return Configuration.instance.isJournalEnabled();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Reads the journal file on a worker thread and queues the recorded changes
+   * to be applied to a BlockEditSet in the main thread.
+   */
+  protected class Replay implements Runnable
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param edits the BlockEditSet that the changes are applied to.
+     */
+    public Replay(BlockEditSet edits)
+    {
+      _edits = edits;
+      _startClearCount = _clearCount;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Read the frames of the journal file, queuing the changes they record.
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run()
+    {
+      DataInputStream in = null;
+      try
+      {
+        // Frames appended after this point record changes already applied.
+        long length;
+        synchronized (_file)
+        {
+          length = _file.length();
+        }
+
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file)));
+        long position = 0;
+        while (position < length && !isAbandoned())
+        {
+          byte[] frame;
+          try
+          {
+            frame = new byte[in.readInt()];
+            in.readFully(frame);
+          }
+          catch (EOFException ex)
+          {
+            // A frame that was not completely written.
+            break;
+          }
+          position += 4 + frame.length;
+
+          DataInputStream records = new DataInputStream(new GZIPInputStream(
+            new ByteArrayInputStream(frame)));
+          try
+          {
+            readFrame(records);
+          }
+          finally
+          {
+            records.close();
+          }
+        } // while
+        queueBatch();
+      }
+      catch (Exception ex)
+      {
+        Log.exception(Level.SEVERE, "error replaying journal " + _file, ex);
+      }
+      finally
+      {
+        if (in != null)
+        {
+          try
+          {
+            in.close();
+          }
+          catch (IOException ex)
+          {
+            // Ignored.
+          }
+        }
+      }
+
+      SyncTaskQueue.instance.addTask(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          int annoCount = _edits.getAnnotations().size();
+          if (!isAbandoned() && (_replayedEdits != 0 || annoCount != 0))
+          {
+            Chat.localOutput(String.format(Locale.US,
+              "Restored %d edits and %d annotations from the journal.",
+              _replayedEdits, annoCount));
+          }
+        }
+      });
+    } // run
+
+    // ------------------------------------------------------------------------
+    /**
+     * Decode the records in one decompressed frame, adding edits to the
+     * current batch and queuing the other changes in order after it.
+     *
+     * @param records the records.
+     */
+    protected void readFrame(DataInputStream records)
+      throws IOException, InterruptedException
+    {
+      for (;;)
+      {
+        int type = records.read();
+        if (type == -1)
+        {
+          return;
+        }
+
+        switch (type)
+        {
+          case EDIT:
+          {
+            long time = records.readLong();
+            String player = records.readUTF();
+            boolean creation = records.readBoolean();
+            int x = records.readInt();
+            int y = records.readInt();
+            int z = records.readInt();
+            int id = records.readShort() & 0xFFFF;
+            int data = records.readByte();
+            BlockType blockType = BlockTypeRegistry.instance.getBlockTypeByIdData(id, data);
+            _batch.add(new BlockEdit(time, player, creation, x, y, z, blockType));
+            if (_batch.size() == BATCH_SIZE)
+            {
+              queueBatch();
+            }
+            break;
+          }
+
+          case ANNO_ADD:
+          {
+            int x = records.readInt();
+            int y = records.readInt();
+            int z = records.readInt();
+            final Annotation annotation = new Annotation(x, y, z, records.readUTF());
+            queueBatch();
+            queue(new Runnable()
+            {
+              @Override
+              public void run()
+              {
+                _edits.addAnnotation(annotation);
+              }
+            });
+            break;
+          }
+
+          case ANNO_REMOVE:
+          {
+            final int x = records.readInt();
+            final int y = records.readInt();
+            final int z = records.readInt();
+            final String text = records.readUTF();
+            queueBatch();
+            queue(new Runnable()
+            {
+              @Override
+              public void run()
+              {
+                // The first identical annotation; any other would do.
+                ArrayList<Annotation> annotations = _edits.getAnnotations();
+                for (int i = 0; i < annotations.size(); ++i)
+                {
+                  Annotation annotation = annotations.get(i);
+                  if (annotation.getX() == x && annotation.getY() == y &&
+                      annotation.getZ() == z && annotation.getText().equals(text))
+                  {
+                    _edits.removeAnnotation(i);
+                    break;
+                  }
+                }
+              }
+            });
+            break;
+          }
+
+          case ANNO_CLEAR:
+            queueBatch();
+            queue(new Runnable()
+            {
+              @Override
+              public void run()
+              {
+                _edits.clearAnnotations();
+              }
+            });
+            break;
+
+          case REMOVE_PLAYER:
+          {
+            final String player = records.readUTF();
+            queueBatch();
+            queue(new Runnable()
+            {
+              @Override
+              public void run()
+              {
+                _edits.removePlayerEdits(player);
+              }
+            });
+            break;
+          }
+
+          default:
+            throw new IOException("unknown journal record type " + type);
+        } // switch
+      } // for
+    } // readFrame
+
+    // ------------------------------------------------------------------------
+    /**
+     * Queue the edits decoded since the last call to be added as one batch.
+     */
+    protected void queueBatch()
+      throws InterruptedException
+    {
+      if (!_batch.isEmpty())
+      {
+        final ArrayList<BlockEdit> batch = _batch;
+        _batch = new ArrayList<BlockEdit>(BATCH_SIZE);
+        queue(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            _replayedEdits += _edits.addBlockEdits(batch, null);
+          }
+        });
+      }
+    } // queueBatch
+
+    // ------------------------------------------------------------------------
+    /**
+     * Queue a change to be applied in the main thread without being journaled,
+     * waiting until fewer than MAX_PENDING_BATCHES changes are queued.
+     *
+     * @param change calls the methods of the BlockEditSet to make the change.
+     */
+    protected void queue(final Runnable change)
+      throws InterruptedException
+    {
+      while (!_permits.tryAcquire(100, TimeUnit.MILLISECONDS))
+      {
+        if (isAbandoned())
+        {
+          return;
+        }
+      }
+
+      SyncTaskQueue.instance.addTask(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          _permits.release();
+          if (!isAbandoned())
+          {
+            _edits.applyWithoutJournal(change);
+          }
+        }
+      });
+    } // queue
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the journal has been cleared since the replay started,
+     * so that the remaining changes must not be applied.
+     *
+     * @return true if the replay has been abandoned.
+     */
+    protected boolean isAbandoned()
+    {
+      return _clearCount != _startClearCount;
+    }
+
+    /**
+     * The BlockEditSet that the changes are applied to.
+     */
+    protected BlockEditSet         _edits;
+
+    /**
+     * The value of _clearCount when the replay started.
+     */
+    protected int                  _startClearCount;
+
+    /**
+     * Edits decoded but not yet queued.
+     */
+    protected ArrayList<BlockEdit> _batch         = new ArrayList<BlockEdit>(BATCH_SIZE);
+
+    /**
+     * Limits the number of changes queued but not yet applied.
+     */
+    protected Semaphore            _permits       = new Semaphore(MAX_PENDING_BATCHES);
+
+    /**
+     * The number of replayed edits that passed the filters; only accessed by
+     * the main thread.
+     */
+    protected int                  _replayedEdits;
+  } // inner class Replay
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record type of an added edit.
+   */
+  protected static final int                    EDIT                  = 1;
+
+  /**
+   * Record type of an added annotation.
+   */
+  protected static final int                    ANNO_ADD              = 2;
+
+  /**
+   * Record type of a removed annotation.
+   */
+  protected static final int                    ANNO_REMOVE           = 3;
+
+  /**
+   * Record type signifying that all annotations were removed.
+   */
+  protected static final int                    ANNO_CLEAR            = 4;
+
+  /**
+   * Record type signifying that all edits of a player were removed.
+   */
+  protected static final int                    REMOVE_PLAYER         = 5;
+
+  /**
+   * Subdirectory of the mod directory where journals are written.
+   */
+  protected static final String                 JOURNAL_SUBDIR        = "journal";
+
+  /**
+   * Interval between writes of buffered records to journal files.
+   */
+  protected static final long                   FLUSH_INTERVAL_MILLIS = 1000;
+
+  /**
+   * The maximum number of edits replayed in one batch.
+   */
+  protected static final int                    BATCH_SIZE            = 1000;
+
+  /**
+   * The maximum number of replayed changes waiting to be applied in the main
+   * thread.
+   */
+  protected static final int                    MAX_PENDING_BATCHES   = 16;
+
+  /**
+   * All journals, by file, flushed periodically by the timer.
+   */
+  protected static final HashMap<File, EditJournal> _journals         = new HashMap<File, EditJournal>();
+
+  /**
+   * The journal file.
+   */
+  protected File                                _file;
+
+  /**
+   * Records that have not yet been written to the file.
+   */
+  protected ByteArrayOutputStream               _buffer               = new ByteArrayOutputStream();
+
+  /**
+   * Encodes records into _buffer.
+   */
+  protected DataOutputStream                    _records              = new DataOutputStream(_buffer);
+
+  /**
+   * If true, the journal file must be truncated before the next write.
+   */
+  protected boolean                             _truncate;
+
+  /**
+   * The number of times the journal has been cleared, so that a replay in
+   * progress can tell that it has been overtaken.
+   */
+  protected volatile int                        _clearCount;
+
+  /**
+   * Flush all journals periodically, and when the client exits.
+   */
+  static
+  {
+    final Runnable flushAll = new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        ArrayList<EditJournal> journals;
+        synchronized (_journals)
+        {
+          journals = new ArrayList<EditJournal>(_journals.values());
+        }
+        for (EditJournal journal : journals)
+        {
+          journal.flush();
+        }
+      }
+    };
+
+    Timer timer = new Timer("Watson journal writer", true);
+    timer.schedule(new TimerTask()
+    {
+      @Override
+      public void run()
+      {
+        flushAll.run();
+      }
+    }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS);
+    Runtime.getRuntime().addShutdownHook(new Thread(flushAll, "Watson journal flush"));
+  }
+} // class EditJournal
@@ -1,5 +1,6 @@
 package watson.db;
 
+import java.util.BitSet;
 import java.util.LinkedHashSet;
 
 import watson.Controller;
@@ -11,7 +12,12 @@ import watson.chat.Chat;
  * ignored.
  * 
  * Filters are stored as the lower-case version of the player name and checked
- * case-insensitively.
+ * case-insensitively. They are also recorded as a set of {@link PlayerRegistry}
+ * ordinals, so that checking an edit does not need to fold the case of the
+ * player name.
+ * 
+ * Methods are synchronized, since asynchronous chat analysis checks filters
+ * on the chat parsing thread.
  */
 public class Filters
 {
@@ -19,7 +25,7 @@ public class Filters
   /**
    * List all of the accepted (stored) edits.
    */
-  public void list()
+  public synchronized void list()
   {
     if (_filters.size() == 0)
     {
@@ -42,10 +48,11 @@ public class Filters
   /**
    * Remove all filters.
    */
-  public void clear()
+  public synchronized void clear()
   {
     Chat.localOutput("Watson filters cleared.");
     _filters.clear();
+    _accepted.clear();
   }
 
   // --------------------------------------------------------------------------
@@ -58,11 +65,12 @@ public class Filters
    * 
    * @param player the name of the player.
    */
-  public void addPlayer(String player)
+  public synchronized void addPlayer(String player)
   {
     player = player.toLowerCase();
     Chat.localOutput("Added a filter to accept edits by " + player + ".");
     _filters.add(player);
+    _accepted.set(PlayerRegistry.instance.getOrdinal(player));
     Controller.instance.getVariables().put("player", player);
   }
 
@@ -72,13 +80,14 @@ public class Filters
    * 
    * @param player the name of the player.
    */
-  public void removePlayer(String player)
+  public synchronized void removePlayer(String player)
   {
     player = player.toLowerCase();
     if (_filters.contains(player))
     {
       Chat.localOutput("Removed the filter for " + player + ".");
       _filters.remove(player);
+      _accepted.clear(PlayerRegistry.instance.findOrdinal(player));
     }
     else
     {
@@ -92,10 +101,23 @@ public class Filters
    * 
    * @return true if edits by the specified player are accepted.
    */
-  public boolean isAcceptedPlayer(String player)
+  public synchronized boolean isAcceptedPlayer(String player)
   {
-    player = player.toLowerCase();
-    return _filters.size() == 0 || _filters.contains(player);
+    return isAcceptedPlayer(PlayerRegistry.instance.findOrdinal(player));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if edits by the player with the specified
+   * {@link PlayerRegistry} ordinal are accepted.
+   * 
+   * @param ordinal the ordinal of the player, or -1 if the player is not
+   *          registered, and therefore cannot be the subject of a filter.
+   * @return true if edits by the player are accepted.
+   */
+  public synchronized boolean isAcceptedPlayer(int ordinal)
+  {
+    return _filters.size() == 0 || (ordinal >= 0 && _accepted.get(ordinal));
   }
 
   // --------------------------------------------------------------------------
@@ -103,5 +125,10 @@ public class Filters
    * The names of all the players whose edits will be stored when returned from
    * a query. If this set is empty, all edits are stored without filtration.
    */
-  protected LinkedHashSet<String> _filters = new LinkedHashSet<String>();
+  protected LinkedHashSet<String> _filters  = new LinkedHashSet<String>();
+
+  /**
+   * The {@link PlayerRegistry} ordinals of the players in _filters.
+   */
+  protected BitSet                _accepted = new BitSet();
 } // class Filters
\ No newline at end of file
@@ -0,0 +1,296 @@
+package watson.db;
+
+import java.util.Arrays;
+
+// ----------------------------------------------------------------------------
+/**
+ * Counts of edits per vertical column of the world, broken down by block ID,
+ * from which a density overlay (heatmap) is drawn.
+ *
+ * Columns are {@link #CELL_SIZE} by {@link #CELL_SIZE} blocks, extending over
+ * the full height of the world. Each distinct combination of column and block
+ * ID is an entry, with the number of edits and the highest y coordinate of
+ * those edits. The counts are updated as each edit is added, so the size of
+ * this structure depends on the area edited, not the number of edits.
+ *
+ * Entries are stored in fixed size chunks so that {@link #snapshot()} can
+ * share them with the render thread: a chunk that has been shared is copied
+ * before it is next modified, so publishing the counts costs time in
+ * proportion to the entries changed since they were last published, rather
+ * than the total number of entries.
+ */
+public class HeatmapCounts
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Count an edit.
+   *
+   * @param type the type of the edited block.
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   */
+  public void add(BlockType type, int x, int y, int z)
+  {
+    int columnX = x >> CELL_SHIFT;
+    int columnZ = z >> CELL_SHIFT;
+    long key = IntCoord.pack(columnX, type.getId(), columnZ);
+    int index = _indices.get(key);
+    int[] chunk;
+    int offset;
+    if (index < 0)
+    {
+      index = _size++;
+      chunk = getWritableChunk(index >> CHUNK_SHIFT);
+      offset = (index & CHUNK_MASK) * FIELDS;
+      chunk[offset + COLUMN_X] = columnX;
+      chunk[offset + COLUMN_Z] = columnZ;
+      chunk[offset + TYPE_ID] = type.getId();
+      chunk[offset + TOP_Y] = y;
+      _indices.put(key, index);
+    }
+    else
+    {
+      chunk = getWritableChunk(index >> CHUNK_SHIFT);
+      offset = (index & CHUNK_MASK) * FIELDS;
+      chunk[offset + TOP_Y] = Math.max(chunk[offset + TOP_Y], y);
+    }
+    ++chunk[offset + COUNT];
+    _snapshot = null;
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return an unchanging snapshot of the counts for reading by the render
+   * thread.
+   *
+   * The snapshot shares the chunks of this instance, which are copied before
+   * they are next modified. If there have been no changes since the previous
+   * call, the same snapshot is returned again.
+   *
+   * The snapshot is not indexed and must not be modified with
+   * {@link #add(BlockType, int, int, int)}.
+   *
+   * @return the snapshot.
+   */
+  public HeatmapCounts snapshot()
+  {
+    if (_snapshot == null)
+    {
+      int chunkCount = (_size + CHUNK_MASK) >> CHUNK_SHIFT;
+      HeatmapCounts snapshot = new HeatmapCounts();
+      snapshot._indices = null;
+      snapshot._owned = null;
+      snapshot._size = _size;
+      snapshot._chunks = Arrays.copyOf(_chunks, chunkCount);
+      snapshot._snapshot = snapshot;
+      Arrays.fill(_owned, 0, chunkCount, false);
+      _snapshot = snapshot;
+    }
+    return _snapshot;
+  } // snapshot
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of entries.
+   *
+   * @return the number of entries.
+   */
+  public int size()
+  {
+    return _size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the x coordinate of the column of an entry, in cells.
+   *
+   * @param index the index of the entry.
+   * @return the x coordinate of the column, i.e. the block x coordinate
+   *         shifted right by {@link #CELL_SHIFT}.
+   */
+  public int getColumnX(int index)
+  {
+    return getField(index, COLUMN_X);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the z coordinate of the column of an entry, in cells.
+   *
+   * @param index the index of the entry.
+   * @return the z coordinate of the column, i.e. the block z coordinate
+   *         shifted right by {@link #CELL_SHIFT}.
+   */
+  public int getColumnZ(int index)
+  {
+    return getField(index, COLUMN_Z);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the block ID of the edits counted by an entry.
+   *
+   * @param index the index of the entry.
+   * @return the block ID.
+   */
+  public int getTypeId(int index)
+  {
+    return getField(index, TYPE_ID);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the highest y coordinate of the edits counted by an entry.
+   *
+   * @param index the index of the entry.
+   * @return the highest y coordinate.
+   */
+  public int getTopY(int index)
+  {
+    return getField(index, TOP_Y);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits counted by an entry.
+   *
+   * @param index the index of the entry.
+   * @return the number of edits.
+   */
+  public int getCount(int index)
+  {
+    return getField(index, COUNT);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return one field of an entry.
+   *
+   * @param index the index of the entry.
+   * @param field the offset of the field within the entry, e.g. TOP_Y.
+   * @return the value of the field.
+   */
+  protected int getField(int index, int field)
+  {
+    return _chunks[index >> CHUNK_SHIFT][(index & CHUNK_MASK) * FIELDS + field];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the chunk with the specified index, allocating it if it does not
+   * exist, or copying it if it is shared with a snapshot.
+   *
+   * @param chunkIndex the index of the chunk in _chunks.
+   * @return a chunk that can be modified.
+   */
+  protected int[] getWritableChunk(int chunkIndex)
+  {
+    if (chunkIndex == _chunks.length)
+    {
+      int capacity = Math.max(4, _chunks.length * 2);
+      _chunks = Arrays.copyOf(_chunks, capacity);
+      _owned = Arrays.copyOf(_owned, capacity);
+    }
+    int[] chunk = _chunks[chunkIndex];
+    if (chunk == null)
+    {
+      chunk = new int[CHUNK_SIZE * FIELDS];
+      _chunks[chunkIndex] = chunk;
+      _owned[chunkIndex] = true;
+    }
+    else if (!_owned[chunkIndex])
+    {
+      chunk = chunk.clone();
+      _chunks[chunkIndex] = chunk;
+      _owned[chunkIndex] = true;
+    }
+    return chunk;
+  } // getWritableChunk
+
+  // --------------------------------------------------------------------------
+  /**
+   * The base 2 logarithm of the width of a column, in blocks.
+   */
+  public static final int CELL_SHIFT = 2;
+
+  /**
+   * The width of a column, in blocks.
+   */
+  public static final int CELL_SIZE  = 1 << CELL_SHIFT;
+
+  /**
+   * The base 2 logarithm of the number of entries in a chunk.
+   */
+  protected static final int CHUNK_SHIFT = 8;
+
+  /**
+   * The number of entries in a chunk.
+   */
+  protected static final int CHUNK_SIZE  = 1 << CHUNK_SHIFT;
+
+  /**
+   * Mask selecting the index of an entry within its chunk.
+   */
+  protected static final int CHUNK_MASK  = CHUNK_SIZE - 1;
+
+  /**
+   * The offset of the column x coordinate within an entry.
+   */
+  protected static final int COLUMN_X    = 0;
+
+  /**
+   * The offset of the column z coordinate within an entry.
+   */
+  protected static final int COLUMN_Z    = 1;
+
+  /**
+   * The offset of the block ID within an entry.
+   */
+  protected static final int TYPE_ID     = 2;
+
+  /**
+   * The offset of the highest y coordinate within an entry.
+   */
+  protected static final int TOP_Y       = 3;
+
+  /**
+   * The offset of the number of edits within an entry.
+   */
+  protected static final int COUNT       = 4;
+
+  /**
+   * The number of ints in an entry.
+   */
+  protected static final int FIELDS      = 5;
+
+  /**
+   * Map from column coordinates and block ID, packed by
+   * {@link IntCoord#pack(int, int, int)} with the ID in place of y, to the
+   * index of the entry; null in snapshots.
+   */
+  protected LongIntMap    _indices   = new LongIntMap(0);
+
+  /**
+   * The number of entries.
+   */
+  protected int           _size;
+
+  /**
+   * The entries, CHUNK_SIZE to a chunk, each entry being FIELDS consecutive
+   * ints; unallocated chunks are null.
+   */
+  protected int[][]       _chunks    = new int[0][];
+
+  /**
+   * True for each chunk that is not shared with a snapshot, and so can be
+   * modified in place; null in snapshots.
+   */
+  protected boolean[]     _owned     = new boolean[0];
+
+  /**
+   * The snapshot most recently returned by {@link #snapshot()}, or null if
+   * the counts have changed since.
+   */
+  protected HeatmapCounts _snapshot;
+} // class HeatmapCounts
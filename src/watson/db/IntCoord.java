@@ -150,6 +150,25 @@ public class IntCoord
     return (_y << 24) ^ _x ^ (_z << 15);
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Pack the specified block coordinates into a single long, suitable for use
+   * as a hash key.
+   *
+   * The layout is the same as that of Minecraft's BlockPos: 26 bits of x, 12
+   * bits of y and 26 bits of z. That covers the full extent of a Minecraft
+   * world, so distinct blocks always have distinct keys.
+   *
+   * @param x the x coordinate.
+   * @param y the y coordinate.
+   * @param z the z coordinate.
+   * @return the packed coordinates.
+   */
+  public static long pack(int x, int y, int z)
+  {
+    return ((long) (x & 0x3FFFFFF) << 38) | ((long) (y & 0xFFF) << 26) | (z & 0x3FFFFFF);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * @see java.lang.Object#toString()
@@ -0,0 +1,189 @@
+package watson.db;
+
+import java.util.Arrays;
+
+// ----------------------------------------------------------------------------
+/**
+ * A hash map from primitive long keys to non-negative primitive int values.
+ *
+ * This class exists to index large numbers of edits by packed coordinates (see
+ * {@link IntCoord#pack(int, int, int)}) without the overhead of a boxed Long,
+ * a boxed value and a HashMap entry object per key. Keys are stored using open
+ * addressing with linear probing in parallel arrays.
+ *
+ * Values must be non-negative; -1 is used internally to mark empty slots and
+ * is returned by {@link #get(long)} when the key is absent. Entries cannot be
+ * individually removed.
+ */
+public class LongIntMap
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param expectedSize the number of keys expected to be stored without
+   *          rehashing.
+   */
+  public LongIntMap(int expectedSize)
+  {
+    int capacity = MIN_CAPACITY;
+    while (capacity * MAX_LOAD_FACTOR < expectedSize)
+    {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the value associated with the specified key, or -1 if not found.
+   *
+   * @param key the key.
+   * @return the value associated with the specified key, or -1 if not found.
+   */
+  public int get(long key)
+  {
+    int mask = _keys.length - 1;
+    for (int slot = hash(key) & mask;; slot = (slot + 1) & mask)
+    {
+      int value = _values[slot];
+      if (value < 0 || _keys[slot] == key)
+      {
+        return value;
+      }
+    }
+  } // get
+
+  // --------------------------------------------------------------------------
+  /**
+   * Associate the specified value with the specified key, replacing any
+   * previous value.
+   *
+   * @param key the key.
+   * @param value the value, which must not be negative.
+   */
+  public void put(long key, int value)
+  {
+    if (value < 0)
+    {
+      throw new IllegalArgumentException("LongIntMap values must not be negative");
+    }
+
+    int mask = _keys.length - 1;
+    int slot = hash(key) & mask;
+    while (_values[slot] >= 0 && _keys[slot] != key)
+    {
+      slot = (slot + 1) & mask;
+    }
+
+    if (_values[slot] < 0)
+    {
+      ++_size;
+    }
+    _keys[slot] = key;
+    _values[slot] = value;
+
+    if (_size > _keys.length * MAX_LOAD_FACTOR)
+    {
+      rehash(_keys.length << 1);
+    }
+  } // put
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of keys in the map.
+   *
+   * @return the number of keys in the map.
+   */
+  public int size()
+  {
+    return _size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove all keys from the map.
+   */
+  public void clear()
+  {
+    Arrays.fill(_values, -1);
+    _size = 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Allocate empty key and value arrays of the specified capacity.
+   *
+   * @param capacity the capacity, which must be a power of 2.
+   */
+  protected void allocate(int capacity)
+  {
+    _keys = new long[capacity];
+    _values = new int[capacity];
+    Arrays.fill(_values, -1);
+    _size = 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Reinsert all entries into new arrays of the specified capacity.
+   *
+   * @param capacity the new capacity, which must be a power of 2.
+   */
+  protected void rehash(int capacity)
+  {
+    long[] oldKeys = _keys;
+    int[] oldValues = _values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; ++i)
+    {
+      if (oldValues[i] >= 0)
+      {
+        put(oldKeys[i], oldValues[i]);
+      }
+    }
+  } // rehash
+
+  // --------------------------------------------------------------------------
+  /**
+   * Scramble the bits of a key so that nearby coordinates are spread across
+   * the table.
+   *
+   * @param key the key.
+   * @return the hash code.
+   */
+  protected static int hash(long key)
+  {
+    key ^= key >>> 33;
+    key *= 0xFF51AFD7ED558CCDL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Initial and minimum capacity of the table.
+   */
+  protected static final int   MIN_CAPACITY    = 16;
+
+  /**
+   * The table is doubled in size when the fraction of occupied slots exceeds
+   * this value.
+   */
+  protected static final float MAX_LOAD_FACTOR = 0.6f;
+
+  /**
+   * Keys, indexed by slot.
+   */
+  protected long[]             _keys;
+
+  /**
+   * Values, indexed by slot; -1 signifies an empty slot.
+   */
+  protected int[]              _values;
+
+  /**
+   * The number of keys in the map.
+   */
+  protected int                _size;
+} // class LongIntMap
@@ -0,0 +1,534 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// ----------------------------------------------------------------------------
+/**
+ * A sorted set that can also be indexed by position, implemented as an AVL
+ * tree in which each node records the size of its subtree.
+ *
+ * Insertion, removal, finding the 0-based position (rank) of an element and
+ * finding the element at a given position all take O(log n) time.
+ *
+ * As with TreeSet<>, the ordering of elements must be consistent for as long
+ * as they are in the set: an element whose sort key changes must be removed
+ * before the change and added again afterwards. Elements that compare equal
+ * are considered duplicates.
+ *
+ * @param <T> the element type.
+ */
+public class OrderStatisticTree<T> implements Iterable<T>
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param comparator determines the order of elements.
+   */
+  public OrderStatisticTree(Comparator<? super T> comparator)
+  {
+    _comparator = comparator;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Change the order of the elements, re-sorting those already in the set.
+   *
+   * @param comparator the new comparator.
+   */
+  public void setComparator(Comparator<? super T> comparator)
+  {
+    _comparator = comparator;
+    ArrayList<T> elements = new ArrayList<T>(size());
+    for (T element : this)
+    {
+      elements.add(element);
+    }
+    clear();
+    for (T element : elements)
+    {
+      add(element);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove all elements.
+   */
+  public void clear()
+  {
+    _root = null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of elements.
+   *
+   * @return the number of elements.
+   */
+  public int size()
+  {
+    return size(_root);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if there are no elements.
+   *
+   * @return true if there are no elements.
+   */
+  public boolean isEmpty()
+  {
+    return _root == null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an element, unless an equal element is already present.
+   *
+   * @param element the element.
+   * @return true if the element was added.
+   */
+  public boolean add(T element)
+  {
+    int oldSize = size();
+    _root = insert(_root, element);
+    return size() != oldSize;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove the element that compares equal to the specified element, if
+   * present.
+   *
+   * @param element the element.
+   * @return true if an element was removed.
+   */
+  public boolean remove(T element)
+  {
+    int oldSize = size();
+    _root = delete(_root, element);
+    return size() != oldSize;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the element at the specified 0-based position.
+   *
+   * @param index the position, in the range [0,size()-1].
+   * @return the element at that position.
+   * @throws IndexOutOfBoundsException if the index is out of range.
+   */
+  public T get(int index)
+  {
+    if (index < 0 || index >= size())
+    {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+    }
+    Node<T> node = _root;
+    for (;;)
+    {
+      int leftSize = size(node._left);
+      if (index < leftSize)
+      {
+        node = node._left;
+      }
+      else if (index > leftSize)
+      {
+        index -= leftSize + 1;
+        node = node._right;
+      }
+      else
+      {
+        return node._element;
+      }
+    }
+  } // get
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the 0-based position of the specified element, or -1 if it is not
+   * present.
+   *
+   * @param element the element.
+   * @return the position of the element, or -1 if not present.
+   */
+  public int indexOf(T element)
+  {
+    int index = 0;
+    Node<T> node = _root;
+    while (node != null)
+    {
+      int cmp = _comparator.compare(element, node._element);
+      if (cmp < 0)
+      {
+        node = node._left;
+      }
+      else if (cmp > 0)
+      {
+        index += size(node._left) + 1;
+        node = node._right;
+      }
+      else
+      {
+        return index + size(node._left);
+      }
+    }
+    return -1;
+  } // indexOf
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the least element.
+   *
+   * @return the least element.
+   * @throws NoSuchElementException if the set is empty.
+   */
+  public T first()
+  {
+    if (_root == null)
+    {
+      throw new NoSuchElementException();
+    }
+    Node<T> node = _root;
+    while (node._left != null)
+    {
+      node = node._left;
+    }
+    return node._element;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the greatest element.
+   *
+   * @return the greatest element.
+   * @throws NoSuchElementException if the set is empty.
+   */
+  public T last()
+  {
+    if (_root == null)
+    {
+      throw new NoSuchElementException();
+    }
+    Node<T> node = _root;
+    while (node._right != null)
+    {
+      node = node._right;
+    }
+    return node._element;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return an iterator over the elements in ascending order.
+   *
+   * The set must not be modified while it is being iterated.
+   *
+   * @see java.lang.Iterable#iterator()
+   */
+  @Override
+  public Iterator<T> iterator()
+  {
+    return new Iterator<T>()
+    {
+      @Override
+      public boolean hasNext()
+      {
+        return !_path.isEmpty();
+      }
+
+      @Override
+      public T next()
+      {
+        if (_path.isEmpty())
+        {
+          throw new NoSuchElementException();
+        }
+        Node<T> node = _path.remove(_path.size() - 1);
+        pushLeft(node._right);
+        return node._element;
+      }
+
+      @Override
+      public void remove()
+      {
+        throw new UnsupportedOperationException();
+      }
+
+      /**
+       * Push the specified node and its chain of left descendants onto _path.
+       */
+      private void pushLeft(Node<T> node)
+      {
+        while (node != null)
+        {
+          _path.add(node);
+          node = node._left;
+        }
+      }
+
+      /**
+       * The nodes whose elements and right subtrees remain to be visited; the
+       * next node is last.
+       */
+      private ArrayList<Node<T>> _path = new ArrayList<Node<T>>();
+      {
+        pushLeft(_root);
+      }
+    };
+  } // iterator
+
+  // --------------------------------------------------------------------------
+  /**
+   * Insert an element into the specified subtree.
+   *
+   * @param node the root of the subtree, or null if empty.
+   * @param element the element.
+   * @return the new root of the subtree.
+   */
+  protected Node<T> insert(Node<T> node, T element)
+  {
+    if (node == null)
+    {
+      return new Node<T>(element);
+    }
+    int cmp = _comparator.compare(element, node._element);
+    if (cmp < 0)
+    {
+      node._left = insert(node._left, element);
+    }
+    else if (cmp > 0)
+    {
+      node._right = insert(node._right, element);
+    }
+    else
+    {
+      return node;
+    }
+    return balance(node);
+  } // insert
+
+  // --------------------------------------------------------------------------
+  /**
+   * Delete an element from the specified subtree.
+   *
+   * @param node the root of the subtree, or null if empty.
+   * @param element the element.
+   * @return the new root of the subtree.
+   */
+  protected Node<T> delete(Node<T> node, T element)
+  {
+    if (node == null)
+    {
+      return null;
+    }
+    int cmp = _comparator.compare(element, node._element);
+    if (cmp < 0)
+    {
+      node._left = delete(node._left, element);
+    }
+    else if (cmp > 0)
+    {
+      node._right = delete(node._right, element);
+    }
+    else
+    {
+      if (node._left == null)
+      {
+        return node._right;
+      }
+      if (node._right == null)
+      {
+        return node._left;
+      }
+
+      // Replace the element with its successor, then delete the successor.
+      Node<T> successor = node._right;
+      while (successor._left != null)
+      {
+        successor = successor._left;
+      }
+      node._element = successor._element;
+      node._right = deleteFirst(node._right);
+    }
+    return balance(node);
+  } // delete
+
+  // --------------------------------------------------------------------------
+  /**
+   * Delete the least element of the specified non-empty subtree.
+   *
+   * @param node the root of the subtree.
+   * @return the new root of the subtree.
+   */
+  protected Node<T> deleteFirst(Node<T> node)
+  {
+    if (node._left == null)
+    {
+      return node._right;
+    }
+    node._left = deleteFirst(node._left);
+    return balance(node);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Restore the AVL balance condition at the specified node, whose subtrees
+   * are balanced, and update its height and size.
+   *
+   * @param node the node.
+   * @return the new root of the subtree.
+   */
+  protected Node<T> balance(Node<T> node)
+  {
+    int skew = height(node._left) - height(node._right);
+    if (skew > 1)
+    {
+      if (height(node._left._left) < height(node._left._right))
+      {
+        node._left = rotateLeft(node._left);
+      }
+      return rotateRight(node);
+    }
+    else if (skew < -1)
+    {
+      if (height(node._right._right) < height(node._right._left))
+      {
+        node._right = rotateRight(node._right);
+      }
+      return rotateLeft(node);
+    }
+    else
+    {
+      update(node);
+      return node;
+    }
+  } // balance
+
+  // --------------------------------------------------------------------------
+  /**
+   * Rotate the specified subtree to the left.
+   *
+   * @param node the root of the subtree, which has a right child.
+   * @return the new root of the subtree.
+   */
+  protected Node<T> rotateLeft(Node<T> node)
+  {
+    Node<T> right = node._right;
+    node._right = right._left;
+    right._left = node;
+    update(node);
+    update(right);
+    return right;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Rotate the specified subtree to the right.
+   *
+   * @param node the root of the subtree, which has a left child.
+   * @return the new root of the subtree.
+   */
+  protected Node<T> rotateRight(Node<T> node)
+  {
+    Node<T> left = node._left;
+    node._left = left._right;
+    left._right = node;
+    update(node);
+    update(left);
+    return left;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Recompute the height and size of a node from those of its children.
+   *
+   * @param node the node.
+   */
+  protected static <T> void update(Node<T> node)
+  {
+    node._height = 1 + Math.max(height(node._left), height(node._right));
+    node._size = 1 + size(node._left) + size(node._right);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the height of a subtree.
+   *
+   * @param node the root of the subtree, or null if empty.
+   * @return the height of the subtree; 0 if empty.
+   */
+  protected static <T> int height(Node<T> node)
+  {
+    return (node == null) ? 0 : node._height;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of elements in a subtree.
+   *
+   * @param node the root of the subtree, or null if empty.
+   * @return the number of elements in the subtree.
+   */
+  protected static <T> int size(Node<T> node)
+  {
+    return (node == null) ? 0 : node._size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * A node of the tree.
+   */
+  protected static class Node<T>
+  {
+    /**
+     * Constructor.
+     *
+     * @param element the element.
+     */
+    public Node(T element)
+    {
+      _element = element;
+    }
+
+    /**
+     * The element.
+     */
+    T       _element;
+
+    /**
+     * The subtree of lesser elements.
+     */
+    Node<T> _left;
+
+    /**
+     * The subtree of greater elements.
+     */
+    Node<T> _right;
+
+    /**
+     * The height of the subtree rooted at this node.
+     */
+    int     _height = 1;
+
+    /**
+     * The number of elements in the subtree rooted at this node.
+     */
+    int     _size   = 1;
+  } // inner class Node
+
+  // --------------------------------------------------------------------------
+  /**
+   * Determines the order of elements.
+   */
+  protected Comparator<? super T> _comparator;
+
+  /**
+   * The root node, or null if the set is empty.
+   */
+  protected Node<T>               _root;
+} // class OrderStatisticTree
@@ -77,13 +77,37 @@ public class OreBlock implements Comparable<OreBlock>
   /**
    * Return the {@link OreDeposit} that includes this block.
    * 
-   * @return the {@link OreDeposit} that includes this block.
+   * @return the representative {@link OreDeposit} of the set of deposits that
+   *         includes this block.
    */
   public OreDeposit getDeposit()
   {
+    _deposit = _deposit.find();
     return _deposit;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Set the next block in the circular list of blocks in the same deposit.
+   * 
+   * @param next the next block.
+   */
+  public void setNextOreBlock(OreBlock next)
+  {
+    _nextOreBlock = next;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the next block in the circular list of blocks in the same deposit.
+   * 
+   * @return the next block in the circular list of blocks in the same deposit.
+   */
+  public OreBlock getNextOreBlock()
+  {
+    return _nextOreBlock;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * @see java.lang.Comparable#compareTo(java.lang.Object)
@@ -138,4 +162,9 @@ public class OreBlock implements Comparable<OreBlock>
    */
   protected OreDeposit _deposit;
 
+  /**
+   * The next block in the circular list of blocks in the same deposit.
+   */
+  protected OreBlock   _nextOreBlock;
+
 } // class OreBlock
\ No newline at end of file
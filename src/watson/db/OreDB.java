@@ -2,7 +2,9 @@ package watson.db;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.logging.Level;
@@ -13,7 +15,9 @@ import watson.DisplaySettings;
 import watson.analysis.ServerTime;
 import watson.chat.Chat;
 import watson.chat.Colour;
+import watson.chat.CommandScheduler.Priority;
 import watson.debug.Log;
+import watson.model.ViewCuller;
 
 // ----------------------------------------------------------------------------
 /**
@@ -41,15 +45,20 @@ public class OreDB
 
     // Add the TypedOreDB instances in the order that we would like to list
     // them to the user, i.e. ddiamonds, then emeralds, then iron...
-    _db.put(types.getBlockTypeById(56), new TypedOreDB(200));
-    _db.put(types.getBlockTypeById(129), new TypedOreDB(200));
-    _db.put(types.getBlockTypeById(15), new TypedOreDB(400));
-    _db.put(types.getBlockTypeById(14), new TypedOreDB(200));
-    _db.put(types.getBlockTypeById(21), new TypedOreDB(200));
+    _db.put(types.getBlockTypeById(56), new TypedOreDB(200, _oreDepositSequence, _depositGrid));
+    _db.put(types.getBlockTypeById(129), new TypedOreDB(200, _oreDepositSequence, _depositGrid));
+    _db.put(types.getBlockTypeById(15), new TypedOreDB(400, _oreDepositSequence, _depositGrid));
+    _db.put(types.getBlockTypeById(14), new TypedOreDB(200, _oreDepositSequence, _depositGrid));
+    _db.put(types.getBlockTypeById(21), new TypedOreDB(200, _oreDepositSequence, _depositGrid));
     // Merge redstone ore (73) and glowing redstone ore (74)
-    _db.put(types.getBlockTypeById(74), new TypedOreDB(200));
-    _db.put(types.getBlockTypeById(16), new TypedOreDB(800));
-    _db.put(types.getBlockTypeById(153), new TypedOreDB(400));
+    _db.put(types.getBlockTypeById(74), new TypedOreDB(200, _oreDepositSequence, _depositGrid));
+    _db.put(types.getBlockTypeById(16), new TypedOreDB(800, _oreDepositSequence, _depositGrid));
+    _db.put(types.getBlockTypeById(153), new TypedOreDB(400, _oreDepositSequence, _depositGrid));
+
+    for (BlockType type : _db.keySet())
+    {
+      _typeRanks.put(type, _typeRanks.size());
+    }
 
     _chatColours.put(types.getBlockTypeById(56), Colour.lightblue);
     _chatColours.put(types.getBlockTypeById(129), Colour.lightgreen);
@@ -73,21 +82,13 @@ public class OreDB
       db.clear();
     }
 
+    _oreDepositSequence.clear();
+    _depositGrid.clear();
+
     // The first call to tpNex() will increment this to 1.
     _tpIndex = 0;
-    invalidateOreDepositSequence();
   } // clear
 
-  // --------------------------------------------------------------------------
-  /**
-   * Force recalculation of the sequence in which ore deposits are assigned a
-   * 1-based label.
-   */
-  public void invalidateOreDepositSequence()
-  {
-    _oreDepositSequenceChanged = true;
-  }
-
   // --------------------------------------------------------------------------
   /**
    * List all of the ore deposits in the database in chat.
@@ -123,8 +124,8 @@ public class OreDB
             "There are %d ore deposits.", depositCount));
         }
 
-        // Get iteration sequence of deposits; will be updated if necessary.
-        ArrayList<OreDeposit> deposits = getOreDepositSequence();
+        // Get iteration sequence of deposits; will be reordered if necessary.
+        OrderStatisticTree<OreDeposit> deposits = getOreDepositSequence();
 
         // Note: Ore deposit ID and first and last deposit numbers are 1-based.
         int first = 1 + (page - 1) * Controller.PAGE_LINES;
@@ -192,15 +193,14 @@ public class OreDB
    *
    * This method is called when "/w edits remove <player>" is executed.
    *
-   * @param player the case-insensitive player name.
+   * @param playerOrdinal the {@link PlayerRegistry} ordinal of the player.
    */
-  public void removeDeposits(String player)
+  public void removeDeposits(int playerOrdinal)
   {
     for (TypedOreDB db : _db.values())
     {
-      db.removeDeposits(player);
+      db.removeDeposits(playerOrdinal);
     }
-    invalidateOreDepositSequence();
   }
 
   // --------------------------------------------------------------------------
@@ -366,7 +366,6 @@ public class OreDB
       {
         TypedOreDB db = getDB(mergedType);
         db.addBlockEdit(edit);
-        invalidateOreDepositSequence();
       }
     }
     catch (Exception ex)
@@ -377,38 +376,85 @@ public class OreDB
 
   // --------------------------------------------------------------------------
   /**
-   * Draw a label (billboard) for each ore deposit.
+   * Add all of the ore destructions among the specified edits to the
+   * database.
+   *
+   * @param edits the edits to examine.
+   */
+  public void addBlockEdits(Collection<BlockEdit> edits)
+  {
+    try
+    {
+      for (BlockEdit edit : edits)
+      {
+        BlockType mergedType = OreDB.getMergedBlockType(edit.type);
+        if (!edit.creation && isOre(mergedType))
+        {
+          getDB(mergedType).addBlockEdit(edit);
+        }
+      }
+    }
+    catch (Exception ex)
+    {
+      Log.exception(Level.SEVERE, "error in OreDB.addBlockEdits()", ex);
+    }
+  } // addBlockEdits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw a label (billboard) for each ore deposit that is within the draw
+   * distance and the view frustum.
+   *
+   * Only the deposits in visible cells of the spatial index are examined, and
+   * the number of each is found from its position in the sequence of all
+   * deposits, so that adding a deposit, which can renumber the others, costs
+   * nothing here. The caller must hold the lock of the owning
+   * {@link BlockEditSet}.
    */
   public void drawDepositLabels()
   {
     DisplaySettings settings = Controller.instance.getDisplaySettings();
     if (settings.areLabelsShown())
     {
-      int id = 1;
-      // Draw ore deposits in descending order of importance.
-      StringBuilder label = new StringBuilder();
-      for (OreDeposit deposit : getOreDepositSequence())
+      int bgARGB = Configuration.instance.getBillboardBackground();
+      int fgARGB = Configuration.instance.getBillboardForeground();
+      OrderStatisticTree<OreDeposit> sequence = getOreDepositSequence();
+      _visibleDeposits.clear();
+      _depositGrid.getVisibleItems(ViewCuller.instance, _visibleDeposits);
+
+      for (OreDeposit deposit : _visibleDeposits)
       {
         OreBlock block = deposit.getKeyOreBlock();
         if (block.getEdit().playerEditSet.isVisible())
         {
-          label.setLength(0);
-          label.ensureCapacity(4);
-          label.append(id);
-          Annotation.drawBillboard(
-            block.getLocation().getX(),
-            block.getLocation().getY(),
-            block.getLocation().getZ(),
-            Configuration.instance.getBillboardBackground(),
-            Configuration.instance.getBillboardForeground(),
-            0.03,
-            label.toString());
+          IntCoord location = block.getLocation();
+          Annotation.drawBillboard(location.getX(), location.getY(), location.getZ(),
+            bgARGB, fgARGB, 0.03, getLabel(sequence.indexOf(deposit) + 1));
         }
-        ++id;
-      } // for all deposits
+      } // for all visible deposits
+      _visibleDeposits.clear();
     } // if drawing deposit labels
   } // drawDepositLabels
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the label text of the deposit with the specified 1-based index.
+   *
+   * Label strings are cached, so that drawing labels each frame does not
+   * allocate.
+   *
+   * @param id the 1-based index of the deposit.
+   * @return the label text.
+   */
+  protected String getLabel(int id)
+  {
+    while (_labels.size() < id)
+    {
+      _labels.add(Integer.toString(_labels.size() + 1));
+    }
+    return _labels.get(id - 1);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Issue a LogBlock query for the time period 7 minutes before the specified
@@ -451,7 +497,7 @@ public class OreDB
       "/lb player %s since %s before %s sum b block 1 56", player, sinceTime,
       beforeTime);
     Log.debug(query);
-    Controller.instance.serverChat(query);
+    Controller.instance.serverChat(query, Priority.INTERACTIVE);
   } // showRatio
 
   // --------------------------------------------------------------------------
@@ -526,47 +572,23 @@ public class OreDB
 
   // --------------------------------------------------------------------------
   /**
-   * Return a collection of {@link OreDeposit}s in the order that they should be
-   * assigned 1-based numeric labels.
+   * Return the collection of {@link OreDeposit}s in the order that they should
+   * be assigned 1-based numeric labels.
+   *
+   * The collection is updated incrementally as deposits are added, merged and
+   * removed by the {@link TypedOreDB}s, and is only re-sorted when the
+   * time_ordered_deposits setting changes.
    *
-   * @return a collection of {@link OreDeposit}s in the order that they should
-   *         be assigned 1-based numeric labels.
+   * @return the collection of {@link OreDeposit}s in the order that they
+   *         should be assigned 1-based numeric labels.
    */
-  protected ArrayList<OreDeposit> getOreDepositSequence()
+  protected OrderStatisticTree<OreDeposit> getOreDepositSequence()
   {
-    Configuration config = Configuration.instance;
-    if (_lastTimeOrderedDeposits != config.timeOrderedDeposits())
+    boolean timeOrdered = Configuration.instance.timeOrderedDeposits();
+    if (_lastTimeOrderedDeposits != timeOrdered)
     {
-      _oreDepositSequenceChanged = true;
-    }
-
-    if (_oreDepositSequenceChanged)
-    {
-      _oreDepositSequenceChanged = false;
-      _lastTimeOrderedDeposits = config.timeOrderedDeposits();
-
-      // Build an array of OreDeposits in decreasing order of significance.
-      _oreDepositSequence.clear();
-      for (TypedOreDB db : _db.values())
-      {
-        for (OreDeposit deposit : db.getOreDeposits())
-        {
-          _oreDepositSequence.add(deposit);
-        }
-      }
-
-      // Reorder deposits by timestamp if required by the settings.
-      if (config.timeOrderedDeposits())
-      {
-        _oreDepositSequence.sort(new Comparator<OreDeposit>()
-        {
-          @Override
-          public int compare(OreDeposit o1, OreDeposit o2)
-          {
-            return Long.signum(o1.getEarliestEdit().time - o2.getEarliestEdit().time);
-          }
-        });
-      }
+      _lastTimeOrderedDeposits = timeOrdered;
+      _oreDepositSequence.setComparator(timeOrdered ? _timeOrder : _importanceOrder);
     }
     return _oreDepositSequence;
   } // getOreDepositSequence
@@ -584,6 +606,36 @@ public class OreDB
    */
   protected LinkedHashMap<BlockType, Colour>     _chatColours               = new LinkedHashMap<BlockType, Colour>();
 
+  /**
+   * Orders deposits first by the diagnostic significance of the ore type, as
+   * determined by the order of _db, and then by
+   * {@link OreDeposit#compareTo(OreDeposit)}.
+   */
+  protected Comparator<OreDeposit>               _importanceOrder           = new Comparator<OreDeposit>()
+  {
+    @Override
+    public int compare(OreDeposit d1, OreDeposit d2)
+    {
+      int rank1 = _typeRanks.get(d1.getBlockType());
+      int rank2 = _typeRanks.get(d2.getBlockType());
+      return (rank1 != rank2) ? rank1 - rank2 : d1.compareTo(d2);
+    }
+  };
+
+  /**
+   * Orders deposits by the time of their earliest edit, and then in order of
+   * importance.
+   */
+  protected Comparator<OreDeposit>               _timeOrder                 = new Comparator<OreDeposit>()
+  {
+    @Override
+    public int compare(OreDeposit d1, OreDeposit d2)
+    {
+      int result = Long.signum(d1.getEarliestEdit().time - d2.getEarliestEdit().time);
+      return (result != 0) ? result : _importanceOrder.compare(d1, d2);
+    }
+  };
+
   /**
    * The index of the most recently teleported to {@link OreDeposit}.
    */
@@ -600,21 +652,42 @@ public class OreDB
    * ore type (rarer ores first) and then by the time they were mined.
    *
    * Regardless of the order that we number the ores, we use this cache to step
-   * through them. It is cleared and rebuilt from scratch whenever an
-   * {@link OreDeposit} is added or removed.
+   * through them. The {@link TypedOreDB}s add and remove deposits as they
+   * change, so that inserting a deposit, finding the deposit with a given
+   * label and finding the label of a deposit all take O(log n) time.
+   */
+  protected OrderStatisticTree<OreDeposit>       _oreDepositSequence        = new OrderStatisticTree<OreDeposit>(
+                                                                              _importanceOrder);
+
+  /**
+   * Maps the merged {@link BlockType} of each ore to its 0-based position in
+   * _db.
+   */
+  protected HashMap<BlockType, Integer>          _typeRanks                 = new HashMap<BlockType, Integer>();
+
+  /**
+   * All deposits, indexed by the location of their key {@link OreBlock}, so
+   * that only the deposits near the viewer need to be examined when drawing
+   * labels. Like _oreDepositSequence, it is updated by the
+   * {@link TypedOreDB}s as deposits are added, merged and removed.
+   */
+  protected SpatialGrid<OreDeposit>              _depositGrid               = new SpatialGrid<OreDeposit>();
+
+  /**
+   * Deposits in visible cells of _depositGrid, reused each frame by
+   * {@link #drawDepositLabels()}.
    */
-  protected ArrayList<OreDeposit>                _oreDepositSequence        = new ArrayList<OreDeposit>();
+  protected ArrayList<OreDeposit>                _visibleDeposits           = new ArrayList<OreDeposit>();
 
   /**
-   * This boolean is set to true to record that OreDeposits have been added or
-   * removed, thus requiring that _oreDepositSequence be recomputed.
+   * Cached label strings, where element i is the label of deposit i + 1.
    */
-  protected boolean                              _oreDepositSequenceChanged = true;
+  protected ArrayList<String>                    _labels                    = new ArrayList<String>();
 
   /**
    * This boolean records the value of DisplaySettings.timeOrderedDeposits()
-   * when the cached sequence of OreDeposits was last updated. If the setting
-   * has changed since then, then the sequence must be recomputed.
+   * when the order of _oreDepositSequence was last set. If the setting has
+   * changed since then, then the sequence must be re-sorted.
    */
-  protected boolean                              _lastTimeOrderedDeposits   = true;
+  protected boolean                              _lastTimeOrderedDeposits   = false;
 } // class OreDB
@@ -1,6 +1,6 @@
 package watson.db;
 
-import java.util.TreeSet;
+import java.util.ArrayList;
 
 // --------------------------------------------------------------------------
 /**
@@ -18,33 +18,107 @@ import java.util.TreeSet;
  * diamond, redstone, and emerald. Note that redstone can appear as two block
  * IDs: glowing and non-glowing redstone ore.
  *
- * Invariant: an OreDeposit will always have at least one {@link BlockEdit} in
- * its set, and they will be sorted in ascending order by Y coordinate, and then
- * by timestamp.
+ * OreDeposits are the sets of a disjoint set (union-find) forest. When a block
+ * joins two deposits, {@link #union(OreDeposit)} links the smaller deposit
+ * under the larger one, which then represents both. The key, earliest and
+ * latest blocks and the block count are only kept up to date in the
+ * representative deposit and are combined in constant time by each union; the
+ * accessors of an absorbed deposit defer to its representative.
+ *
+ * The blocks of a deposit are linked into a circular list through
+ * {@link OreBlock#getNextOreBlock()}, so that two deposits' lists can be
+ * spliced together in constant time.
+ *
+ * Invariant: an OreDeposit will always have at least one {@link OreBlock}.
  */
 public class OreDeposit implements Comparable<OreDeposit>
 {
   // ---------------------------------------------------------------------------
   /**
-   * Add the specified {@link OreBlock} to this deposit.
+   * Constructor.
    *
-   * @param block the block.
+   * @param block the first block in the deposit.
    */
-  public void addOreBlock(OreBlock block)
+  public OreDeposit(OreBlock block)
   {
     block.setDeposit(this);
-    _oreBlocks.add(block);
+    block.setNextOreBlock(block);
+    _blockCount = 1;
+    _keyOreBlock = _earliestOreBlock = _latestOreBlock = block;
+  }
 
-    // Bookkeeping: oldest and newest edits in the deposit.
-    if (_earliestOreBlock == null || block.getEdit().time < _earliestOreBlock.getEdit().time)
+  // ---------------------------------------------------------------------------
+  /**
+   * Return the deposit that represents the union of this deposit with all of
+   * the deposits it has been merged with.
+   *
+   * Each lookup halves the path from this deposit to the representative.
+   *
+   * @return the representative deposit; this deposit if it has not been merged
+   *         into another.
+   */
+  public OreDeposit find()
+  {
+    OreDeposit deposit = this;
+    while (deposit._parent != null)
     {
-      _earliestOreBlock = block;
+      if (deposit._parent._parent != null)
+      {
+        deposit._parent = deposit._parent._parent;
+      }
+      deposit = deposit._parent;
     }
-    if (_latestOreBlock == null || block.getEdit().time > _latestOreBlock.getEdit().time)
+    return deposit;
+  }
+
+  // ---------------------------------------------------------------------------
+  /**
+   * Merge this deposit with another.
+   *
+   * The deposit with fewer blocks becomes a child of the one with more blocks.
+   * Callers that index deposits by {@link #compareTo(OreDeposit)} must remove
+   * both deposits from the index before calling this method, and add the
+   * returned deposit afterwards.
+   *
+   * @param other the other deposit.
+   * @return the representative deposit of the merged deposits.
+   */
+  public OreDeposit union(OreDeposit other)
+  {
+    OreDeposit root = find();
+    OreDeposit child = other.find();
+    if (root == child)
     {
-      _latestOreBlock = block;
+      return root;
     }
-  }
+    if (root._blockCount < child._blockCount)
+    {
+      OreDeposit swap = root;
+      root = child;
+      child = swap;
+    }
+
+    // Splice the circular lists of blocks.
+    OreBlock rootNext = root._keyOreBlock.getNextOreBlock();
+    root._keyOreBlock.setNextOreBlock(child._keyOreBlock.getNextOreBlock());
+    child._keyOreBlock.setNextOreBlock(rootNext);
+
+    child._parent = root;
+    root._blockCount += child._blockCount;
+    if (child._keyOreBlock.compareTo(root._keyOreBlock) < 0)
+    {
+      root._keyOreBlock = child._keyOreBlock;
+    }
+    if (child._earliestOreBlock.getEdit().time < root._earliestOreBlock.getEdit().time)
+    {
+      root._earliestOreBlock = child._earliestOreBlock;
+    }
+    if (child._latestOreBlock.getEdit().time > root._latestOreBlock.getEdit().time)
+    {
+      root._latestOreBlock = child._latestOreBlock;
+    }
+    return root;
+  } // union
 
   // ---------------------------------------------------------------------------
   /**
@@ -63,16 +137,15 @@ public class OreDeposit implements Comparable<OreDeposit>
    * ore.
    *
    * The corresponding edit will have the earliest timestamp of all edits with
-   * the least Y coordinate in the deposit. Since {@link OreBlock}s within a
-   * deposit are indexed into ascending order by Y and then timestamp, this is
-   * just the first element in the collection.
+   * the least Y coordinate in the deposit, i.e. the least block according to
+   * {@link OreBlock#compareTo(OreBlock)}.
    *
    * @return the OreBlock that will act as a teleport target when heading to
    *         this ore.
    */
   public OreBlock getKeyOreBlock()
   {
-    return _oreBlocks.first();
+    return find()._keyOreBlock;
   }
 
   // ---------------------------------------------------------------------------
@@ -86,7 +159,7 @@ public class OreDeposit implements Comparable<OreDeposit>
    */
   public BlockEdit getEarliestEdit()
   {
-    return _earliestOreBlock.getEdit();
+    return find()._earliestOreBlock.getEdit();
   }
 
   // ---------------------------------------------------------------------------
@@ -97,7 +170,7 @@ public class OreDeposit implements Comparable<OreDeposit>
    */
   public BlockEdit getLatestEdit()
   {
-    return _latestOreBlock.getEdit();
+    return find()._latestOreBlock.getEdit();
   }
 
   // ---------------------------------------------------------------------------
@@ -119,50 +192,73 @@ public class OreDeposit implements Comparable<OreDeposit>
    */
   public int getBlockCount()
   {
-    return _oreBlocks.size();
+    return find()._blockCount;
   }
 
   // ---------------------------------------------------------------------------
   /**
-   * Return a reference to the collection of {@link OreBlocks}.
-   *
-   * The returned collection should be treated as read-only/immutable.
+   * Return a new list of the {@link OreBlock}s in this deposit, in no
+   * particular order.
    *
-   * @return a reference to the collection of {@link OreBlocks}.
+   * @return a new list of the {@link OreBlock}s in this deposit.
    */
-  protected TreeSet<OreBlock> getOreBlocks()
+  protected ArrayList<OreBlock> getOreBlocks()
   {
-    return _oreBlocks;
+    OreDeposit root = find();
+    ArrayList<OreBlock> blocks = new ArrayList<OreBlock>(root._blockCount);
+    OreBlock block = root._keyOreBlock;
+    do
+    {
+      blocks.add(block);
+      block = block.getNextOreBlock();
+    } while (block != root._keyOreBlock);
+    return blocks;
   }
 
   // --------------------------------------------------------------------------
   /**
    * @see java.lang.Comparable#compareTo(java.lang.Object)
    *
-   *      Since OreDeposits are compared on the basis of the timestamp of their
-   *      key OreBlock, they should not be compared (added to TreeSet<>, etc)
-   *      when no OreBlocks have been added to the deposit.
+   *      OreDeposits are compared on the basis of the timestamp of their key
+   *      OreBlock. Deposits with the same timestamp are ordered by key
+   *      OreBlock, which is unique to each deposit, so that distinct deposits
+   *      never compare equal.
    */
   @Override
   public int compareTo(OreDeposit other)
   {
-    return Long.signum(getTimeStamp() - other.getTimeStamp());
+    int result = Long.signum(getTimeStamp() - other.getTimeStamp());
+    return (result != 0) ? result : getKeyOreBlock().compareTo(other.getKeyOreBlock());
   }
 
   // ---------------------------------------------------------------------------
   /**
-   * The set of {@link OreBlock}s making up this deposit, in ascending order by
-   * edit timestamp.
+   * The deposit that this deposit has been merged into, or null if this
+   * deposit represents its set.
+   */
+  protected OreDeposit _parent;
+
+  /**
+   * The number of {@link OreBlock}s in the set; only valid in the
+   * representative deposit.
+   */
+  protected int        _blockCount;
+
+  /**
+   * The least {@link OreBlock} in the set; only valid in the representative
+   * deposit.
    */
-  protected TreeSet<OreBlock> _oreBlocks = new TreeSet<OreBlock>();
+  protected OreBlock   _keyOreBlock;
 
   /**
-   * The {@link OreBlock} in _oreBlocks with the earliest/oldest timestamp.
+   * The {@link OreBlock} with the earliest/oldest timestamp; only valid in the
+   * representative deposit.
    */
-  protected OreBlock          _earliestOreBlock;
+  protected OreBlock   _earliestOreBlock;
 
   /**
-   * The {@link OreBlock} in _oreBlocks with the latest/newest timestamp.
+   * The {@link OreBlock} with the latest/newest timestamp; only valid in the
+   * representative deposit.
    */
-  protected OreBlock          _latestOreBlock;
+  protected OreBlock   _latestOreBlock;
 } // class OreDeposit
\ No newline at end of file
@@ -1,24 +1,33 @@
 package watson.db;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Iterator;
-import java.util.TreeSet;
 
 import net.minecraft.client.renderer.Tessellator;
 import net.minecraft.client.renderer.WorldRenderer;
-import net.minecraft.util.Vec3;
 
 import org.lwjgl.opengl.GL11;
 
 import watson.Controller;
 import watson.DisplaySettings;
+import watson.Playback;
+import watson.model.AggregateBoxes;
 import watson.model.ARGB;
+import watson.model.DisplayList;
+import watson.model.LineBatch;
+import watson.model.ViewCuller;
 
 // ----------------------------------------------------------------------------
 /**
  * Maintains a time-ordered list of all of the BlockEdit instances corresponding
  * to LogBlock results for one player only, ordered from oldest to most recent.
+ *
+ * The edits are held in a {@link BlockEditStore} rather than as individual
+ * objects. BlockEdit instances returned by this class are created on demand
+ * and are not retained; changing their fields has no effect on the stored
+ * edits.
  */
 public class PlayerEditSet
 {
@@ -48,11 +57,10 @@ public class PlayerEditSet
   /**
    * Find an edit with the specified coordinates.
    *
-   * Currently, this method does an inefficient linear search, walking, on
-   * average, half the collection. The edits are searched from oldest to newest,
-   * meaning that the oldest edit at that coordinate will be retrieved.
-   *
-   * TODO: implement an efficient spatial search.
+   * If there are multiple edits at the coordinates, the oldest edit at that
+   * coordinate will be retrieved. The lookup is a hash map access and a walk
+   * through the edits at those coordinates, irrespective of the number of
+   * stored edits.
    *
    * @param x the x coordinate of the block
    * @param y the y coordinate of the block
@@ -61,15 +69,8 @@ public class PlayerEditSet
    */
   public synchronized BlockEdit findEdit(int x, int y, int z)
   {
-    // Warning: O(N) algorithm. Avert your delicate eyes.
-    for (BlockEdit edit : _edits)
-    {
-      if (edit.x == x && edit.y == y && edit.z == z)
-      {
-        return edit;
-      }
-    }
-    return null;
+    int row = _edits.findOldest(x, y, z);
+    return (row >= 0) ? getBlockEdit(row) : null;
   }
 
   // --------------------------------------------------------------------------
@@ -83,7 +84,8 @@ public class PlayerEditSet
    */
   public synchronized BlockEdit getEditBefore(BlockEdit edit)
   {
-    return _edits.lower(edit);
+    int rank = _edits.lowerRank(edit);
+    return (rank >= 0) ? getBlockEdit(_edits.getRow(rank)) : null;
   }
 
   // --------------------------------------------------------------------------
@@ -97,7 +99,28 @@ public class PlayerEditSet
    */
   public synchronized BlockEdit getEditAfter(BlockEdit edit)
   {
-    return _edits.higher(edit);
+    int rank = _edits.higherRank(edit);
+    return (rank >= 0) ? getBlockEdit(_edits.getRow(rank)) : null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edit before the specified edit among the edits most recently
+   * published for drawing, or null if there is none.
+   *
+   * Unlike {@link #getEditBefore(BlockEdit)}, this reads the published
+   * {@link RenderSnapshot} and does not take the lock, so the render thread can
+   * call it without waiting for edits to be added.
+   *
+   * @param edit the edit.
+   * @return the published edit before the specified edit, or null if there is
+   *         no edit before.
+   */
+  public BlockEdit getPublishedEditBefore(BlockEdit edit)
+  {
+    BlockEditStore edits = _snapshot._edits;
+    int rank = edits.lowerRank(edit);
+    return (rank >= 0) ? getBlockEdit(edits, edits.getRow(rank)) : null;
   }
 
   // --------------------------------------------------------------------------
@@ -105,13 +128,21 @@ public class PlayerEditSet
    * Add the specified edit to the list.
    *
    * @param edit the BlockEdit describing an edit to add.
+   * @return true if the edit was stored; false if it was a duplicate.
    */
-  public synchronized void addBlockEdit(BlockEdit edit)
+  public synchronized boolean addBlockEdit(BlockEdit edit)
   {
-    _edits.add(edit);
+    int row = _edits.add(edit);
+    if (row >= 0)
+    {
+      getOutlineCell(edit.x, edit.y, edit.z).add(row, edit.type, edit.x, edit.y, edit.z);
+      _heat.add(edit.type, edit.x, edit.y, edit.z);
+      _changed = true;
+    }
 
     // Reference container for fast visibility toggling of ore deposit labels.
     edit.playerEditSet = this;
+    return row >= 0;
   }
 
   // --------------------------------------------------------------------------
@@ -125,6 +156,43 @@ public class PlayerEditSet
     return _edits.size();
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time of this player's oldest edit.
+   *
+   * @return the time of the oldest edit, or Long.MAX_VALUE if there are none.
+   */
+  public synchronized long getEarliestEditTime()
+  {
+    return (_edits.size() != 0) ? _edits.getTime(_edits.getRow(0)) : Long.MAX_VALUE;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time of this player's most recent edit.
+   *
+   * @return the time of the most recent edit, or Long.MIN_VALUE if there are
+   *         none.
+   */
+  public synchronized long getLatestEditTime()
+  {
+    return (_edits.size() != 0) ? _edits.getTime(_edits.getRow(_edits.size() - 1)) : Long.MIN_VALUE;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the columnar storage of this player's edits.
+   *
+   * The store is only modified by {@link #addBlockEdit(BlockEdit)}, so callers
+   * should hold the lock of the owning {@link BlockEditSet} while reading it.
+   *
+   * @return the columnar storage of this player's edits.
+   */
+  public BlockEditStore getBlockEditStore()
+  {
+    return _edits;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Set the visibility of this player's edits in the dimension to which this
@@ -152,33 +220,389 @@ public class PlayerEditSet
 
   // --------------------------------------------------------------------------
   /**
-   * Draw wireframe outlines of all blocks.
+   * Publish the edits added since the last call in a new
+   * {@link RenderSnapshot}, for use by the render thread.
+   *
+   * Only cells that have changed are captured anew. The snapshot refers to
+   * the edits through a view of the {@link BlockEditStore}, and cells list
+   * the row numbers of their edits. The store and the row arrays are only ever
+   * appended to, beyond the counts recorded in earlier snapshots, or replaced,
+   * so earlier snapshots remain valid without copying the edits.
    */
-  public synchronized void drawOutlines()
+  public synchronized void publish()
+  {
+    if (!_changed)
+    {
+      return;
+    }
+    _changed = false;
+
+    CellSnapshot[] cells = new CellSnapshot[_outlineCells.size()];
+    for (int i = 0; i < cells.length; ++i)
+    {
+      OutlineCell cell = _outlineCells.get(i);
+      if (cell._snapshot == null || cell._snapshot._count != cell._count)
+      {
+        cell._snapshot = new CellSnapshot(cell);
+      }
+      cells[i] = cell._snapshot;
+    }
+
+    _snapshot = new RenderSnapshot(cells, _edits.view(), _heat.snapshot());
+  } // publish
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the most recently published per-column counts of this player's
+   * edits, for drawing the heatmap.
+   *
+   * @return the published counts, which must not be modified.
+   */
+  public HeatmapCounts getHeatmapCounts()
+  {
+    return _snapshot._heat;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw wireframe outlines of all blocks that are within the draw distance
+   * and the view frustum.
+   *
+   * Edits are grouped into cubic cells of the world. Cells within the level
+   * of detail distance are drawn as individual block outlines; more distant
+   * cells are drawn as one bounding box per block type. Both forms are
+   * compiled into a display list per cell the first time they are drawn after
+   * an edit is added to the cell, and subsequently drawn from that list. Cells
+   * that are out of view are skipped entirely.
+   *
+   * Only the most recently published {@link RenderSnapshot} is read, so this
+   * method does not lock the edits.
+   *
+   * During {@link Playback}, only the edits in the playback window are drawn,
+   * by {@link #drawWindowOutlines(RenderSnapshot, long, long)}.
+   */
+  public void drawOutlines()
   {
     if (isVisible())
     {
       if (Controller.instance.getDisplaySettings().isOutlineShown())
       {
-        for (BlockEdit edit : _edits)
+        RenderSnapshot snapshot = _snapshot;
+        Playback playback = Controller.instance.getPlayback();
+        if (playback.isActive())
+        {
+          drawWindowOutlines(snapshot, playback.getWindowStart(), playback.getWindowEnd());
+          return;
+        }
+
+        ViewCuller culler = ViewCuller.instance;
+        for (CellSnapshot cell : snapshot._cells)
+        {
+          if (culler.isCellVisible(cell._x, cell._y, cell._z))
+          {
+            boolean detailed = culler.isCellDetailed(cell._x, cell._y, cell._z);
+            OutlineCell target = cell._cell;
+            DisplayList list;
+            boolean current;
+            if (detailed)
+            {
+              list = target._outlines;
+              current = list.isCurrent() && target._compiledCount == cell._count;
+            }
+            else
+            {
+              list = target._aggregateOutlines;
+              current = list.isCurrent() && target._compiledAggregate == cell._aggregate;
+            }
+
+            if (!current)
+            {
+              if (list.beginCompile())
+              {
+                renderOutlines(snapshot._edits, cell, detailed);
+                list.endCompile();
+                if (detailed)
+                {
+                  target._compiledCount = cell._count;
+                }
+                else
+                {
+                  target._compiledAggregate = cell._aggregate;
+                }
+              }
+              else
+              {
+                renderOutlines(snapshot._edits, cell, detailed);
+                continue;
+              }
+            }
+            list.call();
+          }
+        } // for
+      }
+    }
+  } // drawOutlines
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the wireframe outlines of the edits in the specified time window.
+   *
+   * The edits in the window are a contiguous range of the time order of the
+   * edits (the path of the miner), found by binary search. The path is
+   * divided into fixed size blocks of {@link #PATH_BLOCK_SIZE} edits, each
+   * compiled into a display list once it is complete; blocks entirely inside the window are drawn from their
+   * lists, and only the partial blocks at either end of the window are drawn
+   * edit by edit. The cost of a frame is therefore proportional to the
+   * logarithm of the number of edits plus the number of edits shown, with a
+   * small constant for the edits shown.
+   *
+   * @param snapshot the published state of the edits.
+   * @param start the earliest time of edits to draw.
+   * @param end the latest time of edits to draw.
+   */
+  protected void drawWindowOutlines(RenderSnapshot snapshot, long start, long end)
+  {
+    BlockEditStore edits = snapshot._edits;
+    if (_pathBlocksVersion != edits.getOrderVersion())
+    {
+      deletePathBlocks();
+      _pathBlocksVersion = edits.getOrderVersion();
+    }
+
+    int low = edits.findRank(start);
+    int high = (end == Long.MAX_VALUE) ? edits.size() : edits.findRank(end + 1);
+    int firstBlock = (low + PATH_BLOCK_SIZE - 1) >> PATH_BLOCK_SHIFT;
+    int endBlock = high >> PATH_BLOCK_SHIFT;
+    if (firstBlock >= endBlock)
+    {
+      renderPath(edits, low, high, true);
+      return;
+    }
+
+    renderPath(edits, low, firstBlock << PATH_BLOCK_SHIFT, true);
+    ViewCuller culler = ViewCuller.instance;
+    for (int index = firstBlock; index < endBlock; ++index)
+    {
+      while (_pathBlocks.size() <= index)
+      {
+        _pathBlocks.add(new PathBlock(edits, _pathBlocks.size() << PATH_BLOCK_SHIFT));
+      }
+      PathBlock block = _pathBlocks.get(index);
+      if (culler.isBoxVisible(block._minX, block._minY, block._minZ,
+                              block._maxX, block._maxY, block._maxZ))
+      {
+        if (!block._outlines.isCurrent())
         {
-          edit.drawOutline();
+          int blockStart = index << PATH_BLOCK_SHIFT;
+          if (block._outlines.beginCompile())
+          {
+            renderPath(edits, blockStart, blockStart + PATH_BLOCK_SIZE, false);
+            block._outlines.endCompile();
+          }
+          else
+          {
+            renderPath(edits, blockStart, blockStart + PATH_BLOCK_SIZE, true);
+            continue;
+          }
+        }
+        block._outlines.call();
+      }
+    } // for
+    renderPath(edits, endBlock << PATH_BLOCK_SHIFT, high, true);
+  } // drawWindowOutlines
+
+  // --------------------------------------------------------------------------
+  /**
+   * Render the wireframe outlines of a range of edits in time order with the
+   * Tessellator.
+   *
+   * @param edits the published view of the edits.
+   * @param from the rank of the first edit.
+   * @param to the rank after the last edit.
+   * @param cull if true, skip edits that are out of view.
+   */
+  protected void renderPath(BlockEditStore edits, int from, int to, boolean cull)
+  {
+    if (from >= to)
+    {
+      return;
+    }
+    ViewCuller culler = ViewCuller.instance;
+    _outlineBatch.clear();
+    for (int i = from; i < to; ++i)
+    {
+      int row = edits.getRow(i);
+      int x = edits.getX(row);
+      int y = edits.getY(row);
+      int z = edits.getZ(row);
+      if (!cull || culler.isBlockVisible(x, y, z))
+      {
+        BlockType type = edits.getBlockType(row);
+        type.getBlockModel().addOutline(_outlineBatch, type, x, y, z);
+      }
+    }
+    _outlineBatch.draw();
+    _outlineBatch.clear();
+  } // renderPath
+
+  // --------------------------------------------------------------------------
+  /**
+   * Free the display lists of the blocks of the path and discard the blocks.
+   */
+  protected void deletePathBlocks()
+  {
+    for (PathBlock block : _pathBlocks)
+    {
+      block._outlines.delete();
+    }
+    _pathBlocks.clear();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the number of edits in each aggregate box drawn by
+   * {@link #drawOutlines()}.
+   *
+   * This is drawn separately from the outlines because billboards are
+   * positioned in world coordinates, outside of the view translation.
+   */
+  public void drawAggregateLabels()
+  {
+    if (isVisible())
+    {
+      DisplaySettings settings = Controller.instance.getDisplaySettings();
+      if (settings.isOutlineShown() && settings.areLabelsShown()
+          && !Controller.instance.getPlayback().isActive())
+      {
+        ViewCuller culler = ViewCuller.instance;
+        for (CellSnapshot cell : _snapshot._cells)
+        {
+          if (culler.isCellVisible(cell._x, cell._y, cell._z)
+              && !culler.isCellDetailed(cell._x, cell._y, cell._z))
+          {
+            cell._aggregate.drawLabels();
+          }
         }
       }
     }
+  } // drawAggregateLabels
+
+  // --------------------------------------------------------------------------
+  /**
+   * Free the display lists of outlines.
+   *
+   * This must be called from the render thread when the edits are discarded.
+   */
+  public synchronized void deleteOutlines()
+  {
+    for (OutlineCell cell : _outlineCells)
+    {
+      cell._outlines.delete();
+      cell._aggregateOutlines.delete();
+    }
+    deletePathBlocks();
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Render the wireframe outlines of one cell with the Tessellator.
+   *
+   * All outlines are accumulated in a single {@link LineBatch}, so that they
+   * are drawn with one draw call per distinct line width.
+   *
+   * @param edits the published view of the edits.
+   * @param cell the published state of the cell.
+   * @param detailed if true, render the outline of every block; otherwise,
+   *          render the aggregate boxes.
+   */
+  protected void renderOutlines(BlockEditStore edits, CellSnapshot cell, boolean detailed)
+  {
+    _outlineBatch.clear();
+    if (detailed)
+    {
+      int[] rows = cell._rows;
+      for (int i = 0; i < cell._count; ++i)
+      {
+        int row = rows[i];
+        BlockType type = edits.getBlockType(row);
+        type.getBlockModel().addOutline(_outlineBatch, type,
+          edits.getX(row), edits.getY(row), edits.getZ(row));
+      }
+    }
+    else
+    {
+      cell._aggregate.addOutlines(_outlineBatch);
+    }
+    _outlineBatch.draw();
+    _outlineBatch.clear();
+  } // renderOutlines
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the cell containing the specified block coordinates, creating it
+   * if necessary.
+   *
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @return the cell.
+   */
+  protected OutlineCell getOutlineCell(int x, int y, int z)
+  {
+    int cellX = x >> ViewCuller.CELL_SHIFT;
+    int cellY = y >> ViewCuller.CELL_SHIFT;
+    int cellZ = z >> ViewCuller.CELL_SHIFT;
+    long key = IntCoord.pack(cellX, cellY, cellZ);
+    int index = _outlineCellIndices.get(key);
+    if (index < 0)
+    {
+      index = _outlineCells.size();
+      _outlineCells.add(new OutlineCell(cellX, cellY, cellZ));
+      _outlineCellIndices.put(key, index);
+    }
+    return _outlineCells.get(index);
+  } // getOutlineCell
+
   // --------------------------------------------------------------------------
   /**
    * Draw direction vectors indicating motion of the miner.
    *
+   * The vertices of the vectors and their arrow heads are computed by
+   * {@link #buildVectors(BlockEditStore)} from the published path of the
+   * miner, i.e. the edits in time order, only for edits published since the vectors were last built, or
+   * from scratch when the vector settings change. They are replayed from
+   * primitive arrays each frame without allocating any objects or locking the
+   * edits.
+   *
+   * During {@link Playback}, only vectors between edits in the playback window
+   * are drawn. Since vectors are built in time order, those vectors are found
+   * by binary search.
+   *
    * @param colour the colour to draw the vectors.
    */
-  public synchronized void drawVectors(ARGB colour)
+  public void drawVectors(ARGB colour)
   {
     DisplaySettings settings = Controller.instance.getDisplaySettings();
-    if (settings.areVectorsShown() && isVisible() && !_edits.isEmpty())
+    BlockEditStore edits = _snapshot._edits;
+    if (settings.areVectorsShown() && isVisible() && edits.size() != 0)
     {
+      if (_vectorPathVersion != edits.getOrderVersion()
+          || _vectorLinkedCreations != settings.isLinkedCreations()
+          || _vectorLinkedDestructions != settings.isLinkedDestructions()
+          || _vectorMinLength != settings.getMinVectorLength())
+      {
+        _vectorPathVersion = edits.getOrderVersion();
+        _vectorLinkedCreations = settings.isLinkedCreations();
+        _vectorLinkedDestructions = settings.isLinkedDestructions();
+        _vectorMinLength = settings.getMinVectorLength();
+        _vectorCount = 0;
+        _vectorPathBuilt = 0;
+      }
+      if (_vectorPathBuilt < edits.size())
+      {
+        buildVectors(edits);
+      }
+
       final Tessellator tess = Tessellator.getInstance();
       final WorldRenderer wr = tess.getWorldRenderer();
       wr.startDrawing(GL11.GL_LINES);
@@ -187,96 +611,233 @@ public class PlayerEditSet
       wr.setColorRGBA_I(colour.getRGB(), colour.getAlpha());
       GL11.glLineWidth(0.5f);
 
-      // Unit X and Y vectors used for cross products to get arrow axes.
-      Vec3 unitX = new Vec3(1, 0, 0);
-      Vec3 unitY = new Vec3(0, 1, 0);
+      int low = 0;
+      int firstVector = 0;
+      int endVector = _vectorCount;
+      Playback playback = Controller.instance.getPlayback();
+      if (playback.isActive())
+      {
+        low = edits.findRank(playback.getWindowStart());
+        int high = edits.findRank(playback.getWindowEnd() + 1);
+        firstVector = findVector(low);
+        endVector = findVector(high);
+      }
 
-      // We only need to draw vectors if there are at least 2 edits.
-      Iterator<BlockEdit> it = _edits.iterator();
-      if (it.hasNext())
+      ViewCuller culler = ViewCuller.instance;
+      int[] bounds = _vectorBounds;
+      float[] v = _vectorVertices;
+      for (int vector = firstVector; vector < endVector; ++vector)
       {
-        BlockEdit prev = it.next();
-        while (it.hasNext())
+        // Skip vectors that start before the playback window or whose
+        // bounding box is out of view.
+        int b = vector * 6;
+        if (_vectorEnds[2 * vector] >= low
+            && culler.isBoxVisible(bounds[b], bounds[b + 1], bounds[b + 2],
+                                   bounds[b + 3], bounds[b + 4], bounds[b + 5]))
         {
-          BlockEdit next = it.next();
+          int end = (vector + 1) * VECTOR_FLOATS;
+          for (int i = vector * VECTOR_FLOATS; i < end; i += 3)
+          {
+            wr.addVertex(_vectorOriginX + v[i], _vectorOriginY + v[i + 1], _vectorOriginZ + v[i + 2]);
+          }
+        }
+      } // for
+      tess.draw();
+    } // if drawing
+  } // drawVectors
 
-          // Work out whether to link edits with vectors.
-          boolean show = (next.creation && settings.isLinkedCreations()) ||
-                         (!next.creation && settings.isLinkedDestructions());
-          if (show)
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index of the first vector that ends at or after the specified
+   * index in the time-ordered path.
+   *
+   * @param pathIndex the index in the path.
+   * @return the index of the vector, or the number of vectors if there is
+   *         none.
+   */
+  protected int findVector(int pathIndex)
+  {
+    int low = 0;
+    int high = _vectorCount;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (_vectorEnds[2 * mid + 1] < pathIndex)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  } // findVector
+
+  // --------------------------------------------------------------------------
+  /**
+   * Compute the vertices of the vectors and their arrow heads for the edits
+   * in the published path of the miner that have not yet been processed.
+   *
+   * Each vector is stored as {@link #VECTOR_VERTICES} vertices in
+   * _vectorVertices, relative to the first edit so that float precision
+   * suffices, as the block bounds of its two ends in _vectorBounds, and as the
+   * ranks of its two ends in _vectorEnds.
+   *
+   * @param edits the published view of the edits.
+   */
+  protected void buildVectors(BlockEditStore edits)
+  {
+    if (_vectorPathBuilt == 0)
+    {
+      int first = edits.getRow(0);
+      _vectorOriginX = edits.getX(first);
+      _vectorOriginY = edits.getY(first);
+      _vectorOriginZ = edits.getZ(first);
+      _vectorPrev = 0;
+      _vectorPathBuilt = 1;
+    }
+
+    int prev = _vectorPrev;
+    for (int next = _vectorPathBuilt; next < edits.size(); ++next)
+    {
+      // Work out whether to link edits with vectors.
+      int nextRow = edits.getRow(next);
+      boolean nextCreation = edits.isCreation(nextRow);
+      boolean show = (nextCreation && _vectorLinkedCreations) ||
+                     (!nextCreation && _vectorLinkedDestructions);
+      if (show)
+      {
+        // Ends of the vector, at block centres, relative to the origin.
+        int prevRow = edits.getRow(prev);
+        int px = edits.getX(prevRow), py = edits.getY(prevRow), pz = edits.getZ(prevRow);
+        int nx = edits.getX(nextRow), ny = edits.getY(nextRow), nz = edits.getZ(nextRow);
+        double pX = 0.5 + px - _vectorOriginX;
+        double pY = 0.5 + py - _vectorOriginY;
+        double pZ = 0.5 + pz - _vectorOriginZ;
+        double nX = 0.5 + nx - _vectorOriginX;
+        double nY = 0.5 + ny - _vectorOriginY;
+        double nZ = 0.5 + nz - _vectorOriginZ;
+
+        // Vector difference, from prev to next.
+        double dX = nX - pX;
+        double dY = nY - pY;
+        double dZ = nZ - pZ;
+
+        // Compute length. We want to scale the arrow heads by the length,
+        // so can't avoid the sqrt() here.
+        double length = Math.sqrt(dX * dX + dY * dY + dZ * dZ);
+        if (length >= _vectorMinLength)
+        {
+          // Length from arrow tip to midpoint of vector as a fraction of
+          // the total vector length. Scale the arrow in proportion to the
+          // square root of the length up to a maximum size.
+          double arrowSize = UNIT_VECTOR_ARROW_SIZE * Math.sqrt(length);
+          if (arrowSize > MAX_ARROW_SIZE)
           {
-            Vec3 pPos = new Vec3(0.5 + prev.x, 0.5 + prev.y, 0.5 + prev.z);
-            Vec3 nPos = new Vec3(0.5 + next.x, 0.5 + next.y, 0.5 + next.z);
-            // Vector difference, from prev to next.
-            Vec3 diff = nPos.subtract(pPos);
-
-            // Compute length. We want to scale the arrow heads by the length,
-            // so can't avoid the sqrt() here.
-            double length = diff.lengthVector();
-            if (length >= settings.getMinVectorLength())
-            {
-              // Draw the vector.
-              wr.addVertex(pPos.xCoord, pPos.yCoord, pPos.zCoord);
-              wr.addVertex(nPos.xCoord, nPos.yCoord, nPos.zCoord);
-
-              // Length from arrow tip to midpoint of vector as a fraction of
-              // the total vector length. Scale the arrow in proportion to the
-              // square root of the length up to a maximum size.
-              double arrowSize = UNIT_VECTOR_ARROW_SIZE * Math.sqrt(length);
-              if (arrowSize > MAX_ARROW_SIZE)
-              {
-                arrowSize = MAX_ARROW_SIZE;
-              }
-              double arrowScale = arrowSize / length;
-
-              // Position of the tip and tail of the arrow, sitting in the
-              // middle of the vector.
-              Vec3 tip = new Vec3(pPos.xCoord * (0.5 - arrowScale) + nPos.xCoord * (0.5 + arrowScale),
-                                  pPos.yCoord * (0.5 - arrowScale) + nPos.yCoord * (0.5 + arrowScale),
-                                  pPos.zCoord * (0.5 - arrowScale) + nPos.zCoord * (0.5 + arrowScale));
-              Vec3 tail = new Vec3(pPos.xCoord * (0.5 + arrowScale) + nPos.xCoord * (0.5 - arrowScale),
-                                   pPos.yCoord * (0.5 + arrowScale) + nPos.yCoord * (0.5 - arrowScale),
-                                   pPos.zCoord * (0.5 + arrowScale) + nPos.zCoord * (0.5 - arrowScale));
-
-              // Fin axes, perpendicular to vector. Scale by vector length.
-              // If the vector is colinear with the Y axis, use the X axis for
-              // the cross products to derive the fin directions.
-              Vec3 fin1;
-              if (Math.abs(unitY.dotProduct(diff)) > 0.9 * length)
-              {
-                fin1 = unitX.crossProduct(diff).normalize();
-              }
-              else
-              {
-                fin1 = unitY.crossProduct(diff).normalize();
-              }
+            arrowSize = MAX_ARROW_SIZE;
+          }
+          double arrowScale = arrowSize / length;
+
+          // Position of the tip and tail of the arrow, sitting in the
+          // middle of the vector.
+          double tipX = pX * (0.5 - arrowScale) + nX * (0.5 + arrowScale);
+          double tipY = pY * (0.5 - arrowScale) + nY * (0.5 + arrowScale);
+          double tipZ = pZ * (0.5 - arrowScale) + nZ * (0.5 + arrowScale);
+          double tailX = pX * (0.5 + arrowScale) + nX * (0.5 - arrowScale);
+          double tailY = pY * (0.5 + arrowScale) + nY * (0.5 - arrowScale);
+          double tailZ = pZ * (0.5 + arrowScale) + nZ * (0.5 - arrowScale);
+
+          // Fin axes, perpendicular to vector. If the vector is colinear
+          // with the Y axis, use the X axis for the cross products to derive
+          // the fin directions: X x d = (0, -dZ, dY) and Y x d = (dZ, 0, -dX).
+          double f1X, f1Y, f1Z;
+          if (Math.abs(dY) > 0.9 * length)
+          {
+            f1X = 0;
+            f1Y = -dZ;
+            f1Z = dY;
+          }
+          else
+          {
+            f1X = dZ;
+            f1Y = 0;
+            f1Z = -dX;
+          }
+          double f1Length = Math.sqrt(f1X * f1X + f1Y * f1Y + f1Z * f1Z);
+
+          // Second fin axis: fin1 x d.
+          double f2X = f1Y * dZ - f1Z * dY;
+          double f2Y = f1Z * dX - f1X * dZ;
+          double f2Z = f1X * dY - f1Y * dX;
+          double f2Length = Math.sqrt(f2X * f2X + f2Y * f2Y + f2Z * f2Z);
+
+          // Scale the unit fin axes to the arrow size.
+          double s1 = (f1Length < 1.0E-4) ? 0 : arrowSize / f1Length;
+          double s2 = (f2Length < 1.0E-4) ? 0 : arrowSize / f2Length;
+          f1X *= s1;
+          f1Y *= s1;
+          f1Z *= s1;
+          f2X *= s2;
+          f2Y *= s2;
+          f2Z *= s2;
+
+          if (_vectorCount * VECTOR_FLOATS == _vectorVertices.length)
+          {
+            int capacity = Math.max(16, _vectorCount * 2);
+            _vectorVertices = Arrays.copyOf(_vectorVertices, capacity * VECTOR_FLOATS);
+            _vectorBounds = Arrays.copyOf(_vectorBounds, capacity * 6);
+            _vectorEnds = Arrays.copyOf(_vectorEnds, capacity * 2);
+          }
+          _vectorEnds[2 * _vectorCount] = prev;
+          _vectorEnds[2 * _vectorCount + 1] = next;
+
+          int b = _vectorCount * 6;
+          _vectorBounds[b] = Math.min(px, nx);
+          _vectorBounds[b + 1] = Math.min(py, ny);
+          _vectorBounds[b + 2] = Math.min(pz, nz);
+          _vectorBounds[b + 3] = Math.max(px, nx) + 1;
+          _vectorBounds[b + 4] = Math.max(py, ny) + 1;
+          _vectorBounds[b + 5] = Math.max(pz, nz) + 1;
 
-              Vec3 fin2 = fin1.crossProduct(diff).normalize();
-
-              Vec3 draw1 = new Vec3(fin1.xCoord * arrowScale * length,
-                                    fin1.yCoord * arrowScale * length,
-                                    fin1.zCoord * arrowScale * length);
-              Vec3 draw2 = new Vec3(fin2.xCoord * arrowScale * length,
-                                    fin2.yCoord * arrowScale * length,
-                                    fin2.zCoord * arrowScale * length);
-
-              // Draw four fins.
-              wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
-              wr.addVertex(tail.xCoord + draw1.xCoord, tail.yCoord + draw1.yCoord, tail.zCoord + draw1.zCoord);
-              wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
-              wr.addVertex(tail.xCoord - draw1.xCoord, tail.yCoord - draw1.yCoord, tail.zCoord - draw1.zCoord);
-              wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
-              wr.addVertex(tail.xCoord + draw2.xCoord, tail.yCoord + draw2.yCoord, tail.zCoord + draw2.zCoord);
-              wr.addVertex(tip.xCoord, tip.yCoord, tip.zCoord);
-              wr.addVertex(tail.xCoord - draw2.xCoord, tail.yCoord - draw2.yCoord, tail.zCoord - draw2.zCoord);
-            } // if we are drawing this vector
-            prev = next;
-          } // if
-        } // while
-        tess.draw();
+          // The vector, then four fins.
+          int i = _vectorCount * VECTOR_FLOATS;
+          i = putVertex(i, pX, pY, pZ);
+          i = putVertex(i, nX, nY, nZ);
+          i = putVertex(i, tipX, tipY, tipZ);
+          i = putVertex(i, tailX + f1X, tailY + f1Y, tailZ + f1Z);
+          i = putVertex(i, tipX, tipY, tipZ);
+          i = putVertex(i, tailX - f1X, tailY - f1Y, tailZ - f1Z);
+          i = putVertex(i, tipX, tipY, tipZ);
+          i = putVertex(i, tailX + f2X, tailY + f2Y, tailZ + f2Z);
+          i = putVertex(i, tipX, tipY, tipZ);
+          putVertex(i, tailX - f2X, tailY - f2Y, tailZ - f2Z);
+          ++_vectorCount;
+        } // if we are drawing this vector
+        prev = next;
       } // if
-    } // if drawing
-  } // drawVectors
+    } // for
+    _vectorPrev = prev;
+    _vectorPathBuilt = edits.size();
+  } // buildVectors
+
+  // --------------------------------------------------------------------------
+  /**
+   * Store a vertex in _vectorVertices.
+   *
+   * @param i the index of the x coordinate of the vertex.
+   * @param x the x coordinate, relative to the vector origin.
+   * @param y the y coordinate, relative to the vector origin.
+   * @param z the z coordinate, relative to the vector origin.
+   * @return the index of the next vertex.
+   */
+  protected int putVertex(int i, double x, double y, double z)
+  {
+    _vectorVertices[i] = (float) x;
+    _vectorVertices[i + 1] = (float) y;
+    _vectorVertices[i + 2] = (float) z;
+    return i + 3;
+  }
 
   // --------------------------------------------------------------------------
   /**
@@ -289,24 +850,322 @@ public class PlayerEditSet
   {
     Calendar calendar = Calendar.getInstance();
     int editCount = 0;
-    for (BlockEdit edit : _edits)
+    for (int rank = 0; rank < _edits.size(); ++rank)
     {
-      calendar.setTimeInMillis(edit.time);
+      int row = _edits.getRow(rank);
+      BlockType type = _edits.getBlockType(row);
+      calendar.setTimeInMillis(_edits.getTime(row));
       int year = calendar.get(Calendar.YEAR);
       int month = calendar.get(Calendar.MONTH) + 1;
       int day = calendar.get(Calendar.DAY_OF_MONTH);
       int hour = calendar.get(Calendar.HOUR_OF_DAY);
       int minute = calendar.get(Calendar.MINUTE);
       int second = calendar.get(Calendar.SECOND);
-      char action = edit.creation ? 'c' : 'd';
+      char action = _edits.isCreation(row) ? 'c' : 'd';
       writer.format("%4d-%02d-%02d|%02d:%02d:%02d|%s|%c|%d|%d|%d|%d|%d\n",
-                    year, month, day, hour, minute, second, edit.player, action,
-                    edit.type.getId(), edit.type.getData(), edit.x, edit.y, edit.z);
+                    year, month, day, hour, minute, second, _player, action,
+                    type.getId(), type.getData(),
+                    _edits.getX(row), _edits.getY(row), _edits.getZ(row));
       ++editCount;
     } // for
     return editCount;
   } // save
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return a new BlockEdit describing the edit in the specified row of the
+   * store.
+   *
+   * @param row the row number in {@link #_edits}.
+   * @return a new BlockEdit describing the edit.
+   */
+  protected BlockEdit getBlockEdit(int row)
+  {
+    return getBlockEdit(_edits, row);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a new BlockEdit describing the edit in the specified row of the
+   * specified store or view of it.
+   *
+   * @param edits {@link #_edits} or a view of it.
+   * @param row the row number.
+   * @return a new BlockEdit describing the edit.
+   */
+  protected BlockEdit getBlockEdit(BlockEditStore edits, int row)
+  {
+    BlockEdit edit = new BlockEdit(edits.getTime(row), _player,
+      edits.isCreation(row), edits.getX(row), edits.getY(row),
+      edits.getZ(row), edits.getBlockType(row));
+    edit.playerEditSet = this;
+    return edit;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The edits in one cubic cell of the world, and their compiled outlines.
+   *
+   * The edits are listed by their row numbers in the {@link BlockEditStore}.
+   * The row numbers and aggregate boxes are modified by the writer,
+   * under the lock of the PlayerEditSet. The display lists and the record of
+   * what they contain are only accessed by the render thread.
+   */
+  protected static class OutlineCell
+  {
+    /**
+     * Constructor.
+     *
+     * @param x the x coordinate of the cell.
+     * @param y the y coordinate of the cell.
+     * @param z the z coordinate of the cell.
+     */
+    public OutlineCell(int x, int y, int z)
+    {
+      _x = x;
+      _y = y;
+      _z = z;
+    }
+
+    /**
+     * Add an edit in this cell.
+     *
+     * @param row the row number of the edit in the store.
+     * @param type the type of the edited block.
+     * @param x the x coordinate of the block.
+     * @param y the y coordinate of the block.
+     * @param z the z coordinate of the block.
+     */
+    public void add(int row, BlockType type, int x, int y, int z)
+    {
+      if (_count == _rows.length)
+      {
+        _rows = Arrays.copyOf(_rows, _count * 2);
+      }
+      _rows[_count++] = row;
+      _aggregate.add(type, x, y, z);
+    }
+
+    /**
+     * The x coordinate of the cell.
+     */
+    int            _x;
+
+    /**
+     * The y coordinate of the cell.
+     */
+    int            _y;
+
+    /**
+     * The z coordinate of the cell.
+     */
+    int            _z;
+
+    /**
+     * The number of edits in the cell.
+     */
+    int            _count;
+
+    /**
+     * The row number of each edit in the cell.
+     */
+    int[]          _rows              = new int[8];
+
+    /**
+     * The bounding boxes of the edits in the cell, by block type.
+     */
+    AggregateBoxes _aggregate         = new AggregateBoxes();
+
+    /**
+     * The most recently published state of the cell, or null if not yet
+     * published.
+     */
+    CellSnapshot   _snapshot;
+
+    /**
+     * The compiled outlines of the edits in the cell.
+     */
+    DisplayList    _outlines          = new DisplayList();
+
+    /**
+     * The number of edits compiled into _outlines.
+     */
+    int            _compiledCount     = -1;
+
+    /**
+     * The compiled outlines of the bounding boxes.
+     */
+    DisplayList    _aggregateOutlines = new DisplayList();
+
+    /**
+     * The published bounding boxes compiled into _aggregateOutlines.
+     */
+    AggregateBoxes _compiledAggregate;
+  } // inner class OutlineCell
+
+  // --------------------------------------------------------------------------
+  /**
+   * An immutable view of the edits in an {@link OutlineCell} at the time it
+   * was published.
+   */
+  protected static class CellSnapshot
+  {
+    /**
+     * Constructor.
+     *
+     * @param cell the cell to capture.
+     */
+    public CellSnapshot(OutlineCell cell)
+    {
+      _cell = cell;
+      _x = cell._x;
+      _y = cell._y;
+      _z = cell._z;
+      _count = cell._count;
+      _rows = cell._rows;
+      _aggregate = cell._aggregate.copy();
+    }
+
+    /**
+     * The cell, which holds the render thread's display lists.
+     */
+    final OutlineCell    _cell;
+
+    /**
+     * The x coordinate of the cell.
+     */
+    final int            _x;
+
+    /**
+     * The y coordinate of the cell.
+     */
+    final int            _y;
+
+    /**
+     * The z coordinate of the cell.
+     */
+    final int            _z;
+
+    /**
+     * The number of edits in the cell.
+     */
+    final int            _count;
+
+    /**
+     * The row numbers of the edits; only the first _count are valid.
+     */
+    final int[]          _rows;
+
+    /**
+     * A copy of the bounding boxes of the edits.
+     */
+    final AggregateBoxes _aggregate;
+  } // inner class CellSnapshot
+
+  // --------------------------------------------------------------------------
+  /**
+   * An immutable view of everything the render thread needs to draw this
+   * player's edits, published by {@link PlayerEditSet#publish()}.
+   */
+  protected static class RenderSnapshot
+  {
+    /**
+     * Constructor.
+     *
+     * @param cells the published cells.
+     * @param edits a view of the edits.
+     * @param heat a copy of the per-column counts of the edits.
+     */
+    public RenderSnapshot(CellSnapshot[] cells, BlockEditStore edits, HeatmapCounts heat)
+    {
+      _cells = cells;
+      _edits = edits;
+      _heat = heat;
+    }
+
+    /**
+     * The published cells.
+     */
+    final CellSnapshot[]  _cells;
+
+    /**
+     * A view of the edits, whose time order is the path of the miner.
+     */
+    final BlockEditStore  _edits;
+
+    /**
+     * A copy of the per-column counts of the edits.
+     */
+    final HeatmapCounts   _heat;
+  } // inner class RenderSnapshot
+
+  // --------------------------------------------------------------------------
+  /**
+   * A complete block of {@link #PATH_BLOCK_SIZE} consecutive edits in the
+   * time-ordered path, with their compiled outlines, used to draw the edits
+   * in a {@link Playback} window. Only accessed by the render thread.
+   */
+  protected static class PathBlock
+  {
+    /**
+     * Constructor.
+     *
+     * @param edits the published view of the edits, which must include every
+     *          edit in the block.
+     * @param start the rank of the first edit in the block.
+     */
+    public PathBlock(BlockEditStore edits, int start)
+    {
+      _minX = _minY = _minZ = Integer.MAX_VALUE;
+      _maxX = _maxY = _maxZ = Integer.MIN_VALUE;
+      for (int i = start; i < start + PATH_BLOCK_SIZE; ++i)
+      {
+        int row = edits.getRow(i);
+        _minX = Math.min(_minX, edits.getX(row));
+        _minY = Math.min(_minY, edits.getY(row));
+        _minZ = Math.min(_minZ, edits.getZ(row));
+        _maxX = Math.max(_maxX, edits.getX(row) + 1);
+        _maxY = Math.max(_maxY, edits.getY(row) + 1);
+        _maxZ = Math.max(_maxZ, edits.getZ(row) + 1);
+      }
+    } // PathBlock
+
+    /**
+     * The minimum x coordinate of the edits in the block.
+     */
+    int         _minX;
+
+    /**
+     * The minimum y coordinate of the edits in the block.
+     */
+    int         _minY;
+
+    /**
+     * The minimum z coordinate of the edits in the block.
+     */
+    int         _minZ;
+
+    /**
+     * The maximum x coordinate of the edits in the block, plus one.
+     */
+    int         _maxX;
+
+    /**
+     * The maximum y coordinate of the edits in the block, plus one.
+     */
+    int         _maxY;
+
+    /**
+     * The maximum z coordinate of the edits in the block, plus one.
+     */
+    int         _maxZ;
+
+    /**
+     * The compiled outlines of the edits in the block.
+     */
+    DisplayList _outlines = new DisplayList();
+  } // inner class PathBlock
+
   // --------------------------------------------------------------------------
   /**
    * The name of the player who did these edits.
@@ -314,15 +1173,154 @@ public class PlayerEditSet
   protected String              _player;
 
   /**
-   * A set of BlockEdit instances, ordered from oldest (lowest time value) to
+   * Columnar storage of the edits, ordered from oldest (lowest time value) to
    * most recent.
    */
-  protected TreeSet<BlockEdit>  _edits                 = new TreeSet<BlockEdit>(new BlockEditComparator());
+  protected BlockEditStore      _edits                 = new BlockEditStore();
 
   /**
    * True if this player's edits are visible.
    */
-  protected boolean             _visible               = true;
+  protected volatile boolean    _visible               = true;
+
+  /**
+   * The cells of the world containing edits, in the order they were created.
+   */
+  protected ArrayList<OutlineCell> _outlineCells       = new ArrayList<OutlineCell>();
+
+  /**
+   * Map from cell coordinates, packed by {@link IntCoord#pack(int, int, int)},
+   * to the index of the cell in {@link #_outlineCells}.
+   */
+  protected LongIntMap          _outlineCellIndices    = new LongIntMap(0);
+
+  /**
+   * The number of edits per column of the world, for the heatmap.
+   */
+  protected HeatmapCounts       _heat                  = new HeatmapCounts();
+
+  /**
+   * True if edits have been added since the last call to {@link #publish()}.
+   */
+  protected boolean             _changed;
+
+  /**
+   * The most recently published state of the edits, which is all that the
+   * render thread reads.
+   */
+  protected volatile RenderSnapshot _snapshot          = new RenderSnapshot(
+                                                         new CellSnapshot[0], new BlockEditStore(),
+                                                         new HeatmapCounts());
+
+  /**
+   * The complete blocks of the path that have been drawn in a playback
+   * window, in path order; only used in the render thread.
+   */
+  protected ArrayList<PathBlock> _pathBlocks           = new ArrayList<PathBlock>();
+
+  /**
+   * The version of the path from which _pathBlocks were built.
+   */
+  protected int                 _pathBlocksVersion     = -1;
+
+  /**
+   * The batch into which outlines are tessellated, shared by all instances to
+   * avoid reallocating its arrays; only used in the render thread.
+   */
+  protected static final LineBatch _outlineBatch       = new LineBatch();
+
+  /**
+   * The version of the path from which the vectors were built.
+   */
+  protected int                 _vectorPathVersion     = -1;
+
+  /**
+   * The number of edits in the path that have been processed into vectors.
+   */
+  protected int                 _vectorPathBuilt;
+
+  /**
+   * The index in the path of the start of the next vector.
+   */
+  protected int                 _vectorPrev;
+
+  /**
+   * The value of {@link DisplaySettings#isLinkedCreations()} when the vectors
+   * were last built.
+   */
+  protected boolean             _vectorLinkedCreations;
+
+  /**
+   * The value of {@link DisplaySettings#isLinkedDestructions()} when the
+   * vectors were last built.
+   */
+  protected boolean             _vectorLinkedDestructions;
+
+  /**
+   * The value of {@link DisplaySettings#getMinVectorLength()} when the vectors
+   * were last built.
+   */
+  protected float               _vectorMinLength;
+
+  /**
+   * The number of vectors built.
+   */
+  protected int                 _vectorCount;
+
+  /**
+   * The coordinates of the block of the oldest edit, relative to which the
+   * vector vertices are stored.
+   */
+  protected int                 _vectorOriginX;
+
+  /**
+   * The y coordinate of the vector origin.
+   */
+  protected int                 _vectorOriginY;
+
+  /**
+   * The z coordinate of the vector origin.
+   */
+  protected int                 _vectorOriginZ;
+
+  /**
+   * The vertices of each vector and its arrow head, {@link #VECTOR_FLOATS}
+   * floats per vector.
+   */
+  protected float[]             _vectorVertices        = new float[0];
+
+  /**
+   * The minimum and maximum block coordinates of the ends of each vector, six
+   * per vector, for culling.
+   */
+  protected int[]               _vectorBounds          = new int[0];
+
+  /**
+   * The indices in the time-ordered path of the start and end edits of each
+   * vector, two per vector, in ascending order.
+   */
+  protected int[]               _vectorEnds            = new int[0];
+
+  /**
+   * The number of vertices in a vector with its arrow head: two for the
+   * vector and two for each of four fins.
+   */
+  protected static final int    VECTOR_VERTICES        = 10;
+
+  /**
+   * The number of floats stored per vector.
+   */
+  protected static final int    VECTOR_FLOATS          = VECTOR_VERTICES * 3;
+
+  /**
+   * The base 2 logarithm of the number of edits in a {@link PathBlock}.
+   */
+  protected static final int    PATH_BLOCK_SHIFT       = 10;
+
+  /**
+   * The number of edits in a {@link PathBlock}.
+   */
+  protected static final int    PATH_BLOCK_SIZE        = 1 << PATH_BLOCK_SHIFT;
 
   /**
    * Size of the arrow on a unit length vector.
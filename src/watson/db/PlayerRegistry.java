@@ -0,0 +1,126 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// ----------------------------------------------------------------------------
+/**
+ * Interns player names and assigns each distinct player a small, non-negative
+ * integer ordinal.
+ *
+ * Player names are case-insensitive, so all spellings of a name that differ
+ * only in case share an ordinal. Each spelling is remembered once it has been
+ * seen, so looking up the ordinal of a previously seen spelling is a single
+ * hash map access, without case folding or allocation. Ordinals are never
+ * reused, which allows them to index arrays and BitSets.
+ *
+ * The methods of this class are synchronized, since edits are created both in
+ * the main thread and in the file loading thread.
+ */
+public class PlayerRegistry
+{
+  /**
+   * The single instance of this class.
+   */
+  public static final PlayerRegistry instance = new PlayerRegistry();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the ordinal of the specified player, assigning a new ordinal if the
+   * player has not been seen before.
+   *
+   * @param player the player name, in any case.
+   * @return the ordinal of the player.
+   */
+  public synchronized int getOrdinal(String player)
+  {
+    Integer ordinal = _ordinals.get(player);
+    if (ordinal == null)
+    {
+      String lowerName = player.toLowerCase();
+      ordinal = _ordinals.get(lowerName);
+      if (ordinal == null)
+      {
+        ordinal = _lowerNames.size();
+        _lowerNames.add(lowerName);
+        _ordinals.put(lowerName, ordinal);
+      }
+      _ordinals.put(player, ordinal);
+    }
+    return ordinal;
+  } // getOrdinal
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the ordinal of the specified player, or -1 if the player has not
+   * been seen before.
+   *
+   * Unlike {@link #getOrdinal(String)}, this method does not register the
+   * player, and so is suitable for looking up names typed in by the user.
+   *
+   * @param player the player name, in any case.
+   * @return the ordinal of the player, or -1 if not known.
+   */
+  public synchronized int findOrdinal(String player)
+  {
+    Integer ordinal = _ordinals.get(player);
+    if (ordinal == null)
+    {
+      ordinal = _ordinals.get(player.toLowerCase());
+    }
+    return (ordinal != null) ? ordinal : -1;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the shared lower case name of the player with the specified
+   * ordinal.
+   *
+   * @param ordinal the ordinal.
+   * @return the lower case name of the player.
+   */
+  public synchronized String getLowerName(int ordinal)
+  {
+    return _lowerNames.get(ordinal);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a shared String instance equal to the specified player name.
+   *
+   * Chat parsing creates a new String for the player name of every result;
+   * replacing it with the shared instance allows the parsed copy to be
+   * discarded immediately.
+   *
+   * @param player the player name.
+   * @return the shared String instance for that exact spelling.
+   */
+  public synchronized String intern(String player)
+  {
+    String shared = _spellings.get(player);
+    if (shared == null)
+    {
+      _spellings.put(player, player);
+      shared = player;
+    }
+    return shared;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Map from every spelling of every player name seen to the ordinal of that
+   * player.
+   */
+  protected HashMap<String, Integer> _ordinals   = new HashMap<String, Integer>();
+
+  /**
+   * The lower case name of each player, indexed by ordinal.
+   */
+  protected ArrayList<String>        _lowerNames = new ArrayList<String>();
+
+  /**
+   * Map from every spelling of every player name seen to the shared String
+   * instance of that spelling.
+   */
+  protected HashMap<String, String>  _spellings  = new HashMap<String, String>();
+} // class PlayerRegistry
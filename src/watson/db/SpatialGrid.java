@@ -0,0 +1,147 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import watson.model.ViewCuller;
+
+// ----------------------------------------------------------------------------
+/**
+ * Buckets items by the cubic cell of the world that contains them, so that
+ * items in cells that cannot be seen can be skipped without being examined.
+ *
+ * Cells are {@link ViewCuller#CELL_SIZE} blocks on each side.
+ *
+ * @param <T> the item type. Items are compared with equals() on removal.
+ */
+public class SpatialGrid<T>
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Add an item at the specified block coordinates.
+   *
+   * @param x the x coordinate.
+   * @param y the y coordinate.
+   * @param z the z coordinate.
+   * @param item the item.
+   */
+  public void add(int x, int y, int z, T item)
+  {
+    int cellX = x >> ViewCuller.CELL_SHIFT;
+    int cellY = y >> ViewCuller.CELL_SHIFT;
+    int cellZ = z >> ViewCuller.CELL_SHIFT;
+    Long key = IntCoord.pack(cellX, cellY, cellZ);
+    Cell<T> cell = _cells.get(key);
+    if (cell == null)
+    {
+      cell = new Cell<T>(cellX, cellY, cellZ);
+      _cells.put(key, cell);
+    }
+    cell._items.add(item);
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove an item that was added at the specified block coordinates.
+   *
+   * @param x the x coordinate.
+   * @param y the y coordinate.
+   * @param z the z coordinate.
+   * @param item the item.
+   * @return true if the item was found and removed.
+   */
+  public boolean remove(int x, int y, int z, T item)
+  {
+    Long key = IntCoord.pack(x >> ViewCuller.CELL_SHIFT, y >> ViewCuller.CELL_SHIFT,
+      z >> ViewCuller.CELL_SHIFT);
+    Cell<T> cell = _cells.get(key);
+    if (cell != null && cell._items.remove(item))
+    {
+      if (cell._items.isEmpty())
+      {
+        _cells.remove(key);
+      }
+      return true;
+    }
+    return false;
+  } // remove
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove all items.
+   */
+  public void clear()
+  {
+    _cells.clear();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add all items in cells that are visible in the current frame to the
+   * specified collection.
+   *
+   * Items in a visible cell are not individually tested for visibility.
+   *
+   * @param culler the visibility test for the current frame.
+   * @param result the collection to which the items are added.
+   */
+  public void getVisibleItems(ViewCuller culler, Collection<T> result)
+  {
+    for (Cell<T> cell : _cells.values())
+    {
+      if (culler.isCellVisible(cell._x, cell._y, cell._z))
+      {
+        result.addAll(cell._items);
+      }
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The items in one cell.
+   */
+  protected static class Cell<T>
+  {
+    /**
+     * Constructor.
+     *
+     * @param x the x coordinate of the cell.
+     * @param y the y coordinate of the cell.
+     * @param z the z coordinate of the cell.
+     */
+    public Cell(int x, int y, int z)
+    {
+      _x = x;
+      _y = y;
+      _z = z;
+    }
+
+    /**
+     * The x coordinate of the cell.
+     */
+    int          _x;
+
+    /**
+     * The y coordinate of the cell.
+     */
+    int          _y;
+
+    /**
+     * The z coordinate of the cell.
+     */
+    int          _z;
+
+    /**
+     * The items in the cell.
+     */
+    ArrayList<T> _items = new ArrayList<T>();
+  } // inner class Cell
+
+  // --------------------------------------------------------------------------
+  /**
+   * Map from cell coordinates, packed by {@link IntCoord#pack(int, int, int)},
+   * to the cell.
+   */
+  protected HashMap<Long, Cell<T>> _cells = new HashMap<Long, Cell<T>>();
+} // class SpatialGrid
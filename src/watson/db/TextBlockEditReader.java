@@ -0,0 +1,477 @@
+package watson.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+// ----------------------------------------------------------------------------
+/**
+ * A {@link BlockEditReader} for the text format written by
+ * {@link BlockEditSet#save(java.io.File)}.
+ *
+ * Each edit line has the form:
+ *
+ * <pre>
+ * YYYY-MM-DD|hh:mm:ss|player|action|id|data|x|y|z
+ * </pre>
+ *
+ * and each annotation line has the form:
+ *
+ * <pre>
+ * #x|y|z|text
+ * </pre>
+ *
+ * Lines that match neither form are ignored.
+ *
+ * The file is memory mapped and tokenized a byte at a time, rather than being
+ * decoded into Strings and matched against regular expressions. Dates are
+ * converted to milliseconds by {@link TimeStamp#civilToMillis}, and player
+ * names are shared between all edits by the same player.
+ */
+public class TextBlockEditReader implements BlockEditReader
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param file the file to read.
+   */
+  public TextBlockEditReader(File file)
+    throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try
+    {
+      FileChannel channel = raf.getChannel();
+      _buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally
+    {
+      // The mapping remains valid after the file is closed.
+      raf.close();
+    }
+    _limit = _buffer.limit();
+    _editCount = countEdits();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.db.BlockEditReader#getEditCount()
+   */
+  @Override
+  public int getEditCount()
+  {
+    return _editCount;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.db.BlockEditReader#read(java.util.List, java.util.List, int)
+   */
+  @Override
+  public boolean read(List<BlockEdit> edits, List<Annotation> annotations, int maxEdits)
+    throws IOException
+  {
+    int count = 0;
+    while (count < maxEdits)
+    {
+      if (_pos >= _limit)
+      {
+        return false;
+      }
+
+      // Find the end of the line and the start of the next, allowing for any
+      // of the line terminators accepted by BufferedReader.readLine().
+      int end = _pos;
+      while (end < _limit && _buffer.get(end) != '\n' && _buffer.get(end) != '\r')
+      {
+        ++end;
+      }
+      int next = end + 1;
+      if (end < _limit - 1 && _buffer.get(end) == '\r' && _buffer.get(end + 1) == '\n')
+      {
+        ++next;
+      }
+
+      _lineEnd = end;
+      _error = false;
+      if (_buffer.get(_pos) == '#')
+      {
+        ++_pos;
+        Annotation annotation = parseAnnotation();
+        if (annotation != null)
+        {
+          annotations.add(annotation);
+        }
+      }
+      else
+      {
+        BlockEdit edit = parseEdit();
+        if (edit != null)
+        {
+          edits.add(edit);
+          ++count;
+        }
+      }
+      _pos = next;
+    } // while
+    return true;
+  } // read
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.db.BlockEditReader#close()
+   */
+  @Override
+  public void close()
+    throws IOException
+  {
+    // The mapped buffer is released when garbage collected.
+    _buffer = null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse the current line as an edit.
+   *
+   * @return the edit, or null if the line is not a valid edit.
+   */
+  protected BlockEdit parseEdit()
+  {
+    int year = parseFixedDigits(4);
+    expect('-');
+    int month = parseFixedDigits(2);
+    expect('-');
+    int day = parseFixedDigits(2);
+    expect('|');
+    int hour = parseFixedDigits(2);
+    expect(':');
+    int minute = parseFixedDigits(2);
+    expect(':');
+    int second = parseFixedDigits(2);
+    expect('|');
+    String player = parsePlayer();
+    expect('|');
+    boolean created = false;
+    if (!_error && _pos < _lineEnd)
+    {
+      byte action = _buffer.get(_pos++);
+      created = (action == 'c');
+      _error = (action != 'c' && action != 'd');
+    }
+    else
+    {
+      _error = true;
+    }
+    expect('|');
+    int id = parseInt(false);
+    expect('|');
+    int data = parseInt(false);
+    expect('|');
+    int x = parseInt(true);
+    expect('|');
+    int y = parseInt(false);
+    expect('|');
+    int z = parseInt(true);
+
+    if (_error || _pos != _lineEnd)
+    {
+      return null;
+    }
+
+    long time = TimeStamp.civilToMillis(year, month, day, hour, minute, second);
+    BlockType type = BlockTypeRegistry.instance.getBlockTypeByIdData(id, data);
+    return new BlockEdit(time, player, created, x, y, z, type);
+  } // parseEdit
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse the remainder of the current line, after the '#', as an annotation.
+   *
+   * @return the annotation, or null if the line is not a valid annotation.
+   */
+  protected Annotation parseAnnotation()
+  {
+    int x = parseInt(true);
+    expect('|');
+    int y = parseInt(false);
+    expect('|');
+    int z = parseInt(true);
+    expect('|');
+    if (_error)
+    {
+      return null;
+    }
+
+    byte[] text = new byte[_lineEnd - _pos];
+    for (int i = 0; i < text.length; ++i)
+    {
+      text[i] = _buffer.get(_pos + i);
+    }
+    _pos = _lineEnd;
+    return new Annotation(x, y, z, new String(text, CHARSET));
+  } // parseAnnotation
+
+  // --------------------------------------------------------------------------
+  /**
+   * Consume the specified character, or flag an error if it is not next.
+   *
+   * @param c the expected character.
+   */
+  protected void expect(char c)
+  {
+    if (!_error && _pos < _lineEnd && _buffer.get(_pos) == c)
+    {
+      ++_pos;
+    }
+    else
+    {
+      _error = true;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse exactly the specified number of decimal digits.
+   *
+   * @param digits the number of digits.
+   * @return the value, or 0 if an error was flagged.
+   */
+  protected int parseFixedDigits(int digits)
+  {
+    if (_error || _lineEnd - _pos < digits)
+    {
+      _error = true;
+      return 0;
+    }
+    int value = 0;
+    for (int i = 0; i < digits; ++i)
+    {
+      int digit = _buffer.get(_pos++) - '0';
+      if (digit < 0 || digit > 9)
+      {
+        _error = true;
+        return 0;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  } // parseFixedDigits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a decimal integer of one or more digits.
+   *
+   * @param signed if true, a leading '-' is allowed.
+   * @return the value, or 0 if an error was flagged.
+   */
+  protected int parseInt(boolean signed)
+  {
+    if (_error)
+    {
+      return 0;
+    }
+    boolean negative = false;
+    if (signed && _pos < _lineEnd && _buffer.get(_pos) == '-')
+    {
+      negative = true;
+      ++_pos;
+    }
+    int start = _pos;
+    int value = 0;
+    while (_pos < _lineEnd)
+    {
+      int digit = _buffer.get(_pos) - '0';
+      if (digit < 0 || digit > 9)
+      {
+        break;
+      }
+      value = value * 10 + digit;
+      ++_pos;
+    }
+    if (_pos == start)
+    {
+      _error = true;
+    }
+    return negative ? -value : value;
+  } // parseInt
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a player name of one or more word characters ([a-zA-Z_0-9]) and
+   * return the shared String instance for that name.
+   *
+   * @return the player name, or null if an error was flagged.
+   */
+  protected String parsePlayer()
+  {
+    if (_error)
+    {
+      return null;
+    }
+    int start = _pos;
+    while (_pos < _lineEnd && isWordChar(_buffer.get(_pos)))
+    {
+      ++_pos;
+    }
+    int length = _pos - start;
+    if (length == 0)
+    {
+      _error = true;
+      return null;
+    }
+
+    // Consecutive lines are usually by the same player, so try the most
+    // recently used name first.
+    if (_lastPlayer >= 0 && matches(_playerBytes.get(_lastPlayer), start, length))
+    {
+      return _playerNames.get(_lastPlayer);
+    }
+    for (int i = 0; i < _playerBytes.size(); ++i)
+    {
+      if (matches(_playerBytes.get(i), start, length))
+      {
+        _lastPlayer = i;
+        return _playerNames.get(i);
+      }
+    }
+
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; ++i)
+    {
+      bytes[i] = _buffer.get(start + i);
+    }
+    _lastPlayer = _playerBytes.size();
+    _playerBytes.add(bytes);
+    _playerNames.add(new String(bytes, CHARSET));
+    return _playerNames.get(_lastPlayer);
+  } // parsePlayer
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified bytes equal the bytes of the buffer in the
+   * specified range.
+   *
+   * @param bytes the bytes to compare.
+   * @param start the start of the range in the buffer.
+   * @param length the length of the range.
+   * @return true if the bytes match.
+   */
+  protected boolean matches(byte[] bytes, int start, int length)
+  {
+    if (bytes.length != length)
+    {
+      return false;
+    }
+    for (int i = 0; i < length; ++i)
+    {
+      if (bytes[i] != _buffer.get(start + i))
+      {
+        return false;
+      }
+    }
+    return true;
+  } // matches
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified byte is a regular expression word character.
+   *
+   * @param b the byte.
+   * @return true if b is in [a-zA-Z_0-9].
+   */
+  protected static boolean isWordChar(byte b)
+  {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') ||
+           (b >= '0' && b <= '9') || b == '_';
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Count the non-empty lines of the file that are not annotations.
+   *
+   * This is a cheap scan of the raw bytes that assumes that every such line is
+   * an edit; it is only used to report progress.
+   *
+   * @return the approximate number of edits in the file.
+   */
+  protected int countEdits()
+  {
+    int count = 0;
+    boolean lineStart = true;
+    for (int i = 0; i < _limit; ++i)
+    {
+      byte c = _buffer.get(i);
+      if (c == '\n' || c == '\r')
+      {
+        lineStart = true;
+      }
+      else if (lineStart)
+      {
+        if (c != '#')
+        {
+          ++count;
+        }
+        lineStart = false;
+      }
+    }
+    return count;
+  } // countEdits
+
+  // --------------------------------------------------------------------------
+  /**
+   * The character set used to decode player names and annotation text.
+   */
+  protected static final Charset  CHARSET      = Charset.forName("UTF-8");
+
+  /**
+   * The mapped contents of the file.
+   */
+  protected ByteBuffer            _buffer;
+
+  /**
+   * The size of the file.
+   */
+  protected int                   _limit;
+
+  /**
+   * The position of the next byte to parse.
+   */
+  protected int                   _pos;
+
+  /**
+   * The position of the terminator of the current line.
+   */
+  protected int                   _lineEnd;
+
+  /**
+   * Set when the current line does not match the expected syntax.
+   */
+  protected boolean               _error;
+
+  /**
+   * The approximate number of edits in the file.
+   */
+  protected int                   _editCount;
+
+  /**
+   * The encoded bytes of each distinct player name, indexed in parallel with
+   * _playerNames.
+   */
+  protected ArrayList<byte[]>     _playerBytes = new ArrayList<byte[]>();
+
+  /**
+   * Each distinct player name encountered.
+   */
+  protected ArrayList<String>     _playerNames = new ArrayList<String>();
+
+  /**
+   * The index of the most recently parsed player name, or -1 if none.
+   */
+  protected int                   _lastPlayer  = -1;
+} // class TextBlockEditReader
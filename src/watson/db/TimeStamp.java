@@ -2,11 +2,15 @@ package watson.db;
 
 import java.util.Calendar;
 import java.util.Locale;
+import java.util.TimeZone;
 
 // ----------------------------------------------------------------------------
 /**
  * Centralises common code for time parsing and deals intelligently with the
  * lack of a year on timestamps in LogBlock output.
+ *
+ * Each thread uses its own Calendar, since chat is parsed on the
+ * {@link watson.chat.ChatParseQueue} worker thread as well as the main thread.
  */
 public class TimeStamp
 {
@@ -30,17 +34,17 @@ public class TimeStamp
                               int second)
   {
     // Try assuming that the year is the same as the reference.
-    _time.set(_reference.get(Calendar.YEAR), month - 1, dayOfMonth, hour,
-      minute, second);
+    Calendar time = _time.get();
+    time.set(_referenceYear, month - 1, dayOfMonth, hour, minute, second);
 
     // If the resulting time is more into the future than the reference, then
     // we guessed the wrong year (assuming the LogBlock retention is NOT 51
     // weeks).
-    if (_time.getTimeInMillis() > _reference.getTimeInMillis())
+    if (time.getTimeInMillis() > _referenceMillis)
     {
-      _time.add(Calendar.YEAR, -1);
+      time.add(Calendar.YEAR, -1);
     }
-    return _time.getTimeInMillis();
+    return time.getTimeInMillis();
   } // toMillis
 
   // --------------------------------------------------------------------------
@@ -63,10 +67,50 @@ public class TimeStamp
   public static long toMillis(int year, int month, int dayOfMonth, int hour,
                               int minute, int second)
   {
-    _time.set(year, month - 1, dayOfMonth, hour, minute, second);
-    return _time.getTimeInMillis();
+    Calendar time = _time.get();
+    time.set(year, month - 1, dayOfMonth, hour, minute, second);
+    return time.getTimeInMillis();
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Convert a given year, month, day of the month, hour, minute and second in
+   * the default time zone into milliseconds since epoch, without using a
+   * Calendar.
+   *
+   * Unlike the other toMillis() methods, this method does not use a Calendar
+   * and the milliseconds component of the result is always 0.
+   *
+   * @param year the four digit year.
+   * @param month the month, from 1 to 12.
+   * @param dayOfMonth the day of the month, from 1 to 31.
+   * @param hour the hour of the day, from 0 to 23.
+   * @param minute the minute from 0 to 59.
+   * @param second the second from 0 to 59.
+   */
+  public static long civilToMillis(int year, int month, int dayOfMonth,
+                                   int hour, int minute, int second)
+  {
+    // Days since 1970-01-01 in the proleptic Gregorian calendar, counting
+    // years from March so that the leap day falls at the end of the year.
+    int y = (month <= 2) ? year - 1 : year;
+    int era = (y >= 0 ? y : y - 399) / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + dayOfMonth - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    long days = era * 146097L + dayOfEra - 719468;
+
+    long local = ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+    TimeZone zone = TimeZone.getDefault();
+    int offset = zone.getOffset(local - zone.getRawOffset());
+    long millis = local - offset;
+
+    // A local time skipped by a daylight saving transition is interpreted
+    // using the offset in effect before the transition, as Calendar does.
+    int actual = zone.getOffset(millis);
+    return (actual == offset) ? millis : local - actual;
+  } // civilToMillis
+
   // --------------------------------------------------------------------------
   /**
    * Convert a given date and time into milliseconds since epoch.
@@ -87,9 +131,35 @@ public class TimeStamp
     {
       ymd[0] += 2000;
     }
-    return (ymd[0] == 0)
-      ? toMillis(ymd[1], ymd[2], hour, minute, second)
-      : toMillis(ymd[0], ymd[1], ymd[2], hour, minute, second);
+    return toLogBlockMillis(ymd[0], ymd[1], ymd[2], hour, minute, second);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Convert a date and time from LogBlock results, with an optional year, into
+   * milliseconds since epoch.
+   *
+   * @see #toMillis(int, int, int, int, int)
+   * @see #toMillis(int, int, int, int, int, int)
+   *
+   * @param year the year as written: 2 or 4 digits, or 0 if it was not
+   *          specified and must be guessed.
+   * @param month the month, from 1 to 12.
+   * @param dayOfMonth the day of the month, from 1 to 31.
+   * @param hour the hour of the day, from 0 to 23.
+   * @param minute the minute from 0 to 59.
+   * @param second the second from 0 to 59.
+   */
+  public static long toLogBlockMillis(int year, int month, int dayOfMonth,
+                                      int hour, int minute, int second)
+  {
+    if (year == 0)
+    {
+      return toMillis(month, dayOfMonth, hour, minute, second);
+    }
+    // Two-digit years are in the 21st century.
+    return toMillis((year < 100) ? year + 2000 : year, month, dayOfMonth,
+      hour, minute, second);
   }
 
   // --------------------------------------------------------------------------
@@ -102,11 +172,12 @@ public class TimeStamp
    */
   public static String formatMonthDayTime(long millis)
   {
-    _time.setTimeInMillis(millis);
+    Calendar time = _time.get();
+    time.setTimeInMillis(millis);
     return String.format(Locale.US, "%02d-%02d %02d:%02d:%02d",
-      _time.get(Calendar.MONTH) + 1, _time.get(Calendar.DAY_OF_MONTH),
-      _time.get(Calendar.HOUR_OF_DAY), _time.get(Calendar.MINUTE),
-      _time.get(Calendar.SECOND));
+      time.get(Calendar.MONTH) + 1, time.get(Calendar.DAY_OF_MONTH),
+      time.get(Calendar.HOUR_OF_DAY), time.get(Calendar.MINUTE),
+      time.get(Calendar.SECOND));
   }
 
   // --------------------------------------------------------------------------
@@ -119,11 +190,12 @@ public class TimeStamp
    */
   public static String formatQueryTime(long millis)
   {
-    _time.setTimeInMillis(millis);
+    Calendar time = _time.get();
+    time.setTimeInMillis(millis);
     return String.format(Locale.US, "%d.%d.%d %02d:%02d:%02d",
-      _time.get(Calendar.DAY_OF_MONTH), _time.get(Calendar.MONTH) + 1,
-      _time.get(Calendar.YEAR), _time.get(Calendar.HOUR_OF_DAY),
-      _time.get(Calendar.MINUTE), _time.get(Calendar.SECOND));
+      time.get(Calendar.DAY_OF_MONTH), time.get(Calendar.MONTH) + 1,
+      time.get(Calendar.YEAR), time.get(Calendar.HOUR_OF_DAY),
+      time.get(Calendar.MINUTE), time.get(Calendar.SECOND));
   }
 
   // --------------------------------------------------------------------------
@@ -158,20 +230,34 @@ public class TimeStamp
 
   // --------------------------------------------------------------------------
   /**
-   * A reusable Calendar instance used to interpret any time stamps found in
-   * LogBlock results.
+   * A reusable Calendar instance for each thread, used to interpret any time
+   * stamps found in LogBlock results.
+   */
+  protected static final ThreadLocal<Calendar> _time = new ThreadLocal<Calendar>()
+                                                     {
+                                                       @Override
+                                                       protected Calendar initialValue()
+                                                       {
+                                                         return Calendar.getInstance();
+                                                       }
+                                                     };
+
+  /**
+   * The year of the reference time, used to infer the implicit (absent) year
+   * in LogBlock timestamps: the client's local time, plus one week into the
+   * future.
    */
-  protected static Calendar _time = Calendar.getInstance();
+  protected static final int                   _referenceYear;
 
   /**
-   * Used to infer the implicit (absent) year in LogBlock timestamps.
+   * The reference time in milliseconds since epoch.
    */
-  protected static Calendar _reference;
+  protected static final long                  _referenceMillis;
   static
   {
-    // Set the reference timestamp to the client's local time, plus one week
-    // into the future.
-    _reference = Calendar.getInstance();
-    _reference.add(Calendar.WEEK_OF_YEAR, 1);
+    Calendar reference = Calendar.getInstance();
+    reference.add(Calendar.WEEK_OF_YEAR, 1);
+    _referenceYear = reference.get(Calendar.YEAR);
+    _referenceMillis = reference.getTimeInMillis();
   }
-} // class TimeStamp
\ No newline at end of file
+} // class TimeStamp
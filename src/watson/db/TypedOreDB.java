@@ -1,9 +1,8 @@
 package watson.db;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.Comparator;
+import java.util.HashSet;
 
 // ----------------------------------------------------------------------------
 /**
@@ -18,14 +17,23 @@ public class TypedOreDB
   /**
    * Constructor.
    * 
-   * @param initialCapacity the initial capacity of the HashMap<> that maps
-   *          {@link IntCoord}s to {@link OreBlock} instances. This value should
-   *          be chosen to minimise hash collisions and the need to rehash in
-   *          typical mining investigations.
+   * @param initialCapacity the initial capacity of the map from packed
+   *          coordinates to {@link OreBlock} instances. This value should be
+   *          chosen to minimise the need to rehash in typical mining
+   *          investigations.
+   * @param sequence the sequence of deposits of all ore types, maintained by
+   *          {@link OreDB}, which is updated as deposits of this type are
+   *          added, merged and removed.
+   * @param grid the spatial index of deposits of all ore types, maintained by
+   *          {@link OreDB}, which is updated along with the sequence.
    */
-  public TypedOreDB(int initialCapacity)
+  public TypedOreDB(int initialCapacity, OrderStatisticTree<OreDeposit> sequence,
+                    SpatialGrid<OreDeposit> grid)
   {
-    _oreBlocks = new HashMap<IntCoord, OreBlock>(initialCapacity);
+    _oreBlockIndices = new LongIntMap(initialCapacity);
+    _oreBlocks = new ArrayList<OreBlock>(initialCapacity);
+    _sequence = sequence;
+    _grid = grid;
   }
 
   // --------------------------------------------------------------------------
@@ -34,6 +42,7 @@ public class TypedOreDB
    */
   public void clear()
   {
+    _oreBlockIndices.clear();
     _oreBlocks.clear();
     _oreDeposits.clear();
   }
@@ -46,7 +55,7 @@ public class TypedOreDB
    * 
    * @return the set of deposits for fast iteration (drawing labels etc).
    */
-  public TreeSet<OreDeposit> getOreDeposits()
+  public OrderStatisticTree<OreDeposit> getOreDeposits()
   {
     return _oreDeposits;
   }
@@ -84,41 +93,7 @@ public class TypedOreDB
       index = 1;
     }
 
-    // Currently, indexing is a linear operation. We can at least improve the
-    // performance by iterating from the back when the index is past half way.
-    if (index > getOreDepositCount() / 2)
-    {
-      int currentIndex = getOreDepositCount();
-      Iterator<OreDeposit> it = _oreDeposits.descendingIterator();
-      while (it.hasNext())
-      {
-        OreDeposit deposit = it.next();
-        if (currentIndex == index)
-        {
-          return deposit;
-        }
-        --currentIndex;
-      }
-      // The only way we can really get here is if the collection is empty.
-      throw new IllegalArgumentException(
-        "index > TypedOreDB.getOreDepositCount()");
-    }
-    else
-    {
-      int currentIndex = 1;
-      Iterator<OreDeposit> it = _oreDeposits.iterator();
-      while (it.hasNext())
-      {
-        OreDeposit deposit = it.next();
-        if (currentIndex == index)
-        {
-          return deposit;
-        }
-        ++currentIndex;
-      }
-      // This should NEVER happen.
-      throw new IllegalStateException("shouldn't happen");
-    }
+    return _oreDeposits.get(index - 1);
   } // getOreDeposit
 
   // --------------------------------------------------------------------------
@@ -126,56 +101,46 @@ public class TypedOreDB
    * Examine the edit to see if it is an ore, and if it is, add it to the
    * database.
    * 
+   * The new block forms a deposit of its own, which is then merged with the
+   * deposit of each adjacent block. Since deposits are merged by
+   * {@link OreDeposit#union(OreDeposit)}, the cost of adding a block is almost
+   * independent of the size of the deposits it joins.
+   * 
    * @param edit the edit to examine.
    */
   public void addBlockEdit(BlockEdit edit)
   {
-    // Look up the OreBlock at the edit location.
-    IntCoord coord = new IntCoord(edit.x, edit.y, edit.z);
-    OreBlock block = getOreBlock(coord);
-    if (block == null)
+    long key = IntCoord.pack(edit.x, edit.y, edit.z);
+    if (_oreBlockIndices.get(key) < 0)
     {
       // Create a new OreBlock at the coordinate.
-      block = new OreBlock(coord, edit);
-      _oreBlocks.put(coord, block);
+      OreBlock block = new OreBlock(new IntCoord(edit.x, edit.y, edit.z), edit);
+      _oreBlockIndices.put(key, _oreBlocks.size());
+      _oreBlocks.add(block);
+      OreDeposit deposit = new OreDeposit(block);
 
-      // Find all adjacent OreDeposits.
-      TreeSet<OreDeposit> deposits = getAdjacentDeposits(coord);
-      if (deposits.size() == 0)
-      {
-        // Create a new deposit containing the block.
-        OreDeposit deposit = new OreDeposit();
-        deposit.addOreBlock(block);
-        _oreDeposits.add(deposit);
-      }
-      else if (deposits.size() == 1)
+      // Merge with all adjacent OreDeposits. Remove each from _oreDeposits
+      // before merging so that the merged deposit is indexed correctly.
+      for (int dx = -1; dx <= 1; ++dx)
       {
-        // Remove and re-add the OreDeposit to reindex it according to the newly
-        // added block.
-        OreDeposit deposit = deposits.first();
-        _oreDeposits.remove(deposit);
-        deposit.addOreBlock(block);
-        _oreDeposits.add(deposit);
-      }
-      else
-      {
-        // There are MULTIPLE adjacent ore deposits. Combine them. Remove each
-        // from _oreDeposits so that the merged deposit is indexed correctly.
-        ArrayList<OreBlock> blocks = new ArrayList<OreBlock>();
-        for (OreDeposit deposit : deposits)
-        {
-          _oreDeposits.remove(deposit);
-          blocks.addAll(deposit.getOreBlocks());
-        }
-
-        OreDeposit merged = new OreDeposit();
-        merged.addOreBlock(block);
-        for (OreBlock b : blocks)
+        for (int dy = -1; dy <= 1; ++dy)
         {
-          merged.addOreBlock(b);
-        }
-        _oreDeposits.add(merged);
-      }
+          for (int dz = -1; dz <= 1; ++dz)
+          {
+            OreBlock neighbour = getOreBlock(edit.x + dx, edit.y + dy, edit.z + dz);
+            if (neighbour != null)
+            {
+              OreDeposit adjacent = neighbour.getDeposit();
+              if (adjacent != deposit)
+              {
+                removeOreDeposit(adjacent);
+                deposit = deposit.union(adjacent);
+              }
+            }
+          } // z
+        } // y
+      } // x
+      addOreDeposit(deposit);
     }
   } // addBlockEdit
 
@@ -185,92 +150,152 @@ public class TypedOreDB
    * 
    * This method is called when "/w edits remove <player>" is executed.
    * 
-   * @param player the case-insensitive player name.
+   * Only the deposits that contain at least one block mined by the player are
+   * affected. Their blocks are removed, and those not mined by the player are
+   * added back, re-clustering them into the deposits that remain.
+   * 
+   * @param playerOrdinal the {@link PlayerRegistry} ordinal of the player.
    */
-  public void removeDeposits(String player)
+  public void removeDeposits(int playerOrdinal)
   {
-    // To keep it simple we simply make a list of all edits not by player,
-    // remove everything and reindex only those.
+    // Find the deposits with blocks mined by player.
+    HashSet<OreDeposit> affected = new HashSet<OreDeposit>();
+    for (OreBlock block : _oreBlocks)
+    {
+      if (block.getEdit().playerOrdinal == playerOrdinal)
+      {
+        affected.add(block.getDeposit());
+      }
+    }
+
+    if (affected.isEmpty())
+    {
+      return;
+    }
+
+    // Remove those deposits and make a list of their edits not by player.
     ArrayList<BlockEdit> retainedEdits = new ArrayList<BlockEdit>();
-    for (OreBlock block : _oreBlocks.values())
+    for (OreDeposit deposit : affected)
     {
-      if (!block.getEdit().player.equalsIgnoreCase(player))
+      removeOreDeposit(deposit);
+      for (OreBlock block : deposit.getOreBlocks())
       {
-        retainedEdits.add(block.getEdit());
+        if (block.getEdit().playerOrdinal != playerOrdinal)
+        {
+          retainedEdits.add(block.getEdit());
+        }
       }
     }
 
+    // Since blocks can't be removed from the index individually, rebuild it
+    // from the unaffected deposits, then re-index edits not by player.
+    _oreBlockIndices.clear();
     _oreBlocks.clear();
-    _oreDeposits.clear();
-
-    // Re-index edits not by player.
+    for (OreDeposit deposit : _oreDeposits)
+    {
+      for (OreBlock block : deposit.getOreBlocks())
+      {
+        IntCoord location = block.getLocation();
+        _oreBlockIndices.put(IntCoord.pack(location.getX(), location.getY(), location.getZ()),
+                             _oreBlocks.size());
+        _oreBlocks.add(block);
+      }
+    }
     for (BlockEdit edit : retainedEdits)
     {
       addBlockEdit(edit);
     }
   } // removeDeposits
 
+  // --------------------------------------------------------------------------
+  /**
+   * Index a deposit in this database and in the sequence and spatial index of
+   * all deposits.
+   * 
+   * @param deposit the representative deposit of a set of merged deposits.
+   */
+  protected void addOreDeposit(OreDeposit deposit)
+  {
+    _oreDeposits.add(deposit);
+    _sequence.add(deposit);
+    IntCoord location = deposit.getKeyOreBlock().getLocation();
+    _grid.add(location.getX(), location.getY(), location.getZ(), deposit);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove a deposit from this database and from the sequence and spatial
+   * index of all deposits.
+   * 
+   * This must be done before the deposit is merged with another, since that
+   * can change its sort order and its key block.
+   * 
+   * @param deposit the representative deposit of a set of merged deposits.
+   */
+  protected void removeOreDeposit(OreDeposit deposit)
+  {
+    _oreDeposits.remove(deposit);
+    _sequence.remove(deposit);
+    IntCoord location = deposit.getKeyOreBlock().getLocation();
+    _grid.remove(location.getX(), location.getY(), location.getZ(), deposit);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return the {@link OreBlock} at the specified location, or null if there is
    * none.
    * 
-   * @param location the location.
+   * @param x the x coordinate.
+   * @param y the y coordinate.
+   * @param z the z coordinate.
    * @return the {@link OreBlock} at the specified location, or null if there is
    *         none.
    */
-  protected OreBlock getOreBlock(IntCoord location)
+  protected OreBlock getOreBlock(int x, int y, int z)
   {
-    return _oreBlocks.get(location);
+    int index = _oreBlockIndices.get(IntCoord.pack(x, y, z));
+    return (index >= 0) ? _oreBlocks.get(index) : null;
   }
 
   // --------------------------------------------------------------------------
   /**
-   * Return the set of all OreDeposits that are "adjacent" to the specified
-   * location, ordered from oldest to newest.
-   * 
-   * @return the set of all OreDeposits that are "adjacent" to the specified
-   *         location, ordered from oldest to newest.
+   * Orders deposits by {@link OreDeposit#compareTo(OreDeposit)}.
    */
-  protected TreeSet<OreDeposit> getAdjacentDeposits(IntCoord location)
+  protected static final Comparator<OreDeposit> DEPOSIT_ORDER = new Comparator<OreDeposit>()
   {
-    TreeSet<OreDeposit> deposits = new TreeSet<OreDeposit>();
-    IntCoord adjacent = new IntCoord();
-    for (int dx = -1; dx <= 1; ++dx)
+    @Override
+    public int compare(OreDeposit d1, OreDeposit d2)
     {
-      for (int dy = -1; dy <= 1; ++dy)
-      {
-        for (int dz = -1; dz <= 1; ++dz)
-        {
-          if (dx == 0 && dy == 0 && dz == 0)
-          {
-            continue;
-          }
-          else
-          {
-            adjacent.setX(location.getX() + dx);
-            adjacent.setY(location.getY() + dy);
-            adjacent.setZ(location.getZ() + dz);
-            OreBlock neighbour = getOreBlock(adjacent);
-            if (neighbour != null)
-            {
-              deposits.add(neighbour.getDeposit());
-            }
-          }
-        } // z
-      } // y
-    } // x
-    return deposits;
-  } // getAdjacentDeposits
+      return d1.compareTo(d2);
+    }
+  };
 
-  // --------------------------------------------------------------------------
   /**
-   * Maps 3-D coordinates of ore destructions to OreBlock instances.
+   * Maps 3-D coordinates of ore destructions, packed by
+   * {@link IntCoord#pack(int, int, int)}, to indices in _oreBlocks.
    */
-  protected HashMap<IntCoord, OreBlock> _oreBlocks;
+  protected LongIntMap                     _oreBlockIndices;
+
+  /**
+   * All OreBlock instances, in the order they were indexed.
+   */
+  protected ArrayList<OreBlock>            _oreBlocks;
 
   /**
    * The set of all OreDeposits, in ascending order by timestamp (oldest first).
+   * 
+   * Only the representative deposit of each set of merged deposits is present.
+   */
+  protected OrderStatisticTree<OreDeposit> _oreDeposits = new OrderStatisticTree<OreDeposit>(DEPOSIT_ORDER);
+
+  /**
+   * The sequence of deposits of all ore types, maintained by {@link OreDB}.
+   */
+  protected OrderStatisticTree<OreDeposit> _sequence;
+
+  /**
+   * The spatial index of deposits of all ore types, maintained by
+   * {@link OreDB}.
    */
-  protected TreeSet<OreDeposit>         _oreDeposits = new TreeSet<OreDeposit>();
+  protected SpatialGrid<OreDeposit>        _grid;
 } // class TypedOreDB
\ No newline at end of file
@@ -0,0 +1,221 @@
+package watson.model;
+
+import java.util.ArrayList;
+
+import watson.Configuration;
+import watson.db.Annotation;
+import watson.db.BlockType;
+
+// ----------------------------------------------------------------------------
+/**
+ * A low level of detail summary of the edits in one cubic cell of the world.
+ *
+ * For each distinct {@link BlockType} in the cell, the summary records the
+ * bounding box of all edits of that type and the number of edits. When the
+ * cell is far from the viewer, the bounding boxes are drawn in place of the
+ * individual block outlines, with the count of edits on a billboard, reducing
+ * thousands of overlapping wireframes to a handful of boxes.
+ */
+public class AggregateBoxes
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit to the summary.
+   *
+   * @param type the type of the edited block.
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   */
+  public void add(BlockType type, int x, int y, int z)
+  {
+    for (Box box : _boxes)
+    {
+      if (box._type == type)
+      {
+        box.add(x, y, z);
+        return;
+      }
+    }
+    _boxes.add(new Box(type, x, y, z));
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a copy of this summary that is unaffected by subsequent calls to
+   * {@link #add(BlockType, int, int, int)}.
+   *
+   * @return the copy.
+   */
+  public AggregateBoxes copy()
+  {
+    AggregateBoxes copy = new AggregateBoxes();
+    for (Box box : _boxes)
+    {
+      copy._boxes.add(box.copy());
+    }
+    return copy;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add the wireframe outline of each bounding box to a batch of lines, in
+   * the colour and line width of its block type.
+   *
+   * @param batch the batch of lines.
+   */
+  public void addOutlines(LineBatch batch)
+  {
+    for (Box box : _boxes)
+    {
+      batch.setStyle(box._type.getARGB(), box._type.getLineWidth());
+      batch.addBox(box._minX, box._minY, box._minZ,
+        box._maxX + 1, box._maxY + 1, box._maxZ + 1);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw a billboard showing the number of edits at the centre of each
+   * bounding box that contains more than one edit.
+   */
+  public void drawLabels()
+  {
+    int bgARGB = Configuration.instance.getBillboardBackground();
+    int fgARGB = Configuration.instance.getBillboardForeground();
+    for (Box box : _boxes)
+    {
+      if (box._count > 1)
+      {
+        // drawBillboard() centres the billboard on the block at (x,y,z).
+        Annotation.drawBillboard(0.5 * (box._minX + box._maxX),
+          0.5 * (box._minY + box._maxY), 0.5 * (box._minZ + box._maxZ),
+          bgARGB, fgARGB, 0.03, box.getLabel());
+      }
+    }
+  } // drawLabels
+
+  // --------------------------------------------------------------------------
+  /**
+   * The bounding box of all edits of one type.
+   */
+  protected static class Box
+  {
+    /**
+     * Constructor.
+     *
+     * @param type the block type.
+     * @param x the x coordinate of the first edit.
+     * @param y the y coordinate of the first edit.
+     * @param z the z coordinate of the first edit.
+     */
+    public Box(BlockType type, int x, int y, int z)
+    {
+      _type = type;
+      _minX = _maxX = x;
+      _minY = _maxY = y;
+      _minZ = _maxZ = z;
+      _count = 1;
+    }
+
+    /**
+     * Extend the box to include another edit.
+     *
+     * @param x the x coordinate of the edit.
+     * @param y the y coordinate of the edit.
+     * @param z the z coordinate of the edit.
+     */
+    public void add(int x, int y, int z)
+    {
+      _minX = Math.min(_minX, x);
+      _minY = Math.min(_minY, y);
+      _minZ = Math.min(_minZ, z);
+      _maxX = Math.max(_maxX, x);
+      _maxY = Math.max(_maxY, y);
+      _maxZ = Math.max(_maxZ, z);
+      ++_count;
+      _label = null;
+    }
+
+    /**
+     * Return a copy of this box.
+     *
+     * @return the copy.
+     */
+    public Box copy()
+    {
+      Box copy = new Box(_type, _minX, _minY, _minZ);
+      copy._maxX = _maxX;
+      copy._maxY = _maxY;
+      copy._maxZ = _maxZ;
+      copy._count = _count;
+      copy._label = _label;
+      return copy;
+    }
+
+    /**
+     * Return the count of edits as a string, cached until the count changes.
+     *
+     * @return the count of edits as a string.
+     */
+    public String getLabel()
+    {
+      if (_label == null)
+      {
+        _label = Integer.toString(_count);
+      }
+      return _label;
+    }
+
+    /**
+     * The block type.
+     */
+    BlockType _type;
+
+    /**
+     * The minimum x coordinate of the edited blocks.
+     */
+    int       _minX;
+
+    /**
+     * The minimum y coordinate of the edited blocks.
+     */
+    int       _minY;
+
+    /**
+     * The minimum z coordinate of the edited blocks.
+     */
+    int       _minZ;
+
+    /**
+     * The maximum x coordinate of the edited blocks.
+     */
+    int       _maxX;
+
+    /**
+     * The maximum y coordinate of the edited blocks.
+     */
+    int       _maxY;
+
+    /**
+     * The maximum z coordinate of the edited blocks.
+     */
+    int       _maxZ;
+
+    /**
+     * The number of edits.
+     */
+    int       _count;
+
+    /**
+     * The cached string form of _count, or null if not yet computed.
+     */
+    String    _label;
+  } // inner class Box
+
+  // --------------------------------------------------------------------------
+  /**
+   * The bounding boxes, one per distinct block type.
+   */
+  protected ArrayList<Box> _boxes = new ArrayList<Box>();
+} // class AggregateBoxes
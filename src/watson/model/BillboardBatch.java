@@ -0,0 +1,297 @@
+package watson.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.GlStateManager;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldRenderer;
+import net.minecraft.client.renderer.entity.RenderManager;
+
+import org.lwjgl.opengl.GL11;
+
+import watson.PrivateFieldsWatson;
+import watson.db.Annotation;
+
+// ----------------------------------------------------------------------------
+/**
+ * Collects the text billboards drawn in a frame and draws them all at once as
+ * textured quads from a {@link LabelAtlas}.
+ *
+ * Billboards are added with {@link #add(double, double, double, int, int,
+ * double, String)} while the frame is drawn, and drawn by {@link #draw()} at
+ * the end of it. The corners of each billboard are computed on the CPU from
+ * the camera orientation, so that all billboards share one Tessellator draw
+ * and one set of GL state changes, instead of a matrix push, several state
+ * changes and two draws each.
+ *
+ * If framebuffer objects are not supported, the billboards are drawn one at
+ * a time by {@link Annotation#drawBillboardImmediate(double, double, double,
+ * int, int, double, String)}.
+ */
+public class BillboardBatch
+{
+  /**
+   * The single instance of this class.
+   */
+  public static final BillboardBatch instance = new BillboardBatch();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add a camera-facing text billboard to be drawn at the end of the frame.
+   *
+   * @param x the x world coordinate.
+   * @param y the y world coordinate.
+   * @param z the z world coordinate.
+   * @param bgARGB the background colour of the billboard.
+   * @param fgARGB the foreground (text) colour of the billboard.
+   * @param scaleFactor a scale factor to adjust the size of the billboard.
+   * @param text the text on the billboard.
+   */
+  public void add(double x, double y, double z, int bgARGB, int fgARGB,
+                  double scaleFactor, String text)
+  {
+    if (_count == _slots.size())
+    {
+      _slots.add(null);
+      _positions = Arrays.copyOf(_positions, Math.max(16, _count * 2) * 4);
+    }
+    _slots.set(_count, _atlas.getSlot(text, bgARGB, fgARGB));
+    int i = _count * 4;
+    _positions[i] = x;
+    _positions[i + 1] = y;
+    _positions[i + 2] = z;
+    _positions[i + 3] = scaleFactor;
+    ++_count;
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw all of the billboards added since the last call and remove them.
+   *
+   * The caller is expected to have enabled blending and disabled depth
+   * testing and writes, as for the rest of the Watson overlay.
+   */
+  public void draw()
+  {
+    if (_count == 0)
+    {
+      return;
+    }
+
+    boolean[] batched = rasteriseSlots();
+
+    RenderManager renderManager = Minecraft.getMinecraft().getRenderManager();
+    Minecraft mc = Minecraft.getMinecraft();
+    double far = mc.gameSettings.renderDistanceChunks * 16;
+    double renderX = PrivateFieldsWatson.renderPosX.get(renderManager);
+    double renderY = PrivateFieldsWatson.renderPosY.get(renderManager);
+    double renderZ = PrivateFieldsWatson.renderPosZ.get(renderManager);
+
+    // Camera-facing axes equivalent to the rotations in drawBillboard():
+    // a billboard point (u, v) is offset by scale * (u * right + v * down).
+    double yaw = Math.toRadians(-renderManager.playerViewY);
+    double pitch = Math.toRadians(mc.gameSettings.thirdPersonView != 2
+      ? renderManager.playerViewX : -renderManager.playerViewX);
+    double rightX = -Math.cos(yaw);
+    double rightZ = Math.sin(yaw);
+    double downX = -Math.sin(pitch) * Math.sin(yaw);
+    double downY = -Math.cos(pitch);
+    double downZ = -Math.sin(pitch) * Math.cos(yaw);
+
+    GlStateManager.disableLighting();
+    // The atlas holds premultiplied alpha.
+    GlStateManager.enableBlend();
+    GlStateManager.blendFunc(GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA);
+    GlStateManager.enableTexture2D();
+    GlStateManager.color(1.0f, 1.0f, 1.0f, 1.0f);
+    _atlas.bindTexture();
+
+    Tessellator tessellator = Tessellator.getInstance();
+    WorldRenderer wr = tessellator.getWorldRenderer();
+    wr.startDrawingQuads();
+    for (int b = 0; b < _count; ++b)
+    {
+      if (!batched[b])
+      {
+        continue;
+      }
+      LabelAtlas.Slot slot = _slots.get(b);
+      int i = b * 4;
+      double dx = _positions[i] - renderX + 0.5;
+      double dy = _positions[i + 1] - renderY + 0.5;
+      double dz = _positions[i + 2] - renderZ + 0.5;
+      double dl = Math.sqrt(dx * dx + dy * dy + dz * dz);
+      if (dl > far)
+      {
+        double d = far / dl;
+        dx *= d;
+        dy *= d;
+        dz *= d;
+        dl = far;
+      }
+      double scale = (0.05 * dl + 1.0) * _positions[i + 3];
+
+      double u1 = -slot._halfWidth - 1;
+      double u2 = slot._halfWidth + 1;
+      addCorner(wr, dx, dy, dz, scale, u1, -6, rightX, rightZ, downX, downY, downZ, slot._u1, slot._v1);
+      addCorner(wr, dx, dy, dz, scale, u1, 4, rightX, rightZ, downX, downY, downZ, slot._u1, slot._v2);
+      addCorner(wr, dx, dy, dz, scale, u2, 4, rightX, rightZ, downX, downY, downZ, slot._u2, slot._v2);
+      addCorner(wr, dx, dy, dz, scale, u2, -6, rightX, rightZ, downX, downY, downZ, slot._u2, slot._v1);
+    } // for
+    tessellator.draw();
+    GlStateManager.blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+    GlStateManager.disableTexture2D();
+
+    // Draw any billboards that could not be placed in the atlas directly.
+    for (int b = 0; b < _count; ++b)
+    {
+      if (!batched[b])
+      {
+        LabelAtlas.Slot slot = _slots.get(b);
+        int i = b * 4;
+        Annotation.drawBillboardImmediate(_positions[i], _positions[i + 1], _positions[i + 2],
+          slot._bgARGB, slot._fgARGB, _positions[i + 3], slot._text);
+      }
+    }
+
+    for (int b = 0; b < _count; ++b)
+    {
+      _slots.set(b, null);
+    }
+    _count = 0;
+  } // draw
+
+  // --------------------------------------------------------------------------
+  /**
+   * Ensure that the labels of all billboards to be drawn are in the atlas.
+   *
+   * If the atlas fills up, it is cleared and refilled with just the labels
+   * in use in this frame.
+   *
+   * @return an array whose elements are true for the billboards that can be
+   *         drawn from the atlas.
+   */
+  protected boolean[] rasteriseSlots()
+  {
+    if (_batched.length < _count)
+    {
+      _batched = new boolean[_slots.size()];
+    }
+    Arrays.fill(_batched, false);
+
+    if (!LabelAtlas.isSupported() || !allRasterised() && !_atlas.beginRasterise())
+    {
+      return _batched;
+    }
+
+    if (!allRasterised())
+    {
+      boolean full = false;
+      for (int b = 0; b < _count && !full; ++b)
+      {
+        LabelAtlas.Slot slot = _slots.get(b);
+        full = !slot._rasterised && !_atlas.rasterise(slot);
+      }
+
+      if (full)
+      {
+        _atlas.reset();
+        for (int b = 0; b < _count; ++b)
+        {
+          LabelAtlas.Slot slot = _slots.get(b);
+          _atlas.restore(slot);
+          if (!slot._rasterised)
+          {
+            _atlas.rasterise(slot);
+          }
+        }
+      }
+      _atlas.endRasterise();
+    }
+
+    for (int b = 0; b < _count; ++b)
+    {
+      _batched[b] = _slots.get(b)._rasterised;
+    }
+    return _batched;
+  } // rasteriseSlots
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the labels of all billboards to be drawn are in the atlas.
+   *
+   * @return true if the labels of all billboards to be drawn are in the atlas.
+   */
+  protected boolean allRasterised()
+  {
+    for (int b = 0; b < _count; ++b)
+    {
+      if (!_slots.get(b)._rasterised)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add one corner of a billboard to the Tessellator.
+   *
+   * @param wr the WorldRenderer.
+   * @param dx the x offset of the billboard from the camera.
+   * @param dy the y offset of the billboard from the camera.
+   * @param dz the z offset of the billboard from the camera.
+   * @param scale the size of one billboard unit in world units.
+   * @param u the horizontal position of the corner in billboard units.
+   * @param v the vertical (downwards) position of the corner in billboard
+   *          units.
+   * @param rightX the x component of the camera's right axis.
+   * @param rightZ the z component of the camera's right axis.
+   * @param downX the x component of the camera's down axis.
+   * @param downY the y component of the camera's down axis.
+   * @param downZ the z component of the camera's down axis.
+   * @param texU the horizontal texture coordinate.
+   * @param texV the vertical texture coordinate.
+   */
+  protected static void addCorner(WorldRenderer wr, double dx, double dy, double dz,
+                                  double scale, double u, double v, double rightX,
+                                  double rightZ, double downX, double downY,
+                                  double downZ, double texU, double texV)
+  {
+    wr.addVertexWithUV(dx + scale * (u * rightX + v * downX),
+      dy + scale * (v * downY),
+      dz + scale * (u * rightZ + v * downZ), texU, texV);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The atlas of rasterised labels.
+   */
+  protected LabelAtlas                  _atlas     = new LabelAtlas();
+
+  /**
+   * The number of billboards to draw.
+   */
+  protected int                         _count;
+
+  /**
+   * The atlas slot of each billboard; retained between frames to avoid
+   * reallocation, with null elements beyond _count.
+   */
+  protected ArrayList<LabelAtlas.Slot>  _slots     = new ArrayList<LabelAtlas.Slot>();
+
+  /**
+   * The world position and scale factor of each billboard, four per
+   * billboard.
+   */
+  protected double[]                    _positions = new double[0];
+
+  /**
+   * Flags, per billboard, recording whether it can be drawn from the atlas;
+   * reused between frames.
+   */
+  protected boolean[]                   _batched   = new boolean[0];
+} // class BillboardBatch
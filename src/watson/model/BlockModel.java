@@ -1,15 +1,14 @@
 package watson.model;
 
-import net.minecraft.client.renderer.Tessellator;
-import net.minecraft.client.renderer.WorldRenderer;
-
-import org.lwjgl.opengl.GL11;
-
 import watson.db.BlockType;
 
 // ----------------------------------------------------------------------------
 /**
  * Abstract base of classes that draw the 3-D model of a block.
+ * 
+ * Models do not draw immediately. Instead, they add their lines to a
+ * {@link LineBatch}, so that the outlines of many blocks can be drawn
+ * together.
  */
 public abstract class BlockModel
 {
@@ -26,15 +25,16 @@ public abstract class BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * Draw the model.
+   * Add the wireframe outline of the model to a batch of lines.
    * 
+   * @param batch the batch of lines that will be drawn.
    * @param blockType a description of the type of block, which includes line
    *          colour and thickness and cuboid bounds.
    * @param x world X coordinate.
    * @param y world Y coordinate.
    * @param z world Z coordinate.
    */
-  public abstract void render(BlockType blockType, int x, int y, int z);
+  public abstract void addOutline(LineBatch batch, BlockType blockType, int x, int y, int z);
 
   // --------------------------------------------------------------------------
   /**
@@ -49,8 +49,9 @@ public abstract class BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * Render a simple wireframe box.
+   * Add a simple wireframe box to a batch of lines.
    * 
+   * @param batch the batch of lines.
    * @param x1 minimum corner x.
    * @param y1 minimum corner y.
    * @param z1 minimum corner z.
@@ -60,17 +61,18 @@ public abstract class BlockModel
    * @param colour colour.
    * @param lineWidth line width.
    */
-  protected void renderBox(double x1, double y1, double z1, double x2,
-    double y2, double z2, ARGB colour, float lineWidth)
+  protected void addBox(LineBatch batch, double x1, double y1, double z1,
+    double x2, double y2, double z2, ARGB colour, float lineWidth)
   {
-    renderTaperedBox(x1, z1, x2, z2, y1, x1, z1, x2, z2, y2, colour, lineWidth);
+    addTaperedBox(batch, x1, z1, x2, z2, y1, x1, z1, x2, z2, y2, colour, lineWidth);
   }
 
   // --------------------------------------------------------------------------
   /**
-   * Render a tapered wireframe box shape (either a pyramid or inverted pyramid,
-   * with the point sliced off).
+   * Add a tapered wireframe box shape (either a pyramid or inverted pyramid,
+   * with the point sliced off) to a batch of lines.
    * 
+   * @param batch the batch of lines.
    * @param xBot1 bottom x 1.
    * @param zBot1 bottom z 1.
    * @param xBot2 bottom x 2.
@@ -84,55 +86,27 @@ public abstract class BlockModel
    * @param colour colour.
    * @param lineWidth line width.
    */
-  protected void renderTaperedBox(double xBot1, double zBot1, double xBot2,
-    double zBot2, double yBot, double xTop1,
+  protected void addTaperedBox(LineBatch batch, double xBot1, double zBot1,
+    double xBot2, double zBot2, double yBot, double xTop1,
     double zTop1, double xTop2, double zTop2,
     double yTop, ARGB colour, float lineWidth)
   {
-    Tessellator tess = Tessellator.getInstance();
-    WorldRenderer wr = tess.getWorldRenderer();
+    batch.setStyle(colour, lineWidth);
 
     // Bottom face.
-    wr.startDrawing(GL11.GL_LINE_LOOP);
-    wr.setColorRGBA(colour.getRed(), colour.getGreen(), colour.getBlue(),
-      colour.getAlpha());
-    GL11.glLineWidth(lineWidth);
-    wr.addVertex(xBot1, yBot, zBot1);
-    wr.addVertex(xBot2, yBot, zBot1);
-    wr.addVertex(xBot2, yBot, zBot2);
-    wr.addVertex(xBot1, yBot, zBot2);
-    tess.draw();
+    batch.addQuad(xBot1, yBot, zBot1, xBot2, yBot, zBot1,
+      xBot2, yBot, zBot2, xBot1, yBot, zBot2);
 
     // Top face.
-    wr.startDrawing(GL11.GL_LINE_LOOP);
-    wr.setColorRGBA(colour.getRed(), colour.getGreen(), colour.getBlue(),
-      colour.getAlpha());
-    GL11.glLineWidth(lineWidth);
-    wr.addVertex(xTop1, yTop, zTop1);
-    wr.addVertex(xTop2, yTop, zTop1);
-    wr.addVertex(xTop2, yTop, zTop2);
-    wr.addVertex(xTop1, yTop, zTop2);
-    tess.draw();
+    batch.addQuad(xTop1, yTop, zTop1, xTop2, yTop, zTop1,
+      xTop2, yTop, zTop2, xTop1, yTop, zTop2);
 
     // Vertical lines joining top and bottom.
-    wr.startDrawing(GL11.GL_LINES);
-    wr.setColorRGBA(colour.getRed(), colour.getGreen(), colour.getBlue(),
-      colour.getAlpha());
-    GL11.glLineWidth(lineWidth);
-
-    wr.addVertex(xBot1, yBot, zBot1);
-    wr.addVertex(xTop1, yTop, zTop1);
-
-    wr.addVertex(xBot2, yBot, zBot1);
-    wr.addVertex(xTop2, yTop, zTop1);
-
-    wr.addVertex(xBot1, yBot, zBot2);
-    wr.addVertex(xTop1, yTop, zTop2);
-
-    wr.addVertex(xBot2, yBot, zBot2);
-    wr.addVertex(xTop2, yTop, zTop2);
-    tess.draw();
-  } // renderTaperedBox
+    batch.addLine(xBot1, yBot, zBot1, xTop1, yTop, zTop1);
+    batch.addLine(xBot2, yBot, zBot1, xTop2, yTop, zTop1);
+    batch.addLine(xBot1, yBot, zBot2, xTop1, yTop, zTop2);
+    batch.addLine(xBot2, yBot, zBot2, xTop2, yTop, zTop2);
+  } // addTaperedBox
 
   // --------------------------------------------------------------------------
   /**
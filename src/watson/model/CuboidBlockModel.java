@@ -21,9 +21,10 @@ public class CuboidBlockModel extends BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * Render a cuboid at the specified world coordinates, (x,y,z), using the
+   * Add a cuboid at the specified world coordinates, (x,y,z), using the
    * colour, line width and bounds associated with the BlockType.
    * 
+   * @param batch the batch of lines that will be drawn.
    * @param blockType a description of the type of block, which includes line
    *          colour and thickness and cuboid bounds.
    * @param x world X coordinate.
@@ -31,9 +32,9 @@ public class CuboidBlockModel extends BlockModel
    * @param z world Z coordinate.
    */
   @Override
-  public void render(BlockType blockType, int x, int y, int z)
+  public void addOutline(LineBatch batch, BlockType blockType, int x, int y, int z)
   {
-    renderBox(x + blockType.getX1(), y + blockType.getY1(),
+    addBox(batch, x + blockType.getX1(), y + blockType.getY1(),
       z + blockType.getZ1(), x + blockType.getX2(), y + blockType.getY2(),
       z + blockType.getZ2(), blockType.getARGB(), blockType.getLineWidth());
   } 
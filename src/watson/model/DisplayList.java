@@ -0,0 +1,108 @@
+package watson.model;
+
+import org.lwjgl.opengl.GL11;
+
+// ----------------------------------------------------------------------------
+/**
+ * Caches geometry drawn with the Tessellator in an OpenGL display list, so
+ * that it can be redrawn each frame with a single call until it changes.
+ *
+ * The display list is allocated the first time it is compiled. All methods
+ * must be called from the render thread.
+ */
+public class DisplayList
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the display list has been compiled since it was last
+   * invalidated.
+   *
+   * @return true if the display list can be drawn with {@link #call()}.
+   */
+  public boolean isCurrent()
+  {
+    return _current;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Mark the display list as needing to be compiled again before it is next
+   * drawn.
+   */
+  public void invalidate()
+  {
+    _current = false;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Begin compiling the display list; subsequent drawing operations are
+   * recorded rather than executed, until {@link #endCompile()} is called.
+   *
+   * @return true if compilation has begun; false if no display list could be
+   *         allocated, in which case the caller should draw directly.
+   */
+  public boolean beginCompile()
+  {
+    if (_id == 0)
+    {
+      _id = GL11.glGenLists(1);
+      if (_id == 0)
+      {
+        return false;
+      }
+    }
+    GL11.glNewList(_id, GL11.GL_COMPILE);
+    return true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Finish compiling the display list.
+   */
+  public void endCompile()
+  {
+    GL11.glEndList();
+    _current = true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the compiled geometry.
+   */
+  public void call()
+  {
+    if (_current)
+    {
+      GL11.glCallList(_id);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Free the display list.
+   *
+   * The instance can still be used afterwards; a new display list will be
+   * allocated when it is next compiled.
+   */
+  public void delete()
+  {
+    if (_id != 0)
+    {
+      GL11.glDeleteLists(_id, 1);
+      _id = 0;
+    }
+    _current = false;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The OpenGL display list name, or 0 if not allocated.
+   */
+  protected int     _id;
+
+  /**
+   * True if the display list has been compiled since it was last invalidated.
+   */
+  protected boolean _current;
+} // class DisplayList
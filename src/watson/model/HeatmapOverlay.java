@@ -0,0 +1,222 @@
+package watson.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.minecraft.client.renderer.GlStateManager;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldRenderer;
+
+import watson.db.HeatmapCounts;
+import watson.db.IntCoord;
+import watson.db.LongIntMap;
+
+// ----------------------------------------------------------------------------
+/**
+ * Draws a density overlay of edits: one translucent horizontal quad per
+ * column of the world that contains edits, coloured and sized according to
+ * the number of edits in the column relative to the busiest column.
+ *
+ * The overlay is summed from the {@link HeatmapCounts} of each visible player
+ * and compiled into a display list, which is only rebuilt when the counts,
+ * the visible players or the block ID filter change. Each frame therefore
+ * costs a single display list call, irrespective of the number of edits.
+ *
+ * All methods must be called from the render thread.
+ */
+public class HeatmapOverlay
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the overlay for the specified counts.
+   *
+   * The quads are in world coordinates, so the caller must have applied the
+   * view translation.
+   *
+   * @param sources the counts of each visible player; the list is copied if
+   *          the overlay is rebuilt.
+   * @param typeId the block ID of edits to count, or -1 to count all edits.
+   */
+  public void draw(ArrayList<HeatmapCounts> sources, int typeId)
+  {
+    if (!_list.isCurrent() || typeId != _typeId || !sources.equals(_sources))
+    {
+      _typeId = typeId;
+      _sources.clear();
+      _sources.addAll(sources);
+      sum();
+      if (_list.beginCompile())
+      {
+        render();
+        _list.endCompile();
+      }
+      else
+      {
+        render();
+        return;
+      }
+    }
+    _list.call();
+  } // draw
+
+  // --------------------------------------------------------------------------
+  /**
+   * Free the display list.
+   */
+  public void delete()
+  {
+    _list.delete();
+    _sources.clear();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Sum the counts of all sources that pass the block ID filter, per column.
+   */
+  protected void sum()
+  {
+    _indices.clear();
+    _size = 0;
+    _maxCount = 0;
+    for (HeatmapCounts counts : _sources)
+    {
+      for (int i = 0; i < counts.size(); ++i)
+      {
+        if (_typeId >= 0 && counts.getTypeId(i) != _typeId)
+        {
+          continue;
+        }
+
+        long key = IntCoord.pack(counts.getColumnX(i), 0, counts.getColumnZ(i));
+        int column = _indices.get(key);
+        if (column < 0)
+        {
+          if (_size == _counts.length)
+          {
+            int capacity = Math.max(16, _size * 2);
+            _columnX = Arrays.copyOf(_columnX, capacity);
+            _columnZ = Arrays.copyOf(_columnZ, capacity);
+            _topY = Arrays.copyOf(_topY, capacity);
+            _counts = Arrays.copyOf(_counts, capacity);
+          }
+          column = _size++;
+          _columnX[column] = counts.getColumnX(i);
+          _columnZ[column] = counts.getColumnZ(i);
+          _topY[column] = counts.getTopY(i);
+          _counts[column] = 0;
+          _indices.put(key, column);
+        }
+        else
+        {
+          _topY[column] = Math.max(_topY[column], counts.getTopY(i));
+        }
+        _counts[column] += counts.getCount(i);
+        _maxCount = Math.max(_maxCount, _counts[column]);
+      } // for entries
+    } // for sources
+  } // sum
+
+  // --------------------------------------------------------------------------
+  /**
+   * Render one quad per column with the Tessellator, just above the highest
+   * edit in the column.
+   *
+   * The colour ranges from green through yellow to red, and the quad grows to
+   * fill the column, as the logarithm of the count approaches that of the
+   * busiest column.
+   */
+  protected void render()
+  {
+    if (_size == 0)
+    {
+      return;
+    }
+
+    GlStateManager.disableCull();
+    Tessellator tess = Tessellator.getInstance();
+    WorldRenderer wr = tess.getWorldRenderer();
+    wr.startDrawingQuads();
+    double logMax = Math.log(1 + _maxCount);
+    for (int column = 0; column < _size; ++column)
+    {
+      double t = (logMax > 0) ? Math.log(1 + _counts[column]) / logMax : 1.0;
+      int red = (int) (255 * Math.min(1.0, 2.0 * t));
+      int green = (int) (255 * Math.min(1.0, 2.0 * (1.0 - t)));
+      wr.setColorRGBA(red, green, 0, ALPHA);
+
+      double half = 0.5 * HeatmapCounts.CELL_SIZE * (MIN_SIZE + (1.0 - MIN_SIZE) * t);
+      double centreX = (_columnX[column] + 0.5) * HeatmapCounts.CELL_SIZE;
+      double centreZ = (_columnZ[column] + 0.5) * HeatmapCounts.CELL_SIZE;
+      double y = _topY[column] + 1.05;
+      wr.addVertex(centreX - half, y, centreZ - half);
+      wr.addVertex(centreX - half, y, centreZ + half);
+      wr.addVertex(centreX + half, y, centreZ + half);
+      wr.addVertex(centreX + half, y, centreZ - half);
+    }
+    tess.draw();
+    GlStateManager.enableCull();
+  } // render
+
+  // --------------------------------------------------------------------------
+  /**
+   * The opacity of the quads, out of 255.
+   */
+  protected static final int         ALPHA    = 112;
+
+  /**
+   * The size of the quad of the least busy column, as a fraction of the width
+   * of a column.
+   */
+  protected static final double      MIN_SIZE = 0.4;
+
+  /**
+   * The compiled quads.
+   */
+  protected DisplayList              _list    = new DisplayList();
+
+  /**
+   * The counts compiled into _list.
+   */
+  protected ArrayList<HeatmapCounts> _sources = new ArrayList<HeatmapCounts>();
+
+  /**
+   * The block ID filter compiled into _list.
+   */
+  protected int                      _typeId  = -1;
+
+  /**
+   * Map from column coordinates, packed by
+   * {@link IntCoord#pack(int, int, int)}, to the index of the column.
+   */
+  protected LongIntMap               _indices = new LongIntMap(0);
+
+  /**
+   * The number of columns.
+   */
+  protected int                      _size;
+
+  /**
+   * The largest count of any column.
+   */
+  protected int                      _maxCount;
+
+  /**
+   * The x coordinate of each column, in cells.
+   */
+  protected int[]                    _columnX = new int[0];
+
+  /**
+   * The z coordinate of each column, in cells.
+   */
+  protected int[]                    _columnZ = new int[0];
+
+  /**
+   * The highest y coordinate of the edits in each column.
+   */
+  protected int[]                    _topY    = new int[0];
+
+  /**
+   * The number of edits in each column.
+   */
+  protected int[]                    _counts  = new int[0];
+} // class HeatmapOverlay
@@ -19,12 +19,13 @@ public class HopperBlockModel extends BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * @see watson.model.BlockModel#render(watson.db.BlockType, int, int, int)
+   * @see watson.model.BlockModel#addOutline(watson.model.LineBatch,
+   *      watson.db.BlockType, int, int, int)
    */
   @Override
-  public void render(BlockType blockType, int x, int y, int z)
+  public void addOutline(LineBatch batch, BlockType blockType, int x, int y, int z)
   {
-    renderTaperedBox(x + 0.375, z + 0.375, x + 0.675, z + 0.675, y, x, z,
+    addTaperedBox(batch, x + 0.375, z + 0.375, x + 0.675, z + 0.675, y, x, z,
       x + 1, z + 1, y + 1, blockType.getARGB(), blockType.getLineWidth());
-  } // render
+  } // addOutline
 } // class HopperBlockModel
\ No newline at end of file
@@ -0,0 +1,369 @@
+package watson.model;
+
+import java.util.HashMap;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.renderer.GlStateManager;
+import net.minecraft.client.renderer.OpenGlHelper;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldRenderer;
+import net.minecraft.client.shader.Framebuffer;
+
+import org.lwjgl.opengl.GL11;
+
+// ----------------------------------------------------------------------------
+/**
+ * A texture atlas of rasterised text billboards, keyed by text and colours.
+ *
+ * Each distinct label is drawn once, as a background plate with text on top,
+ * into a slot of an offscreen framebuffer. Billboards can then be drawn as
+ * textured quads sampling from the atlas, without per-label font rendering or
+ * state changes. Slots are packed into rows of equal height; when the atlas
+ * is full, it is cleared and refilled with the labels currently in use.
+ *
+ * Labels are stored with premultiplied alpha, so that drawing them with
+ * glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA) gives the same result as
+ * drawing the plate and then the text directly into the scene, and so that
+ * linear filtering does not darken the edges of the plate.
+ *
+ * All methods must be called from the render thread.
+ */
+public class LabelAtlas
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the atlas can be used, i.e. framebuffer objects are
+   * supported.
+   *
+   * @return true if the atlas can be used.
+   */
+  public static boolean isSupported()
+  {
+    return OpenGlHelper.isFramebufferEnabled();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the slot for the specified label, creating it if necessary.
+   *
+   * A newly created slot is not yet rasterised; call
+   * {@link #rasterise(Slot)} before drawing it.
+   *
+   * @param text the text of the label.
+   * @param bgARGB the background colour.
+   * @param fgARGB the text colour.
+   * @return the slot.
+   */
+  public Slot getSlot(String text, int bgARGB, int fgARGB)
+  {
+    Slot first = _slots.get(text);
+    for (Slot slot = first; slot != null; slot = slot._next)
+    {
+      if (slot._bgARGB == bgARGB && slot._fgARGB == fgARGB)
+      {
+        return slot;
+      }
+    }
+    Slot slot = new Slot(text, bgARGB, fgARGB);
+    slot._next = first;
+    _slots.put(text, slot);
+    return slot;
+  } // getSlot
+
+  // --------------------------------------------------------------------------
+  /**
+   * Begin rasterising slots, by binding the atlas framebuffer and setting up
+   * a projection in which one unit is one pixel of the atlas.
+   *
+   * @return false if the atlas could not be created.
+   */
+  public boolean beginRasterise()
+  {
+    if (_framebuffer == null)
+    {
+      _framebuffer = new Framebuffer(SIZE, SIZE, false);
+      _framebuffer.setFramebufferFilter(GL11.GL_LINEAR);
+      _framebuffer.setFramebufferColor(0.0f, 0.0f, 0.0f, 0.0f);
+      _framebuffer.framebufferClear();
+    }
+    if (_framebuffer.framebufferObject < 0)
+    {
+      return false;
+    }
+    _framebuffer.bindFramebuffer(true);
+
+    GlStateManager.matrixMode(GL11.GL_PROJECTION);
+    GlStateManager.pushMatrix();
+    GlStateManager.loadIdentity();
+    GlStateManager.ortho(0.0, SIZE, SIZE, 0.0, -1.0, 1.0);
+    GlStateManager.matrixMode(GL11.GL_MODELVIEW);
+    GlStateManager.pushMatrix();
+    GlStateManager.loadIdentity();
+    GlStateManager.disableLighting();
+    GlStateManager.disableDepth();
+    return true;
+  } // beginRasterise
+
+  // --------------------------------------------------------------------------
+  /**
+   * Allocate space for the specified slot and draw its label into the atlas.
+   *
+   * Must be called between {@link #beginRasterise()} and
+   * {@link #endRasterise()}.
+   *
+   * @param slot the slot.
+   * @return true if the slot was rasterised; false if the atlas is full or the
+   *         font is not yet available.
+   */
+  public boolean rasterise(Slot slot)
+  {
+    FontRenderer fontRenderer = Minecraft.getMinecraft().getRenderManager().getFontRenderer();
+    if (fontRenderer == null)
+    {
+      return false;
+    }
+
+    // Billboard units: the plate spans [-halfWidth-1, halfWidth+1] x [-6, 4].
+    int halfWidth = fontRenderer.getStringWidth(slot._text) >> 1;
+    int width = (2 * halfWidth + 2) * PIXELS_PER_UNIT;
+    if (width > SIZE)
+    {
+      return false;
+    }
+    if (_rowX + width > SIZE)
+    {
+      _rowX = 0;
+      _rowY += ROW_HEIGHT;
+    }
+    if (_rowY + ROW_HEIGHT > SIZE)
+    {
+      return false;
+    }
+
+    int x = _rowX;
+    int y = _rowY;
+    _rowX += width + SLOT_GAP;
+
+    // Draw the background plate over the cleared (transparent black) slot,
+    // storing its colour premultiplied by its alpha.
+    GlStateManager.enableBlend();
+    GlStateManager.tryBlendFuncSeparate(GL11.GL_SRC_ALPHA, GL11.GL_ZERO, GL11.GL_ONE, GL11.GL_ZERO);
+    GlStateManager.disableTexture2D();
+    Tessellator tessellator = Tessellator.getInstance();
+    WorldRenderer wr = tessellator.getWorldRenderer();
+    wr.startDrawingQuads();
+    wr.setColorRGBA_I(slot._bgARGB & 0x00FFFFFF, (slot._bgARGB >>> 24) & 0xFF);
+    wr.addVertex(x, y, 0.0);
+    wr.addVertex(x, y + PLATE_HEIGHT, 0.0);
+    wr.addVertex(x + width, y + PLATE_HEIGHT, 0.0);
+    wr.addVertex(x + width, y, 0.0);
+    tessellator.draw();
+
+    // Draw the text over the plate, compositing both colour and alpha as the
+    // scene would, so that the result remains premultiplied.
+    GlStateManager.tryBlendFuncSeparate(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA,
+      GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA);
+    GlStateManager.enableTexture2D();
+    GlStateManager.color(1.0f, 1.0f, 1.0f, 1.0f);
+    GlStateManager.pushMatrix();
+    GlStateManager.translate(x, y, 0.0);
+    GlStateManager.scale(PIXELS_PER_UNIT, PIXELS_PER_UNIT, 1.0);
+    fontRenderer.drawString(slot._text, 1, 1, slot._fgARGB);
+    GlStateManager.popMatrix();
+
+    // The projection is y-down but texture coordinates are y-up.
+    slot._halfWidth = halfWidth;
+    slot._u1 = (float) x / SIZE;
+    slot._u2 = (float) (x + width) / SIZE;
+    slot._v1 = 1.0f - (float) y / SIZE;
+    slot._v2 = 1.0f - (float) (y + PLATE_HEIGHT) / SIZE;
+    slot._rasterised = true;
+    return true;
+  } // rasterise
+
+  // --------------------------------------------------------------------------
+  /**
+   * Finish rasterising slots, restoring the projection and the main
+   * framebuffer.
+   */
+  public void endRasterise()
+  {
+    GlStateManager.matrixMode(GL11.GL_PROJECTION);
+    GlStateManager.popMatrix();
+    GlStateManager.matrixMode(GL11.GL_MODELVIEW);
+    GlStateManager.popMatrix();
+    GlStateManager.blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+    Minecraft.getMinecraft().getFramebuffer().bindFramebuffer(true);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Discard all slots and clear the atlas texture.
+   *
+   * Must be called between {@link #beginRasterise()} and
+   * {@link #endRasterise()}. Slots obtained earlier must be rasterised again
+   * before they are drawn.
+   */
+  public void reset()
+  {
+    for (Slot first : _slots.values())
+    {
+      for (Slot slot = first; slot != null; slot = slot._next)
+      {
+        slot._rasterised = false;
+      }
+    }
+    _slots.clear();
+    _rowX = _rowY = 0;
+    _framebuffer.framebufferClear();
+    _framebuffer.bindFramebuffer(true);
+  } // reset
+
+  // --------------------------------------------------------------------------
+  /**
+   * Re-register a slot, obtained before {@link #reset()}, under its text.
+   *
+   * @param slot the slot.
+   */
+  public void restore(Slot slot)
+  {
+    Slot first = _slots.get(slot._text);
+    for (Slot other = first; other != null; other = other._next)
+    {
+      if (other == slot)
+      {
+        return;
+      }
+    }
+    slot._next = first;
+    _slots.put(slot._text, slot);
+  } // restore
+
+  // --------------------------------------------------------------------------
+  /**
+   * Bind the atlas texture.
+   */
+  public void bindTexture()
+  {
+    _framebuffer.bindFramebufferTexture();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * One label in the atlas.
+   */
+  public static class Slot
+  {
+    /**
+     * Constructor.
+     *
+     * @param text the text.
+     * @param bgARGB the background colour.
+     * @param fgARGB the text colour.
+     */
+    public Slot(String text, int bgARGB, int fgARGB)
+    {
+      _text = text;
+      _bgARGB = bgARGB;
+      _fgARGB = fgARGB;
+    }
+
+    /**
+     * The text.
+     */
+    String  _text;
+
+    /**
+     * The background colour.
+     */
+    int     _bgARGB;
+
+    /**
+     * The text colour.
+     */
+    int     _fgARGB;
+
+    /**
+     * True if the label is currently drawn in the atlas.
+     */
+    boolean _rasterised;
+
+    /**
+     * Half the width of the text, in billboard units.
+     */
+    int     _halfWidth;
+
+    /**
+     * Texture coordinate of the left edge of the label.
+     */
+    float   _u1;
+
+    /**
+     * Texture coordinate of the right edge of the label.
+     */
+    float   _u2;
+
+    /**
+     * Texture coordinate of the top edge of the label.
+     */
+    float   _v1;
+
+    /**
+     * Texture coordinate of the bottom edge of the label.
+     */
+    float   _v2;
+
+    /**
+     * The next slot with the same text but different colours.
+     */
+    Slot    _next;
+  } // inner class Slot
+
+  // --------------------------------------------------------------------------
+  /**
+   * The width and height of the atlas in pixels.
+   */
+  protected static final int    SIZE            = 1024;
+
+  /**
+   * The number of atlas pixels per billboard unit (font pixel).
+   */
+  protected static final int    PIXELS_PER_UNIT = 2;
+
+  /**
+   * The height of a background plate in atlas pixels.
+   */
+  protected static final int    PLATE_HEIGHT    = 10 * PIXELS_PER_UNIT;
+
+  /**
+   * The height of a row of slots, with a gap to avoid bleeding between rows
+   * when the texture is filtered.
+   */
+  protected static final int    ROW_HEIGHT      = PLATE_HEIGHT + 2;
+
+  /**
+   * The horizontal gap between slots in a row, in pixels.
+   */
+  protected static final int    SLOT_GAP        = 2;
+
+  /**
+   * Map from text to the first of the slots with that text.
+   */
+  protected HashMap<String, Slot> _slots        = new HashMap<String, Slot>();
+
+  /**
+   * The offscreen framebuffer holding the atlas texture; created on first use.
+   */
+  protected Framebuffer         _framebuffer;
+
+  /**
+   * The x coordinate of the next free space in the current row.
+   */
+  protected int                 _rowX;
+
+  /**
+   * The y coordinate of the top of the current row.
+   */
+  protected int                 _rowY;
+} // class LabelAtlas
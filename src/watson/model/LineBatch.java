@@ -0,0 +1,246 @@
+package watson.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldRenderer;
+
+import org.lwjgl.opengl.GL11;
+
+// ----------------------------------------------------------------------------
+/**
+ * Accumulates line segments from any number of {@link BlockModel}s so that
+ * they can be drawn with as few OpenGL draw calls as possible.
+ *
+ * Lines are grouped by line width, since the width cannot change within a
+ * single draw. Colours are specified per vertex, so lines of all colours with
+ * the same width are drawn together as one GL_LINES primitive. A typical set
+ * of edits is therefore drawn with one draw call per distinct line width.
+ *
+ * The vertex arrays are retained by {@link #clear()}, so reusing an instance
+ * avoids reallocating them.
+ */
+public class LineBatch
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Set the colour and width of subsequently added lines.
+   *
+   * @param colour the colour.
+   * @param lineWidth the line width.
+   */
+  public void setStyle(ARGB colour, float lineWidth)
+  {
+    _colour = colour.getValue();
+    if (_group == null || _group._lineWidth != lineWidth)
+    {
+      _group = null;
+      for (Group group : _groups)
+      {
+        if (group._lineWidth == lineWidth)
+        {
+          _group = group;
+          break;
+        }
+      }
+      if (_group == null)
+      {
+        _group = new Group(lineWidth);
+        _groups.add(_group);
+      }
+    }
+  } // setStyle
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add a line segment in the current style.
+   *
+   * @param x1 x of the first end.
+   * @param y1 y of the first end.
+   * @param z1 z of the first end.
+   * @param x2 x of the second end.
+   * @param y2 y of the second end.
+   * @param z2 z of the second end.
+   */
+  public void addLine(double x1, double y1, double z1, double x2, double y2, double z2)
+  {
+    _group.addLine((float) x1, (float) y1, (float) z1,
+      (float) x2, (float) y2, (float) z2, _colour);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add a closed loop of four line segments joining the specified vertices in
+   * the current style.
+   *
+   * @param x1 x of the first vertex.
+   * @param y1 y of the first vertex.
+   * @param z1 z of the first vertex.
+   * @param x2 x of the second vertex.
+   * @param y2 y of the second vertex.
+   * @param z2 z of the second vertex.
+   * @param x3 x of the third vertex.
+   * @param y3 y of the third vertex.
+   * @param z3 z of the third vertex.
+   * @param x4 x of the fourth vertex.
+   * @param y4 y of the fourth vertex.
+   * @param z4 z of the fourth vertex.
+   */
+  public void addQuad(double x1, double y1, double z1, double x2, double y2, double z2,
+                      double x3, double y3, double z3, double x4, double y4, double z4)
+  {
+    addLine(x1, y1, z1, x2, y2, z2);
+    addLine(x2, y2, z2, x3, y3, z3);
+    addLine(x3, y3, z3, x4, y4, z4);
+    addLine(x4, y4, z4, x1, y1, z1);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add the twelve edges of an axis-aligned box in the current style.
+   *
+   * @param x1 minimum corner x.
+   * @param y1 minimum corner y.
+   * @param z1 minimum corner z.
+   * @param x2 maximum corner x.
+   * @param y2 maximum corner y.
+   * @param z2 maximum corner z.
+   */
+  public void addBox(double x1, double y1, double z1, double x2, double y2, double z2)
+  {
+    addQuad(x1, y1, z1, x2, y1, z1, x2, y1, z2, x1, y1, z2);
+    addQuad(x1, y2, z1, x2, y2, z1, x2, y2, z2, x1, y2, z2);
+    addLine(x1, y1, z1, x1, y2, z1);
+    addLine(x2, y1, z1, x2, y2, z1);
+    addLine(x1, y1, z2, x1, y2, z2);
+    addLine(x2, y1, z2, x2, y2, z2);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw all of the lines, one draw call per line width.
+   *
+   * The lines are retained, so this method can be called repeatedly.
+   */
+  public void draw()
+  {
+    Tessellator tess = Tessellator.getInstance();
+    WorldRenderer wr = tess.getWorldRenderer();
+    for (Group group : _groups)
+    {
+      if (group._lineCount != 0)
+      {
+        GL11.glLineWidth(group._lineWidth);
+        wr.startDrawing(GL11.GL_LINES);
+        int lastColour = 0;
+        for (int line = 0; line < group._lineCount; ++line)
+        {
+          int colour = group._colours[line];
+          if (line == 0 || colour != lastColour)
+          {
+            wr.setColorRGBA((colour >> 16) & 0xFF, (colour >> 8) & 0xFF,
+              colour & 0xFF, (colour >>> 24));
+            lastColour = colour;
+          }
+          int i = line * 6;
+          float[] v = group._vertices;
+          wr.addVertex(v[i], v[i + 1], v[i + 2]);
+          wr.addVertex(v[i + 3], v[i + 4], v[i + 5]);
+        }
+        tess.draw();
+      }
+    } // for
+  } // draw
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove all lines.
+   */
+  public void clear()
+  {
+    for (Group group : _groups)
+    {
+      group._lineCount = 0;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The lines of one width.
+   */
+  protected static class Group
+  {
+    /**
+     * Constructor.
+     *
+     * @param lineWidth the line width.
+     */
+    public Group(float lineWidth)
+    {
+      _lineWidth = lineWidth;
+    }
+
+    /**
+     * Add a line.
+     */
+    public void addLine(float x1, float y1, float z1, float x2, float y2, float z2, int colour)
+    {
+      if (_lineCount == _colours.length)
+      {
+        _colours = Arrays.copyOf(_colours, _lineCount * 2);
+        _vertices = Arrays.copyOf(_vertices, _lineCount * 12);
+      }
+      int i = _lineCount * 6;
+      _vertices[i] = x1;
+      _vertices[i + 1] = y1;
+      _vertices[i + 2] = z1;
+      _vertices[i + 3] = x2;
+      _vertices[i + 4] = y2;
+      _vertices[i + 5] = z2;
+      _colours[_lineCount] = colour;
+      ++_lineCount;
+    }
+
+    /**
+     * The line width.
+     */
+    float   _lineWidth;
+
+    /**
+     * The number of lines.
+     */
+    int     _lineCount;
+
+    /**
+     * The ARGB colour of each line.
+     */
+    int[]   _colours  = new int[INITIAL_CAPACITY];
+
+    /**
+     * The coordinates of the two ends of each line.
+     */
+    float[] _vertices = new float[INITIAL_CAPACITY * 6];
+  } // inner class Group
+
+  // --------------------------------------------------------------------------
+  /**
+   * The initial number of lines that each group has space for.
+   */
+  protected static final int INITIAL_CAPACITY = 64;
+
+  /**
+   * The groups of lines, one per distinct width.
+   */
+  protected ArrayList<Group> _groups           = new ArrayList<Group>();
+
+  /**
+   * The group that added lines are appended to.
+   */
+  protected Group            _group;
+
+  /**
+   * The ARGB colour of added lines.
+   */
+  protected int              _colour;
+} // class LineBatch
@@ -1,11 +1,5 @@
 package watson.model;
 
-import net.minecraft.client.renderer.GlStateManager;
-import net.minecraft.client.renderer.Tessellator;
-import net.minecraft.client.renderer.WorldRenderer;
-
-import org.lwjgl.opengl.GL11;
-
 import watson.db.BlockType;
 
 // ----------------------------------------------------------------------------
@@ -29,14 +23,12 @@ public class PlantBlockModel extends BlockModel
 
   // --------------------------------------------------------------------------
   /**
-   * @see watson.model.BlockModel#render(watson.db.BlockType, int, int, int)
+   * @see watson.model.BlockModel#addOutline(watson.model.LineBatch,
+   *      watson.db.BlockType, int, int, int)
    */
   @Override
-  public void render(BlockType blockType, int x, int y, int z)
+  public void addOutline(LineBatch batch, BlockType blockType, int x, int y, int z)
   {
-    Tessellator tess = Tessellator.getInstance();
-    WorldRenderer wr = tess.getWorldRenderer();
-
     double x1 = x + blockType.getX1();
     double y1 = y + blockType.getY1();
     double z1 = z + blockType.getZ1();
@@ -44,28 +36,12 @@ public class PlantBlockModel extends BlockModel
     double y2 = y + blockType.getY2();
     double z2 = z + blockType.getZ2();
 
+    batch.setStyle(blockType.getARGB(), blockType.getLineWidth());
+
     // First rectangle.
-    wr.startDrawing(GL11.GL_LINE_LOOP);
-    wr.setColorRGBA(blockType.getARGB().getRed(),
-      blockType.getARGB().getGreen(), blockType.getARGB().getBlue(),
-      blockType.getARGB().getAlpha());
-    GL11.glLineWidth(blockType.getLineWidth());
-    wr.addVertex(x1, y1, z1);
-    wr.addVertex(x2, y1, z2);
-    wr.addVertex(x2, y2, z2);
-    wr.addVertex(x1, y2, z1);
-    tess.draw();
+    batch.addQuad(x1, y1, z1, x2, y1, z2, x2, y2, z2, x1, y2, z1);
 
     // Second rectangle.
-    wr.startDrawing(GL11.GL_LINE_LOOP);
-    wr.setColorRGBA(blockType.getARGB().getRed(),
-      blockType.getARGB().getGreen(), blockType.getARGB().getBlue(),
-      blockType.getARGB().getAlpha());
-    GL11.glLineWidth(blockType.getLineWidth());
-    wr.addVertex(x1, y1, z2);
-    wr.addVertex(x2, y1, z1);
-    wr.addVertex(x2, y2, z1);
-    wr.addVertex(x1, y2, z2);
-    tess.draw();
-  } // render
+    batch.addQuad(x1, y1, z2, x2, y1, z1, x2, y2, z1, x1, y2, z2);
+  } // addOutline
 } // class PlantBlockModel
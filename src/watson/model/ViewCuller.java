@@ -0,0 +1,188 @@
+package watson.model;
+
+import net.minecraft.client.renderer.culling.Frustum;
+
+import watson.Configuration;
+
+// ----------------------------------------------------------------------------
+/**
+ * Decides whether things in the world are worth drawing in the current frame.
+ *
+ * Something is drawn only if its bounding box is within the configured draw
+ * distance of the player and intersects the camera's view frustum.
+ * {@link #update(double, double, double)} must be called once per frame,
+ * while the world's view transformation is current, before any of the
+ * visibility tests.
+ */
+public class ViewCuller
+{
+  /**
+   * The single instance of this class.
+   */
+  public static final ViewCuller instance = new ViewCuller();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Capture the camera position, view frustum and draw distance for the
+   * current frame.
+   *
+   * @param x the x coordinate of the camera.
+   * @param y the y coordinate of the camera.
+   * @param z the z coordinate of the camera.
+   */
+  public void update(double x, double y, double z)
+  {
+    _x = x;
+    _y = y;
+    _z = z;
+    double distance = Configuration.instance.getDrawDistance();
+    _maxDistanceSquared = distance * distance;
+    double lodDistance = Configuration.instance.getLodDistance();
+    _lodDistanceSquared = lodDistance * lodDistance;
+
+    // The Frustum constructor extracts the clipping planes from the current
+    // projection and modelview matrices.
+    _frustum = new Frustum();
+    _frustum.setPosition(x, y, z);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if any part of the specified box is visible.
+   *
+   * @param minX the minimum x coordinate of the box.
+   * @param minY the minimum y coordinate of the box.
+   * @param minZ the minimum z coordinate of the box.
+   * @param maxX the maximum x coordinate of the box.
+   * @param maxY the maximum y coordinate of the box.
+   * @param maxZ the maximum z coordinate of the box.
+   * @return true if the box is within the draw distance and the view frustum.
+   */
+  public boolean isBoxVisible(double minX, double minY, double minZ,
+                              double maxX, double maxY, double maxZ)
+  {
+    if (getDistanceSquared(minX, minY, minZ, maxX, maxY, maxZ) > _maxDistanceSquared)
+    {
+      return false;
+    }
+    return _frustum == null || _frustum.isBoxInFrustum(minX, minY, minZ, maxX, maxY, maxZ);
+  } // isBoxVisible
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if any part of the block at the specified coordinates is
+   * visible.
+   *
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @return true if the block is within the draw distance and the view
+   *         frustum.
+   */
+  public boolean isBlockVisible(int x, int y, int z)
+  {
+    return isBoxVisible(x, y, z, x + 1, y + 1, z + 1);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if any part of the specified cell of blocks is visible.
+   *
+   * @param cellX the x coordinate of the cell, i.e. the block x coordinate
+   *          shifted right by {@link #CELL_SHIFT}.
+   * @param cellY the y coordinate of the cell.
+   * @param cellZ the z coordinate of the cell.
+   * @return true if the cell is within the draw distance and the view frustum.
+   */
+  public boolean isCellVisible(int cellX, int cellY, int cellZ)
+  {
+    double x = cellX << CELL_SHIFT;
+    double y = cellY << CELL_SHIFT;
+    double z = cellZ << CELL_SHIFT;
+    return isBoxVisible(x, y, z, x + CELL_SIZE, y + CELL_SIZE, z + CELL_SIZE);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified cell of blocks is close enough to the camera
+   * that its contents should be drawn in full detail, rather than summarised.
+   *
+   * @param cellX the x coordinate of the cell, i.e. the block x coordinate
+   *          shifted right by {@link #CELL_SHIFT}.
+   * @param cellY the y coordinate of the cell.
+   * @param cellZ the z coordinate of the cell.
+   * @return true if any part of the cell is within the level of detail
+   *         distance.
+   */
+  public boolean isCellDetailed(int cellX, int cellY, int cellZ)
+  {
+    double x = cellX << CELL_SHIFT;
+    double y = cellY << CELL_SHIFT;
+    double z = cellZ << CELL_SHIFT;
+    return getDistanceSquared(x, y, z, x + CELL_SIZE, y + CELL_SIZE, z + CELL_SIZE) <= _lodDistanceSquared;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the square of the distance from the camera to the nearest point in
+   * the specified box.
+   *
+   * @param minX the minimum x coordinate of the box.
+   * @param minY the minimum y coordinate of the box.
+   * @param minZ the minimum z coordinate of the box.
+   * @param maxX the maximum x coordinate of the box.
+   * @param maxY the maximum y coordinate of the box.
+   * @param maxZ the maximum z coordinate of the box.
+   * @return the squared distance, which is 0 if the camera is in the box.
+   */
+  protected double getDistanceSquared(double minX, double minY, double minZ,
+                                      double maxX, double maxY, double maxZ)
+  {
+    double dx = Math.max(0, Math.max(minX - _x, _x - maxX));
+    double dy = Math.max(0, Math.max(minY - _y, _y - maxY));
+    double dz = Math.max(0, Math.max(minZ - _z, _z - maxZ));
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The base 2 logarithm of the edge length of the cubic cells used to group
+   * blocks for culling.
+   */
+  public static final int CELL_SHIFT = 4;
+
+  /**
+   * The edge length of a cell, in blocks; the same as a chunk.
+   */
+  public static final int CELL_SIZE  = 1 << CELL_SHIFT;
+
+  /**
+   * The x coordinate of the camera.
+   */
+  protected double        _x;
+
+  /**
+   * The y coordinate of the camera.
+   */
+  protected double        _y;
+
+  /**
+   * The z coordinate of the camera.
+   */
+  protected double        _z;
+
+  /**
+   * The square of the draw distance.
+   */
+  protected double        _maxDistanceSquared;
+
+  /**
+   * The square of the level of detail distance.
+   */
+  protected double        _lodDistanceSquared;
+
+  /**
+   * The view frustum of the current frame, or null before the first frame.
+   */
+  protected Frustum       _frustum;
+} // class ViewCuller